@@ -21,16 +21,21 @@ import com.cloudbees.plugins.credentials.common.StandardUsernameCredentials;
 import com.cloudbees.plugins.credentials.common.UsernamePasswordCredentials;
 import hudson.EnvVars;
 import hudson.FilePath;
+import hudson.Proc;
 import hudson.Util;
 import hudson.model.Run;
 import hudson.model.TaskListener;
 import hudson.util.ArgumentListBuilder;
 import hudson.util.Secret;
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.regex.Pattern;
+import jenkins.util.SystemProperties;
 import org.apache.commons.lang3.StringUtils;
 import org.jenkinsci.plugins.plaincredentials.FileCredentials;
 import org.jenkinsci.plugins.plaincredentials.StringCredentials;
@@ -40,6 +45,12 @@ import org.jenkinsci.plugins.plaincredentials.StringCredentials;
  */
 abstract class AbstractAnsibleInvocation<T extends AbstractAnsibleInvocation<T>> {
 
+    /**
+     * The stdout callback emitting one JSON event per line, used when structured output is enabled.
+     */
+    static final String STRUCTURED_OUTPUT_CALLBACK = SystemProperties.getString(
+            AbstractAnsibleInvocation.class.getName() + ".structuredOutputCallback", "ansible.posix.jsonl");
+
     protected final EnvVars envVars;
     protected final TaskListener listener;
     protected final Run<?, ?> build;
@@ -53,15 +64,23 @@ abstract class AbstractAnsibleInvocation<T extends AbstractAnsibleInvocation<T>>
     protected String sudoUser;
     protected StandardCredentials vaultCredentials;
     protected FilePath vaultTmpPath = null;
+    protected FilePath secretStagingDir = null;
     protected StandardUsernameCredentials credentials;
     protected List<ExtraVar> extraVars;
+    protected boolean extraVarsAsFile = false;
     protected String additionalParameters;
 
     private FilePath key = null;
     private FilePath script = null;
     private FilePath vaultPassword = null;
+    private FilePath extraVarsFile = null;
+    private Map<String, Object> extraVarsValues;
     private Inventory inventory;
     private boolean copyCredentialsInWorkspace = false;
+    private AnsibleSshControlPersist sshControlPersist;
+    private boolean sshAgent = false;
+    private List<SSHUserPrivateKey> sshAgentKeys = new ArrayList<>();
+    private AnsibleSshAgent agent;
     private final FilePath ws;
 
     protected AbstractAnsibleInvocation(
@@ -116,7 +135,19 @@ abstract class AbstractAnsibleInvocation<T extends AbstractAnsibleInvocation<T>>
         return (T) this;
     }
 
-    public ArgumentListBuilder appendExtraVars(ArgumentListBuilder args) {
+    /**
+     * Pass all the extra vars in a single JSON file staged with the secret files, instead of one
+     * {@code -e} argument per variable.
+     */
+    public T setExtraVarsAsFile(boolean extraVarsAsFile) {
+        this.extraVarsAsFile = extraVarsAsFile;
+        return (T) this;
+    }
+
+    public ArgumentListBuilder appendExtraVars(ArgumentListBuilder args) throws IOException, InterruptedException {
+        if (extraVarsAsFile && secretTmpPath() != null) {
+            return appendExtraVarsFile(args);
+        }
         if (extraVars != null && !extraVars.isEmpty()) {
             for (ExtraVar var : extraVars) {
                 if (var.getSecretValue() == null) {
@@ -126,6 +157,16 @@ abstract class AbstractAnsibleInvocation<T extends AbstractAnsibleInvocation<T>>
                     continue;
                 }
                 args.add("-e");
+                if (var.isJson()) {
+                    String json = "{" + JsonWriter.write(envVars.expand(var.getKey())) + ":"
+                            + var.getSecretValue().getPlainText() + "}";
+                    if (var.isHidden()) {
+                        args.addMasked(json);
+                    } else {
+                        args.add(json);
+                    }
+                    continue;
+                }
                 String value = envVars.expand(var.getSecretValue().getPlainText());
                 if (Pattern.compile("\\s").matcher(value).find()) {
                     value = Util.singleQuote(value);
@@ -152,6 +193,55 @@ abstract class AbstractAnsibleInvocation<T extends AbstractAnsibleInvocation<T>>
         return args;
     }
 
+    private ArgumentListBuilder appendExtraVarsFile(ArgumentListBuilder args)
+            throws IOException, InterruptedException {
+        if (extraVarsFile == null) {
+            if (extraVarsValues().isEmpty()) {
+                return args;
+            }
+            new Utils.TempFiles(secretTmpPath())
+                    .add("extra-vars", ".json", extraVarsJson(), true, "r--------", file -> extraVarsFile = file)
+                    .create();
+        }
+        args.add("-e").add("@" + extraVarsFile.getRemote());
+        return args;
+    }
+
+    /**
+     * @return the extra vars with their keys and values expanded, the booleans kept as such and the
+     *     JSON values embedded as is
+     */
+    private Map<String, Object> extraVarsValues() {
+        if (extraVarsValues == null) {
+            extraVarsValues = new LinkedHashMap<>();
+            if (extraVars != null) {
+                for (ExtraVar var : extraVars) {
+                    if (var.getSecretValue() == null) {
+                        listener.getLogger()
+                                .println("[WARN] Omitting extra var " + var.getKey()
+                                        + ": check value is a supported type.");
+                        continue;
+                    }
+                    if (var.isJson()) {
+                        extraVarsValues.put(
+                                envVars.expand(var.getKey()),
+                                JsonWriter.raw(var.getSecretValue().getPlainText()));
+                        continue;
+                    }
+                    String value = envVars.expand(var.getSecretValue().getPlainText());
+                    // assuming Groovy representation for Boolean values
+                    Object typed = value.equals("true") || value.equals("false") ? Boolean.valueOf(value) : value;
+                    extraVarsValues.put(envVars.expand(var.getKey()), typed);
+                }
+            }
+        }
+        return extraVarsValues;
+    }
+
+    private byte[] extraVarsJson() {
+        return JsonWriter.write(extraVarsValues()).getBytes(StandardCharsets.UTF_8);
+    }
+
     public T setAdditionalParameters(String additionalParameters) {
         this.additionalParameters = additionalParameters;
         return (T) this;
@@ -234,6 +324,59 @@ abstract class AbstractAnsibleInvocation<T extends AbstractAnsibleInvocation<T>>
         return (T) this;
     }
 
+    /**
+     * Stage the secret files in this directory of the agent, usually memory-backed, unless
+     * {@link #setVaultTmpPath(FilePath)} is set.
+     */
+    T setSecretStagingDir(FilePath secretStagingDir) {
+        this.secretStagingDir = secretStagingDir;
+        return (T) this;
+    }
+
+    /**
+     * @return the directory of the vault password files
+     */
+    protected FilePath secretTmpPath() {
+        if (vaultTmpPath != null) {
+            return vaultTmpPath;
+        }
+        return secretStagingDir != null ? secretStagingDir : ws;
+    }
+
+    private FilePath keyTmpPath() {
+        return copyCredentialsInWorkspace && vaultTmpPath == null ? ws : secretTmpPath();
+    }
+
+    private boolean keyInThisDir() {
+        return copyCredentialsInWorkspace || (vaultTmpPath == null && secretStagingDir != null);
+    }
+
+    /**
+     * Reuse the SSH master connections of the agent, {@code null} to let ansible manage them.
+     */
+    T setSshControlPersist(AnsibleSshControlPersist sshControlPersist) {
+        this.sshControlPersist = sshControlPersist;
+        return (T) this;
+    }
+
+    /**
+     * Load the SSH private keys into an ssh-agent started for the command instead of writing them
+     * to temporary files.
+     */
+    public T setSshAgent(boolean sshAgent) {
+        this.sshAgent = sshAgent;
+        return (T) this;
+    }
+
+    /**
+     * Additional SSH private keys loaded into the ssh-agent, for the inventories whose hosts use
+     * different credentials.
+     */
+    public T setSshAgentKeys(List<SSHUserPrivateKey> sshAgentKeys) {
+        this.sshAgentKeys = sshAgentKeys != null ? new ArrayList<>(sshAgentKeys) : new ArrayList<>();
+        return (T) this;
+    }
+
     protected ArgumentListBuilder prependPasswordCredentials(ArgumentListBuilder args) {
         if (credentials instanceof UsernamePasswordCredentials) {
             UsernamePasswordCredentials passwordCredentials = (UsernamePasswordCredentials) credentials;
@@ -243,14 +386,27 @@ abstract class AbstractAnsibleInvocation<T extends AbstractAnsibleInvocation<T>>
     }
 
     protected ArgumentListBuilder appendCredentials(ArgumentListBuilder args) throws IOException, InterruptedException {
-        if (credentials instanceof SSHUserPrivateKey) {
-            FilePath tmpPath = vaultTmpPath != null ? vaultTmpPath : ws;
+        if (sshControlPersist != null) {
+            sshControlPersist.apply(
+                    environment,
+                    credentials,
+                    sshAgent ? sshAgentKeys : List.of(),
+                    inventory != null ? inventory.getIdentity(ws, envVars) : "default");
+        }
+        if (credentials instanceof SSHUserPrivateKey && agent != null) {
+            args.add("-u").add(credentials.getUsername());
+        } else if (credentials instanceof SSHUserPrivateKey) {
+            FilePath tmpPath = keyTmpPath();
             SSHUserPrivateKey privateKeyCredentials = (SSHUserPrivateKey) credentials;
-            key = Utils.createSshKeyFile(key, tmpPath, privateKeyCredentials, copyCredentialsInWorkspace);
+            if (key == null) {
+                key = Utils.createSshKeyFile(key, tmpPath, privateKeyCredentials, keyInThisDir());
+            }
             args.add("--private-key").add(key.getRemote().replace("%", "%%"));
             args.add("-u").add(privateKeyCredentials.getUsername());
             if (privateKeyCredentials.getPassphrase() != null) {
-                script = Utils.createSshAskPassFile(script, tmpPath, privateKeyCredentials, copyCredentialsInWorkspace);
+                if (script == null) {
+                    script = Utils.createSshAskPassFile(script, tmpPath, privateKeyCredentials, keyInThisDir());
+                }
                 environment.put("SSH_ASKPASS", script.getRemote());
                 // inspired from https://github.com/jenkinsci/git-client-plugin/pull/168
                 // but does not work with MacOSX
@@ -267,8 +423,10 @@ abstract class AbstractAnsibleInvocation<T extends AbstractAnsibleInvocation<T>>
 
     protected ArgumentListBuilder appendVaultPasswordFile(ArgumentListBuilder args)
             throws IOException, InterruptedException {
-        if (vaultCredentials != null) {
-            FilePath tmpPath = vaultTmpPath != null ? vaultTmpPath : ws;
+        if (vaultPassword != null) {
+            args.add("--vault-password-file").add(vaultPassword.getRemote().replace("%", "%%"));
+        } else if (vaultCredentials != null) {
+            FilePath tmpPath = secretTmpPath();
             if (vaultCredentials instanceof FileCredentials) {
                 FileCredentials secretFile = (FileCredentials) vaultCredentials;
                 vaultPassword = Utils.createVaultPasswordFile(vaultPassword, tmpPath, secretFile);
@@ -296,6 +454,34 @@ abstract class AbstractAnsibleInvocation<T extends AbstractAnsibleInvocation<T>>
         return (T) this;
     }
 
+    public T setStructuredOutput(boolean structuredOutput) {
+        if (structuredOutput) {
+            environment.put("ANSIBLE_STDOUT_CALLBACK", STRUCTURED_OUTPUT_CALLBACK);
+        }
+        return (T) this;
+    }
+
+    /**
+     * Apply the performance profile of the installation, without replacing the variables already
+     * set in the environment.
+     */
+    public T setPerformanceProfile(AnsiblePerformanceProfile profile) {
+        if (profile != null) {
+            profile.apply(environment);
+        }
+        return (T) this;
+    }
+
+    /**
+     * Use the fact cache of the agent, replacing any fact cache set in the environment.
+     */
+    T setFactCache(AnsibleFactCache factCache) {
+        if (factCache != null) {
+            factCache.apply(environment);
+        }
+        return (T) this;
+    }
+
     public T setDisableHostKeyCheck(boolean disableHostKeyChecking) {
         if (disableHostKeyChecking) {
             environment.put("ANSIBLE_HOST_KEY_CHECKING", "False");
@@ -306,16 +492,151 @@ abstract class AbstractAnsibleInvocation<T extends AbstractAnsibleInvocation<T>>
     protected abstract ArgumentListBuilder buildCommandLine()
             throws InterruptedException, AnsibleInvocationException, IOException;
 
+    /**
+     * Write the credential files of the command to the agent in a single call, the append methods
+     * then only create the files missing from the batch.
+     */
+    protected void createTempFiles() throws IOException, InterruptedException {
+        FilePath tmpPath = secretTmpPath();
+        if (tmpPath == null) {
+            return;
+        }
+        Utils.TempFiles files = new Utils.TempFiles(tmpPath);
+        addTempFiles(files);
+        files.create();
+    }
+
+    protected void addTempFiles(Utils.TempFiles files) throws IOException {
+        if (credentials instanceof SSHUserPrivateKey && key == null && agent == null) {
+            SSHUserPrivateKey privateKeyCredentials = (SSHUserPrivateKey) credentials;
+            files.add(
+                    keyTmpPath(),
+                    "ssh",
+                    ".key",
+                    Utils.sshKey(privateKeyCredentials).getBytes(StandardCharsets.UTF_8),
+                    keyInThisDir(),
+                    "r--------",
+                    file -> key = file);
+            if (privateKeyCredentials.getPassphrase() != null) {
+                files.add(
+                        keyTmpPath(),
+                        "ssh",
+                        ".sh",
+                        Utils.sshAskPass(privateKeyCredentials).getBytes(StandardCharsets.UTF_8),
+                        keyInThisDir(),
+                        "rwx------",
+                        file -> script = file);
+            }
+        }
+        if (vaultCredentials != null && vaultPassword == null) {
+            byte[] password = Utils.vaultPassword(vaultCredentials);
+            if (password != null) {
+                files.add("vault", ".password", password, true, "r--------", file -> vaultPassword = file);
+            }
+        }
+        if (extraVarsAsFile && extraVarsFile == null && !extraVarsValues().isEmpty()) {
+            files.add("extra-vars", ".json", extraVarsJson(), true, "r--------", file -> extraVarsFile = file);
+        }
+    }
+
+    /**
+     * Start the ssh-agent of the command and load its keys, when enabled.
+     */
+    private void startSshAgent(CLIRunner runner) throws IOException, InterruptedException {
+        List<SSHUserPrivateKey> keys = new ArrayList<>();
+        if (credentials instanceof SSHUserPrivateKey) {
+            keys.add((SSHUserPrivateKey) credentials);
+        }
+        keys.addAll(sshAgentKeys);
+        if (!sshAgent || keys.isEmpty() || agent != null) {
+            return;
+        }
+        agent = AnsibleSshAgent.start(runner.getLauncher(), environment, listener);
+        for (SSHUserPrivateKey key : keys) {
+            agent.add(key);
+        }
+        agent.apply(environment);
+    }
+
+    /**
+     * @return the ssh-agent started for the command, if any
+     */
+    AnsibleSshAgent getSshAgent() {
+        return agent;
+    }
+
+    /**
+     * Write the temporary files of the command, then build its command line.
+     */
+    ArgumentListBuilder prepareCommandLine(CLIRunner runner)
+            throws InterruptedException, AnsibleInvocationException, IOException {
+        startSshAgent(runner);
+        createTempFiles();
+        return buildCommandLine();
+    }
+
     public boolean execute(CLIRunner runner) throws IOException, InterruptedException, AnsibleInvocationException {
         try {
-            return runner.execute(buildCommandLine(), environment);
+            return runner.execute(prepareCommandLine(runner), environment);
         } finally {
-            if (inventory != null) {
+            tearDown();
+        }
+    }
+
+    /**
+     * Launch the command without waiting for it. {@link #tearDown()} must be called once the
+     * process has exited.
+     */
+    public Proc start(CLIRunner runner) throws IOException, InterruptedException, AnsibleInvocationException {
+        try {
+            return runner.start(prepareCommandLine(runner), environment);
+        } catch (IOException | InterruptedException | AnsibleInvocationException | RuntimeException e) {
+            tearDown();
+            throw e;
+        }
+    }
+
+    /**
+     * @return the temporary files created for the command, to be deleted once it has exited
+     */
+    public List<FilePath> getTempFiles() {
+        List<FilePath> files = new ArrayList<>();
+        if (inventory != null && inventory.getTempFile() != null) {
+            files.add(inventory.getTempFile());
+        }
+        collectTempFiles(files);
+        return files;
+    }
+
+    protected void collectTempFiles(List<FilePath> files) {
+        for (FilePath file : new FilePath[] {key, script, vaultPassword, extraVarsFile}) {
+            if (file != null) {
+                files.add(file);
+            }
+        }
+    }
+
+    /**
+     * Delete the temporary files created for the command, in a single call to the agent, and stop
+     * its ssh-agent.
+     */
+    public void tearDown() throws IOException, InterruptedException {
+        List<FilePath> files = getTempFiles();
+        try {
+            if (inventory != null && inventory.getTempFile() == null) {
+                // the temporary files of this inventory, if any, are unknown
                 inventory.tearDown(listener);
             }
-            Utils.deleteTempFile(key, listener);
-            Utils.deleteTempFile(script, listener);
-            Utils.deleteTempFile(vaultPassword, listener);
+        } finally {
+            try {
+                Utils.deleteTempFiles(files, listener);
+            } finally {
+                AnsibleSshAgent running = agent;
+                agent = null;
+                if (running != null) {
+                    running.stop();
+                }
+            }
         }
     }
 }
@@ -107,6 +107,9 @@ public class AnsibleAdHocCommandBuilder extends Builder implements SimpleBuildSt
     @SuppressFBWarnings(value = "PA_PUBLIC_PRIMITIVE_ATTRIBUTE", justification = "Preserve API compatibility.")
     public List<ExtraVar> extraVars;
 
+    @SuppressFBWarnings(value = "PA_PUBLIC_PRIMITIVE_ATTRIBUTE", justification = "Preserve API compatibility.")
+    public boolean extraVarsAsFile = false;
+
     @Deprecated
     public AnsibleAdHocCommandBuilder(
             String ansibleName,
@@ -221,49 +224,38 @@ public class AnsibleAdHocCommandBuilder extends Builder implements SimpleBuildSt
         this.extraVars = extraVars;
     }
 
+    @DataBoundSetter
+    public void setExtraVarsAsFile(boolean extraVarsAsFile) {
+        this.extraVarsAsFile = extraVarsAsFile;
+    }
+
     @Override
     public void perform(
             @NonNull Run<?, ?> run, @NonNull FilePath ws, @NonNull Launcher launcher, @NonNull TaskListener listener)
             throws InterruptedException, IOException {
         try {
-            CLIRunner runner = new CLIRunner(run, ws, launcher, listener);
-            Computer computer = ws.toComputer();
-            if (computer == null) {
-                throw new AbortException("The ansible ad-hoc command build step requires to be launched on a node");
-            }
-            EnvVars envVars = run.getEnvironment(listener);
-            String exe = AnsibleInstallation.getExecutable(
-                    ansibleName, AnsibleCommand.ANSIBLE, computer.getNode(), listener, envVars);
-            AnsibleAdHocCommandInvocation invocation =
-                    new AnsibleAdHocCommandInvocation(exe, run, ws, listener, envVars);
-            invocation.setHostPattern(hostPattern);
-            invocation.setInventory(inventory);
-            invocation.setModule(module);
-            invocation.setModuleCommand(command);
-            invocation.setBecome(become, becomeUser);
-            invocation.setSudo(sudo, sudoUser);
-            invocation.setForks(forks);
-            invocation.setCredentials(
-                    StringUtils.isNotBlank(credentialsId)
-                            ? CredentialsProvider.findCredentialById(
-                                    credentialsId, StandardUsernameCredentials.class, run)
-                            : null);
-            invocation.setVaultCredentials(
-                    StringUtils.isNotBlank(vaultCredentialsId)
-                            ? CredentialsProvider.findCredentialById(vaultCredentialsId, StandardCredentials.class, run)
-                            : null);
-            invocation.setVaultTmpPath(
-                    StringUtils.isNotBlank(vaultTmpPath)
-                            ? new FilePath(computer.getChannel(), new File(vaultTmpPath).getAbsolutePath())
-                            : null);
-            invocation.setExtraVars(extraVars);
-            invocation.setAdditionalParameters(additionalParameters);
-            invocation.setDisableHostKeyCheck(disableHostKeyChecking);
-            invocation.setUnbufferedOutput(unbufferedOutput);
-            invocation.setColorizedOutput(colorizedOutput);
-            if (!invocation.execute(runner)) {
-                throw new AbortException("Ansible Ad-Hoc command execution failed");
-            }
+            launch(new CLIRunner(run, ws, launcher, listener), run, ws, listener).complete();
+        } catch (IOException ioe) {
+            Util.displayIOException(ioe, listener);
+            ioe.printStackTrace(listener.fatalError("command execution failed"));
+            throw ioe;
+        } catch (AnsibleInvocationException aie) {
+            listener.fatalError(aie.getMessage());
+            throw new AbortException(aie.getMessage());
+        }
+    }
+
+    /**
+     * Launch the ad-hoc command without waiting for it.
+     *
+     * @param runner the runner launching the process
+     * @return the running command, which must be completed by the caller
+     */
+    public AnsibleProcess start(
+            @NonNull CLIRunner runner, @NonNull Run<?, ?> run, @NonNull FilePath ws, @NonNull TaskListener listener)
+            throws InterruptedException, IOException {
+        try {
+            return launch(runner, run, ws, listener);
         } catch (IOException ioe) {
             Util.displayIOException(ioe, listener);
             ioe.printStackTrace(listener.fatalError("command execution failed"));
@@ -274,6 +266,51 @@ public class AnsibleAdHocCommandBuilder extends Builder implements SimpleBuildSt
         }
     }
 
+    private AnsibleProcess launch(CLIRunner runner, Run<?, ?> run, FilePath ws, TaskListener listener)
+            throws InterruptedException, IOException, AnsibleInvocationException {
+        Computer computer = ws.toComputer();
+        if (computer == null) {
+            throw new AbortException("The ansible ad-hoc command build step requires to be launched on a node");
+        }
+        EnvVars envVars = run.getEnvironment(listener);
+        AnsibleBytecodeWarmup.ensure(ansibleName, computer.getNode(), envVars, listener);
+        String exe = AnsibleInstallation.getExecutable(
+                ansibleName, AnsibleCommand.ANSIBLE, computer.getNode(), listener, envVars);
+        AnsibleAdHocCommandInvocation invocation =
+                new AnsibleAdHocCommandInvocation(exe, run, ws, listener, envVars);
+        invocation.setHostPattern(hostPattern);
+        invocation.setInventory(inventory);
+        invocation.setModule(module);
+        invocation.setModuleCommand(command);
+        invocation.setBecome(become, becomeUser);
+        invocation.setSudo(sudo, sudoUser);
+        invocation.setForks(forks);
+        invocation.setCredentials(
+                StringUtils.isNotBlank(credentialsId)
+                        ? CredentialsProvider.findCredentialById(
+                                credentialsId, StandardUsernameCredentials.class, run)
+                        : null);
+        invocation.setVaultCredentials(
+                StringUtils.isNotBlank(vaultCredentialsId)
+                        ? CredentialsProvider.findCredentialById(vaultCredentialsId, StandardCredentials.class, run)
+                        : null);
+        invocation.setVaultTmpPath(
+                StringUtils.isNotBlank(vaultTmpPath)
+                        ? new FilePath(computer.getChannel(), new File(vaultTmpPath).getAbsolutePath())
+                        : null);
+        invocation.setSecretStagingDir(AnsibleNodeProperty.secretStagingDir(computer.getNode(), listener));
+        invocation.setExtraVars(extraVars);
+        invocation.setExtraVarsAsFile(extraVarsAsFile);
+        invocation.setAdditionalParameters(additionalParameters);
+        invocation.setDisableHostKeyCheck(disableHostKeyChecking);
+        invocation.setUnbufferedOutput(unbufferedOutput);
+        invocation.setColorizedOutput(colorizedOutput);
+        invocation.setSshControlPersist(AnsibleSshControlPersist.forNode(computer.getNode()));
+        invocation.setPerformanceProfile(AnsibleInstallation.getPerformanceProfile(ansibleName));
+        return new AnsibleProcess(
+                invocation.start(runner), runner, invocation, "Ansible Ad-Hoc command execution failed");
+    }
+
     @Extension
     public static final class DescriptorImpl extends AbstractAnsibleBuilderDescriptor {
 
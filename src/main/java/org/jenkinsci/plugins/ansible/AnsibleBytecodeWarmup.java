@@ -0,0 +1,423 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jenkinsci.plugins.ansible;
+
+import hudson.EnvVars;
+import hudson.model.Node;
+import hudson.model.TaskListener;
+import hudson.remoting.VirtualChannel;
+import hudson.util.DaemonThreadFactory;
+import hudson.util.NamingThreadFactory;
+import java.io.File;
+import java.io.IOException;
+import java.io.Serializable;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import jenkins.security.MasterToSlaveCallable;
+import jenkins.util.SystemProperties;
+import org.apache.commons.lang3.StringUtils;
+
+/**
+ * Precompiles the ansible tree and collections of an installation into bytecode, once per node.
+ *
+ * <p>Python startup and module imports dominate the duration of short ansible commands, and the
+ * bytecode caches are never written when the installation is not writable by the agent user or
+ * when {@code PYTHONDONTWRITEBYTECODE} is set. The tree is compiled with the environment of the
+ * build restricted to the {@code PATH}, the Python variables and the collection paths, so that a
+ * {@code PYTHONPYCACHEPREFIX} is honored without passing the secrets of the build, then the cache
+ * of the ansible package is checked and the startup time before and after compilation is measured.
+ *
+ * <p>The compilation runs in the background, the build which triggers it does not wait for it.
+ * Without a {@code PYTHONPYCACHEPREFIX}, the directories the agent user cannot write are skipped.
+ */
+public final class AnsibleBytecodeWarmup {
+
+    private static final Logger LOGGER = Logger.getLogger(AnsibleBytecodeWarmup.class.getName());
+
+    /** Seconds after which a command of the precompilation is killed. */
+    static final long TIMEOUT =
+            SystemProperties.getLong(AnsibleBytecodeWarmup.class.getName() + ".timeout", 600L);
+
+    /** The precompilations by installation and node, started once each. */
+    private static final ConcurrentMap<String, Future<Result>> WARMUPS = new ConcurrentHashMap<>();
+
+    private static final ThreadPoolExecutor EXECUTOR = new ThreadPoolExecutor(
+            2,
+            2,
+            1,
+            TimeUnit.MINUTES,
+            new LinkedBlockingQueue<>(),
+            new NamingThreadFactory(new DaemonThreadFactory(), "AnsibleBytecodeWarmup"));
+
+    static {
+        EXECUTOR.allowCoreThreadTimeOut(true);
+    }
+
+    private static final Pattern MODULE_LOCATION =
+            Pattern.compile("^\\s*ansible python module location = (.+)$", Pattern.MULTILINE);
+    private static final Pattern COLLECTION_LOCATION =
+            Pattern.compile("^\\s*ansible collection location = (.+)$", Pattern.MULTILINE);
+
+    private AnsibleBytecodeWarmup() {}
+
+    /**
+     * Start the precompilation of the installation on the node if its performance profile asks
+     * for it and it was not started since the node connected.
+     */
+    static void ensure(String installation, Node node, EnvVars env, TaskListener listener)
+            throws IOException, InterruptedException {
+        AnsiblePerformanceProfile profile = AnsibleInstallation.getPerformanceProfile(installation);
+        if (profile == null || !profile.isPrecompileBytecode() || node == null) {
+            return;
+        }
+        String key = key(installation, node.getNodeName());
+        if (WARMUPS.containsKey(key)) {
+            return;
+        }
+        VirtualChannel channel = node.getChannel();
+        if (channel == null) {
+            return;
+        }
+        String exe = AnsibleInstallation.getExecutable(installation, AnsibleCommand.ANSIBLE, node, listener, env);
+        Warmup warmup = new Warmup(installation, node.getNodeName(), exe, environment(env), TIMEOUT);
+        FutureTask<Result> task = new FutureTask<>(() -> channel.call(warmup));
+        if (WARMUPS.putIfAbsent(key, task) != null) {
+            return;
+        }
+        listener.getLogger().println("[ansible] precompiling the bytecode of the installation in the background");
+        EXECUTOR.execute(() -> {
+            task.run();
+            log(task, node.getNodeName());
+        });
+    }
+
+    private static void log(Future<Result> task, String nodeName) {
+        try {
+            Result result = task.get();
+            LOGGER.log(
+                    Level.FINE,
+                    "Bytecode of {0} precompiled on {1}, startup time {2} ms cold, {3} ms warm",
+                    new Object[] {
+                        result.getInstallation(), nodeName, result.getColdMillis(), result.getWarmMillis()
+                    });
+            if (!result.isCacheEffective()) {
+                LOGGER.log(
+                        Level.WARNING,
+                        "The bytecode cache of {0} is not used on {1}{2}{3}",
+                        new Object[] {
+                            result.getInstallation(),
+                            nodeName,
+                            result.isDontWriteBytecode() ? ", PYTHONDONTWRITEBYTECODE is set" : "",
+                            result.getMessage() != null ? ": " + result.getMessage() : ""
+                        });
+            }
+        } catch (ExecutionException e) {
+            LOGGER.log(Level.WARNING, "Unable to precompile the ansible bytecode on " + nodeName, e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static String key(String installation, String nodeName) {
+        return StringUtils.defaultString(installation) + '\0' + nodeName;
+    }
+
+    /**
+     * @return the variables of the build which affect the compilation: the {@code PATH}, the
+     *     Python variables and the collection paths
+     */
+    static Map<String, String> environment(Map<String, String> env) {
+        Map<String, String> result = new HashMap<>();
+        for (Map.Entry<String, String> entry : env.entrySet()) {
+            String name = entry.getKey();
+            if (name.equalsIgnoreCase("PATH")
+                    || name.startsWith("PYTHON")
+                    || name.equals("ANSIBLE_COLLECTIONS_PATH")
+                    || name.equals("ANSIBLE_COLLECTIONS_PATHS")) {
+                result.put(name, entry.getValue());
+            }
+        }
+        return result;
+    }
+
+    /**
+     * @return the completed precompilations of the node
+     */
+    static List<Result> results(String nodeName) {
+        List<Result> results = new ArrayList<>();
+        for (Future<Result> warmup : WARMUPS.values()) {
+            if (!warmup.isDone()) {
+                continue;
+            }
+            try {
+                Result result = warmup.get();
+                if (result.getNodeName().equals(nodeName)) {
+                    results.add(result);
+                }
+            } catch (ExecutionException e) {
+                // logged when it failed
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+        }
+        results.sort((a, b) -> a.getInstallation().compareTo(b.getInstallation()));
+        return results;
+    }
+
+    static void invalidate(String nodeName) {
+        WARMUPS.keySet().removeIf(key -> key.endsWith('\0' + nodeName));
+    }
+
+    static void invalidate() {
+        WARMUPS.clear();
+    }
+
+    /**
+     * @return the directories to compile: the ansible package and the existing collection paths
+     */
+    static List<String> locations(String versionOutput) {
+        List<String> locations = new ArrayList<>();
+        Matcher matcher = MODULE_LOCATION.matcher(versionOutput);
+        if (matcher.find()) {
+            locations.add(matcher.group(1).trim());
+        }
+        matcher = COLLECTION_LOCATION.matcher(versionOutput);
+        if (matcher.find()) {
+            for (String path : matcher.group(1).trim().split(":")) {
+                if (!path.isEmpty()) {
+                    locations.add(path);
+                }
+            }
+        }
+        return locations;
+    }
+
+    /**
+     * Outcome of the precompilation of an installation on a node.
+     */
+    public static final class Result implements Serializable {
+        private static final long serialVersionUID = 1L;
+
+        private final String installation;
+        private final String nodeName;
+        private final long coldMillis;
+        private final long warmMillis;
+        private final boolean cacheEffective;
+        private final boolean dontWriteBytecode;
+        private final String message;
+
+        Result(
+                String installation,
+                String nodeName,
+                long coldMillis,
+                long warmMillis,
+                boolean cacheEffective,
+                boolean dontWriteBytecode,
+                String message) {
+            this.installation = installation;
+            this.nodeName = nodeName;
+            this.coldMillis = coldMillis;
+            this.warmMillis = warmMillis;
+            this.cacheEffective = cacheEffective;
+            this.dontWriteBytecode = dontWriteBytecode;
+            this.message = message;
+        }
+
+        public String getInstallation() {
+            return installation;
+        }
+
+        public String getNodeName() {
+            return nodeName;
+        }
+
+        /**
+         * @return the duration of {@code ansible --version} before the compilation
+         */
+        public long getColdMillis() {
+            return coldMillis;
+        }
+
+        /**
+         * @return the shortest of two runs of {@code ansible --version} after the compilation
+         */
+        public long getWarmMillis() {
+            return warmMillis;
+        }
+
+        /**
+         * @return whether the bytecode of the ansible package is found where Python looks for it
+         */
+        public boolean isCacheEffective() {
+            return cacheEffective;
+        }
+
+        public boolean isDontWriteBytecode() {
+            return dontWriteBytecode;
+        }
+
+        /**
+         * @return the error reported by the compilation, {@code null} if none
+         */
+        public String getMessage() {
+            return message;
+        }
+    }
+
+    static final class Warmup extends MasterToSlaveCallable<Result, IOException> {
+        private static final long serialVersionUID = 1L;
+
+        private static final int MAX_MESSAGE_LENGTH = 500;
+
+        private final String installation;
+        private final String nodeName;
+        private final String exe;
+        private final Map<String, String> env;
+        private final long timeout;
+
+        /**
+         * @param timeout seconds after which each command is killed
+         */
+        Warmup(String installation, String nodeName, String exe, Map<String, String> env, long timeout) {
+            this.installation = StringUtils.defaultString(installation);
+            this.nodeName = nodeName;
+            this.exe = exe;
+            this.env = new HashMap<>(env);
+            this.timeout = timeout;
+        }
+
+        @Override
+        public Result call() throws IOException {
+            try {
+                long start = System.nanoTime();
+                Output version = run(exe, "--version");
+                long cold = (System.nanoTime() - start) / 1000000;
+                if (version.status != 0) {
+                    throw new IOException("Unable to run " + exe + " --version: " + version.text);
+                }
+                String python = AnsibleCapabilities.parse(null, nodeName, version.text, null, null, null)
+                        .getPython();
+                if (python == null) {
+                    python = "python3";
+                }
+                List<String> compile = new ArrayList<>();
+                List<String> skipped = new ArrayList<>();
+                // with a prefix the bytecode is not written next to the sources
+                boolean prefixed = StringUtils.isNotEmpty(env.get("PYTHONPYCACHEPREFIX"));
+                for (String location : locations(version.text)) {
+                    File dir = new File(location);
+                    if (!dir.isDirectory()) {
+                        continue;
+                    }
+                    if (prefixed || Files.isWritable(dir.toPath())) {
+                        compile.add(location);
+                    } else {
+                        skipped.add(location);
+                    }
+                }
+                Output compiled = null;
+                if (!compile.isEmpty()) {
+                    List<String> command = new ArrayList<>(List.of(python, "-m", "compileall", "-q", "-j", "0"));
+                    command.addAll(compile);
+                    compiled = run(command.toArray(new String[0]));
+                }
+                long warm = Long.MAX_VALUE;
+                for (int i = 0; i < 2; i++) {
+                    start = System.nanoTime();
+                    run(exe, "--version");
+                    warm = Math.min(warm, (System.nanoTime() - start) / 1000000);
+                }
+                Output cache = run(
+                        python,
+                        "-c",
+                        "import importlib.util, ansible; print(importlib.util.cache_from_source(ansible.__file__))");
+                boolean effective = cache.status == 0 && new File(cache.text.trim()).isFile();
+                String message = null;
+                if (compiled != null && compiled.status != 0) {
+                    message = StringUtils.abbreviate(compiled.text.trim(), MAX_MESSAGE_LENGTH);
+                } else if (!skipped.isEmpty()) {
+                    message = "not writable by the agent user: " + String.join(", ", skipped);
+                }
+                return new Result(
+                        installation,
+                        nodeName,
+                        cold,
+                        warm,
+                        effective,
+                        StringUtils.isNotEmpty(env.get("PYTHONDONTWRITEBYTECODE")),
+                        message);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException(e);
+            }
+        }
+
+        /**
+         * Run a command, killing it with its children once it has run for the timeout.
+         */
+        private Output run(String... command) throws IOException, InterruptedException {
+            // a file rather than a pipe, so that waiting is not blocked by reading the output
+            Path output = Files.createTempFile("ansible-warmup", ".log");
+            try {
+                ProcessBuilder builder = new ProcessBuilder(command)
+                        .redirectErrorStream(true)
+                        .redirectOutput(output.toFile());
+                builder.environment().putAll(env);
+                Process process = builder.start();
+                try {
+                    if (!process.waitFor(timeout, TimeUnit.SECONDS)) {
+                        throw new IOException(command[0] + " timed out after " + timeout + " seconds");
+                    }
+                } finally {
+                    if (process.isAlive()) {
+                        process.descendants().forEach(ProcessHandle::destroyForcibly);
+                        process.destroyForcibly();
+                    }
+                }
+                return new Output(
+                        process.exitValue(), new String(Files.readAllBytes(output), StandardCharsets.UTF_8));
+            } finally {
+                Files.deleteIfExists(output);
+            }
+        }
+    }
+
+    private static final class Output {
+        final int status;
+        final String text;
+
+        Output(int status, String text) {
+            this.status = status;
+            this.text = text;
+        }
+    }
+}
@@ -0,0 +1,359 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jenkinsci.plugins.ansible;
+
+import hudson.EnvVars;
+import hudson.Launcher;
+import hudson.Proc;
+import hudson.model.Computer;
+import hudson.model.Node;
+import hudson.model.TaskListener;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import org.apache.commons.lang3.StringUtils;
+
+/**
+ * Version and plugins of an ansible installation on a node.
+ *
+ * <p>The installation is probed with {@code ansible --version}, {@code ansible-config dump} and
+ * {@code ansible-doc --list} the first time a build uses it on a node, and the result is cached until
+ * the node reconnects or the tools are reconfigured. Probing is enabled in the global configuration.
+ * A failed probe is cached the same way, so that it is neither repeated nor reported by every build.
+ */
+public final class AnsibleCapabilities {
+
+    static final long PROBE_TIMEOUT = 60;
+
+    private static final Map<String, AnsibleCapabilities> CACHE = new ConcurrentHashMap<>();
+
+    private static final Pattern VERSION =
+            Pattern.compile("^ansible (?:\\[core )?([0-9][^\\s\\]]*)", Pattern.MULTILINE);
+    private static final Pattern PYTHON = Pattern.compile("^\\s*python version = (\\S+)(.*)$", Pattern.MULTILINE);
+    private static final Pattern INTERPRETER = Pattern.compile("\\(([^()]+)\\)\\s*$");
+    private static final Pattern CONFIG = Pattern.compile("^(\\w+)\\([^)]*\\) = (.*)$", Pattern.MULTILINE);
+
+    private final String installation;
+    private final String nodeName;
+    private final String version;
+    private final String pythonVersion;
+    private final String python;
+    private final Map<String, String> config;
+    private final Set<String> callbacks;
+    private final Set<String> connections;
+    private final boolean failed;
+
+    AnsibleCapabilities(
+            String installation,
+            String nodeName,
+            String version,
+            String pythonVersion,
+            String python,
+            Map<String, String> config,
+            Set<String> callbacks,
+            Set<String> connections) {
+        this.installation = installation;
+        this.nodeName = nodeName;
+        this.version = version;
+        this.pythonVersion = pythonVersion;
+        this.python = python;
+        this.config = Collections.unmodifiableMap(config);
+        this.callbacks = callbacks == null ? null : Collections.unmodifiableSet(callbacks);
+        this.connections = connections == null ? null : Collections.unmodifiableSet(connections);
+        this.failed = false;
+    }
+
+    /**
+     * The result of a failed probe.
+     */
+    private AnsibleCapabilities(String installation, String nodeName) {
+        this.installation = StringUtils.defaultString(installation);
+        this.nodeName = nodeName;
+        this.version = null;
+        this.pythonVersion = null;
+        this.python = null;
+        this.config = Collections.emptyMap();
+        this.callbacks = null;
+        this.connections = null;
+        this.failed = true;
+    }
+
+    /**
+     * @return the name of the installation, empty for the ansible found on the PATH
+     */
+    public String getInstallation() {
+        return installation;
+    }
+
+    public String getNodeName() {
+        return nodeName;
+    }
+
+    /**
+     * @return the ansible core version, e.g. {@code 2.15.3}
+     */
+    public String getVersion() {
+        return version;
+    }
+
+    public String getPythonVersion() {
+        return pythonVersion;
+    }
+
+    /**
+     * @return the path of the Python interpreter, {@code null} if not reported by ansible
+     */
+    public String getPython() {
+        return python;
+    }
+
+    /**
+     * @return the effective configuration reported by {@code ansible-config dump}
+     */
+    public Map<String, String> getConfig() {
+        return config;
+    }
+
+    /**
+     * @return the callback plugins, {@code null} when {@code ansible-doc} could not list them
+     */
+    public Set<String> getCallbacks() {
+        return callbacks;
+    }
+
+    /**
+     * @return the connection plugins, {@code null} when {@code ansible-doc} could not list them
+     */
+    public Set<String> getConnections() {
+        return connections;
+    }
+
+    public boolean hasCallback(String name) {
+        return callbacks != null && callbacks.contains(name);
+    }
+
+    public boolean hasConnection(String name) {
+        return connections != null && connections.contains(name);
+    }
+
+    /**
+     * @return {@code true} only when the callback plugins were listed and the callback is not among them
+     */
+    public boolean lacksCallback(String name) {
+        return callbacks != null && !callbacks.contains(name);
+    }
+
+    /**
+     * @return the capabilities of the installation on the node, probed on the first call, or
+     * {@code null} when probing is disabled or failed, a failure being reported once until the node
+     * reconnects or the tools are reconfigured
+     */
+    static AnsibleCapabilities forNode(String installation, Node node, TaskListener listener)
+            throws InterruptedException {
+        AnsibleGlobalConfiguration config = AnsibleGlobalConfiguration.get();
+        if (config == null || !config.isCapabilityProbe() || node == null) {
+            return null;
+        }
+        String key = key(installation, node.getNodeName());
+        AnsibleCapabilities capabilities = CACHE.get(key);
+        if (capabilities == null) {
+            try {
+                capabilities = probe(installation, node, listener);
+            } catch (IOException e) {
+                listener.getLogger()
+                        .println("[WARNING] unable to probe ansible on " + node.getDisplayName() + ": "
+                                + e.getMessage());
+                capabilities = new AnsibleCapabilities(installation, node.getNodeName());
+            }
+            if (capabilities != null) {
+                CACHE.put(key, capabilities);
+            }
+        }
+        return capabilities != null && !capabilities.failed ? capabilities : null;
+    }
+
+    /**
+     * @return the capabilities probed on the node, by installation
+     */
+    static List<AnsibleCapabilities> cached(String nodeName) {
+        List<AnsibleCapabilities> result = new ArrayList<>();
+        for (AnsibleCapabilities capabilities : CACHE.values()) {
+            if (capabilities.getNodeName().equals(nodeName) && !capabilities.failed) {
+                result.add(capabilities);
+            }
+        }
+        result.sort((a, b) -> a.getInstallation().compareTo(b.getInstallation()));
+        return result;
+    }
+
+    static void invalidate(String nodeName) {
+        CACHE.values().removeIf(capabilities -> capabilities.getNodeName().equals(nodeName));
+    }
+
+    static void invalidate() {
+        CACHE.clear();
+    }
+
+    private static String key(String installation, String nodeName) {
+        return StringUtils.defaultString(installation) + '\0' + nodeName;
+    }
+
+    /**
+     * @return the capabilities, or {@code null} when the node is offline and is to be probed again
+     */
+    private static AnsibleCapabilities probe(String installation, Node node, TaskListener listener)
+            throws IOException, InterruptedException {
+        Computer computer = node.toComputer();
+        if (computer == null || computer.getChannel() == null) {
+            return null;
+        }
+        EnvVars env = computer.getEnvironment();
+        env.put("ANSIBLE_NOCOLOR", "1");
+        Launcher launcher = node.createLauncher(listener);
+        String versionOutput = run(launcher, env, installation, AnsibleCommand.ANSIBLE, node, listener, "--version");
+        if (versionOutput == null) {
+            listener.getLogger()
+                    .println("[WARNING] unable to probe ansible on " + node.getDisplayName()
+                            + ": ansible --version failed");
+            return new AnsibleCapabilities(installation, node.getNodeName());
+        }
+        String configOutput =
+                run(launcher, env, installation, AnsibleCommand.ANSIBLE_CONFIG, node, listener, "dump");
+        String callbacks = run(
+                launcher,
+                env,
+                installation,
+                AnsibleCommand.ANSIBLE_DOC,
+                node,
+                listener,
+                "-t",
+                "callback",
+                "-l",
+                "-j");
+        String connections = run(
+                launcher,
+                env,
+                installation,
+                AnsibleCommand.ANSIBLE_DOC,
+                node,
+                listener,
+                "-t",
+                "connection",
+                "-l",
+                "-j");
+        return parse(installation, node.getNodeName(), versionOutput, configOutput, callbacks, connections);
+    }
+
+    /**
+     * @return the standard output of the command, {@code null} if it failed
+     */
+    private static String run(
+            Launcher launcher,
+            EnvVars env,
+            String installation,
+            AnsibleCommand command,
+            Node node,
+            TaskListener listener,
+            String... args)
+            throws IOException, InterruptedException {
+        List<String> cmds = new ArrayList<>();
+        cmds.add(AnsibleInstallation.getExecutable(installation, command, node, listener, env));
+        Collections.addAll(cmds, args);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        Proc proc = launcher.launch()
+                .cmds(cmds)
+                .envs(env)
+                .stdout(out)
+                .stderr(OutputStream.nullOutputStream())
+                .quiet(true)
+                .start();
+        int status = proc.joinWithTimeout(PROBE_TIMEOUT, TimeUnit.SECONDS, listener);
+        return status == 0 ? out.toString(StandardCharsets.UTF_8) : null;
+    }
+
+    static AnsibleCapabilities parse(
+            String installation,
+            String nodeName,
+            String versionOutput,
+            String configOutput,
+            String callbackList,
+            String connectionList) {
+        Matcher matcher = VERSION.matcher(versionOutput);
+        String version = matcher.find() ? matcher.group(1) : null;
+        String pythonVersion = null;
+        String python = null;
+        matcher = PYTHON.matcher(versionOutput);
+        if (matcher.find()) {
+            pythonVersion = matcher.group(1);
+            Matcher interpreter = INTERPRETER.matcher(matcher.group(2));
+            if (interpreter.find() && interpreter.group(1).contains("/")) {
+                python = interpreter.group(1);
+            }
+        }
+        Map<String, String> config = new LinkedHashMap<>();
+        if (configOutput != null) {
+            matcher = CONFIG.matcher(configOutput);
+            while (matcher.find()) {
+                config.put(matcher.group(1), matcher.group(2).trim());
+            }
+        }
+        return new AnsibleCapabilities(
+                StringUtils.defaultString(installation),
+                nodeName,
+                version,
+                pythonVersion,
+                python,
+                config,
+                parsePluginList(callbackList),
+                parsePluginList(connectionList));
+    }
+
+    /**
+     * @return the names of the plugins listed by {@code ansible-doc --list --json}, {@code null} when the
+     * command failed or its output could not be read
+     */
+    static Set<String> parsePluginList(String json) {
+        if (json == null || json.indexOf('{') < 0) {
+            return null;
+        }
+        Set<String> names = new TreeSet<>();
+        BoundedJsonParser parser = new BoundedJsonParser(256, 2, 100000);
+        byte[] bytes = json.substring(json.indexOf('{')).getBytes(StandardCharsets.UTF_8);
+        for (byte b : bytes) {
+            if (!parser.feed(b) || parser.isComplete()) {
+                break;
+            }
+        }
+        parser.end();
+        if (!(parser.getValue() instanceof Map)) {
+            return null;
+        }
+        for (Object name : ((Map<?, ?>) parser.getValue()).keySet()) {
+            names.add(String.valueOf(name));
+        }
+        return names;
+    }
+}
@@ -0,0 +1,81 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jenkinsci.plugins.ansible;
+
+import edu.umd.cs.findbugs.annotations.NonNull;
+import hudson.Extension;
+import hudson.model.Action;
+import hudson.model.Computer;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import jenkins.model.TransientActionFactory;
+
+/**
+ * Node action listing the ansible installations probed and precompiled on the node.
+ */
+public class AnsibleCapabilitiesAction implements Action {
+
+    private final Computer computer;
+
+    AnsibleCapabilitiesAction(Computer computer) {
+        this.computer = computer;
+    }
+
+    public Computer getComputer() {
+        return computer;
+    }
+
+    public List<AnsibleCapabilities> getInstallations() {
+        return AnsibleCapabilities.cached(computer.getName());
+    }
+
+    public List<AnsibleBytecodeWarmup.Result> getWarmups() {
+        return AnsibleBytecodeWarmup.results(computer.getName());
+    }
+
+    @Override
+    public String getIconFileName() {
+        return "gear.png";
+    }
+
+    @Override
+    public String getDisplayName() {
+        return "Ansible";
+    }
+
+    @Override
+    public String getUrlName() {
+        return "ansible";
+    }
+
+    @Extension
+    public static class Factory extends TransientActionFactory<Computer> {
+
+        @Override
+        public Class<Computer> type() {
+            return Computer.class;
+        }
+
+        @NonNull
+        @Override
+        public Collection<? extends Action> createFor(@NonNull Computer target) {
+            if (AnsibleCapabilities.cached(target.getName()).isEmpty()
+                    && AnsibleBytecodeWarmup.results(target.getName()).isEmpty()) {
+                return Collections.emptyList();
+            }
+            return Collections.singletonList(new AnsibleCapabilitiesAction(target));
+        }
+    }
+}
@@ -21,7 +21,10 @@ package org.jenkinsci.plugins.ansible;
 public enum AnsibleCommand {
     ANSIBLE("ansible"),
     ANSIBLE_PLAYBOOK("ansible-playbook"),
-    ANSIBLE_VAULT("ansible-vault");
+    ANSIBLE_INVENTORY("ansible-inventory"),
+    ANSIBLE_VAULT("ansible-vault"),
+    ANSIBLE_CONFIG("ansible-config"),
+    ANSIBLE_DOC("ansible-doc");
 
     private final String name;
 
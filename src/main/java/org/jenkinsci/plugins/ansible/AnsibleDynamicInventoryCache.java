@@ -0,0 +1,108 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jenkinsci.plugins.ansible;
+
+import hudson.Util;
+import hudson.model.TaskListener;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.concurrent.TimeUnit;
+import jenkins.model.Jenkins;
+
+/**
+ * Dynamic inventories resolved once and shared by the builds of a job until they expire.
+ *
+ * <p>The resolved inventories are kept on the controller, so that they are shared by the builds
+ * running on any agent. Concurrent builds missing the same inventory wait for the first one to
+ * resolve it instead of querying the inventory source at the same time. The inventories may hold
+ * secrets: they are only readable by the user running Jenkins.
+ */
+final class AnsibleDynamicInventoryCache {
+
+    static final String DIRECTORY = "ansible-inventory-cache";
+
+    /** Resolved inventories unused for this long are deleted, whatever their TTL. */
+    private static final long MAX_AGE = TimeUnit.DAYS.toMillis(7);
+
+    static final KeyedLocks<String> LOCKS = new KeyedLocks<>();
+
+    interface Export {
+        String run() throws IOException, InterruptedException, AnsibleInvocationException;
+    }
+
+    private AnsibleDynamicInventoryCache() {}
+
+    static String key(String job, String inventory) {
+        return Util.getDigestOf(job + "\n" + inventory);
+    }
+
+    /**
+     * Get the resolved inventory, running the export when it is missing or older than the TTL.
+     */
+    static String get(String key, int ttlSeconds, TaskListener listener, Export export)
+            throws IOException, InterruptedException, AnsibleInvocationException {
+        return get(new File(Jenkins.get().getRootDir(), DIRECTORY), key, ttlSeconds, listener, export);
+    }
+
+    static String get(File dir, String key, int ttlSeconds, TaskListener listener, Export export)
+            throws IOException, InterruptedException, AnsibleInvocationException {
+        try (KeyedLocks.Unlock unlock = LOCKS.lockInterruptibly(
+                key,
+                () -> listener.getLogger().println("Waiting for the dynamic inventory resolved by another build"))) {
+            File file = new File(dir, key + ".yml");
+            long age = System.currentTimeMillis() - file.lastModified();
+            if (file.isFile() && age < TimeUnit.SECONDS.toMillis(ttlSeconds)) {
+                listener.getLogger()
+                        .println("Using the dynamic inventory resolved " + TimeUnit.MILLISECONDS.toSeconds(age)
+                                + " seconds ago");
+                return Files.readString(file.toPath(), StandardCharsets.UTF_8);
+            }
+            listener.getLogger().println("Resolving the dynamic inventory");
+            String inventory = export.run();
+            store(dir, file, inventory);
+            return inventory;
+        }
+    }
+
+    private static void store(File dir, File file, String inventory) throws IOException {
+        Files.createDirectories(dir.toPath());
+        Path tmp = Files.createTempFile(dir.toPath(), file.getName(), ".tmp");
+        try {
+            try {
+                Files.setPosixFilePermissions(dir.toPath(), PosixFilePermissions.fromString("rwx------"));
+                Files.setPosixFilePermissions(tmp, PosixFilePermissions.fromString("rw-------"));
+            } catch (UnsupportedOperationException e) {
+                // not a POSIX file system, the files keep the permissions of the directory
+            }
+            Files.writeString(tmp, inventory, StandardCharsets.UTF_8);
+            Files.move(tmp, file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(tmp);
+        }
+        File[] files = dir.listFiles();
+        if (files != null) {
+            long now = System.currentTimeMillis();
+            for (File f : files) {
+                if (now - f.lastModified() > MAX_AGE) {
+                    Files.deleteIfExists(f.toPath());
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,115 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jenkinsci.plugins.ansible;
+
+import java.util.Collections;
+import java.util.Map;
+
+/**
+ * An event emitted by the ansible JSON lines stdout callback, reduced to the fields the plugin
+ * uses.
+ */
+public final class AnsibleEvent {
+
+    public enum Type {
+        PLAY_START,
+        TASK_START,
+        HOST_START,
+        HOST_RESULT,
+        STATS
+    }
+
+    public enum Status {
+        OK,
+        CHANGED,
+        FAILED,
+        UNREACHABLE,
+        SKIPPED
+    }
+
+    private final Type type;
+    private final long timestamp;
+    private final String play;
+    private final String task;
+    private final String host;
+    private final Status status;
+    private final String message;
+    private final Map<String, Integer> counters;
+
+    AnsibleEvent(
+            Type type,
+            long timestamp,
+            String play,
+            String task,
+            String host,
+            Status status,
+            String message,
+            Map<String, Integer> counters) {
+        this.type = type;
+        this.timestamp = timestamp;
+        this.play = play;
+        this.task = task;
+        this.host = host;
+        this.status = status;
+        this.message = message;
+        this.counters = counters != null ? Collections.unmodifiableMap(counters) : Collections.emptyMap();
+    }
+
+    public Type getType() {
+        return type;
+    }
+
+    /**
+     * @return the event time in milliseconds since the epoch
+     */
+    public long getTimestamp() {
+        return timestamp;
+    }
+
+    public String getPlay() {
+        return play;
+    }
+
+    public String getTask() {
+        return task;
+    }
+
+    /**
+     * @return the host for {@code HOST_*} and {@code STATS} events, {@code null} otherwise
+     */
+    public String getHost() {
+        return host;
+    }
+
+    /**
+     * @return the host status for {@code HOST_RESULT} events, {@code null} otherwise
+     */
+    public Status getStatus() {
+        return status;
+    }
+
+    /**
+     * @return the (possibly truncated) result message of a failed or unreachable host
+     */
+    public String getMessage() {
+        return message;
+    }
+
+    /**
+     * @return the recap counters of a {@code STATS} event, such as {@code ok} or {@code failures}
+     */
+    public Map<String, Integer> getCounters() {
+        return counters;
+    }
+}
@@ -0,0 +1,104 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jenkinsci.plugins.ansible;
+
+import java.io.PrintStream;
+import java.util.Map;
+
+/**
+ * Renders the structured ansible events in the console, close to the default stdout callback.
+ */
+class AnsibleEventConsoleRenderer implements AnsibleEventHandler {
+
+    private static final String[] RECAP_COUNTERS = {
+        "ok", "changed", "unreachable", "failures", "skipped", "rescued", "ignored"
+    };
+
+    private final PrintStream logger;
+    private boolean recapStarted;
+
+    AnsibleEventConsoleRenderer(PrintStream logger) {
+        this.logger = logger;
+    }
+
+    @Override
+    public void onEvent(AnsibleEvent event) {
+        switch (event.getType()) {
+            case PLAY_START:
+                banner("PLAY [" + nullToEmpty(event.getPlay()) + "]");
+                break;
+            case TASK_START:
+                banner("TASK [" + nullToEmpty(event.getTask()) + "]");
+                break;
+            case HOST_RESULT:
+                printResult(event);
+                break;
+            case STATS:
+                if (!recapStarted) {
+                    recapStarted = true;
+                    banner("PLAY RECAP");
+                }
+                printRecap(event);
+                break;
+            default:
+                break;
+        }
+    }
+
+    private void printResult(AnsibleEvent event) {
+        switch (event.getStatus()) {
+            case OK:
+                logger.println("ok: [" + event.getHost() + "]");
+                break;
+            case CHANGED:
+                logger.println("changed: [" + event.getHost() + "]");
+                break;
+            case SKIPPED:
+                logger.println("skipping: [" + event.getHost() + "]");
+                break;
+            case FAILED:
+                logger.println("fatal: [" + event.getHost() + "]: FAILED! => " + nullToEmpty(event.getMessage()));
+                break;
+            case UNREACHABLE:
+                logger.println(
+                        "fatal: [" + event.getHost() + "]: UNREACHABLE! => " + nullToEmpty(event.getMessage()));
+                break;
+            default:
+                break;
+        }
+    }
+
+    private void printRecap(AnsibleEvent event) {
+        Map<String, Integer> counters = event.getCounters();
+        StringBuilder sb = new StringBuilder(String.format("%-26s :", event.getHost()));
+        for (String counter : RECAP_COUNTERS) {
+            Integer value = counters.get(counter);
+            String label = "failures".equals(counter) ? "failed" : counter;
+            sb.append(' ').append(label).append('=').append(String.format("%-4s", value != null ? value : 0));
+        }
+        logger.println(sb.toString().trim());
+    }
+
+    private void banner(String title) {
+        StringBuilder sb = new StringBuilder("\n").append(title).append(' ');
+        while (sb.length() < 80) {
+            sb.append('*');
+        }
+        logger.println(sb);
+    }
+
+    private static String nullToEmpty(String s) {
+        return s != null ? s : "";
+    }
+}
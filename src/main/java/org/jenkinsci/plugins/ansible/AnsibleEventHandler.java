@@ -0,0 +1,32 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jenkinsci.plugins.ansible;
+
+import java.io.IOException;
+
+/**
+ * Receives the events parsed from the ansible structured output.
+ *
+ * <p>Handlers are called from the thread copying the process output, in the order the events are
+ * emitted. They must not keep every event in memory.
+ */
+public interface AnsibleEventHandler {
+
+    void onEvent(AnsibleEvent event) throws IOException;
+
+    /**
+     * Called once the process output has been fully consumed.
+     */
+    default void onClose() throws IOException {}
+}
@@ -0,0 +1,281 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jenkinsci.plugins.ansible;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Output stream parsing the JSON lines written by the ansible structured stdout callback.
+ *
+ * <p>Every line starting with <code>{</code> is parsed on the fly by a {@link BoundedJsonParser} and
+ * turned into {@link AnsibleEvent}s for the registered handlers. Any other line (warnings, plain
+ * callback output) is copied as is to the console.
+ */
+class AnsibleEventOutputStream extends OutputStream {
+
+    static final int MAX_STRING_LENGTH = 1024;
+    static final int MAX_DEPTH = 8;
+    static final int MAX_VALUES = 16384;
+    /** Budget of the recap of {@code v2_playbook_on_stats}, about 8 values per host. */
+    static final int MAX_STATS_VALUES = 131072;
+    private static final int PREVIEW_LENGTH = 1024;
+
+    private final OutputStream console;
+    private final List<AnsibleEventHandler> handlers;
+    private final BoundedJsonParser parser =
+            new BoundedJsonParser(MAX_STRING_LENGTH, MAX_DEPTH, MAX_VALUES, Map.of("stats", MAX_STATS_VALUES));
+    private final byte[] preview = new byte[PREVIEW_LENGTH];
+    private int previewLength;
+    private boolean truncated;
+    private boolean lineStart = true;
+    private boolean jsonLine;
+    private boolean closed;
+
+    private String play;
+    private String task;
+
+    AnsibleEventOutputStream(OutputStream console, List<AnsibleEventHandler> handlers) {
+        this.console = console;
+        this.handlers = new ArrayList<>(handlers);
+    }
+
+    @Override
+    public synchronized void write(int b) throws IOException {
+        if (lineStart) {
+            lineStart = false;
+            jsonLine = b == '{';
+            if (jsonLine) {
+                parser.reset();
+                previewLength = 0;
+                truncated = false;
+            }
+        }
+        if (!jsonLine) {
+            console.write(b);
+            lineStart = b == '\n';
+            return;
+        }
+        if (b == '\n') {
+            endLine();
+            return;
+        }
+        parser.feed(b);
+        if (previewLength < PREVIEW_LENGTH) {
+            preview[previewLength++] = (byte) b;
+        } else {
+            truncated = true;
+        }
+    }
+
+    @Override
+    public synchronized void write(byte[] b, int off, int len) throws IOException {
+        for (int i = off; i < off + len; i++) {
+            write(b[i]);
+        }
+    }
+
+    @Override
+    public synchronized void flush() throws IOException {
+        console.flush();
+    }
+
+    /**
+     * Flushes a pending line and notifies the handlers. The console stream is not closed.
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        if (jsonLine && !lineStart) {
+            endLine();
+        }
+        for (AnsibleEventHandler handler : handlers) {
+            handler.onClose();
+        }
+        console.flush();
+    }
+
+    private void endLine() throws IOException {
+        lineStart = true;
+        jsonLine = false;
+        parser.end();
+        Object value = parser.getValue();
+        if (parser.isComplete() && value instanceof Map && ((Map<?, ?>) value).get("_event") instanceof String) {
+            dispatch((Map<?, ?>) value);
+        } else {
+            // not an event: show what we have kept of the line
+            console.write(preview, 0, previewLength);
+            if (truncated) {
+                console.write(" [truncated]".getBytes(StandardCharsets.UTF_8));
+            }
+            console.write('\n');
+        }
+    }
+
+    private void dispatch(Map<?, ?> json) throws IOException {
+        String name = (String) json.get("_event");
+        long timestamp = parseTimestamp(json.get("_timestamp"));
+        switch (name) {
+            case "v2_playbook_on_play_start":
+                play = getName(json.get("play"));
+                task = null;
+                fire(new AnsibleEvent(AnsibleEvent.Type.PLAY_START, timestamp, play, null, null, null, null, null));
+                break;
+            case "v2_playbook_on_task_start":
+            case "v2_playbook_on_handler_task_start":
+                task = getTaskName(json);
+                fire(new AnsibleEvent(AnsibleEvent.Type.TASK_START, timestamp, play, task, null, null, null, null));
+                break;
+            case "v2_runner_on_start":
+                for (Map.Entry<String, Map<?, ?>> host : getHosts(json).entrySet()) {
+                    fire(new AnsibleEvent(
+                            AnsibleEvent.Type.HOST_START, timestamp, play, task, host.getKey(), null, null, null));
+                }
+                break;
+            case "v2_runner_on_ok":
+            case "v2_runner_on_failed":
+            case "v2_runner_on_skipped":
+            case "v2_runner_on_unreachable":
+                String resultTask = json.get("task") instanceof Map ? getTaskName(json) : task;
+                for (Map.Entry<String, Map<?, ?>> host : getHosts(json).entrySet()) {
+                    Map<?, ?> result = host.getValue();
+                    AnsibleEvent.Status status = getStatus(name, result);
+                    String message = status == AnsibleEvent.Status.FAILED || status == AnsibleEvent.Status.UNREACHABLE
+                            ? toString(result.get("msg"))
+                            : null;
+                    fire(new AnsibleEvent(
+                            AnsibleEvent.Type.HOST_RESULT,
+                            timestamp,
+                            play,
+                            resultTask,
+                            host.getKey(),
+                            status,
+                            message,
+                            null));
+                }
+                break;
+            case "v2_playbook_on_stats":
+                if (json.get("stats") instanceof Map) {
+                    for (Map.Entry<?, ?> host : ((Map<?, ?>) json.get("stats")).entrySet()) {
+                        if (host.getValue() instanceof Map) {
+                            fire(new AnsibleEvent(
+                                    AnsibleEvent.Type.STATS,
+                                    timestamp,
+                                    play,
+                                    null,
+                                    String.valueOf(host.getKey()),
+                                    null,
+                                    null,
+                                    getCounters((Map<?, ?>) host.getValue())));
+                        }
+                    }
+                }
+                break;
+            default:
+                // other callback events are of no interest
+        }
+    }
+
+    private void fire(AnsibleEvent event) throws IOException {
+        for (AnsibleEventHandler handler : handlers) {
+            handler.onEvent(event);
+        }
+    }
+
+    private static AnsibleEvent.Status getStatus(String name, Map<?, ?> result) {
+        switch (name) {
+            case "v2_runner_on_failed":
+                return AnsibleEvent.Status.FAILED;
+            case "v2_runner_on_skipped":
+                return AnsibleEvent.Status.SKIPPED;
+            case "v2_runner_on_unreachable":
+                return AnsibleEvent.Status.UNREACHABLE;
+            default:
+                return Boolean.TRUE.equals(result.get("changed"))
+                        ? AnsibleEvent.Status.CHANGED
+                        : AnsibleEvent.Status.OK;
+        }
+    }
+
+    /**
+     * Task events carry the task either directly or as the last task of the current play.
+     */
+    private static String getTaskName(Map<?, ?> json) {
+        if (json.get("task") instanceof Map) {
+            return getName(json.get("task"));
+        }
+        Object tasks = json.get("tasks");
+        if (tasks instanceof List && !((List<?>) tasks).isEmpty()) {
+            Object last = ((List<?>) tasks).get(((List<?>) tasks).size() - 1);
+            if (last instanceof Map) {
+                return getName(((Map<?, ?>) last).get("task"));
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Runner events carry the host results in a {@code hosts} object or at the top level.
+     */
+    private static Map<String, Map<?, ?>> getHosts(Map<?, ?> json) {
+        Map<String, Map<?, ?>> hosts = new LinkedHashMap<>();
+        Map<?, ?> source = json.get("hosts") instanceof Map ? (Map<?, ?>) json.get("hosts") : json;
+        for (Map.Entry<?, ?> entry : source.entrySet()) {
+            String key = String.valueOf(entry.getKey());
+            if (entry.getValue() instanceof Map && !key.startsWith("_") && !"task".equals(key) && !"play".equals(key)) {
+                hosts.put(key, (Map<?, ?>) entry.getValue());
+            }
+        }
+        return hosts;
+    }
+
+    private static Map<String, Integer> getCounters(Map<?, ?> stats) {
+        Map<String, Integer> counters = new LinkedHashMap<>();
+        for (Map.Entry<?, ?> entry : stats.entrySet()) {
+            if (entry.getValue() instanceof Number) {
+                counters.put(String.valueOf(entry.getKey()), ((Number) entry.getValue()).intValue());
+            }
+        }
+        return counters;
+    }
+
+    private static String getName(Object o) {
+        return o instanceof Map ? toString(((Map<?, ?>) o).get("name")) : null;
+    }
+
+    private static String toString(Object o) {
+        return o != null ? o.toString() : null;
+    }
+
+    private static long parseTimestamp(Object timestamp) {
+        if (timestamp instanceof String) {
+            try {
+                return Instant.parse((String) timestamp).toEpochMilli();
+            } catch (DateTimeParseException e) {
+                // fall back to the reception time
+            }
+        }
+        return System.currentTimeMillis();
+    }
+}
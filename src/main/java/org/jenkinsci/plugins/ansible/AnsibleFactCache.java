@@ -0,0 +1,167 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jenkinsci.plugins.ansible;
+
+import hudson.EnvVars;
+import hudson.FilePath;
+import hudson.Util;
+import hudson.model.Node;
+import hudson.remoting.VirtualChannel;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import jenkins.MasterToSlaveFileCallable;
+
+/**
+ * Fact cache of an agent, shared by the builds running playbooks against the same inventory.
+ *
+ * <p>Ansible stores the facts of each host in a JSON file of the directory of the inventory, and
+ * gathers them again only when they are missing or older than the TTL. Before each run, the files
+ * older than the TTL are deleted and the least recently used ones are evicted until the cache of
+ * the agent fits in its maximum size.
+ */
+final class AnsibleFactCache {
+
+    static final String DIRECTORY = "ansible-facts";
+
+    private final FilePath dir;
+    private final int ttlSeconds;
+    private final long maxBytes;
+
+    AnsibleFactCache(FilePath dir, int ttlSeconds, long maxBytes) {
+        this.dir = dir;
+        this.ttlSeconds = ttlSeconds;
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * @return the fact cache of the inventory on the node, or {@code null} when the node is offline
+     */
+    static AnsibleFactCache forInventory(Node node, Inventory inventory, FilePath ws, EnvVars envVars) {
+        FilePath rootPath = node.getRootPath();
+        if (rootPath == null) {
+            return null;
+        }
+        String identity = inventory != null ? inventory.getIdentity(ws, envVars) : "default";
+        AnsibleGlobalConfiguration config = AnsibleGlobalConfiguration.get();
+        return new AnsibleFactCache(
+                rootPath.child(DIRECTORY).child(Util.getDigestOf(identity).substring(0, 16)),
+                config.getFactCacheTtl(),
+                config.getFactCacheMaxSize() * 1024L * 1024L);
+    }
+
+    FilePath getDirectory() {
+        return dir;
+    }
+
+    /**
+     * Delete the stale entries of the cache of the agent and evict the least recently used ones
+     * above the maximum size, then create the directory of the inventory.
+     */
+    void prepare() throws IOException, InterruptedException {
+        FilePath root = dir.getParent();
+        root.act(new Eviction(ttlSeconds * 1000L, maxBytes));
+        dir.mkdirs();
+        dir.chmod(0700);
+    }
+
+    void apply(Map<String, String> environment) {
+        environment.put("ANSIBLE_CACHE_PLUGIN", "jsonfile");
+        environment.put("ANSIBLE_CACHE_PLUGIN_CONNECTION", dir.getRemote());
+        environment.put("ANSIBLE_CACHE_PLUGIN_TIMEOUT", String.valueOf(ttlSeconds));
+        environment.putIfAbsent("ANSIBLE_GATHERING", "smart");
+    }
+
+    static final class Eviction extends MasterToSlaveFileCallable<Void> {
+
+        private static final long serialVersionUID = 1;
+
+        private final long ttl;
+        private final long maxBytes;
+
+        Eviction(long ttl, long maxBytes) {
+            this.ttl = ttl;
+            this.maxBytes = maxBytes;
+        }
+
+        @Override
+        public Void invoke(File root, VirtualChannel channel) {
+            File[] dirs = root.listFiles(File::isDirectory);
+            if (dirs == null) {
+                return null;
+            }
+            long now = System.currentTimeMillis();
+            List<File> kept = new ArrayList<>();
+            long total = 0;
+            for (File d : dirs) {
+                File[] files = d.listFiles(File::isFile);
+                if (files == null) {
+                    continue;
+                }
+                for (File f : files) {
+                    if (now - f.lastModified() > ttl) {
+                        delete(f);
+                    } else {
+                        kept.add(f);
+                        total += f.length();
+                    }
+                }
+            }
+            if (total > maxBytes) {
+                kept.sort(Comparator.comparingLong(Eviction::lastUsed));
+                for (File f : kept) {
+                    if (total <= maxBytes) {
+                        break;
+                    }
+                    long length = f.length();
+                    if (delete(f)) {
+                        total -= length;
+                    }
+                }
+            }
+            for (File d : dirs) {
+                String[] names = d.list();
+                if (names != null && names.length == 0) {
+                    // fails harmlessly when a build just populated it
+                    delete(d);
+                }
+            }
+            return null;
+        }
+
+        /**
+         * The facts are only written when gathered, the access time, when maintained by the file
+         * system, tells when they were last read by a run.
+         */
+        private static long lastUsed(File f) {
+            try {
+                BasicFileAttributes attributes = Files.readAttributes(f.toPath(), BasicFileAttributes.class);
+                return Math.max(
+                        attributes.lastAccessTime().toMillis(),
+                        attributes.lastModifiedTime().toMillis());
+            } catch (IOException e) {
+                return f.lastModified();
+            }
+        }
+
+        private static boolean delete(File f) {
+            return f.delete() || !f.exists();
+        }
+    }
+}
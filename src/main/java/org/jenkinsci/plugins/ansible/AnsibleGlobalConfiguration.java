@@ -0,0 +1,166 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jenkinsci.plugins.ansible;
+
+import hudson.Extension;
+import hudson.util.FormValidation;
+import jenkins.model.GlobalConfiguration;
+import org.jenkinsci.Symbol;
+import org.kohsuke.stapler.DataBoundSetter;
+import org.kohsuke.stapler.QueryParameter;
+
+/**
+ * Global settings of the Ansible plugin.
+ */
+@Extension
+@Symbol("ansiblePlugin")
+public class AnsibleGlobalConfiguration extends GlobalConfiguration {
+
+    static final int DEFAULT_TREND_BUILDS = 20;
+    static final int DEFAULT_REGRESSION_THRESHOLD = 25;
+    static final int DEFAULT_SSH_CONTROL_PERSIST = 60;
+    static final int DEFAULT_FACT_CACHE_TTL = 86400;
+    static final int DEFAULT_FACT_CACHE_MAX_SIZE = 512;
+    static final int DEFAULT_INVENTORY_CACHE_MAX_SIZE = 256;
+
+    private int trendBuilds = DEFAULT_TREND_BUILDS;
+    private int regressionThreshold = DEFAULT_REGRESSION_THRESHOLD;
+    private boolean sshConnectionReuse = false;
+    private int sshControlPersist = DEFAULT_SSH_CONTROL_PERSIST;
+    private int factCacheTtl = DEFAULT_FACT_CACHE_TTL;
+    private int factCacheMaxSize = DEFAULT_FACT_CACHE_MAX_SIZE;
+    private int inventoryCacheMaxSize = DEFAULT_INVENTORY_CACHE_MAX_SIZE;
+    private boolean capabilityProbe = false;
+
+    public AnsibleGlobalConfiguration() {
+        load();
+    }
+
+    public static AnsibleGlobalConfiguration get() {
+        return GlobalConfiguration.all().getInstance(AnsibleGlobalConfiguration.class);
+    }
+
+    /**
+     * @return the number of builds kept in the task duration trend of a job
+     */
+    public int getTrendBuilds() {
+        return trendBuilds;
+    }
+
+    @DataBoundSetter
+    public void setTrendBuilds(int trendBuilds) {
+        this.trendBuilds = Math.max(2, trendBuilds);
+        save();
+    }
+
+    /**
+     * @return the increase, in percent of the previous builds median, above which a task duration
+     * is reported as a regression
+     */
+    public int getRegressionThreshold() {
+        return regressionThreshold;
+    }
+
+    @DataBoundSetter
+    public void setRegressionThreshold(int regressionThreshold) {
+        this.regressionThreshold = Math.max(0, regressionThreshold);
+        save();
+    }
+
+    /**
+     * @return whether the SSH master connections are shared between the builds of an agent
+     */
+    public boolean isSshConnectionReuse() {
+        return sshConnectionReuse;
+    }
+
+    @DataBoundSetter
+    public void setSshConnectionReuse(boolean sshConnectionReuse) {
+        this.sshConnectionReuse = sshConnectionReuse;
+        save();
+    }
+
+    /**
+     * @return the delay in seconds after which an idle SSH master connection exits
+     */
+    public int getSshControlPersist() {
+        return sshControlPersist;
+    }
+
+    @DataBoundSetter
+    public void setSshControlPersist(int sshControlPersist) {
+        this.sshControlPersist = Math.max(1, sshControlPersist);
+        save();
+    }
+
+    /**
+     * @return the delay in seconds after which the cached facts of a host are gathered again
+     */
+    public int getFactCacheTtl() {
+        return factCacheTtl;
+    }
+
+    @DataBoundSetter
+    public void setFactCacheTtl(int factCacheTtl) {
+        this.factCacheTtl = Math.max(1, factCacheTtl);
+        save();
+    }
+
+    /**
+     * @return the maximum size in MiB of the fact cache of an agent
+     */
+    public int getFactCacheMaxSize() {
+        return factCacheMaxSize;
+    }
+
+    @DataBoundSetter
+    public void setFactCacheMaxSize(int factCacheMaxSize) {
+        this.factCacheMaxSize = Math.max(1, factCacheMaxSize);
+        save();
+    }
+
+    /**
+     * @return the maximum size in MiB of the inline inventories cached on an agent, 0 to write
+     * them to a temporary file of the workspace for every build
+     */
+    public int getInventoryCacheMaxSize() {
+        return inventoryCacheMaxSize;
+    }
+
+    @DataBoundSetter
+    public void setInventoryCacheMaxSize(int inventoryCacheMaxSize) {
+        this.inventoryCacheMaxSize = Math.max(0, inventoryCacheMaxSize);
+        save();
+    }
+
+    public FormValidation doCheckTrendBuilds(@QueryParameter int value) {
+        if (value < 2) {
+            return FormValidation.error("At least 2 builds are needed to detect a regression");
+        }
+        return FormValidation.ok();
+    }
+
+    /**
+     * @return whether the version and plugins of the installations are probed on the nodes
+     */
+    public boolean isCapabilityProbe() {
+        return capabilityProbe;
+    }
+
+    @DataBoundSetter
+    public void setCapabilityProbe(boolean capabilityProbe) {
+        this.capabilityProbe = capabilityProbe;
+        save();
+    }
+}
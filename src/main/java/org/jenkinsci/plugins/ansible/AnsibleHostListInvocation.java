@@ -0,0 +1,81 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jenkinsci.plugins.ansible;
+
+import hudson.AbortException;
+import hudson.EnvVars;
+import hudson.FilePath;
+import hudson.model.Run;
+import hudson.model.TaskListener;
+import hudson.util.ArgumentListBuilder;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Pattern;
+
+/**
+ * Resolve the hosts of an inventory matching a pattern with {@code ansible <pattern> --list-hosts}.
+ */
+class AnsibleHostListInvocation extends AbstractAnsibleInvocation<AnsibleHostListInvocation> {
+
+    private static final Pattern HEADER = Pattern.compile("^\\s*hosts \\(\\d+\\):\\s*$");
+
+    private String hostPattern;
+
+    AnsibleHostListInvocation(String exe, Run<?, ?> build, FilePath ws, TaskListener listener, EnvVars envVars)
+            throws IOException, InterruptedException, AnsibleInvocationException {
+        super(exe, build, ws, listener, envVars);
+    }
+
+    AnsibleHostListInvocation setHostPattern(String hostPattern) {
+        this.hostPattern = hostPattern;
+        return this;
+    }
+
+    @Override
+    protected ArgumentListBuilder buildCommandLine()
+            throws InterruptedException, AnsibleInvocationException, IOException {
+        ArgumentListBuilder args = new ArgumentListBuilder();
+        appendExecutable(args);
+        args.add(envVars.expand(hostPattern));
+        appendInventory(args);
+        appendVaultPasswordFile(args);
+        args.add("--list-hosts");
+        return args;
+    }
+
+    List<String> listHosts(CLIRunner runner) throws IOException, InterruptedException, AnsibleInvocationException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try {
+            if (!runner.execute(prepareCommandLine(runner), environment, out)) {
+                throw new AbortException("Unable to list the hosts of the inventory");
+            }
+        } finally {
+            tearDown();
+        }
+        return parse(out.toString(StandardCharsets.UTF_8));
+    }
+
+    static List<String> parse(String output) {
+        List<String> hosts = new ArrayList<>();
+        for (String line : output.split("\\r?\\n")) {
+            if (!line.isBlank() && !HEADER.matcher(line).matches()) {
+                hosts.add(line.trim());
+            }
+        }
+        return hosts;
+    }
+}
@@ -19,9 +19,11 @@ import hudson.EnvVars;
 import hudson.Extension;
 import hudson.FilePath;
 import hudson.Util;
+import hudson.model.Computer;
 import hudson.model.EnvironmentSpecific;
 import hudson.model.Node;
 import hudson.model.TaskListener;
+import hudson.slaves.ComputerListener;
 import hudson.slaves.NodeSpecific;
 import hudson.tools.ToolDescriptor;
 import hudson.tools.ToolInstallation;
@@ -29,7 +31,10 @@ import hudson.tools.ToolProperty;
 import java.io.IOException;
 import java.io.Serializable;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 import jenkins.model.Jenkins;
+import jenkins.model.NodeListener;
 import net.sf.json.JSONObject;
 import org.jenkinsci.Symbol;
 import org.kohsuke.stapler.DataBoundConstructor;
@@ -41,6 +46,13 @@ import org.kohsuke.stapler.StaplerRequest2;
 public class AnsibleInstallation extends ToolInstallation
         implements EnvironmentSpecific<AnsibleInstallation>, NodeSpecific<AnsibleInstallation>, Serializable {
 
+    /**
+     * Homes of the installations translated for the nodes, by installation and node name. The
+     * translation may install the tool or call the agent, so it is only done again once the tools
+     * are reconfigured or the node reconnects or is reconfigured.
+     */
+    private static final Map<String, String> NODE_HOMES = new ConcurrentHashMap<>();
+
     @DataBoundConstructor
     public AnsibleInstallation(String name, String home, List<? extends ToolProperty<?>> properties) {
         super(name, home, properties);
@@ -56,6 +68,14 @@ public class AnsibleInstallation extends ToolInstallation
                 getName(), translateFor(node, log), getProperties().toList());
     }
 
+    /**
+     * Same as {@link #forNode(Node, TaskListener)}, reusing the home translated by a previous call.
+     */
+    private AnsibleInstallation forCachedNode(Node node, TaskListener log) throws IOException, InterruptedException {
+        String home = nodeHome(getName(), node.getNodeName(), () -> translateFor(node, log));
+        return new AnsibleInstallation(getName(), home, getProperties().toList());
+    }
+
     public static String getExecutable(
             String name, AnsibleCommand command, Node node, TaskListener listener, EnvVars env)
             throws IOException, InterruptedException {
@@ -66,7 +86,7 @@ public class AnsibleInstallation extends ToolInstallation
                         j.getDescriptorByType(DescriptorImpl.class).getInstallations()) {
                     if (tool.getName().equals(name)) {
                         if (node != null) {
-                            tool = tool.forNode(node, listener);
+                            tool = tool.forCachedNode(node, listener);
                         }
                         if (env != null) {
                             tool = tool.forEnvironment(env);
@@ -88,6 +108,52 @@ public class AnsibleInstallation extends ToolInstallation
         return command.getName();
     }
 
+    interface HomeResolver {
+        String resolve() throws IOException, InterruptedException;
+    }
+
+    /**
+     * @return the home of the installation translated for the node, resolved on the first call only
+     */
+    static String nodeHome(String name, String nodeName, HomeResolver resolver)
+            throws IOException, InterruptedException {
+        String key = name + '\0' + nodeName;
+        String home = NODE_HOMES.get(key);
+        if (home == null) {
+            home = resolver.resolve();
+            if (home != null) {
+                NODE_HOMES.put(key, home);
+            }
+        }
+        return home;
+    }
+
+    static void invalidateNodeHomes(String nodeName) {
+        NODE_HOMES.keySet().removeIf(key -> key.endsWith('\0' + nodeName));
+    }
+
+    static void invalidateNodeHomes() {
+        NODE_HOMES.clear();
+    }
+
+    /**
+     * @return the performance profile of the named installation, or {@code null} if it has none
+     */
+    public static AnsiblePerformanceProfile getPerformanceProfile(String name) {
+        if (name != null) {
+            Jenkins j = Jenkins.getInstanceOrNull();
+            if (j != null) {
+                for (AnsibleInstallation tool :
+                        j.getDescriptorByType(DescriptorImpl.class).getInstallations()) {
+                    if (tool.getName().equals(name)) {
+                        return tool.getProperties().get(AnsiblePerformanceProfile.class);
+                    }
+                }
+            }
+        }
+        return null;
+    }
+
     public static AnsibleInstallation[] allInstallations() {
         AnsibleInstallation.DescriptorImpl ansibleDescriptor =
                 Jenkins.getActiveInstance().getDescriptorByType(AnsibleInstallation.DescriptorImpl.class);
@@ -131,12 +197,61 @@ public class AnsibleInstallation extends ToolInstallation
         public boolean configure(StaplerRequest2 req, JSONObject json) throws FormException {
             super.configure(req, json);
             save();
+            invalidateNodeHomes();
+            AnsibleCapabilities.invalidate();
+            AnsibleBytecodeWarmup.invalidate();
             return true;
         }
 
+        @Override
+        public void setInstallations(AnsibleInstallation... installations) {
+            super.setInstallations(installations);
+            invalidateNodeHomes();
+            AnsibleCapabilities.invalidate();
+            AnsibleBytecodeWarmup.invalidate();
+        }
+
         @Override
         public String getDisplayName() {
             return "Ansible";
         }
     }
+
+    /**
+     * Forget the homes translated, the capabilities probed and the bytecode warmups for a node when
+     * it reconnects.
+     */
+    @Extension
+    public static class NodeCacheInvalidator extends ComputerListener {
+
+        @Override
+        public void onOnline(Computer c, TaskListener listener) {
+            invalidateNode(c.getName());
+        }
+    }
+
+    /**
+     * Forget the same for a node when its configuration, which holds the tool locations, changes or
+     * when it is removed, leaving the other nodes alone.
+     */
+    @Extension
+    public static class NodeConfigurationInvalidator extends NodeListener {
+
+        @Override
+        protected void onUpdated(Node oldOne, Node newOne) {
+            invalidateNode(oldOne.getNodeName());
+            invalidateNode(newOne.getNodeName());
+        }
+
+        @Override
+        protected void onDeleted(Node node) {
+            invalidateNode(node.getNodeName());
+        }
+    }
+
+    private static void invalidateNode(String nodeName) {
+        invalidateNodeHomes(nodeName);
+        AnsibleCapabilities.invalidate(nodeName);
+        AnsibleBytecodeWarmup.invalidate(nodeName);
+    }
 }
@@ -0,0 +1,194 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jenkinsci.plugins.ansible;
+
+import hudson.FilePath;
+import hudson.Util;
+import hudson.model.Computer;
+import hudson.model.Node;
+import hudson.remoting.VirtualChannel;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.concurrent.TimeUnit;
+import jenkins.MasterToSlaveFileCallable;
+
+/**
+ * Inline inventories stored on the agents under the digest of their content.
+ *
+ * <p>The digest is computed on the controller and only the digest is sent to the agent when the
+ * inventory is already there, so that a large inventory is transferred once per agent instead of
+ * once per build. Above the maximum size of the cache, the least recently used inventories are
+ * evicted.
+ */
+final class AnsibleInventoryCache {
+
+    static final String DIRECTORY = "ansible-inventories";
+
+    /**
+     * Inventories used within this delay are never evicted, as a build may be about to read them.
+     */
+    static final long GRACE_PERIOD = TimeUnit.MINUTES.toMillis(10);
+
+    private AnsibleInventoryCache() {}
+
+    /**
+     * Get the cached inventory file with the given content, storing it if missing.
+     *
+     * @return the inventory file, or {@code null} when the cache is disabled or unavailable on the
+     * agent of the workspace
+     */
+    static FilePath materialize(FilePath workspace, String content, boolean dynamic, String suffix)
+            throws IOException, InterruptedException {
+        FilePath root = getDirectory(workspace);
+        if (root == null) {
+            return null;
+        }
+        long maxBytes = AnsibleGlobalConfiguration.get().getInventoryCacheMaxSize() * 1024L * 1024L;
+        byte[] bytes = content.getBytes(StandardCharsets.UTF_8);
+        if (bytes.length > maxBytes) {
+            return null;
+        }
+        String name = digest(bytes, dynamic) + suffix;
+        if (!root.act(new Lookup(name))) {
+            root.act(new Store(name, bytes, dynamic, maxBytes));
+        }
+        return root.child(name);
+    }
+
+    private static FilePath getDirectory(FilePath workspace) {
+        Computer computer = workspace.toComputer();
+        Node node = computer != null ? computer.getNode() : null;
+        FilePath rootPath = node != null ? node.getRootPath() : null;
+        if (rootPath == null || AnsibleGlobalConfiguration.get().getInventoryCacheMaxSize() <= 0) {
+            return null;
+        }
+        return rootPath.child(DIRECTORY);
+    }
+
+    static String digest(byte[] content, boolean dynamic) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            // the file mode depends on the kind of inventory
+            digest.update((byte) (dynamic ? 1 : 0));
+            return Util.toHexString(digest.digest(content));
+        } catch (NoSuchAlgorithmException e) {
+            throw new AssertionError(e);
+        }
+    }
+
+    /**
+     * Check whether an inventory is cached, marking it as used.
+     */
+    static final class Lookup extends MasterToSlaveFileCallable<Boolean> {
+
+        private static final long serialVersionUID = 1;
+
+        private final String name;
+
+        Lookup(String name) {
+            this.name = name;
+        }
+
+        @Override
+        public Boolean invoke(File root, VirtualChannel channel) {
+            File file = new File(root, name);
+            return file.isFile() && file.setLastModified(System.currentTimeMillis());
+        }
+    }
+
+    /**
+     * Write an inventory atomically, then evict the least recently used ones above the maximum
+     * size of the cache.
+     */
+    static final class Store extends MasterToSlaveFileCallable<Void> {
+
+        private static final long serialVersionUID = 1;
+
+        private final String name;
+        private final byte[] content;
+        private final boolean dynamic;
+        private final long maxBytes;
+
+        Store(String name, byte[] content, boolean dynamic, long maxBytes) {
+            this.name = name;
+            this.content = content;
+            this.dynamic = dynamic;
+            this.maxBytes = maxBytes;
+        }
+
+        @Override
+        public Void invoke(File root, VirtualChannel channel) throws IOException {
+            Files.createDirectories(root.toPath());
+            setPermissions(root.toPath(), "rwx------");
+            Path tmp = Files.createTempFile(root.toPath(), name, ".tmp");
+            try {
+                Files.write(tmp, content);
+                setPermissions(tmp, dynamic ? "r-x------" : "r--------");
+                Files.move(tmp, root.toPath().resolve(name), StandardCopyOption.ATOMIC_MOVE);
+            } finally {
+                Files.deleteIfExists(tmp);
+            }
+            evict(root);
+            return null;
+        }
+
+        private void evict(File root) {
+            File[] files = root.listFiles();
+            if (files == null) {
+                return;
+            }
+            long now = System.currentTimeMillis();
+            long total = 0;
+            for (File file : files) {
+                if (file.getName().endsWith(".tmp") && now - file.lastModified() > GRACE_PERIOD) {
+                    // left behind by an interrupted store
+                    file.delete();
+                } else {
+                    total += file.length();
+                }
+            }
+            Arrays.sort(files, Comparator.comparingLong(File::lastModified));
+            for (File file : files) {
+                if (total <= maxBytes) {
+                    break;
+                }
+                if (!file.getName().endsWith(".tmp")
+                        && !file.getName().equals(name)
+                        && now - file.lastModified() > GRACE_PERIOD) {
+                    long length = file.length();
+                    if (file.delete()) {
+                        total -= length;
+                    }
+                }
+            }
+        }
+
+        private static void setPermissions(Path path, String permissions) throws IOException {
+            try {
+                Files.setPosixFilePermissions(path, PosixFilePermissions.fromString(permissions));
+            } catch (UnsupportedOperationException e) {
+                // not a POSIX file system
+            }
+        }
+    }
+}
@@ -0,0 +1,58 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jenkinsci.plugins.ansible;
+
+import hudson.AbortException;
+import hudson.EnvVars;
+import hudson.FilePath;
+import hudson.model.Run;
+import hudson.model.TaskListener;
+import hudson.util.ArgumentListBuilder;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Resolve an inventory into a static YAML inventory with {@code ansible-inventory --list --yaml --export}.
+ */
+class AnsibleInventoryExportInvocation extends AbstractAnsibleInvocation<AnsibleInventoryExportInvocation> {
+
+    AnsibleInventoryExportInvocation(String exe, Run<?, ?> build, FilePath ws, TaskListener listener, EnvVars envVars)
+            throws IOException, InterruptedException, AnsibleInvocationException {
+        super(exe, build, ws, listener, envVars);
+    }
+
+    @Override
+    protected ArgumentListBuilder buildCommandLine()
+            throws InterruptedException, AnsibleInvocationException, IOException {
+        ArgumentListBuilder args = new ArgumentListBuilder();
+        appendExecutable(args);
+        appendInventory(args);
+        appendVaultPasswordFile(args);
+        args.add("--list", "--yaml", "--export");
+        return args;
+    }
+
+    String export(CLIRunner runner) throws IOException, InterruptedException, AnsibleInvocationException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try {
+            if (!runner.execute(prepareCommandLine(runner), environment, out)) {
+                throw new AbortException("Unable to resolve the dynamic inventory");
+            }
+        } finally {
+            tearDown();
+        }
+        return out.toString(StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,159 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jenkinsci.plugins.ansible;
+
+import hudson.Extension;
+import hudson.FilePath;
+import hudson.Util;
+import hudson.model.Node;
+import hudson.model.TaskListener;
+import hudson.remoting.VirtualChannel;
+import hudson.slaves.NodeProperty;
+import hudson.slaves.NodePropertyDescriptor;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import jenkins.model.Jenkins;
+import jenkins.security.MasterToSlaveCallable;
+import org.jenkinsci.Symbol;
+import org.kohsuke.stapler.DataBoundConstructor;
+import org.kohsuke.stapler.DataBoundSetter;
+
+/**
+ * Ansible settings of an agent, or of all the agents when set in the global properties.
+ *
+ * <p>With the secret staging enabled, the SSH keys and vault password files are written to a
+ * memory-backed directory of the agent instead of the workspace, so they are never persisted to
+ * disk. The directory is either configured or detected among {@code $XDG_RUNTIME_DIR} and
+ * {@code /dev/shm}, and the files fall back to their usual location when none is available.
+ */
+public class AnsibleNodeProperty extends NodeProperty<Node> {
+
+    private boolean secretStaging = false;
+    private String secretStagingDir;
+
+    @DataBoundConstructor
+    public AnsibleNodeProperty() {}
+
+    public boolean isSecretStaging() {
+        return secretStaging;
+    }
+
+    @DataBoundSetter
+    public void setSecretStaging(boolean secretStaging) {
+        this.secretStaging = secretStaging;
+    }
+
+    public String getSecretStagingDir() {
+        return secretStagingDir;
+    }
+
+    @DataBoundSetter
+    public void setSecretStagingDir(String secretStagingDir) {
+        this.secretStagingDir = Util.fixEmptyAndTrim(secretStagingDir);
+    }
+
+    /**
+     * @return the property of the node, or the global one if the node has none
+     */
+    static AnsibleNodeProperty forNode(Node node) {
+        AnsibleNodeProperty property = node != null ? node.getNodeProperty(AnsibleNodeProperty.class) : null;
+        if (property == null) {
+            Jenkins jenkins = Jenkins.getInstanceOrNull();
+            property = jenkins != null ? jenkins.getGlobalNodeProperties().get(AnsibleNodeProperty.class) : null;
+        }
+        return property;
+    }
+
+    /**
+     * @return the directory of the node where the secret files are staged, or {@code null} to
+     * keep them in their default location
+     */
+    static FilePath secretStagingDir(Node node, TaskListener listener) throws IOException, InterruptedException {
+        AnsibleNodeProperty property = forNode(node);
+        if (property == null || !property.isSecretStaging()) {
+            return null;
+        }
+        VirtualChannel channel = node.getChannel();
+        if (channel == null) {
+            return null;
+        }
+        String dir = channel.call(new Detect(property.getSecretStagingDir()));
+        if (dir == null) {
+            listener.getLogger()
+                    .println("[WARNING] no memory-backed directory available on " + node.getDisplayName()
+                            + ", secret files are staged in their default location");
+            return null;
+        }
+        return new FilePath(channel, dir);
+    }
+
+    /**
+     * Find the staging directory on the agent: the configured directory if writable, else the first
+     * writable memory-backed candidate.
+     */
+    static final class Detect extends MasterToSlaveCallable<String, IOException> {
+        private static final long serialVersionUID = 1L;
+
+        private final String configured;
+
+        Detect(String configured) {
+            this.configured = configured;
+        }
+
+        @Override
+        public String call() {
+            if (configured != null) {
+                return isWritableDirectory(Path.of(configured)) ? configured : null;
+            }
+            List<String> candidates = new ArrayList<>();
+            candidates.add(System.getenv("XDG_RUNTIME_DIR"));
+            candidates.add("/dev/shm");
+            for (String candidate : candidates) {
+                if (candidate != null && !candidate.isEmpty()) {
+                    Path path = Path.of(candidate);
+                    if (isWritableDirectory(path) && isMemoryBacked(path)) {
+                        return path.toAbsolutePath().toString();
+                    }
+                }
+            }
+            return null;
+        }
+
+        private static boolean isWritableDirectory(Path path) {
+            return Files.isDirectory(path) && Files.isWritable(path);
+        }
+
+        static boolean isMemoryBacked(Path path) {
+            try {
+                String type = Files.getFileStore(path).type();
+                return "tmpfs".equals(type) || "ramfs".equals(type);
+            } catch (IOException e) {
+                return false;
+            }
+        }
+    }
+
+    @Extension
+    @Symbol("ansible")
+    public static class DescriptorImpl extends NodePropertyDescriptor {
+
+        @Override
+        public String getDisplayName() {
+            return "Ansible";
+        }
+    }
+}
@@ -0,0 +1,233 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jenkinsci.plugins.ansible;
+
+import hudson.Extension;
+import hudson.Util;
+import hudson.tools.ToolInstallation;
+import hudson.tools.ToolProperty;
+import hudson.tools.ToolPropertyDescriptor;
+import hudson.util.FormValidation;
+import hudson.util.ListBoxModel;
+import java.util.Map;
+import org.jenkinsci.Symbol;
+import org.kohsuke.stapler.DataBoundConstructor;
+import org.kohsuke.stapler.DataBoundSetter;
+import org.kohsuke.stapler.QueryParameter;
+
+/**
+ * Connection and execution settings applied to every ansible command run with an installation.
+ *
+ * <p>The settings are passed as {@code ANSIBLE_*} environment variables and never replace a
+ * variable already defined in the build environment, so that a job can still override any of
+ * them. The forks are also overridden by the forks option of the build step.
+ */
+public class AnsiblePerformanceProfile extends ToolProperty<AnsibleInstallation> {
+
+    private boolean pipelining = false;
+    private boolean sshMultiplexing = false;
+    private int controlPersist = 60;
+    private String strategy;
+    private String gathering;
+    private String factCaching;
+    private String factCachingConnection;
+    private int factCachingTimeout = 0;
+    private int forks = 0;
+    private boolean precompileBytecode = false;
+
+    @DataBoundConstructor
+    public AnsiblePerformanceProfile() {}
+
+    public boolean isPipelining() {
+        return pipelining;
+    }
+
+    @DataBoundSetter
+    public void setPipelining(boolean pipelining) {
+        this.pipelining = pipelining;
+    }
+
+    public boolean isSshMultiplexing() {
+        return sshMultiplexing;
+    }
+
+    @DataBoundSetter
+    public void setSshMultiplexing(boolean sshMultiplexing) {
+        this.sshMultiplexing = sshMultiplexing;
+    }
+
+    public int getControlPersist() {
+        return controlPersist;
+    }
+
+    @DataBoundSetter
+    public void setControlPersist(int controlPersist) {
+        this.controlPersist = Math.max(1, controlPersist);
+    }
+
+    public String getStrategy() {
+        return strategy;
+    }
+
+    @DataBoundSetter
+    public void setStrategy(String strategy) {
+        this.strategy = Util.fixEmptyAndTrim(strategy);
+    }
+
+    public String getGathering() {
+        return gathering;
+    }
+
+    @DataBoundSetter
+    public void setGathering(String gathering) {
+        this.gathering = Util.fixEmptyAndTrim(gathering);
+    }
+
+    public String getFactCaching() {
+        return factCaching;
+    }
+
+    @DataBoundSetter
+    public void setFactCaching(String factCaching) {
+        this.factCaching = Util.fixEmptyAndTrim(factCaching);
+    }
+
+    public String getFactCachingConnection() {
+        return factCachingConnection;
+    }
+
+    @DataBoundSetter
+    public void setFactCachingConnection(String factCachingConnection) {
+        this.factCachingConnection = Util.fixEmptyAndTrim(factCachingConnection);
+    }
+
+    public int getFactCachingTimeout() {
+        return factCachingTimeout;
+    }
+
+    @DataBoundSetter
+    public void setFactCachingTimeout(int factCachingTimeout) {
+        this.factCachingTimeout = Math.max(0, factCachingTimeout);
+    }
+
+    public int getForks() {
+        return forks;
+    }
+
+    @DataBoundSetter
+    public void setForks(int forks) {
+        this.forks = Math.max(0, forks);
+    }
+
+    /**
+     * @return whether the ansible tree and collections are compiled to bytecode on each node
+     * @see AnsibleBytecodeWarmup
+     */
+    public boolean isPrecompileBytecode() {
+        return precompileBytecode;
+    }
+
+    @DataBoundSetter
+    public void setPrecompileBytecode(boolean precompileBytecode) {
+        this.precompileBytecode = precompileBytecode;
+    }
+
+    /**
+     * Add the settings of the profile to the environment of an ansible command, keeping the
+     * variables already set.
+     */
+    void apply(Map<String, String> environment) {
+        if (pipelining) {
+            environment.putIfAbsent("ANSIBLE_PIPELINING", "True");
+        }
+        if (sshMultiplexing) {
+            environment.putIfAbsent(
+                    "ANSIBLE_SSH_ARGS", "-C -o ControlMaster=auto -o ControlPersist=" + controlPersist + "s");
+        }
+        if (strategy != null) {
+            environment.putIfAbsent("ANSIBLE_STRATEGY", strategy);
+        }
+        if (gathering != null) {
+            environment.putIfAbsent("ANSIBLE_GATHERING", gathering);
+        }
+        if (factCaching != null) {
+            environment.putIfAbsent("ANSIBLE_CACHE_PLUGIN", factCaching);
+            if (factCachingConnection != null) {
+                environment.putIfAbsent("ANSIBLE_CACHE_PLUGIN_CONNECTION", factCachingConnection);
+            }
+            if (factCachingTimeout > 0) {
+                environment.putIfAbsent("ANSIBLE_CACHE_PLUGIN_TIMEOUT", String.valueOf(factCachingTimeout));
+            }
+        }
+        if (forks > 0) {
+            environment.putIfAbsent("ANSIBLE_FORKS", String.valueOf(forks));
+        }
+    }
+
+    @Extension
+    @Symbol("performanceProfile")
+    public static class DescriptorImpl extends ToolPropertyDescriptor {
+
+        public DescriptorImpl() {
+            super(AnsiblePerformanceProfile.class);
+        }
+
+        @Override
+        public String getDisplayName() {
+            return "Performance profile";
+        }
+
+        @Override
+        public boolean isApplicable(Class<? extends ToolInstallation> toolType) {
+            return AnsibleInstallation.class.isAssignableFrom(toolType);
+        }
+
+        public ListBoxModel doFillStrategyItems() {
+            ListBoxModel model = new ListBoxModel();
+            model.add("Ansible default", "");
+            model.add("linear");
+            model.add("free");
+            return model;
+        }
+
+        public ListBoxModel doFillGatheringItems() {
+            ListBoxModel model = new ListBoxModel();
+            model.add("Ansible default", "");
+            model.add("implicit");
+            model.add("explicit");
+            model.add("smart");
+            return model;
+        }
+
+        public ListBoxModel doFillFactCachingItems() {
+            ListBoxModel model = new ListBoxModel();
+            model.add("None", "");
+            model.add("memory");
+            model.add("jsonfile");
+            model.add("yaml");
+            model.add("pickle");
+            return model;
+        }
+
+        public FormValidation doCheckFactCachingConnection(
+                @QueryParameter String factCaching, @QueryParameter String factCachingConnection) {
+            if (!"memory".equals(factCaching)
+                    && Util.fixEmptyAndTrim(factCaching) != null
+                    && Util.fixEmptyAndTrim(factCachingConnection) == null) {
+                return FormValidation.error("A file based fact cache requires the path of its directory");
+            }
+            return FormValidation.ok();
+        }
+    }
+}
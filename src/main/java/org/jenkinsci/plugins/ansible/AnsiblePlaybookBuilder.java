@@ -15,6 +15,7 @@
  */
 package org.jenkinsci.plugins.ansible;
 
+import com.cloudbees.jenkins.plugins.sshcredentials.SSHUserPrivateKey;
 import com.cloudbees.plugins.credentials.CredentialsProvider;
 import com.cloudbees.plugins.credentials.common.StandardCredentials;
 import com.cloudbees.plugins.credentials.common.StandardUsernameCredentials;
@@ -35,6 +36,7 @@ import hudson.tasks.Builder;
 import hudson.util.FormValidation;
 import java.io.File;
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.List;
 import jenkins.tasks.SimpleBuildStep;
 import org.apache.commons.lang3.StringUtils;
@@ -105,6 +107,21 @@ public class AnsiblePlaybookBuilder extends Builder implements SimpleBuildStep {
     @SuppressFBWarnings(value = "PA_PUBLIC_PRIMITIVE_ATTRIBUTE", justification = "Preserve API compatibility.")
     public boolean disableHostKeyChecking = false;
 
+    @SuppressFBWarnings(value = "PA_PUBLIC_PRIMITIVE_ATTRIBUTE", justification = "Preserve API compatibility.")
+    public boolean structuredOutput = false;
+
+    @SuppressFBWarnings(value = "PA_PUBLIC_PRIMITIVE_ATTRIBUTE", justification = "Preserve API compatibility.")
+    public boolean factCache = false;
+
+    @SuppressFBWarnings(value = "PA_PUBLIC_PRIMITIVE_ATTRIBUTE", justification = "Preserve API compatibility.")
+    public int inventoryCacheTtl = 0;
+
+    @SuppressFBWarnings(value = "PA_PUBLIC_PRIMITIVE_ATTRIBUTE", justification = "Preserve API compatibility.")
+    public boolean sshAgent = false;
+
+    @SuppressFBWarnings(value = "PA_PUBLIC_PRIMITIVE_ATTRIBUTE", justification = "Preserve API compatibility.")
+    public String sshAgentCredentialsIds = null;
+
     @Deprecated
     @SuppressWarnings("unused")
     @SuppressFBWarnings(value = {"URF_UNREAD_PUBLIC_OR_PROTECTED_FIELD", "PA_PUBLIC_PRIMITIVE_ATTRIBUTE"})
@@ -119,6 +136,9 @@ public class AnsiblePlaybookBuilder extends Builder implements SimpleBuildStep {
     @SuppressFBWarnings(value = "PA_PUBLIC_PRIMITIVE_ATTRIBUTE", justification = "Preserve API compatibility.")
     public List<ExtraVar> extraVars;
 
+    @SuppressFBWarnings(value = "PA_PUBLIC_PRIMITIVE_ATTRIBUTE", justification = "Preserve API compatibility.")
+    public boolean extraVarsAsFile = false;
+
     @Deprecated
     public AnsiblePlaybookBuilder(
             String ansibleName,
@@ -248,6 +268,31 @@ public class AnsiblePlaybookBuilder extends Builder implements SimpleBuildStep {
         this.disableHostKeyChecking = disableHostKeyChecking;
     }
 
+    @DataBoundSetter
+    public void setStructuredOutput(boolean structuredOutput) {
+        this.structuredOutput = structuredOutput;
+    }
+
+    @DataBoundSetter
+    public void setFactCache(boolean factCache) {
+        this.factCache = factCache;
+    }
+
+    @DataBoundSetter
+    public void setInventoryCacheTtl(int inventoryCacheTtl) {
+        this.inventoryCacheTtl = Math.max(0, inventoryCacheTtl);
+    }
+
+    @DataBoundSetter
+    public void setSshAgent(boolean sshAgent) {
+        this.sshAgent = sshAgent;
+    }
+
+    @DataBoundSetter
+    public void setSshAgentCredentialsIds(String sshAgentCredentialsIds) {
+        this.sshAgentCredentialsIds = sshAgentCredentialsIds;
+    }
+
     @DataBoundSetter
     @Deprecated
     public void setHostKeyChecking(boolean hostKeyChecking) {
@@ -264,6 +309,11 @@ public class AnsiblePlaybookBuilder extends Builder implements SimpleBuildStep {
         this.extraVars = extraVars;
     }
 
+    @DataBoundSetter
+    public void setExtraVarsAsFile(boolean extraVarsAsFile) {
+        this.extraVarsAsFile = extraVarsAsFile;
+    }
+
     @Override
     public void perform(
             @NonNull Run<?, ?> run, @NonNull FilePath ws, @NonNull Launcher launcher, @NonNull TaskListener listener)
@@ -285,29 +335,62 @@ public class AnsiblePlaybookBuilder extends Builder implements SimpleBuildStep {
             EnvVars envVars)
             throws InterruptedException, IOException {
         try {
-            CLIRunner runner = new CLIRunner(run, ws, launcher, listener);
+            launch(new CLIRunner(run, ws, launcher, listener), run, node, ws, listener, envVars).complete();
+        } catch (IOException ioe) {
+            Util.displayIOException(ioe, listener);
+            ioe.printStackTrace(listener.fatalError("command execution failed"));
+            throw ioe;
+        } catch (AnsibleInvocationException aie) {
+            listener.fatalError(aie.getMessage());
+            throw new AbortException(aie.getMessage());
+        }
+    }
+
+    /**
+     * Launch the playbook without waiting for it.
+     *
+     * @param runner the runner launching the process
+     * @return the running playbook, which must be completed by the caller
+     */
+    public AnsibleProcess start(
+            @NonNull CLIRunner runner,
+            @NonNull Run<?, ?> run,
+            @NonNull Node node,
+            @NonNull FilePath ws,
+            @NonNull TaskListener listener,
+            EnvVars envVars)
+            throws InterruptedException, IOException {
+        try {
+            return launch(runner, run, node, ws, listener, envVars);
+        } catch (IOException ioe) {
+            Util.displayIOException(ioe, listener);
+            ioe.printStackTrace(listener.fatalError("command execution failed"));
+            throw ioe;
+        } catch (AnsibleInvocationException aie) {
+            listener.fatalError(aie.getMessage());
+            throw new AbortException(aie.getMessage());
+        }
+    }
+
+    /**
+     * Resolve the hosts of the inventory matching the limit of the playbook, or all of them when no
+     * limit is set.
+     */
+    public List<String> listHosts(
+            @NonNull Run<?, ?> run,
+            @NonNull Node node,
+            @NonNull FilePath ws,
+            @NonNull Launcher launcher,
+            @NonNull TaskListener listener,
+            EnvVars envVars)
+            throws InterruptedException, IOException {
+        try {
             Computer computer = node.toComputer();
-            String exe = AnsibleInstallation.getExecutable(
-                    ansibleName, AnsibleCommand.ANSIBLE_PLAYBOOK, node, listener, envVars);
-            AnsiblePlaybookInvocation invocation = new AnsiblePlaybookInvocation(exe, run, ws, listener, envVars);
-            invocation.setPlaybook(playbook);
-            invocation.setInventory(inventory);
-            invocation.setLimit(limit);
-            invocation.setTags(tags);
-            invocation.setSkippedTags(skippedTags);
-            invocation.setStartTask(startAtTask);
-            invocation.setBecome(become, becomeUser);
-            invocation.setCheckMode(checkMode);
-            invocation.setSudo(sudo, sudoUser);
-            invocation.setForks(forks);
-            invocation.setCredentials(
-                    StringUtils.isNotBlank(credentialsId)
-                            ? CredentialsProvider.findCredentialById(
-                                    run.getEnvironment(listener).expand(credentialsId),
-                                    StandardUsernameCredentials.class,
-                                    run)
-                            : null,
-                    copyCredentialsInWorkspace);
+            String exe =
+                    AnsibleInstallation.getExecutable(ansibleName, AnsibleCommand.ANSIBLE, node, listener, envVars);
+            AnsibleHostListInvocation invocation = new AnsibleHostListInvocation(exe, run, ws, listener, envVars);
+            invocation.setHostPattern(StringUtils.isNotBlank(limit) ? limit : "all");
+            invocation.setInventory(resolveInventory(run, node, ws, launcher, listener, envVars));
             invocation.setVaultCredentials(
                     StringUtils.isNotBlank(vaultCredentialsId)
                             ? CredentialsProvider.findCredentialById(
@@ -319,24 +402,159 @@ public class AnsiblePlaybookBuilder extends Builder implements SimpleBuildStep {
                     StringUtils.isNotBlank(vaultTmpPath)
                             ? new FilePath(computer.getChannel(), new File(vaultTmpPath).getAbsolutePath())
                             : null);
-            invocation.setExtraVars(extraVars);
-            invocation.setAdditionalParameters(additionalParameters);
-            invocation.setDisableHostKeyCheck(disableHostKeyChecking);
-            invocation.setUnbufferedOutput(unbufferedOutput);
-            invocation.setColorizedOutput(colorizedOutput);
-            if (!invocation.execute(runner)) {
-                throw new AbortException("Ansible playbook execution failed");
-            }
-        } catch (IOException ioe) {
-            Util.displayIOException(ioe, listener);
-            ioe.printStackTrace(listener.fatalError("command execution failed"));
-            throw ioe;
+            invocation.setSecretStagingDir(AnsibleNodeProperty.secretStagingDir(node, listener));
+            return invocation.listHosts(new CLIRunner(run, ws, launcher, listener));
         } catch (AnsibleInvocationException aie) {
             listener.fatalError(aie.getMessage());
             throw new AbortException(aie.getMessage());
         }
     }
 
+    /**
+     * @return the inventory, or the static inventory it resolves to when the dynamic inventory
+     * cache is enabled
+     */
+    private Inventory resolveInventory(
+            Run<?, ?> run, Node node, FilePath ws, Launcher launcher, TaskListener listener, EnvVars envVars)
+            throws InterruptedException, IOException, AnsibleInvocationException {
+        if (inventoryCacheTtl <= 0 || inventory == null || !inventory.isDynamic(ws, envVars)) {
+            return inventory;
+        }
+        String key =
+                AnsibleDynamicInventoryCache.key(run.getParent().getFullName(), inventory.getIdentity(ws, envVars));
+        String resolved = AnsibleDynamicInventoryCache.get(key, inventoryCacheTtl, listener, () -> {
+            Computer computer = node.toComputer();
+            String exe = AnsibleInstallation.getExecutable(
+                    ansibleName, AnsibleCommand.ANSIBLE_INVENTORY, node, listener, envVars);
+            AnsibleInventoryExportInvocation invocation =
+                    new AnsibleInventoryExportInvocation(exe, run, ws, listener, envVars);
+            invocation.setInventory(inventory);
+            invocation.setVaultCredentials(
+                    StringUtils.isNotBlank(vaultCredentialsId)
+                            ? CredentialsProvider.findCredentialById(
+                                    run.getEnvironment(listener).expand(vaultCredentialsId),
+                                    StandardCredentials.class,
+                                    run)
+                            : null);
+            invocation.setVaultTmpPath(
+                    StringUtils.isNotBlank(vaultTmpPath)
+                            ? new FilePath(computer.getChannel(), new File(vaultTmpPath).getAbsolutePath())
+                            : null);
+            invocation.setSecretStagingDir(AnsibleNodeProperty.secretStagingDir(node, listener));
+            return invocation.export(new CLIRunner(run, ws, launcher, listener));
+        });
+        return new ResolvedInventory(resolved, inventory.getDirectory(ws, envVars));
+    }
+
+    /**
+     * @return the additional SSH keys to load into the ssh-agent
+     */
+    private List<SSHUserPrivateKey> findSshAgentKeys(Run<?, ?> run, TaskListener listener)
+            throws IOException, InterruptedException, AnsibleInvocationException {
+        List<SSHUserPrivateKey> keys = new ArrayList<>();
+        if (StringUtils.isBlank(sshAgentCredentialsIds)) {
+            return keys;
+        }
+        EnvVars env = run.getEnvironment(listener);
+        for (String id : env.expand(sshAgentCredentialsIds).split(",")) {
+            if (StringUtils.isBlank(id)) {
+                continue;
+            }
+            SSHUserPrivateKey key = CredentialsProvider.findCredentialById(id.trim(), SSHUserPrivateKey.class, run);
+            if (key == null) {
+                throw new AnsibleInvocationException("SSH private key credentials not found: " + id.trim());
+            }
+            keys.add(key);
+        }
+        return keys;
+    }
+
+    /**
+     * @return {@code false} when the probe listed the callbacks of the installation and the structured output
+     * callback is not among them
+     */
+    private boolean isStructuredOutputSupported(Node node, TaskListener listener) throws InterruptedException {
+        AnsibleCapabilities capabilities = AnsibleCapabilities.forNode(ansibleName, node, listener);
+        if (capabilities == null
+                || !capabilities.lacksCallback(AbstractAnsibleInvocation.STRUCTURED_OUTPUT_CALLBACK)) {
+            return true;
+        }
+        listener.getLogger()
+                .println("[WARNING] the " + AbstractAnsibleInvocation.STRUCTURED_OUTPUT_CALLBACK
+                        + " callback is not available with ansible " + capabilities.getVersion()
+                        + " on this node, structured output disabled");
+        return false;
+    }
+
+    private AnsibleProcess launch(
+            CLIRunner runner, Run<?, ?> run, Node node, FilePath ws, TaskListener listener, EnvVars envVars)
+            throws InterruptedException, IOException, AnsibleInvocationException {
+        boolean structured = structuredOutput && isStructuredOutputSupported(node, listener);
+        runner.setStructuredOutput(structured);
+        AnsibleTimingRecorder timings = null;
+        if (structured) {
+            timings = new AnsibleTimingRecorder(AnsibleTimingFile.next(run.getRootDir()), envVars.expand(playbook));
+            runner.addEventHandler(timings);
+        }
+        Computer computer = node.toComputer();
+        AnsibleBytecodeWarmup.ensure(ansibleName, node, envVars, listener);
+        String exe = AnsibleInstallation.getExecutable(
+                ansibleName, AnsibleCommand.ANSIBLE_PLAYBOOK, node, listener, envVars);
+        AnsiblePlaybookInvocation invocation = new AnsiblePlaybookInvocation(exe, run, ws, listener, envVars);
+        invocation.setPlaybook(playbook);
+        invocation.setInventory(resolveInventory(run, node, ws, runner.getLauncher(), listener, envVars));
+        invocation.setLimit(limit);
+        invocation.setTags(tags);
+        invocation.setSkippedTags(skippedTags);
+        invocation.setStartTask(startAtTask);
+        invocation.setBecome(become, becomeUser);
+        invocation.setCheckMode(checkMode);
+        invocation.setSudo(sudo, sudoUser);
+        invocation.setForks(forks);
+        invocation.setCredentials(
+                StringUtils.isNotBlank(credentialsId)
+                        ? CredentialsProvider.findCredentialById(
+                                run.getEnvironment(listener).expand(credentialsId),
+                                StandardUsernameCredentials.class,
+                                run)
+                        : null,
+                copyCredentialsInWorkspace);
+        invocation.setVaultCredentials(
+                StringUtils.isNotBlank(vaultCredentialsId)
+                        ? CredentialsProvider.findCredentialById(
+                                run.getEnvironment(listener).expand(vaultCredentialsId),
+                                StandardCredentials.class,
+                                run)
+                        : null);
+        invocation.setVaultTmpPath(
+                StringUtils.isNotBlank(vaultTmpPath)
+                        ? new FilePath(computer.getChannel(), new File(vaultTmpPath).getAbsolutePath())
+                        : null);
+        invocation.setSecretStagingDir(AnsibleNodeProperty.secretStagingDir(node, listener));
+        invocation.setExtraVars(extraVars);
+        invocation.setExtraVarsAsFile(extraVarsAsFile);
+        invocation.setAdditionalParameters(additionalParameters);
+        invocation.setDisableHostKeyCheck(disableHostKeyChecking);
+        invocation.setUnbufferedOutput(unbufferedOutput);
+        invocation.setColorizedOutput(colorizedOutput);
+        invocation.setStructuredOutput(structured);
+        invocation.setSshControlPersist(AnsibleSshControlPersist.forNode(node));
+        invocation.setSshAgent(sshAgent);
+        if (sshAgent) {
+            invocation.setSshAgentKeys(findSshAgentKeys(run, listener));
+        }
+        invocation.setPerformanceProfile(AnsibleInstallation.getPerformanceProfile(ansibleName));
+        if (factCache) {
+            AnsibleFactCache cache = AnsibleFactCache.forInventory(node, inventory, ws, envVars);
+            if (cache != null) {
+                cache.prepare();
+                invocation.setFactCache(cache);
+            }
+        }
+        return new AnsibleProcess(invocation.start(runner), runner, invocation, "Ansible playbook execution failed")
+                .withTimings(run, timings);
+    }
+
     @Override
     public BuildStepMonitor getRequiredMonitorService() {
         return BuildStepMonitor.NONE;
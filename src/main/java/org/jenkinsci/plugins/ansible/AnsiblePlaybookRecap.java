@@ -0,0 +1,123 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jenkinsci.plugins.ansible;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Counters of the PLAY RECAP of a playbook run, per host.
+ */
+public class AnsiblePlaybookRecap {
+
+    /** Counters printed by ansible in the recap, in order. */
+    static final List<String> COUNTERS =
+            List.of("ok", "changed", "unreachable", "failed", "skipped", "rescued", "ignored");
+
+    private static final Pattern ANSI_ESCAPE = Pattern.compile("\u001B\\[[0-9;]*[A-Za-z]");
+    private static final Pattern LINE = Pattern.compile("^(\\S+)\\s+:\\s+((?:[a-z]+=\\d+\\s*)+)$");
+    private static final Pattern COUNTER = Pattern.compile("([a-z]+)=(\\d+)");
+
+    private final Map<String, Map<String, Integer>> hosts = new TreeMap<>();
+
+    /**
+     * Add the counters of a recap line, such as
+     * {@code web1 : ok=3 changed=1 unreachable=0 failed=0 skipped=0 rescued=0 ignored=0}.
+     *
+     * @return whether the line is a recap line
+     */
+    public boolean parseLine(String line) {
+        Matcher matcher = LINE.matcher(stripAnsi(line).trim());
+        if (!matcher.matches()) {
+            return false;
+        }
+        Map<String, Integer> counters = new LinkedHashMap<>();
+        Matcher counter = COUNTER.matcher(matcher.group(2));
+        while (counter.find()) {
+            counters.put(counter.group(1), Integer.parseInt(counter.group(2)));
+        }
+        add(matcher.group(1), counters);
+        return true;
+    }
+
+    /**
+     * @return the line without its ANSI color codes
+     */
+    static String stripAnsi(String line) {
+        return ANSI_ESCAPE.matcher(line).replaceAll("");
+    }
+
+    public synchronized void add(String host, Map<String, Integer> counters) {
+        Map<String, Integer> total = hosts.computeIfAbsent(host, h -> newCounters());
+        counters.forEach((name, value) -> total.merge(name, value, Integer::sum));
+    }
+
+    public synchronized void merge(AnsiblePlaybookRecap other) {
+        for (Map.Entry<String, Map<String, Integer>> entry : other.getHosts().entrySet()) {
+            add(entry.getKey(), entry.getValue());
+        }
+    }
+
+    public synchronized Map<String, Map<String, Integer>> getHosts() {
+        Map<String, Map<String, Integer>> copy = new TreeMap<>();
+        hosts.forEach((host, counters) -> copy.put(host, new LinkedHashMap<>(counters)));
+        return copy;
+    }
+
+    public synchronized boolean isEmpty() {
+        return hosts.isEmpty();
+    }
+
+    public List<String> getFailedHosts() {
+        return hostsWith("failed");
+    }
+
+    public List<String> getUnreachableHosts() {
+        return hostsWith("unreachable");
+    }
+
+    private synchronized List<String> hostsWith(String counter) {
+        List<String> result = new ArrayList<>();
+        hosts.forEach((host, counters) -> {
+            if (counters.getOrDefault(counter, 0) > 0) {
+                result.add(host);
+            }
+        });
+        return result;
+    }
+
+    /**
+     * @return the recap as plain maps and lists, suitable as a pipeline step result
+     */
+    public Map<String, Object> toMap() {
+        Map<String, Object> map = new LinkedHashMap<>();
+        map.put("hosts", new LinkedHashMap<>(getHosts()));
+        map.put("failedHosts", getFailedHosts());
+        map.put("unreachableHosts", getUnreachableHosts());
+        return map;
+    }
+
+    private static Map<String, Integer> newCounters() {
+        Map<String, Integer> counters = new LinkedHashMap<>();
+        for (String name : COUNTERS) {
+            counters.put(name, 0);
+        }
+        return counters;
+    }
+}
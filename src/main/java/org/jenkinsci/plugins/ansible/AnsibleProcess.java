@@ -0,0 +1,185 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jenkinsci.plugins.ansible;
+
+import hudson.AbortException;
+import hudson.FilePath;
+import hudson.Proc;
+import hudson.model.Run;
+import hudson.model.TaskListener;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * A running ansible command.
+ *
+ * <p>The process is either waited for with {@link #complete()}, or polled with {@link #isAlive()}
+ * by callers which must not hold a thread while it runs, and then completed once it has exited.
+ */
+public final class AnsibleProcess {
+
+    private final Proc proc;
+    private final CLIRunner runner;
+    private final AbstractAnsibleInvocation<?> invocation;
+    private final List<FilePath> tempFiles;
+    private final String sshAgentPid;
+    private final FilePath sshAgentDirectory;
+    private final String failureMessage;
+    private final TaskListener listener;
+    private Run<?, ?> run;
+    private AnsibleTimingRecorder timings;
+    private boolean finished = false;
+
+    AnsibleProcess(Proc proc, CLIRunner runner, AbstractAnsibleInvocation<?> invocation, String failureMessage) {
+        this.proc = proc;
+        this.runner = runner;
+        this.invocation = invocation;
+        this.tempFiles = invocation.getTempFiles();
+        AnsibleSshAgent agent = invocation.getSshAgent();
+        this.sshAgentPid = agent != null ? agent.getPid() : null;
+        this.sshAgentDirectory = agent != null ? agent.getDirectory() : null;
+        this.failureMessage = failureMessage;
+        this.listener = invocation.listener;
+    }
+
+    /**
+     * Take over a process launched by a previous instance of the controller.
+     *
+     * @param tempFiles the temporary files to delete once the process has exited
+     * @param sshAgentPid the process id of the ssh-agent to stop once the process has exited, if any
+     * @param sshAgentDirectory the directory of that ssh-agent
+     */
+    public AnsibleProcess(
+            Proc proc,
+            CLIRunner runner,
+            List<FilePath> tempFiles,
+            String sshAgentPid,
+            FilePath sshAgentDirectory,
+            String failureMessage,
+            TaskListener listener) {
+        this.proc = proc;
+        this.runner = runner;
+        this.invocation = null;
+        this.tempFiles = new ArrayList<>(tempFiles);
+        this.sshAgentPid = sshAgentPid;
+        this.sshAgentDirectory = sshAgentDirectory;
+        this.failureMessage = failureMessage;
+        this.listener = listener;
+    }
+
+    AnsibleProcess withTimings(Run<?, ?> run, AnsibleTimingRecorder timings) {
+        this.run = run;
+        this.timings = timings;
+        return this;
+    }
+
+    public List<FilePath> getTempFiles() {
+        return Collections.unmodifiableList(tempFiles);
+    }
+
+    /**
+     * @return the process id of the ssh-agent started for the command, {@code null} if none
+     */
+    public String getSshAgentPid() {
+        return sshAgentPid;
+    }
+
+    /**
+     * @return the directory of the ssh-agent started for the command, {@code null} if none
+     */
+    public FilePath getSshAgentDirectory() {
+        return sshAgentDirectory;
+    }
+
+    public String getFailureMessage() {
+        return failureMessage;
+    }
+
+    public boolean isAlive() throws IOException, InterruptedException {
+        return proc.isAlive();
+    }
+
+    public void kill() throws IOException, InterruptedException {
+        proc.kill();
+    }
+
+    /**
+     * Wait for the process, which returns immediately once {@link #isAlive()} is false, and
+     * release everything created for it.
+     *
+     * @throws AbortException if the command failed
+     */
+    public void complete() throws IOException, InterruptedException {
+        boolean success = false;
+        try {
+            success = proc.join() == 0;
+        } finally {
+            finish();
+        }
+        if (!success) {
+            throw new AbortException(failureMessage);
+        }
+    }
+
+    /**
+     * Flush the output and delete the temporary files. Does nothing when already finished.
+     */
+    public void finish() throws IOException, InterruptedException {
+        synchronized (this) {
+            if (finished) {
+                return;
+            }
+            finished = true;
+        }
+        try {
+            runner.finish();
+        } finally {
+            if (invocation != null) {
+                invocation.tearDown();
+            } else {
+                try {
+                    for (FilePath file : tempFiles) {
+                        Utils.deleteTempFile(file, listener);
+                    }
+                } finally {
+                    if (sshAgentPid != null) {
+                        AnsibleSshAgent.stop(
+                                runner.getLauncher(), new HashMap<>(), listener, sshAgentDirectory, sshAgentPid);
+                    }
+                }
+            }
+        }
+        if (timings != null && timings.getEntries() > 0) {
+            AnsibleTimingAction.attach(run);
+            recordTrend();
+        }
+    }
+
+    private void recordTrend() {
+        try {
+            AnsibleTimingReport report = AnsibleTimingReport.load(Collections.singletonList(timings.getFile()));
+            AnsibleTimingSummary.append(
+                    run.getParent().getRootDir(),
+                    run.getNumber(),
+                    report.getTasks(),
+                    AnsibleGlobalConfiguration.get().getTrendBuilds());
+        } catch (IOException e) {
+            // the trend is informational, it must not fail the build
+            e.printStackTrace(listener.error("Unable to record the ansible timing trend"));
+        }
+    }
+}
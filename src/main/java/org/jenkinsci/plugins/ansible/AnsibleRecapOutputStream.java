@@ -0,0 +1,47 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jenkinsci.plugins.ansible;
+
+import hudson.console.LineTransformationOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Copy the output of ansible-playbook as is, collecting the PLAY RECAP lines on the way.
+ */
+public final class AnsibleRecapOutputStream extends LineTransformationOutputStream.Delegating {
+
+    private final AnsiblePlaybookRecap recap = new AnsiblePlaybookRecap();
+    private boolean inRecap;
+
+    public AnsibleRecapOutputStream(OutputStream out) {
+        super(out);
+    }
+
+    @Override
+    protected void eol(byte[] b, int len) throws IOException {
+        out.write(b, 0, len);
+        String line = new String(b, 0, len, StandardCharsets.UTF_8);
+        if (AnsiblePlaybookRecap.stripAnsi(line).startsWith("PLAY RECAP")) {
+            inRecap = true;
+        } else if (inRecap && !line.isBlank() && !recap.parseLine(line)) {
+            inRecap = false;
+        }
+    }
+
+    public AnsiblePlaybookRecap getRecap() {
+        return recap;
+    }
+}
@@ -0,0 +1,226 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jenkinsci.plugins.ansible;
+
+import com.cloudbees.jenkins.plugins.sshcredentials.SSHUserPrivateKey;
+import hudson.AbortException;
+import hudson.FilePath;
+import hudson.Launcher;
+import hudson.model.TaskListener;
+import hudson.remoting.VirtualChannel;
+import hudson.util.Secret;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileAttribute;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import jenkins.security.MasterToSlaveCallable;
+
+/**
+ * Ephemeral ssh-agent started on the agent for a single invocation.
+ *
+ * <p>The private keys are loaded from memory with {@code ssh-add -}, so neither the keys nor
+ * their passphrases are written to disk, and several keys can be loaded for the inventories
+ * whose hosts use different credentials. The ssh-agent inherits the environment of the build, so
+ * the process tree killer of Jenkins stops it with the build even if {@link #stop()} is never
+ * reached. A durable command outliving the controller keeps the process id and the directory of
+ * its agent, to stop it with {@link #stop(Launcher, Map, TaskListener, FilePath, String)} once
+ * taken over.
+ */
+final class AnsibleSshAgent {
+
+    /**
+     * The variable passing the passphrase of a key to the askpass script of {@code ssh-add}.
+     */
+    static final String PASSPHRASE_VARIABLE = "ANSIBLE_SSH_AGENT_PASSPHRASE";
+
+    private static final Pattern PID = Pattern.compile("SSH_AGENT_PID=(\\d+)");
+
+    private final Launcher launcher;
+    private final Map<String, String> environment;
+    private final TaskListener listener;
+    private final FilePath dir;
+    private final String socket;
+    private final String pid;
+
+    private AnsibleSshAgent(
+            Launcher launcher, Map<String, String> environment, TaskListener listener, FilePath dir, String pid) {
+        this.launcher = launcher;
+        this.environment = environment;
+        this.listener = listener;
+        this.dir = dir;
+        this.socket = dir.child("agent.sock").getRemote();
+        this.pid = pid;
+    }
+
+    /**
+     * Start an ssh-agent listening on a socket of a private directory of the agent.
+     *
+     * @param environment the environment of the build, also used by the ssh-agent process
+     */
+    static AnsibleSshAgent start(Launcher launcher, Map<String, String> environment, TaskListener listener)
+            throws IOException, InterruptedException {
+        VirtualChannel channel = launcher.getChannel();
+        if (channel == null) {
+            throw new AbortException("Unable to start ssh-agent: the agent is offline");
+        }
+        FilePath dir = new FilePath(channel, channel.call(new CreateDirectory()));
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try {
+            int status = launcher.launch()
+                    .cmds("ssh-agent", "-s", "-a", dir.child("agent.sock").getRemote())
+                    .envs(environment)
+                    .stdout(out)
+                    .stderr(listener.getLogger())
+                    .quiet(true)
+                    .join();
+            String pid = status == 0 ? parsePid(out.toString(StandardCharsets.UTF_8)) : null;
+            if (pid == null) {
+                throw new AbortException("Unable to start ssh-agent");
+            }
+            return new AnsibleSshAgent(launcher, environment, listener, dir, pid);
+        } catch (IOException | InterruptedException | RuntimeException e) {
+            dir.deleteRecursive();
+            throw e;
+        }
+    }
+
+    /**
+     * @return the process id printed by {@code ssh-agent -s}, {@code null} if not found
+     */
+    static String parsePid(String output) {
+        Matcher matcher = PID.matcher(output);
+        return matcher.find() ? matcher.group(1) : null;
+    }
+
+    /**
+     * Load the private keys of the credentials into the agent.
+     */
+    void add(SSHUserPrivateKey credentials) throws IOException, InterruptedException {
+        Map<String, String> env = new HashMap<>(environment);
+        env.put("SSH_AUTH_SOCK", socket);
+        if (credentials.getPassphrase() != null) {
+            env.put("SSH_ASKPASS", dir.child("askpass.sh").getRemote());
+            env.put("SSH_ASKPASS_REQUIRE", "force");
+            env.putIfAbsent("DISPLAY", ":123.456");
+            env.put(PASSPHRASE_VARIABLE, Secret.toString(credentials.getPassphrase()));
+        }
+        for (String key : credentials.getPrivateKeys()) {
+            if (!key.endsWith("\n")) {
+                key = key + "\n";
+            }
+            int status = launcher.launch()
+                    .cmds("ssh-add", "-q", "-")
+                    .envs(env)
+                    .stdin(new ByteArrayInputStream(key.getBytes(StandardCharsets.UTF_8)))
+                    .stdout(listener.getLogger())
+                    .quiet(true)
+                    .join();
+            if (status != 0) {
+                throw new AbortException("Unable to add the key of " + credentials.getId() + " to ssh-agent");
+            }
+        }
+    }
+
+    /**
+     * Make ansible authenticate with the keys of the agent.
+     */
+    void apply(Map<String, String> env) {
+        env.put("SSH_AUTH_SOCK", socket);
+    }
+
+    /**
+     * @return the process id of the agent
+     */
+    String getPid() {
+        return pid;
+    }
+
+    /**
+     * @return the private directory of the agent socket and askpass script
+     */
+    FilePath getDirectory() {
+        return dir;
+    }
+
+    /**
+     * Kill the agent and remove its directory.
+     */
+    void stop() throws IOException, InterruptedException {
+        stop(launcher, environment, listener, dir, pid);
+    }
+
+    /**
+     * Kill an agent and remove its directory, also once the instance which started it is gone
+     * after a restart of the controller.
+     *
+     * @param dir the directory returned by {@link #getDirectory()}
+     * @param pid the process id returned by {@link #getPid()}
+     */
+    static void stop(
+            Launcher launcher, Map<String, String> environment, TaskListener listener, FilePath dir, String pid)
+            throws IOException, InterruptedException {
+        Map<String, String> env = new HashMap<>(environment);
+        env.put("SSH_AUTH_SOCK", dir.child("agent.sock").getRemote());
+        env.put("SSH_AGENT_PID", pid);
+        try {
+            int status = launcher.launch()
+                    .cmds("ssh-agent", "-k")
+                    .envs(env)
+                    .stdout(OutputStream.nullOutputStream())
+                    .stderr(listener.getLogger())
+                    .quiet(true)
+                    .join();
+            if (status != 0) {
+                listener.getLogger().println("[WARNING] ssh-agent " + pid + " not stopped");
+            }
+        } finally {
+            dir.deleteRecursive();
+        }
+    }
+
+    /**
+     * Create the private directory of the agent socket, with the askpass script reading the
+     * passphrase from the environment.
+     */
+    static final class CreateDirectory extends MasterToSlaveCallable<String, IOException> {
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        public String call() throws IOException {
+            Path tmp = Path.of(System.getProperty("java.io.tmpdir"));
+            boolean posix = tmp.getFileSystem().supportedFileAttributeViews().contains("posix");
+            FileAttribute<?>[] attributes = posix
+                    ? new FileAttribute<?>[] {
+                        PosixFilePermissions.asFileAttribute(PosixFilePermissions.fromString("rwx------"))
+                    }
+                    : new FileAttribute<?>[0];
+            Path dir = Files.createTempDirectory(tmp, "ansible-agent", attributes);
+            Path askPass = dir.resolve("askpass.sh");
+            Files.writeString(askPass, "#! /bin/sh\n/bin/echo \"$" + PASSPHRASE_VARIABLE + "\"\n");
+            if (posix) {
+                Files.setPosixFilePermissions(askPass, PosixFilePermissions.fromString("rwx------"));
+            }
+            return dir.toAbsolutePath().toString();
+        }
+    }
+}
@@ -0,0 +1,263 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jenkinsci.plugins.ansible;
+
+import com.cloudbees.jenkins.plugins.sshcredentials.SSHUserPrivateKey;
+import com.cloudbees.plugins.credentials.common.StandardUsernameCredentials;
+import com.cloudbees.plugins.credentials.common.UsernamePasswordCredentials;
+import hudson.FilePath;
+import hudson.model.Node;
+import hudson.remoting.VirtualChannel;
+import hudson.util.Secret;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.attribute.PosixFileAttributes;
+import java.nio.file.attribute.PosixFilePermission;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.EnumSet;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import jenkins.MasterToSlaveFileCallable;
+
+/**
+ * Shared SSH ControlPersist sockets of an agent, so that the SSH master connections opened by a
+ * build are reused by the next builds instead of negotiating new connections.
+ *
+ * <p>The sockets live in a private directory of the agent with one sub-directory per set of
+ * identities a build loads: the credentials, the keys added to the ssh-agent and the inventory,
+ * which may name its own keys. The sub-directory is named after a SHA-256 of these identities
+ * salted per agent, so that a connection authenticated with some identities is never reused with
+ * other ones. When the identities are unknown, e.g. without credentials, ssh picks the keys of
+ * the agent user and nothing is shared. The master connections exit on their own once idle for
+ * the configured delay.
+ */
+final class AnsibleSshControlPersist {
+
+    static final String DIRECTORY = "ansible-cp";
+
+    static final String SALT = "salt";
+
+    /**
+     * Longest directory path leaving room in the 104 bytes of a unix socket path for the name of
+     * the control socket ansible creates and the temporary suffix ssh appends to it.
+     */
+    static final int MAX_DIRECTORY_LENGTH = 70;
+
+    /**
+     * Length of the scope directory names: the digest is truncated to fit the socket paths.
+     */
+    static final int SCOPE_LENGTH = 16;
+
+    private static final Set<PosixFilePermission> PRIVATE = PosixFilePermissions.fromString("rwx------");
+
+    private final FilePath root;
+    private final int persistSeconds;
+
+    AnsibleSshControlPersist(FilePath root, int persistSeconds) {
+        this.root = root;
+        this.persistSeconds = persistSeconds;
+    }
+
+    /**
+     * @return the control sockets of the node, or {@code null} when the connection reuse is
+     * disabled or the node is offline
+     */
+    static AnsibleSshControlPersist forNode(Node node) {
+        AnsibleGlobalConfiguration config = AnsibleGlobalConfiguration.get();
+        if (config == null || !config.isSshConnectionReuse() || node == null) {
+            return null;
+        }
+        FilePath rootPath = node.getRootPath();
+        if (rootPath == null) {
+            return null;
+        }
+        FilePath root = rootPath.child(DIRECTORY);
+        if (root.getRemote().length() > MAX_DIRECTORY_LENGTH - SCOPE_LENGTH - 1) {
+            // the agent root is too deep for unix socket paths, the directory is checked to be
+            // owned by the agent user and private before use
+            root = fallbackRoot(rootPath.getChannel(), rootPath.getRemote());
+        }
+        return new AnsibleSshControlPersist(root, config.getSshControlPersist());
+    }
+
+    private static FilePath fallbackRoot(VirtualChannel channel, String agentRoot) {
+        return new FilePath(channel, "/tmp/" + DIRECTORY + "-" + hash(agentRoot.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    /**
+     * Point ansible at the control socket directory of the identities loaded by the command. The
+     * SSH arguments enabling the multiplexing are only set when not already defined by the build
+     * environment. Nothing is set when the identities are unknown or the directories are not
+     * private to the agent user.
+     *
+     * @param agentKeys the keys added to the ssh-agent of the command, besides the credentials
+     * @param inventory the identity of the inventory
+     */
+    void apply(
+            Map<String, String> environment,
+            StandardUsernameCredentials credentials,
+            List<SSHUserPrivateKey> agentKeys,
+            String inventory)
+            throws IOException, InterruptedException {
+        String identities = identities(credentials, agentKeys, inventory);
+        if (identities == null) {
+            return;
+        }
+        String salt = root.act(new PrepareRoot());
+        if (salt == null) {
+            return;
+        }
+        FilePath dir = root.child(scope(salt, identities));
+        if (!dir.act(new PrivateDirectory())) {
+            return;
+        }
+        environment.put("ANSIBLE_SSH_CONTROL_PATH_DIR", dir.getRemote());
+        environment.putIfAbsent(
+                "ANSIBLE_SSH_ARGS", "-C -o ControlMaster=auto -o ControlPersist=" + persistSeconds + "s");
+    }
+
+    /**
+     * @return the secrets and names of every identity the command loads, {@code null} when ssh may
+     * use identities unknown to the build
+     */
+    static String identities(
+            StandardUsernameCredentials credentials, List<SSHUserPrivateKey> agentKeys, String inventory) {
+        if (credentials == null && agentKeys.isEmpty()) {
+            return null;
+        }
+        StringBuilder sb = new StringBuilder();
+        if (credentials != null && !append(sb, credentials)) {
+            return null;
+        }
+        for (SSHUserPrivateKey key : agentKeys) {
+            append(sb, key);
+        }
+        return sb.append("inventory\0").append(inventory).toString();
+    }
+
+    private static boolean append(StringBuilder sb, StandardUsernameCredentials credentials) {
+        sb.append(credentials.getId()).append('\0').append(credentials.getUsername()).append('\0');
+        if (credentials instanceof SSHUserPrivateKey) {
+            SSHUserPrivateKey key = (SSHUserPrivateKey) credentials;
+            for (String privateKey : key.getPrivateKeys()) {
+                sb.append(privateKey).append('\0');
+            }
+            sb.append(Secret.toString(key.getPassphrase())).append('\0');
+            return true;
+        } else if (credentials instanceof UsernamePasswordCredentials) {
+            sb.append(Secret.toString(((UsernamePasswordCredentials) credentials).getPassword()))
+                    .append('\0');
+            return true;
+        }
+        return false;
+    }
+
+    static String scope(String salt, String identities) {
+        return hash((salt + '\0' + identities).getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static String hash(byte[] bytes) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(bytes);
+            return Base64.getUrlEncoder()
+                    .withoutPadding()
+                    .encodeToString(Arrays.copyOf(digest, SCOPE_LENGTH * 3 / 4));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * @return whether the directory is a directory, not a link, owned by the agent user and closed
+     * to the others, creating it private when missing
+     */
+    static boolean isPrivateDirectory(Path dir) throws IOException {
+        if (!dir.getFileSystem().supportedFileAttributeViews().contains("posix")) {
+            return false;
+        }
+        try {
+            Files.createDirectory(dir, PosixFilePermissions.asFileAttribute(PRIVATE));
+        } catch (FileAlreadyExistsException e) {
+            // checked below
+        }
+        PosixFileAttributes attributes =
+                Files.readAttributes(dir, PosixFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+        Set<PosixFilePermission> others = EnumSet.noneOf(PosixFilePermission.class);
+        others.addAll(attributes.permissions());
+        others.removeAll(EnumSet.of(
+                PosixFilePermission.OWNER_READ, PosixFilePermission.OWNER_WRITE, PosixFilePermission.OWNER_EXECUTE));
+        return attributes.isDirectory()
+                && others.isEmpty()
+                && attributes
+                        .owner()
+                        .equals(dir.getFileSystem()
+                                .getUserPrincipalLookupService()
+                                .lookupPrincipalByName(System.getProperty("user.name")));
+    }
+
+    /**
+     * Check the root directory and return the salt of the agent, written on first use.
+     */
+    static final class PrepareRoot extends MasterToSlaveFileCallable<String> {
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        public String invoke(File f, VirtualChannel channel) throws IOException {
+            Path root = f.toPath();
+            if (!isPrivateDirectory(root)) {
+                return null;
+            }
+            Path salt = root.resolve(SALT);
+            if (!Files.exists(salt, LinkOption.NOFOLLOW_LINKS)) {
+                byte[] random = new byte[32];
+                new SecureRandom().nextBytes(random);
+                Path tmp = Files.createTempFile(root, SALT, ".tmp");
+                try {
+                    Files.writeString(tmp, HexFormat.of().formatHex(random), StandardCharsets.UTF_8);
+                    // a link never replaces the salt of a concurrent build
+                    Files.createLink(salt, tmp);
+                } catch (FileAlreadyExistsException e) {
+                    // written by a concurrent build
+                } finally {
+                    Files.delete(tmp);
+                }
+            }
+            if (!Files.isRegularFile(salt, LinkOption.NOFOLLOW_LINKS)) {
+                return null;
+            }
+            return Files.readString(salt, StandardCharsets.UTF_8);
+        }
+    }
+
+    static final class PrivateDirectory extends MasterToSlaveFileCallable<Boolean> {
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        public Boolean invoke(File f, VirtualChannel channel) throws IOException {
+            return isPrivateDirectory(f.toPath());
+        }
+    }
+}
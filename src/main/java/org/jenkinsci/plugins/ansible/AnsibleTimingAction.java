@@ -0,0 +1,97 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jenkinsci.plugins.ansible;
+
+import hudson.model.Run;
+import java.io.IOException;
+import java.lang.ref.SoftReference;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import jenkins.model.RunAction2;
+
+/**
+ * Build action showing the duration of every task on every host of the playbooks run with
+ * structured output.
+ *
+ * <p>The timings are stored in the build directory and only loaded when the page is displayed. The
+ * loaded report is softly referenced so that it does not stay in memory with the build.
+ */
+public class AnsibleTimingAction implements RunAction2 {
+
+    private static final Logger LOGGER = Logger.getLogger(AnsibleTimingAction.class.getName());
+
+    private transient Run<?, ?> run;
+    private transient SoftReference<AnsibleTimingReport> report;
+
+    AnsibleTimingAction(Run<?, ?> run) {
+        this.run = run;
+    }
+
+    /**
+     * Add the timing action to the build unless already there.
+     */
+    static void attach(Run<?, ?> run) {
+        synchronized (run) {
+            AnsibleTimingAction action = run.getAction(AnsibleTimingAction.class);
+            if (action == null) {
+                run.addAction(new AnsibleTimingAction(run));
+            } else {
+                action.report = null;
+            }
+        }
+    }
+
+    @Override
+    public void onAttached(Run<?, ?> r) {
+        this.run = r;
+    }
+
+    @Override
+    public void onLoad(Run<?, ?> r) {
+        this.run = r;
+    }
+
+    public Run<?, ?> getRun() {
+        return run;
+    }
+
+    public synchronized AnsibleTimingReport getReport() {
+        AnsibleTimingReport loaded = report != null ? report.get() : null;
+        if (loaded == null) {
+            try {
+                loaded = AnsibleTimingReport.load(AnsibleTimingFile.list(run.getRootDir()));
+            } catch (IOException e) {
+                LOGGER.log(Level.WARNING, "Unable to load the ansible timings of " + run, e);
+                return null;
+            }
+            report = new SoftReference<>(loaded);
+        }
+        return loaded;
+    }
+
+    @Override
+    public String getIconFileName() {
+        return "clock.png";
+    }
+
+    @Override
+    public String getDisplayName() {
+        return "Ansible Timings";
+    }
+
+    @Override
+    public String getUrlName() {
+        return "ansibleTimings";
+    }
+}
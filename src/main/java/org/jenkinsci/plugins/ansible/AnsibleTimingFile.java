@@ -0,0 +1,231 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jenkinsci.plugins.ansible;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Binary file holding the task timings of one playbook invocation.
+ *
+ * <p>The file starts with a header (magic, version, playbook, start time) followed by records.
+ * Strings (play, task and host names) are written once and then referenced by index, numbers are
+ * written as variable length integers, so a timing entry usually takes less than 10 bytes.
+ */
+final class AnsibleTimingFile {
+
+    static final String DIRECTORY = "ansible-timings";
+
+    private static final int MAGIC = 0x414e5354; // "ANST"
+    private static final int VERSION = 1;
+    private static final int RECORD_STRING = 1;
+    private static final int RECORD_TIMING = 2;
+
+    private AnsibleTimingFile() {}
+
+    /**
+     * A timing entry: the duration of one task on one host.
+     */
+    static final class Entry {
+        final String play;
+        final String task;
+        final String host;
+        final AnsibleEvent.Status status;
+        /** offset of the task start on this host from the playbook start, in milliseconds */
+        final long start;
+
+        final long duration;
+
+        Entry(String play, String task, String host, AnsibleEvent.Status status, long start, long duration) {
+            this.play = play;
+            this.task = task;
+            this.host = host;
+            this.status = status;
+            this.start = start;
+            this.duration = duration;
+        }
+    }
+
+    interface Visitor {
+        void visitHeader(String playbook, long startTime) throws IOException;
+
+        void visitEntry(Entry entry) throws IOException;
+    }
+
+    /**
+     * @return the timing files of a build, in creation order
+     */
+    static List<File> list(File buildDir) {
+        List<File> files = new ArrayList<>();
+        File[] children = new File(buildDir, DIRECTORY).listFiles((dir, name) -> name.endsWith(".bin"));
+        if (children != null) {
+            for (File child : children) {
+                files.add(child);
+            }
+            files.sort((a, b) -> Integer.compare(index(a), index(b)));
+        }
+        return files;
+    }
+
+    /**
+     * @return a new file for the next invocation of a build
+     */
+    static synchronized File next(File buildDir) throws IOException {
+        File dir = new File(buildDir, DIRECTORY);
+        Files.createDirectories(dir.toPath());
+        List<File> existing = list(buildDir);
+        int next = existing.isEmpty() ? 1 : index(existing.get(existing.size() - 1)) + 1;
+        File file = new File(dir, next + ".bin");
+        Files.createFile(file.toPath());
+        return file;
+    }
+
+    private static int index(File file) {
+        String name = file.getName();
+        try {
+            return Integer.parseInt(name.substring(0, name.length() - ".bin".length()));
+        } catch (NumberFormatException e) {
+            return Integer.MAX_VALUE;
+        }
+    }
+
+    static void read(File file, Visitor visitor) throws IOException {
+        try (DataInputStream in =
+                new DataInputStream(new BufferedInputStream(Files.newInputStream(file.toPath())))) {
+            long startTime;
+            String playbook;
+            try {
+                if (in.readInt() != MAGIC || in.readUnsignedByte() != VERSION) {
+                    throw new IOException("Unsupported timing file " + file);
+                }
+                startTime = in.readLong();
+                playbook = in.readUTF();
+            } catch (EOFException e) {
+                // nothing recorded
+                return;
+            }
+            visitor.visitHeader(playbook, startTime);
+            List<String> strings = new ArrayList<>();
+            AnsibleEvent.Status[] statuses = AnsibleEvent.Status.values();
+            while (true) {
+                int type = in.read();
+                if (type < 0) {
+                    return;
+                }
+                try {
+                    if (type == RECORD_STRING) {
+                        strings.add(in.readUTF());
+                    } else if (type == RECORD_TIMING) {
+                        String play = strings.get(readVarInt(in));
+                        String task = strings.get(readVarInt(in));
+                        String host = strings.get(readVarInt(in));
+                        AnsibleEvent.Status status = statuses[in.readUnsignedByte()];
+                        long start = readVarLong(in);
+                        long duration = readVarLong(in);
+                        visitor.visitEntry(new Entry(play, task, host, status, start, duration));
+                    } else {
+                        throw new IOException("Corrupted timing file " + file);
+                    }
+                } catch (EOFException e) {
+                    // the build was interrupted while writing the last record
+                    return;
+                }
+            }
+        }
+    }
+
+    private static int readVarInt(DataInputStream in) throws IOException {
+        return (int) readVarLong(in);
+    }
+
+    private static long readVarLong(DataInputStream in) throws IOException {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            int b = in.readUnsignedByte();
+            value |= (long) (b & 0x7f) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IOException("Malformed variable length integer");
+    }
+
+    /**
+     * Appends entries to a timing file as they are recorded.
+     */
+    static final class Writer implements Closeable {
+        private final DataOutputStream out;
+        private final long startTime;
+        private final Map<String, Integer> strings = new HashMap<>();
+
+        Writer(File file, String playbook, long startTime) throws IOException {
+            this.out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(file.toPath())));
+            this.startTime = startTime;
+            out.writeInt(MAGIC);
+            out.writeByte(VERSION);
+            out.writeLong(startTime);
+            out.writeUTF(playbook != null ? playbook : "");
+        }
+
+        void write(String play, String task, String host, AnsibleEvent.Status status, long start, long end)
+                throws IOException {
+            int playId = intern(play);
+            int taskId = intern(task);
+            int hostId = intern(host);
+            out.writeByte(RECORD_TIMING);
+            writeVarLong(playId);
+            writeVarLong(taskId);
+            writeVarLong(hostId);
+            out.writeByte(status.ordinal());
+            writeVarLong(Math.max(0, start - startTime));
+            writeVarLong(Math.max(0, end - start));
+        }
+
+        private int intern(String s) throws IOException {
+            String value = s != null ? s : "";
+            Integer id = strings.get(value);
+            if (id == null) {
+                id = strings.size();
+                strings.put(value, id);
+                out.writeByte(RECORD_STRING);
+                out.writeUTF(value.length() > 8192 ? value.substring(0, 8192) : value);
+            }
+            return id;
+        }
+
+        private void writeVarLong(long value) throws IOException {
+            while ((value & ~0x7fL) != 0) {
+                out.writeByte((int) ((value & 0x7f) | 0x80));
+                value >>>= 7;
+            }
+            out.writeByte((int) value);
+        }
+
+        @Override
+        public void close() throws IOException {
+            out.close();
+        }
+    }
+}
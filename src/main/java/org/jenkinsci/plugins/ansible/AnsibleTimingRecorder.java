@@ -0,0 +1,108 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jenkinsci.plugins.ansible;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Records the duration of every task on every host from the structured ansible events and streams
+ * the entries to an {@link AnsibleTimingFile}.
+ *
+ * <p>A host result is timed from the {@code v2_runner_on_start} event of that host when the
+ * callback emits it, from the start of the task otherwise.
+ */
+class AnsibleTimingRecorder implements AnsibleEventHandler {
+
+    private final File file;
+    private final String playbook;
+    private long startTime = -1;
+    private final Map<String, Long> taskStarts = new HashMap<>();
+    private final Map<String, Long> hostStarts = new HashMap<>();
+    private AnsibleTimingFile.Writer writer;
+    private int entries;
+
+    AnsibleTimingRecorder(File file, String playbook) {
+        this.file = file;
+        this.playbook = playbook;
+    }
+
+    File getFile() {
+        return file;
+    }
+
+    /**
+     * @return the number of timing entries recorded
+     */
+    int getEntries() {
+        return entries;
+    }
+
+    @Override
+    public void onEvent(AnsibleEvent event) throws IOException {
+        if (startTime < 0) {
+            // offsets are computed from the ansible clock, not the controller one
+            startTime = event.getTimestamp();
+        }
+        switch (event.getType()) {
+            case PLAY_START:
+                taskStarts.clear();
+                hostStarts.clear();
+                break;
+            case TASK_START:
+                taskStarts.put(event.getTask(), event.getTimestamp());
+                break;
+            case HOST_START:
+                hostStarts.put(event.getHost(), event.getTimestamp());
+                break;
+            case HOST_RESULT:
+                long start = getStart(event);
+                if (writer == null) {
+                    writer = new AnsibleTimingFile.Writer(file, playbook, startTime);
+                }
+                writer.write(
+                        event.getPlay(),
+                        event.getTask(),
+                        event.getHost(),
+                        event.getStatus(),
+                        start,
+                        Math.max(start, event.getTimestamp()));
+                entries++;
+                break;
+            default:
+                break;
+        }
+    }
+
+    private long getStart(AnsibleEvent event) {
+        Long taskStart = taskStarts.get(event.getTask());
+        Long hostStart = hostStarts.remove(event.getHost());
+        if (hostStart != null && (taskStart == null || hostStart >= taskStart)) {
+            return hostStart;
+        }
+        return taskStart != null ? taskStart : event.getTimestamp();
+    }
+
+    @Override
+    public void onClose() throws IOException {
+        if (writer != null) {
+            writer.close();
+        } else {
+            Files.deleteIfExists(file.toPath());
+        }
+    }
+}
@@ -0,0 +1,332 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jenkinsci.plugins.ansible;
+
+import hudson.Util;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+
+/**
+ * Task and host timings of one playbook invocation or of a whole build, aggregated while reading
+ * the {@link AnsibleTimingFile}s so that individual entries are never all kept in memory.
+ */
+public class AnsibleTimingReport {
+
+    static final int TOP_ENTRIES = 50;
+
+    private final List<TaskTiming> tasks;
+    private final List<HostTiming> hosts;
+    private final List<EntryTiming> slowest;
+    private final long entries;
+
+    private AnsibleTimingReport(
+            List<TaskTiming> tasks, List<HostTiming> hosts, List<EntryTiming> slowest, long entries) {
+        this.tasks = tasks;
+        this.hosts = hosts;
+        this.slowest = slowest;
+        this.entries = entries;
+    }
+
+    /**
+     * @return the tasks, longest wall clock duration first
+     */
+    public List<TaskTiming> getTasks() {
+        return tasks;
+    }
+
+    /**
+     * @return the hosts which spent the most time running tasks
+     */
+    public List<HostTiming> getHosts() {
+        return hosts;
+    }
+
+    /**
+     * @return the slowest task executions on a single host
+     */
+    public List<EntryTiming> getSlowest() {
+        return slowest;
+    }
+
+    public long getEntries() {
+        return entries;
+    }
+
+    static AnsibleTimingReport load(List<File> files) throws IOException {
+        Loader loader = new Loader();
+        for (File file : files) {
+            AnsibleTimingFile.read(file, loader);
+        }
+        return loader.build();
+    }
+
+    static String format(long duration) {
+        return duration < 1000 ? duration + " ms" : Util.getTimeSpanString(duration);
+    }
+
+    public static class TaskTiming {
+        private final String playbook;
+        private final String play;
+        private final String task;
+        private long first = Long.MAX_VALUE;
+        private long last;
+        private long total;
+        private long max;
+        private String maxHost;
+        private int failures;
+        private long p50;
+        private long p95;
+        private long[] durations = new long[16];
+        private int count;
+
+        TaskTiming(String playbook, String play, String task) {
+            this.playbook = playbook;
+            this.play = play;
+            this.task = task;
+        }
+
+        void add(AnsibleTimingFile.Entry entry, long offset) {
+            first = Math.min(first, offset + entry.start);
+            last = Math.max(last, offset + entry.start + entry.duration);
+            total += entry.duration;
+            if (entry.duration >= max) {
+                max = entry.duration;
+                maxHost = entry.host;
+            }
+            if (entry.status == AnsibleEvent.Status.FAILED || entry.status == AnsibleEvent.Status.UNREACHABLE) {
+                failures++;
+            }
+            if (count == durations.length) {
+                durations = Arrays.copyOf(durations, count * 2);
+            }
+            durations[count++] = entry.duration;
+        }
+
+        void complete() {
+            Arrays.sort(durations, 0, count);
+            p50 = percentile(durations, count, 50);
+            p95 = percentile(durations, count, 95);
+            durations = null;
+        }
+
+        public String getPlaybook() {
+            return playbook;
+        }
+
+        public String getPlay() {
+            return play;
+        }
+
+        public String getTask() {
+            return task;
+        }
+
+        public int getHostCount() {
+            return count;
+        }
+
+        public int getFailures() {
+            return failures;
+        }
+
+        /**
+         * @return the time between the first host starting the task and the last one finishing it
+         */
+        public long getWallTime() {
+            return Math.max(0, last - first);
+        }
+
+        public long getTotalTime() {
+            return total;
+        }
+
+        public long getMaxTime() {
+            return max;
+        }
+
+        public String getMaxHost() {
+            return maxHost;
+        }
+
+        public long getP50() {
+            return p50;
+        }
+
+        public long getP95() {
+            return p95;
+        }
+
+        public String getWallTimeString() {
+            return format(getWallTime());
+        }
+
+        public String getTotalTimeString() {
+            return format(total);
+        }
+
+        public String getMaxTimeString() {
+            return format(max);
+        }
+
+        public String getP50String() {
+            return format(p50);
+        }
+
+        public String getP95String() {
+            return format(p95);
+        }
+    }
+
+    public static class HostTiming {
+        private final String host;
+        private long total;
+        private int tasks;
+        private int failures;
+
+        HostTiming(String host) {
+            this.host = host;
+        }
+
+        public String getHost() {
+            return host;
+        }
+
+        public long getTotalTime() {
+            return total;
+        }
+
+        public String getTotalTimeString() {
+            return format(total);
+        }
+
+        public int getTaskCount() {
+            return tasks;
+        }
+
+        public int getFailures() {
+            return failures;
+        }
+    }
+
+    public static class EntryTiming {
+        private final String task;
+        private final String host;
+        private final AnsibleEvent.Status status;
+        private final long duration;
+
+        EntryTiming(String task, String host, AnsibleEvent.Status status, long duration) {
+            this.task = task;
+            this.host = host;
+            this.status = status;
+            this.duration = duration;
+        }
+
+        public String getTask() {
+            return task;
+        }
+
+        public String getHost() {
+            return host;
+        }
+
+        public AnsibleEvent.Status getStatus() {
+            return status;
+        }
+
+        public long getDuration() {
+            return duration;
+        }
+
+        public String getDurationString() {
+            return format(duration);
+        }
+    }
+
+    static long percentile(long[] sorted, int count, int percentile) {
+        if (count == 0) {
+            return 0;
+        }
+        int index = (int) Math.ceil(percentile / 100.0 * count) - 1;
+        return sorted[Math.max(0, Math.min(count - 1, index))];
+    }
+
+    private static final class Loader implements AnsibleTimingFile.Visitor {
+        private final Map<String, TaskTiming> tasks = new LinkedHashMap<>();
+        private final Map<String, HostTiming> hosts = new HashMap<>();
+        private final PriorityQueue<EntryTiming> slowest =
+                new PriorityQueue<>(Comparator.comparingLong(EntryTiming::getDuration));
+        private String playbook;
+        private long startTime;
+        private long firstStartTime = -1;
+        private long entries;
+
+        @Override
+        public void visitHeader(String playbook, long startTime) {
+            this.playbook = playbook;
+            this.startTime = startTime;
+            if (firstStartTime < 0) {
+                firstStartTime = startTime;
+            }
+        }
+
+        @Override
+        public void visitEntry(AnsibleTimingFile.Entry entry) {
+            entries++;
+            String key = playbook + '\u0000' + entry.play + '\u0000' + entry.task;
+            tasks.computeIfAbsent(key, k -> new TaskTiming(playbook, entry.play, entry.task))
+                    .add(entry, startTime - firstStartTime);
+            HostTiming host = hosts.computeIfAbsent(entry.host, HostTiming::new);
+            host.total += entry.duration;
+            host.tasks++;
+            if (entry.status == AnsibleEvent.Status.FAILED || entry.status == AnsibleEvent.Status.UNREACHABLE) {
+                host.failures++;
+            }
+            if (slowest.size() < TOP_ENTRIES || slowest.peek().getDuration() < entry.duration) {
+                slowest.add(new EntryTiming(entry.task, entry.host, entry.status, entry.duration));
+                if (slowest.size() > TOP_ENTRIES) {
+                    slowest.poll();
+                }
+            }
+        }
+
+        AnsibleTimingReport build() {
+            List<TaskTiming> taskList = new ArrayList<>(tasks.values());
+            for (TaskTiming task : taskList) {
+                task.complete();
+            }
+            taskList.sort(Comparator.comparingLong(TaskTiming::getWallTime).reversed());
+            List<HostTiming> hostList = new ArrayList<>(hosts.values());
+            hostList.sort(Comparator.comparingLong(HostTiming::getTotalTime).reversed());
+            if (hostList.size() > TOP_ENTRIES) {
+                hostList = new ArrayList<>(hostList.subList(0, TOP_ENTRIES));
+            }
+            List<EntryTiming> slowestList = new ArrayList<>(slowest);
+            slowestList.sort(Comparator.comparingLong(EntryTiming::getDuration).reversed());
+            return new AnsibleTimingReport(
+                    Collections.unmodifiableList(taskList),
+                    Collections.unmodifiableList(hostList),
+                    Collections.unmodifiableList(slowestList),
+                    entries);
+        }
+    }
+}
@@ -0,0 +1,173 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jenkinsci.plugins.ansible;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.TreeSet;
+
+/**
+ * Rolling summary of the task durations of a job, stored in the job directory.
+ *
+ * <p>Each playbook invocation appends one row per task with the median and 95th percentile of its
+ * duration, so the trend never needs to read the timing files of older builds. Once the summary
+ * holds more builds than the trend shows, it is rewritten with the rows of the most recent builds
+ * only, so it stays as small as the trend.
+ */
+final class AnsibleTimingSummary {
+
+    static final String FILE = "ansible-timings-summary.bin";
+
+    /** Serializes the appends and rewrites of the summary of a job. */
+    private static final KeyedLocks<File> LOCKS = new KeyedLocks<>();
+
+    private AnsibleTimingSummary() {}
+
+    static final class Row {
+        final int build;
+        final String playbook;
+        final String play;
+        final String task;
+        final int hosts;
+        final long p50;
+        final long p95;
+
+        Row(int build, String playbook, String play, String task, int hosts, long p50, long p95) {
+            this.build = build;
+            this.playbook = playbook;
+            this.play = play;
+            this.task = task;
+            this.hosts = hosts;
+            this.p50 = p50;
+            this.p95 = p95;
+        }
+
+        String getKey() {
+            return playbook + '\u0000' + play + '\u0000' + task;
+        }
+    }
+
+    static void append(File jobDir, int build, Collection<AnsibleTimingReport.TaskTiming> tasks, int keep)
+            throws IOException {
+        List<Row> added = new ArrayList<>();
+        for (AnsibleTimingReport.TaskTiming task : tasks) {
+            added.add(new Row(
+                    build,
+                    task.getPlaybook(),
+                    task.getPlay(),
+                    task.getTask(),
+                    task.getHostCount(),
+                    task.getP50(),
+                    task.getP95()));
+        }
+        File file = new File(jobDir, FILE);
+        try (KeyedLocks.Unlock unlock = LOCKS.lock(file.getAbsoluteFile())) {
+            List<Row> rows = load(jobDir);
+            rows.addAll(added);
+            List<Row> kept = lastBuilds(rows, keep);
+            if (kept.size() < rows.size()) {
+                rewrite(file, kept);
+                return;
+            }
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(
+                    file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.APPEND)))) {
+                for (Row row : added) {
+                    write(out, row);
+                }
+            }
+        }
+    }
+
+    static List<Row> load(File jobDir) throws IOException {
+        File file = new File(jobDir, FILE);
+        List<Row> rows = new ArrayList<>();
+        if (!file.exists()) {
+            return rows;
+        }
+        try (DataInputStream in =
+                new DataInputStream(new BufferedInputStream(Files.newInputStream(file.toPath())))) {
+            while (true) {
+                try {
+                    rows.add(new Row(
+                            in.readInt(),
+                            in.readUTF(),
+                            in.readUTF(),
+                            in.readUTF(),
+                            in.readInt(),
+                            in.readLong(),
+                            in.readLong()));
+                } catch (EOFException e) {
+                    return rows;
+                }
+            }
+        }
+    }
+
+    /**
+     * @return the rows of the given number of most recent builds
+     */
+    static List<Row> lastBuilds(List<Row> rows, int builds) {
+        TreeSet<Integer> numbers = new TreeSet<>();
+        for (Row row : rows) {
+            numbers.add(row.build);
+            if (numbers.size() > builds) {
+                numbers.pollFirst();
+            }
+        }
+        List<Row> kept = new ArrayList<>();
+        for (Row row : rows) {
+            if (numbers.contains(row.build)) {
+                kept.add(row);
+            }
+        }
+        return kept;
+    }
+
+    private static void rewrite(File file, List<Row> rows) throws IOException {
+        File tmp = new File(file.getParentFile(), FILE + ".tmp");
+        try (DataOutputStream out =
+                new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp.toPath())))) {
+            for (Row row : rows) {
+                write(out, row);
+            }
+        }
+        Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private static void write(DataOutputStream out, Row row) throws IOException {
+        out.writeInt(row.build);
+        writeString(out, row.playbook);
+        writeString(out, row.play);
+        writeString(out, row.task);
+        out.writeInt(row.hosts);
+        out.writeLong(row.p50);
+        out.writeLong(row.p95);
+    }
+
+    private static void writeString(DataOutputStream out, String s) throws IOException {
+        String value = s != null ? s : "";
+        out.writeUTF(value.length() > 8192 ? value.substring(0, 8192) : value);
+    }
+}
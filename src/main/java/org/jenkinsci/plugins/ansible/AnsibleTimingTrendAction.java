@@ -0,0 +1,225 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jenkinsci.plugins.ansible;
+
+import edu.umd.cs.findbugs.annotations.NonNull;
+import hudson.Extension;
+import hudson.model.Action;
+import hudson.model.Job;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import jenkins.model.TransientActionFactory;
+
+/**
+ * Job action showing how the task durations evolved over the last builds and which tasks became
+ * slower in the last build.
+ *
+ * <p>The trend is computed from the rolling summary kept in the job directory, old build
+ * directories are never read.
+ */
+public class AnsibleTimingTrendAction implements Action {
+
+    private static final Logger LOGGER = Logger.getLogger(AnsibleTimingTrendAction.class.getName());
+
+    /** Tasks faster than this are too noisy to be reported as regressions. */
+    static final long MIN_DURATION = 1000;
+
+    private final Job<?, ?> job;
+
+    AnsibleTimingTrendAction(Job<?, ?> job) {
+        this.job = job;
+    }
+
+    public Job<?, ?> getJob() {
+        return job;
+    }
+
+    public int getThreshold() {
+        return AnsibleGlobalConfiguration.get().getRegressionThreshold();
+    }
+
+    public List<TaskTrend> getTasks() {
+        AnsibleGlobalConfiguration config = AnsibleGlobalConfiguration.get();
+        try {
+            return compute(
+                    AnsibleTimingSummary.load(job.getRootDir()),
+                    config.getTrendBuilds(),
+                    config.getRegressionThreshold());
+        } catch (IOException e) {
+            LOGGER.log(Level.WARNING, "Unable to load the ansible timing trend of " + job, e);
+            return Collections.emptyList();
+        }
+    }
+
+    /**
+     * Compare the last build of every task with the median of its previous builds.
+     *
+     * @return the task trends, regressions first
+     */
+    static List<TaskTrend> compute(List<AnsibleTimingSummary.Row> rows, int builds, int threshold) {
+        Map<String, Map<Integer, AnsibleTimingSummary.Row>> byTask = new LinkedHashMap<>();
+        for (AnsibleTimingSummary.Row row : AnsibleTimingSummary.lastBuilds(rows, builds)) {
+            // a task run several times in the same build keeps its last run
+            byTask.computeIfAbsent(row.getKey(), k -> new LinkedHashMap<>()).put(row.build, row);
+        }
+        List<TaskTrend> trends = new ArrayList<>();
+        for (Map<Integer, AnsibleTimingSummary.Row> history : byTask.values()) {
+            trends.add(new TaskTrend(history.values(), threshold));
+        }
+        trends.sort(Comparator.comparing(TaskTrend::isRegression)
+                .reversed()
+                .thenComparing(Comparator.comparingLong(TaskTrend::getP95).reversed()));
+        return trends;
+    }
+
+    @Override
+    public String getIconFileName() {
+        return "clock.png";
+    }
+
+    @Override
+    public String getDisplayName() {
+        return "Ansible Timing Trend";
+    }
+
+    @Override
+    public String getUrlName() {
+        return "ansibleTimingTrend";
+    }
+
+    public static class TaskTrend {
+        private final AnsibleTimingSummary.Row last;
+        private final int builds;
+        private final long baselineP50;
+        private final long baselineP95;
+        private final boolean p50Regression;
+        private final boolean p95Regression;
+
+        TaskTrend(Collection<AnsibleTimingSummary.Row> history, int threshold) {
+            List<AnsibleTimingSummary.Row> sorted = new ArrayList<>(history);
+            sorted.sort(Comparator.comparingInt(r -> r.build));
+            this.last = sorted.get(sorted.size() - 1);
+            this.builds = sorted.size();
+            List<AnsibleTimingSummary.Row> previous = sorted.subList(0, sorted.size() - 1);
+            this.baselineP50 = median(previous.stream().mapToLong(r -> r.p50).toArray());
+            this.baselineP95 = median(previous.stream().mapToLong(r -> r.p95).toArray());
+            this.p50Regression = exceeds(last.p50, baselineP50, threshold);
+            this.p95Regression = exceeds(last.p95, baselineP95, threshold);
+        }
+
+        private static boolean exceeds(long value, long baseline, int threshold) {
+            return baseline > 0 && value >= MIN_DURATION && value * 100 > baseline * (100L + threshold);
+        }
+
+        private static long median(long[] values) {
+            if (values.length == 0) {
+                return 0;
+            }
+            Arrays.sort(values);
+            return AnsibleTimingReport.percentile(values, values.length, 50);
+        }
+
+        public String getPlaybook() {
+            return last.playbook;
+        }
+
+        public String getPlay() {
+            return last.play;
+        }
+
+        public String getTask() {
+            return last.task;
+        }
+
+        public int getBuilds() {
+            return builds;
+        }
+
+        public int getLastBuild() {
+            return last.build;
+        }
+
+        public long getP50() {
+            return last.p50;
+        }
+
+        public long getP95() {
+            return last.p95;
+        }
+
+        public long getBaselineP50() {
+            return baselineP50;
+        }
+
+        public long getBaselineP95() {
+            return baselineP95;
+        }
+
+        public boolean isP50Regression() {
+            return p50Regression;
+        }
+
+        public boolean isP95Regression() {
+            return p95Regression;
+        }
+
+        public boolean isRegression() {
+            return p50Regression || p95Regression;
+        }
+
+        public String getP50String() {
+            return AnsibleTimingReport.format(last.p50);
+        }
+
+        public String getP95String() {
+            return AnsibleTimingReport.format(last.p95);
+        }
+
+        public String getBaselineP50String() {
+            return builds > 1 ? AnsibleTimingReport.format(baselineP50) : "-";
+        }
+
+        public String getBaselineP95String() {
+            return builds > 1 ? AnsibleTimingReport.format(baselineP95) : "-";
+        }
+    }
+
+    @Extension
+    public static class Factory extends TransientActionFactory<Job> {
+
+        @Override
+        public Class<Job> type() {
+            return Job.class;
+        }
+
+        @NonNull
+        @Override
+        public Collection<? extends Action> createFor(@NonNull Job target) {
+            if (!new File(target.getRootDir(), AnsibleTimingSummary.FILE).exists()) {
+                return Collections.emptyList();
+            }
+            return Collections.singletonList(new AnsibleTimingTrendAction(target));
+        }
+    }
+}
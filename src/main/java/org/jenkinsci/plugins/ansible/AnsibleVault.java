@@ -0,0 +1,255 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jenkinsci.plugins.ansible;
+
+import hudson.AbortException;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.Arrays;
+import javax.crypto.Cipher;
+import javax.crypto.Mac;
+import javax.crypto.spec.IvParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+
+/**
+ * Implementation of the {@code $ANSIBLE_VAULT;1.1;AES256} and {@code 1.2} formats, byte compatible
+ * with ansible-vault.
+ *
+ * <p>The keys are derived from the password and a random salt with PBKDF2-HMAC-SHA256, the PKCS#7
+ * padded plaintext is encrypted with AES-256 in CTR mode and authenticated with HMAC-SHA256. The
+ * salt, the HMAC and the ciphertext are hexlified, joined by newlines, hexlified again and cut into
+ * lines of 80 characters under the header.
+ */
+public final class AnsibleVault {
+
+    public static final String HEADER = "$ANSIBLE_VAULT";
+
+    private static final String CIPHER = "AES256";
+    private static final int SALT_LENGTH = 32;
+    private static final int KEY_LENGTH = 32;
+    private static final int IV_LENGTH = 16;
+    private static final int BLOCK_SIZE = 16;
+    private static final int ITERATIONS = 10000;
+    private static final int LINE_LENGTH = 80;
+    private static final int YAML_INDENT = 10;
+
+    private static final SecureRandom RANDOM = new SecureRandom();
+
+    private AnsibleVault() {}
+
+    /**
+     * Encrypt data, with the 1.2 format if a vault id other than {@code default} is given.
+     *
+     * @return the vault text, ending with a newline
+     */
+    public static String encrypt(byte[] plaintext, byte[] password, String vaultId) throws AbortException {
+        byte[] salt = new byte[SALT_LENGTH];
+        RANDOM.nextBytes(salt);
+        return encrypt(plaintext, password, vaultId, salt);
+    }
+
+    static String encrypt(byte[] plaintext, byte[] password, String vaultId, byte[] salt) throws AbortException {
+        try {
+            byte[] keys = deriveKeys(password, salt);
+            int pad = BLOCK_SIZE - plaintext.length % BLOCK_SIZE;
+            byte[] padded = Arrays.copyOf(plaintext, plaintext.length + pad);
+            Arrays.fill(padded, plaintext.length, padded.length, (byte) pad);
+            byte[] ciphertext = cipher(Cipher.ENCRYPT_MODE, keys).doFinal(padded);
+            byte[] hmac = hmac(keys, ciphertext);
+            String body = hexlify(salt) + "\n" + hexlify(hmac) + "\n" + hexlify(ciphertext);
+            String hex = hexlify(body.getBytes(StandardCharsets.US_ASCII));
+
+            StringBuilder sb = new StringBuilder(HEADER);
+            if (vaultId != null && !vaultId.isEmpty() && !"default".equals(vaultId)) {
+                sb.append(";1.2;").append(CIPHER).append(';').append(vaultId);
+            } else {
+                sb.append(";1.1;").append(CIPHER);
+            }
+            sb.append('\n');
+            for (int i = 0; i < hex.length(); i += LINE_LENGTH) {
+                sb.append(hex, i, Math.min(hex.length(), i + LINE_LENGTH)).append('\n');
+            }
+            return sb.toString();
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("AES-256 CTR and HMAC-SHA256 are not available", e);
+        }
+    }
+
+    /**
+     * Decrypt a vault text of version 1.1 or 1.2. The lines may be indented.
+     *
+     * @throws AbortException if the text is not a vault, or the password does not match
+     */
+    public static byte[] decrypt(String vaulttext, byte[] password) throws AbortException {
+        String[] lines = vaulttext.trim().split("\\s*\n\\s*");
+        String[] header = lines[0].split(";");
+        if (!HEADER.equals(header[0]) || header.length < 3) {
+            throw new AbortException("input is not vault encrypted data");
+        }
+        if (!"1.1".equals(header[1]) && !"1.2".equals(header[1])) {
+            throw new AbortException("Unsupported vault format version: " + header[1]);
+        }
+        if (!CIPHER.equals(header[2].trim())) {
+            throw new AbortException("Unsupported vault cipher: " + header[2]);
+        }
+        StringBuilder hex = new StringBuilder();
+        for (int i = 1; i < lines.length; i++) {
+            hex.append(lines[i]);
+        }
+        String[] body = new String(unhexlify(hex.toString()), StandardCharsets.US_ASCII).split("\n");
+        if (body.length != 3) {
+            throw new AbortException("Vault format unhexlify error: the vault data is truncated");
+        }
+        byte[] salt = unhexlify(body[0]);
+        byte[] expected = unhexlify(body[1]);
+        byte[] ciphertext = unhexlify(body[2]);
+        try {
+            byte[] keys = deriveKeys(password, salt);
+            if (!MessageDigest.isEqual(expected, hmac(keys, ciphertext))) {
+                throw new AbortException("Decryption failed (no vault secrets were found that could decrypt)");
+            }
+            byte[] padded = cipher(Cipher.DECRYPT_MODE, keys).doFinal(ciphertext);
+            int pad = padded.length > 0 ? padded[padded.length - 1] & 0xff : 0;
+            if (pad < 1 || pad > BLOCK_SIZE || pad > padded.length) {
+                throw new AbortException("Decryption failed: invalid padding");
+            }
+            for (int i = padded.length - pad; i < padded.length; i++) {
+                if ((padded[i] & 0xff) != pad) {
+                    throw new AbortException("Decryption failed: invalid padding");
+                }
+            }
+            return Arrays.copyOf(padded, padded.length - pad);
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("AES-256 CTR and HMAC-SHA256 are not available", e);
+        }
+    }
+
+    /**
+     * @return whether the data starts with the vault header
+     */
+    public static boolean isEncrypted(byte[] data) {
+        byte[] header = HEADER.getBytes(StandardCharsets.US_ASCII);
+        int start = 0;
+        while (start < data.length && Character.isWhitespace(data[start])) {
+            start++;
+        }
+        return data.length - start >= header.length
+                && Arrays.equals(data, start, start + header.length, header, 0, header.length);
+    }
+
+    /**
+     * Format a vault text as the YAML block printed by {@code ansible-vault encrypt_string}.
+     *
+     * @param name the name of the variable, {@code null} for none
+     */
+    public static String toYaml(String vaulttext, String name) {
+        StringBuilder sb = new StringBuilder();
+        if (name != null && !name.isEmpty()) {
+            sb.append(name).append(": ");
+        }
+        sb.append("!vault |");
+        String indent = " ".repeat(YAML_INDENT);
+        for (String line : vaulttext.split("\n")) {
+            sb.append('\n').append(indent).append(line);
+        }
+        return sb.toString();
+    }
+
+    /**
+     * @return the password read from a vault password file, without its surrounding whitespace
+     *     as ansible strips it
+     */
+    public static byte[] password(byte[] content) throws AbortException {
+        int start = 0;
+        int end = content.length;
+        while (start < end && Character.isWhitespace(content[start])) {
+            start++;
+        }
+        while (end > start && Character.isWhitespace(content[end - 1])) {
+            end--;
+        }
+        if (start == end) {
+            throw new AbortException("Invalid vault password was provided: the password is empty");
+        }
+        return Arrays.copyOfRange(content, start, end);
+    }
+
+    /**
+     * @return the AES key, the HMAC key and the initial counter
+     */
+    private static byte[] deriveKeys(byte[] password, byte[] salt) throws GeneralSecurityException {
+        // PBKDF2 is computed on the raw bytes of the password, as the JCE key factory encodes chars
+        Mac mac = Mac.getInstance("HmacSHA256");
+        mac.init(new SecretKeySpec(password, "HmacSHA256"));
+        int length = 2 * KEY_LENGTH + IV_LENGTH;
+        int hashLength = mac.getMacLength();
+        byte[] keys = new byte[length];
+        for (int block = 1; block * hashLength - hashLength < length; block++) {
+            mac.update(salt);
+            mac.update(new byte[] {(byte) (block >>> 24), (byte) (block >>> 16), (byte) (block >>> 8), (byte) block});
+            byte[] u = mac.doFinal();
+            byte[] t = u.clone();
+            for (int i = 1; i < ITERATIONS; i++) {
+                u = mac.doFinal(u);
+                for (int j = 0; j < t.length; j++) {
+                    t[j] ^= u[j];
+                }
+            }
+            int offset = (block - 1) * hashLength;
+            System.arraycopy(t, 0, keys, offset, Math.min(hashLength, length - offset));
+        }
+        return keys;
+    }
+
+    private static Cipher cipher(int mode, byte[] keys) throws GeneralSecurityException {
+        Cipher cipher = Cipher.getInstance("AES/CTR/NoPadding");
+        cipher.init(
+                mode,
+                new SecretKeySpec(keys, 0, KEY_LENGTH, "AES"),
+                new IvParameterSpec(keys, 2 * KEY_LENGTH, IV_LENGTH));
+        return cipher;
+    }
+
+    private static byte[] hmac(byte[] keys, byte[] ciphertext) throws GeneralSecurityException {
+        Mac mac = Mac.getInstance("HmacSHA256");
+        mac.init(new SecretKeySpec(keys, KEY_LENGTH, KEY_LENGTH, "HmacSHA256"));
+        return mac.doFinal(ciphertext);
+    }
+
+    private static String hexlify(byte[] data) {
+        StringBuilder sb = new StringBuilder(data.length * 2);
+        for (byte b : data) {
+            sb.append(Character.forDigit((b >> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+        }
+        return sb.toString();
+    }
+
+    private static byte[] unhexlify(String hex) throws AbortException {
+        if (hex.length() % 2 != 0) {
+            throw new AbortException("Vault format unhexlify error: odd-length string");
+        }
+        byte[] data = new byte[hex.length() / 2];
+        for (int i = 0; i < data.length; i++) {
+            int high = Character.digit(hex.charAt(2 * i), 16);
+            int low = Character.digit(hex.charAt(2 * i + 1), 16);
+            if (high < 0 || low < 0) {
+                throw new AbortException("Vault format unhexlify error: non-hexadecimal digit found");
+            }
+            data[i] = (byte) (high << 4 | low);
+        }
+        return data;
+    }
+}
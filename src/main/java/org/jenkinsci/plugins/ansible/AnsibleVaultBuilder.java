@@ -69,6 +69,12 @@ public class AnsibleVaultBuilder extends Builder implements SimpleBuildStep {
     @SuppressFBWarnings(value = "PA_PUBLIC_PRIMITIVE_ATTRIBUTE", justification = "Preserve API compatibility.")
     public String output = null;
 
+    @SuppressFBWarnings(value = "PA_PUBLIC_PRIMITIVE_ATTRIBUTE", justification = "Preserve API compatibility.")
+    public String inputs = null;
+
+    @SuppressFBWarnings(value = "PA_PUBLIC_PRIMITIVE_ATTRIBUTE", justification = "Preserve API compatibility.")
+    public boolean builtinEngine = false;
+
     @DataBoundConstructor
     public AnsibleVaultBuilder() {}
 
@@ -112,6 +118,20 @@ public class AnsibleVaultBuilder extends Builder implements SimpleBuildStep {
         this.output = output;
     }
 
+    @DataBoundSetter
+    public void setInputs(String inputs) {
+        this.inputs = inputs;
+    }
+
+    /**
+     * Run encrypt_string, encrypt, decrypt and rekey in the JVM instead of launching the
+     * ansible-vault command of the installation.
+     */
+    @DataBoundSetter
+    public void setBuiltinEngine(boolean builtinEngine) {
+        this.builtinEngine = builtinEngine;
+    }
+
     @Override
     public void perform(
             @NonNull Run<?, ?> run, @NonNull FilePath ws, @NonNull Launcher launcher, @NonNull TaskListener listener)
@@ -133,36 +153,33 @@ public class AnsibleVaultBuilder extends Builder implements SimpleBuildStep {
             EnvVars envVars)
             throws InterruptedException, IOException {
         try {
-            CLIRunner runner = new CLIRunner(run, ws, launcher, listener);
-            Computer computer = node.toComputer();
-            String exe = AnsibleInstallation.getExecutable(
-                    ansibleName, AnsibleCommand.ANSIBLE_VAULT, node, listener, envVars);
-            AnsibleVaultInvocation invocation = new AnsibleVaultInvocation(exe, run, ws, listener, envVars);
-            invocation.setAction(action);
-            invocation.setVaultCredentials(
-                    StringUtils.isNotBlank(vaultCredentialsId)
-                            ? CredentialsProvider.findCredentialById(
-                                    run.getEnvironment(listener).expand(vaultCredentialsId),
-                                    StandardCredentials.class,
-                                    run)
-                            : null);
-            invocation.setNewVaultCredentials(
-                    StringUtils.isNotBlank(newVaultCredentialsId)
-                            ? CredentialsProvider.findCredentialById(
-                                    run.getEnvironment(listener).expand(newVaultCredentialsId),
-                                    StandardCredentials.class,
-                                    run)
-                            : null);
-            invocation.setVaultTmpPath(
-                    StringUtils.isNotBlank(vaultTmpPath)
-                            ? new FilePath(computer.getChannel(), new File(vaultTmpPath).getAbsolutePath())
-                            : null);
-            invocation.setContent(content);
-            invocation.setInput(input);
-            invocation.setOutput(output);
-            if (!invocation.execute(runner)) {
-                throw new AbortException("Ansible vault execution failed");
-            }
+            launch(new CLIRunner(run, ws, launcher, listener), run, node, ws, listener, envVars).complete();
+        } catch (IOException ioe) {
+            Util.displayIOException(ioe, listener);
+            ioe.printStackTrace(listener.fatalError("command execution failed"));
+            throw ioe;
+        } catch (AnsibleInvocationException aie) {
+            listener.fatalError(aie.getMessage());
+            throw new AbortException(aie.getMessage());
+        }
+    }
+
+    /**
+     * Launch ansible-vault without waiting for it.
+     *
+     * @param runner the runner launching the process
+     * @return the running command, which must be completed by the caller
+     */
+    public AnsibleProcess start(
+            @NonNull CLIRunner runner,
+            @NonNull Run<?, ?> run,
+            @NonNull Node node,
+            @NonNull FilePath ws,
+            @NonNull TaskListener listener,
+            EnvVars envVars)
+            throws InterruptedException, IOException {
+        try {
+            return launch(runner, run, node, ws, listener, envVars);
         } catch (IOException ioe) {
             Util.displayIOException(ioe, listener);
             ioe.printStackTrace(listener.fatalError("command execution failed"));
@@ -173,6 +190,46 @@ public class AnsibleVaultBuilder extends Builder implements SimpleBuildStep {
         }
     }
 
+    private AnsibleProcess launch(
+            CLIRunner runner, Run<?, ?> run, Node node, FilePath ws, TaskListener listener, EnvVars envVars)
+            throws InterruptedException, IOException, AnsibleInvocationException {
+        Computer computer = node.toComputer();
+        boolean builtin = builtinEngine && AnsibleVaultInvocation.isBuiltinAction(action, output);
+        String exe = builtin
+                ? AnsibleCommand.ANSIBLE_VAULT.getName()
+                : AnsibleInstallation.getExecutable(ansibleName, AnsibleCommand.ANSIBLE_VAULT, node, listener, envVars);
+        AnsibleVaultInvocation invocation = new AnsibleVaultInvocation(exe, run, ws, listener, envVars);
+        invocation.setAction(action);
+        invocation.setBuiltin(builtin);
+        invocation.setVaultCredentials(
+                StringUtils.isNotBlank(vaultCredentialsId)
+                        ? CredentialsProvider.findCredentialById(
+                                run.getEnvironment(listener).expand(vaultCredentialsId),
+                                StandardCredentials.class,
+                                run)
+                        : null);
+        invocation.setNewVaultCredentials(
+                StringUtils.isNotBlank(newVaultCredentialsId)
+                        ? CredentialsProvider.findCredentialById(
+                                run.getEnvironment(listener).expand(newVaultCredentialsId),
+                                StandardCredentials.class,
+                                run)
+                        : null);
+        invocation.setVaultTmpPath(
+                StringUtils.isNotBlank(vaultTmpPath)
+                        ? new FilePath(computer.getChannel(), new File(vaultTmpPath).getAbsolutePath())
+                        : null);
+        if (!builtin) {
+            // no password file is written by the built-in engine
+            invocation.setSecretStagingDir(AnsibleNodeProperty.secretStagingDir(node, listener));
+        }
+        invocation.setContent(content);
+        invocation.setInput(input);
+        invocation.setInputs(inputs);
+        invocation.setOutput(output);
+        return new AnsibleProcess(invocation.start(runner), runner, invocation, "Ansible vault execution failed");
+    }
+
     @Override
     public BuildStepMonitor getRequiredMonitorService() {
         return BuildStepMonitor.NONE;
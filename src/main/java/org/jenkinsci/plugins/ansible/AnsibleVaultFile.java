@@ -0,0 +1,126 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jenkinsci.plugins.ansible;
+
+import hudson.AbortException;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Collection;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Pattern;
+import org.yaml.snakeyaml.LoaderOptions;
+import org.yaml.snakeyaml.Yaml;
+import org.yaml.snakeyaml.constructor.AbstractConstruct;
+import org.yaml.snakeyaml.constructor.SafeConstructor;
+import org.yaml.snakeyaml.error.YAMLException;
+import org.yaml.snakeyaml.nodes.Node;
+import org.yaml.snakeyaml.nodes.ScalarNode;
+import org.yaml.snakeyaml.nodes.Tag;
+
+/**
+ * Reads Ansible variable files, YAML or JSON, encrypted as a whole by ansible-vault or holding
+ * {@code !vault} values produced by encrypt_string, without writing the plaintext anywhere.
+ */
+public final class AnsibleVaultFile {
+
+    /** Shorter values are masked only under a key that looks secret, they would hide too much of the log. */
+    static final int MIN_MASKED_LENGTH = 8;
+
+    /** Shorter values are never masked. */
+    static final int MIN_SECRET_LENGTH = 3;
+
+    private static final Pattern SECRET_KEY = Pattern.compile("(?i).*(pass|secret|token|key|cred|auth).*");
+
+    private static final Tag VAULT = new Tag("!vault");
+
+    private AnsibleVaultFile() {}
+
+    /**
+     * Decrypt and parse the content of a file.
+     *
+     * @param secrets receives the values to mask: the {@code !vault} values, and for a file
+     *     encrypted as a whole the long scalars and those under a key that looks secret
+     * @return the maps, lists and scalars of the document, {@code null} for an empty one
+     */
+    public static Object read(byte[] data, byte[] password, Set<String> secrets) throws IOException {
+        boolean encrypted = AnsibleVault.isEncrypted(data);
+        String text = encrypted
+                ? new String(
+                        AnsibleVault.decrypt(new String(data, StandardCharsets.ISO_8859_1), password),
+                        StandardCharsets.UTF_8)
+                : new String(data, StandardCharsets.UTF_8);
+        try {
+            Object value = new Yaml(new VaultConstructor(password, secrets)).load(text);
+            if (encrypted) {
+                collect(value, false, secrets);
+            }
+            return value;
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        } catch (YAMLException e) {
+            throw new AbortException("Invalid YAML or JSON document: " + e.getMessage());
+        }
+    }
+
+    private static void collect(Object value, boolean secretKey, Set<String> secrets) {
+        if (value instanceof Map) {
+            for (Map.Entry<?, ?> entry : ((Map<?, ?>) value).entrySet()) {
+                boolean secret =
+                        secretKey || SECRET_KEY.matcher(String.valueOf(entry.getKey())).matches();
+                collect(entry.getValue(), secret, secrets);
+            }
+        } else if (value instanceof Collection) {
+            for (Object item : (Collection<?>) value) {
+                collect(item, secretKey, secrets);
+            }
+        } else if (value != null) {
+            addSecret(String.valueOf(value), secretKey ? MIN_SECRET_LENGTH : MIN_MASKED_LENGTH, secrets);
+        }
+    }
+
+    private static void addSecret(String value, int minLength, Set<String> secrets) {
+        String secret = value.trim();
+        if (secret.length() >= minLength) {
+            secrets.add(secret);
+        }
+    }
+
+    /**
+     * Builds plain Java objects only, and decrypts the {@code !vault} scalars.
+     */
+    private static final class VaultConstructor extends SafeConstructor {
+
+        VaultConstructor(byte[] password, Set<String> secrets) {
+            super(new LoaderOptions());
+            this.yamlConstructors.put(VAULT, new AbstractConstruct() {
+                @Override
+                public Object construct(Node node) {
+                    if (!(node instanceof ScalarNode)) {
+                        throw new YAMLException("a !vault value must be a string");
+                    }
+                    try {
+                        byte[] plaintext = AnsibleVault.decrypt(((ScalarNode) node).getValue(), password);
+                        String value = new String(plaintext, StandardCharsets.UTF_8);
+                        addSecret(value, MIN_SECRET_LENGTH, secrets);
+                        return value;
+                    } catch (AbortException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                }
+            });
+        }
+    }
+}
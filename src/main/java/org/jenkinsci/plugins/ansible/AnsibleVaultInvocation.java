@@ -17,12 +17,41 @@ import com.cloudbees.plugins.credentials.common.StandardCredentials;
 import hudson.AbortException;
 import hudson.EnvVars;
 import hudson.FilePath;
+import hudson.Proc;
+import hudson.Util;
 import hudson.model.AbstractBuild;
 import hudson.model.BuildListener;
+import hudson.model.Computer;
 import hudson.model.Run;
 import hudson.model.TaskListener;
+import hudson.remoting.VirtualChannel;
 import hudson.util.ArgumentListBuilder;
+import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.Serializable;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import jenkins.MasterToSlaveFileCallable;
+import jenkins.util.SystemProperties;
+import org.apache.commons.lang3.StringUtils;
 import org.jenkinsci.plugins.plaincredentials.FileCredentials;
 import org.jenkinsci.plugins.plaincredentials.StringCredentials;
 
@@ -33,11 +62,22 @@ import org.jenkinsci.plugins.plaincredentials.StringCredentials;
  */
 public class AnsibleVaultInvocation extends AbstractAnsibleInvocation<AnsibleVaultInvocation> {
 
+    /** Number of files passed to one ansible-vault process by the bulk operations. */
+    static final int BATCH_SIZE =
+            SystemProperties.getInteger(AnsibleVaultInvocation.class.getName() + ".batchSize", 100);
+
+    /** Number of threads of the built-in bulk operations, the number of processors of the agent if 0. */
+    static final int BULK_THREADS =
+            SystemProperties.getInteger(AnsibleVaultInvocation.class.getName() + ".bulkThreads", 0);
+
     private String action;
     private String content;
     private String input;
+    private String inputs;
+    private List<String> batch;
     private String output;
     private StandardCredentials newVaultCredentials;
+    private boolean builtin = false;
 
     private FilePath newVaultPassword = null;
 
@@ -87,12 +127,28 @@ public class AnsibleVaultInvocation extends AbstractAnsibleInvocation<AnsibleVau
     }
 
     private ArgumentListBuilder appendInput(ArgumentListBuilder args) {
-        if (input != null && !input.isEmpty()) {
+        if (batch != null) {
+            args.add(batch);
+        } else if (input != null && !input.isEmpty()) {
             args.add(input);
         }
         return args;
     }
 
+    /**
+     * Encrypt, decrypt or rekey all the files of the workspace matching these comma separated Ant
+     * patterns or paths, instead of the single input.
+     */
+    public AnsibleVaultInvocation setInputs(String inputs) {
+        this.inputs = inputs;
+        return this;
+    }
+
+    private boolean isBulk() {
+        return StringUtils.isNotBlank(inputs)
+                && ("encrypt".equals(action) || "decrypt".equals(action) || "rekey".equals(action));
+    }
+
     public AnsibleVaultInvocation setNewVaultCredentials(StandardCredentials newVaultCredentials) {
         this.newVaultCredentials = newVaultCredentials;
         return this;
@@ -100,8 +156,10 @@ public class AnsibleVaultInvocation extends AbstractAnsibleInvocation<AnsibleVau
 
     protected ArgumentListBuilder appendNewVaultPasswordFile(ArgumentListBuilder args)
             throws IOException, InterruptedException {
-        if (newVaultCredentials != null) {
-            FilePath tmpPath = vaultTmpPath != null ? vaultTmpPath : ws;
+        if (newVaultPassword != null) {
+            args.add("--new-vault-password-file").add(newVaultPassword.getRemote().replace("%", "%%"));
+        } else if (newVaultCredentials != null) {
+            FilePath tmpPath = secretTmpPath();
             if (newVaultCredentials instanceof FileCredentials) {
                 FileCredentials secretFile = (FileCredentials) newVaultCredentials;
                 newVaultPassword = Utils.createVaultPasswordFile(newVaultPassword, tmpPath, secretFile);
@@ -129,6 +187,558 @@ public class AnsibleVaultInvocation extends AbstractAnsibleInvocation<AnsibleVau
         return args;
     }
 
+    /**
+     * Run the actions supported by {@link AnsibleVault} in the JVM instead of launching
+     * ansible-vault, the other actions still use the command.
+     */
+    public AnsibleVaultInvocation setBuiltin(boolean builtin) {
+        this.builtin = builtin;
+        return this;
+    }
+
+    /**
+     * @return whether the action can be run without ansible-vault, encrypt_string passing the
+     *     output to the command as one more string to encrypt
+     */
+    static boolean isBuiltinAction(String action, String output) {
+        return ("encrypt_string".equals(action) && StringUtils.isEmpty(output))
+                || "encrypt".equals(action)
+                || "decrypt".equals(action)
+                || "rekey".equals(action);
+    }
+
+    private boolean isBuiltin() {
+        return builtin && isBuiltinAction(action, output);
+    }
+
+    @Override
+    public boolean execute(CLIRunner runner) throws IOException, InterruptedException, AnsibleInvocationException {
+        if (isBulk()) {
+            return runBulk(runner);
+        }
+        if (!isBuiltin()) {
+            return super.execute(runner);
+        }
+        return runBuiltin();
+    }
+
+    /**
+     * Start the action, the bulk and built-in actions running on a thread of the controller which
+     * the caller polls like the ansible-vault process, rather than on the thread of the caller.
+     */
+    @Override
+    public Proc start(CLIRunner runner) throws IOException, InterruptedException, AnsibleInvocationException {
+        if (isBulk()) {
+            return new FutureProc(Computer.threadPoolForRemoting.submit(() -> runBulk(runner) ? 0 : 1));
+        }
+        if (!isBuiltin()) {
+            return super.start(runner);
+        }
+        return new FutureProc(Computer.threadPoolForRemoting.submit(() -> runBuiltin() ? 0 : 1));
+    }
+
+    /**
+     * Run the action with {@link AnsibleVault}, the files being read and written on the agent.
+     *
+     * @return whether the action succeeded, the error being printed as ansible-vault does
+     */
+    private boolean runBuiltin() throws IOException, InterruptedException {
+        try {
+            byte[] password = password(vaultCredentials);
+            if ("encrypt_string".equals(action)) {
+                String yaml = AnsibleVault.toYaml(
+                        AnsibleVault.encrypt(
+                                StringUtils.defaultString(content).getBytes(StandardCharsets.UTF_8), password, null),
+                        null);
+                listener.getLogger().println(yaml);
+                listener.getLogger().println("Encryption successful");
+                return true;
+            }
+            if (StringUtils.isEmpty(input)) {
+                throw new AbortException("ansible-vault " + action + " requires an input file");
+            }
+            byte[] newPassword = "rekey".equals(action) ? password(newVaultCredentials) : null;
+            String target = StringUtils.isEmpty(output) || "-".equals(output) ? output : ws.child(output).getRemote();
+            String text = ws.child(input).act(new VaultFileCallable(action, password, newPassword, target));
+            if (text != null) {
+                listener.getLogger().print(text);
+            }
+            listener.getLogger().println(successMessage(action));
+            return true;
+        } catch (AbortException e) {
+            listener.getLogger().println("ERROR! " + e.getMessage());
+            return false;
+        }
+    }
+
+    /**
+     * Process the matching files with {@link AnsibleVault} on parallel threads of the agent, or with
+     * ansible-vault in batches of {@link #BATCH_SIZE} files, and print the result of each file. A
+     * failure does not stop the other files. The encrypted files are then checked to decrypt with
+     * the password they were written with.
+     *
+     * @return whether all the files were processed
+     */
+    private boolean runBulk(CLIRunner runner) throws IOException, InterruptedException, AnsibleInvocationException {
+        List<VaultFileResult> results;
+        StandardCredentials key = "rekey".equals(action) ? newVaultCredentials : vaultCredentials;
+        boolean verified = !"decrypt".equals(action) && (isBuiltin() || key != null);
+        try {
+            if (StringUtils.isNotEmpty(output)) {
+                throw new AbortException("--output is only allowed with a single file");
+            }
+            String patterns = envVars.expand(inputs);
+            if (isBuiltin()) {
+                byte[] password = password(vaultCredentials);
+                byte[] newPassword = "rekey".equals(action) ? password(newVaultCredentials) : null;
+                results = ws.act(new BulkVaultCallable(action, patterns, password, newPassword));
+            } else {
+                // the same checks as the built-in action, before any file is passed to ansible-vault
+                List<VaultFileResult> files = ws.act(new ListFilesCallable(patterns));
+                List<String> paths = new ArrayList<>();
+                List<VaultFileResult> refused = new ArrayList<>();
+                for (VaultFileResult file : files) {
+                    if (file.error == null) {
+                        paths.add(file.path);
+                    } else {
+                        refused.add(file);
+                    }
+                }
+                results = runBatches(runner, paths);
+                if (verified && !results.isEmpty()) {
+                    List<String> written = new ArrayList<>();
+                    for (VaultFileResult result : results) {
+                        if (result.error == null) {
+                            written.add(result.path);
+                        }
+                    }
+                    results = merge(results, ws.act(new VerifyCallable(written, password(key))));
+                }
+                results.addAll(refused);
+            }
+            if (results.isEmpty()) {
+                throw new AbortException("No file matches " + patterns);
+            }
+        } catch (AbortException e) {
+            listener.getLogger().println("ERROR! " + e.getMessage());
+            return false;
+        }
+        int failures = 0;
+        for (VaultFileResult result : results) {
+            if (result.error == null) {
+                listener.getLogger().println(result.path + ": " + successMessage(action));
+            } else {
+                failures++;
+                listener.getLogger().println(result.path + ": ERROR! " + result.error);
+            }
+        }
+        listener.getLogger()
+                .println("ansible-vault " + action + ": " + (results.size() - failures) + " files processed"
+                        + (verified ? " and verified, " : ", ") + failures + " failed");
+        return failures == 0;
+    }
+
+    /**
+     * @return the results of an action, with the failures of the verification of its files
+     */
+    private static List<VaultFileResult> merge(List<VaultFileResult> results, List<VaultFileResult> checks) {
+        Map<String, String> errors = new HashMap<>();
+        for (VaultFileResult check : checks) {
+            if (check.error != null) {
+                errors.put(check.path, check.error);
+            }
+        }
+        List<VaultFileResult> merged = new ArrayList<>();
+        for (VaultFileResult result : results) {
+            String error = errors.get(result.path);
+            merged.add(error == null ? result : new VaultFileResult(result.path, "verification failed, " + error));
+        }
+        return merged;
+    }
+
+    private List<VaultFileResult> runBatches(CLIRunner runner, List<String> files)
+            throws IOException, InterruptedException, AnsibleInvocationException {
+        List<VaultFileResult> results = new ArrayList<>();
+        try {
+            int size = Math.max(1, BATCH_SIZE);
+            for (int i = 0; i < files.size(); i += size) {
+                batch = new ArrayList<>(files.subList(i, Math.min(files.size(), i + size)));
+                boolean success = runner.execute(prepareCommandLine(runner), environment);
+                for (String path : batch) {
+                    // ansible-vault stops at the first failure, the other files of the batch are unknown
+                    results.add(new VaultFileResult(path, success ? null : "the ansible-vault batch failed"));
+                }
+            }
+        } finally {
+            batch = null;
+            tearDown();
+        }
+        return results;
+    }
+
+    private static String successMessage(String action) {
+        switch (action) {
+            case "encrypt":
+                return "Encryption successful";
+            case "decrypt":
+                return "Decryption successful";
+            default:
+                return "Rekey successful";
+        }
+    }
+
+    /**
+     * Apply the action to the content of a file.
+     */
+    static byte[] transform(String action, byte[] data, byte[] password, byte[] newPassword) throws AbortException {
+        if ("encrypt".equals(action)) {
+            if (AnsibleVault.isEncrypted(data)) {
+                throw new AbortException("input is already encrypted");
+            }
+            return AnsibleVault.encrypt(data, password, null).getBytes(StandardCharsets.US_ASCII);
+        }
+        byte[] plaintext = AnsibleVault.decrypt(new String(data, StandardCharsets.ISO_8859_1), password);
+        return "rekey".equals(action)
+                ? AnsibleVault.encrypt(plaintext, newPassword, null).getBytes(StandardCharsets.US_ASCII)
+                : plaintext;
+    }
+
+    /**
+     * Replace the content of a file by writing a temporary file of the same directory, flushed to
+     * the disk, and moving it over the file. A crash leaves either the old or the new content.
+     */
+    static void writeAtomically(Path target, byte[] data) throws IOException {
+        if (Files.isSymbolicLink(target)) {
+            target = target.toRealPath();
+        }
+        Path tmp = Files.createTempFile(target.toAbsolutePath().getParent(), "." + target.getFileName(), ".tmp");
+        try {
+            try (FileChannel channel = FileChannel.open(tmp, StandardOpenOption.WRITE)) {
+                ByteBuffer buffer = ByteBuffer.wrap(data);
+                while (buffer.hasRemaining()) {
+                    channel.write(buffer);
+                }
+                channel.force(true);
+            }
+            if (Files.exists(target)) {
+                try {
+                    Files.setPosixFilePermissions(tmp, Files.getPosixFilePermissions(target));
+                } catch (UnsupportedOperationException e) {
+                    // not a POSIX file system, the temporary file keeps the default permissions
+                }
+            }
+            try {
+                Files.move(tmp, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(tmp, target, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } finally {
+            Files.deleteIfExists(tmp);
+        }
+    }
+
+    /**
+     * Resolve the symbolic links of a file found by scanning a directory, which must not lead out
+     * of that directory.
+     */
+    static Path realPathWithin(Path dir, Path file) throws IOException {
+        Path real = file.toRealPath();
+        if (!real.startsWith(dir.toRealPath())) {
+            throw new AbortException("refusing to write " + real + ", out of " + dir);
+        }
+        return real;
+    }
+
+    /**
+     * Check that a file written by an action decrypts with the password it was encrypted with.
+     */
+    static void verify(Path file, byte[] password) throws IOException {
+        AnsibleVault.decrypt(new String(Files.readAllBytes(file), StandardCharsets.ISO_8859_1), password);
+    }
+
+    /**
+     * Apply a task to files on a pool of threads, a failure being reported in the result of its
+     * file without stopping the others.
+     *
+     * @param paths paths of the files, absolute or relative to the directory
+     */
+    private static List<VaultFileResult> forEachFile(File dir, List<String> paths, FileTask task)
+            throws IOException, InterruptedException {
+        List<VaultFileResult> results = new ArrayList<>();
+        if (paths.isEmpty()) {
+            return results;
+        }
+        int threads = Math.min(
+                paths.size(), BULK_THREADS > 0 ? BULK_THREADS : Runtime.getRuntime().availableProcessors());
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<VaultFileResult>> futures = new ArrayList<>();
+            for (String path : paths) {
+                futures.add(executor.submit(() -> {
+                    File file = new File(path).isAbsolute() ? new File(path) : new File(dir, path);
+                    try {
+                        task.apply(file.toPath());
+                        return new VaultFileResult(path, null);
+                    } catch (IOException | RuntimeException e) {
+                        return new VaultFileResult(path, e.getMessage() != null ? e.getMessage() : e.toString());
+                    }
+                }));
+            }
+            for (Future<VaultFileResult> future : futures) {
+                try {
+                    results.add(future.get());
+                } catch (ExecutionException e) {
+                    throw new IOException(e.getCause());
+                }
+            }
+            return results;
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * @return the vault password held by secret text or secret file credentials, as read by
+     *     ansible-vault
+     */
+    public static byte[] password(StandardCredentials credentials) throws IOException {
+        byte[] content = credentials != null ? Utils.vaultPassword(credentials) : null;
+        if (content == null) {
+            throw new AbortException("A vault password is required to use Ansible's Vault");
+        }
+        return AnsibleVault.password(content);
+    }
+
+    /**
+     * Encrypt, decrypt or rekey a file in place or to another file of the same agent.
+     */
+    private static final class VaultFileCallable extends MasterToSlaveFileCallable<String> {
+        private static final long serialVersionUID = 1L;
+
+        private final String action;
+        private final byte[] password;
+        private final byte[] newPassword;
+        private final String output;
+
+        VaultFileCallable(String action, byte[] password, byte[] newPassword, String output) {
+            this.action = action;
+            this.password = password;
+            this.newPassword = newPassword;
+            this.output = output;
+        }
+
+        /**
+         * @return the result when written to the standard output, {@code null} otherwise
+         */
+        @Override
+        public String invoke(File f, VirtualChannel channel) throws IOException {
+            byte[] result = transform(action, Files.readAllBytes(f.toPath()), password, newPassword);
+            if ("-".equals(output)) {
+                return new String(result, StandardCharsets.UTF_8);
+            }
+            Path target = output != null && !output.isEmpty() ? new File(output).toPath() : f.toPath();
+            writeAtomically(target, result);
+            if (!"decrypt".equals(action)) {
+                try {
+                    verify(target, "rekey".equals(action) ? newPassword : password);
+                } catch (AbortException e) {
+                    throw new AbortException("verification failed, " + e.getMessage());
+                }
+            }
+            return null;
+        }
+    }
+
+    /**
+     * Encrypt, decrypt or rekey in place the files of a directory matching Ant patterns, on parallel
+     * threads.
+     */
+    private static final class BulkVaultCallable extends MasterToSlaveFileCallable<List<VaultFileResult>> {
+        private static final long serialVersionUID = 1L;
+
+        private final String action;
+        private final String patterns;
+        private final byte[] password;
+        private final byte[] newPassword;
+
+        BulkVaultCallable(String action, String patterns, byte[] password, byte[] newPassword) {
+            this.action = action;
+            this.patterns = patterns;
+            this.password = password;
+            this.newPassword = newPassword;
+        }
+
+        @Override
+        public List<VaultFileResult> invoke(File dir, VirtualChannel channel)
+                throws IOException, InterruptedException {
+            List<String> paths =
+                    Arrays.asList(Util.createFileSet(dir, patterns).getDirectoryScanner().getIncludedFiles());
+            List<VaultFileResult> results = forEachFile(dir, paths, file -> {
+                Path target = realPathWithin(dir.toPath(), file);
+                writeAtomically(target, transform(action, Files.readAllBytes(target), password, newPassword));
+            });
+            if ("decrypt".equals(action)) {
+                return results;
+            }
+            // a second pass, once all the files are written
+            List<String> written = new ArrayList<>();
+            for (VaultFileResult result : results) {
+                if (result.error == null) {
+                    written.add(result.path);
+                }
+            }
+            byte[] key = "rekey".equals(action) ? newPassword : password;
+            return merge(results, forEachFile(dir, written, file -> verify(file, key)));
+        }
+    }
+
+    /**
+     * List the files of a directory matching Ant patterns for ansible-vault, resolving their
+     * symbolic links which must not lead out of the directory.
+     */
+    private static final class ListFilesCallable extends MasterToSlaveFileCallable<List<VaultFileResult>> {
+        private static final long serialVersionUID = 1L;
+
+        private final String patterns;
+
+        ListFilesCallable(String patterns) {
+            this.patterns = patterns;
+        }
+
+        /**
+         * @return the real paths of the files, or the relative paths of the refused files with the error
+         */
+        @Override
+        public List<VaultFileResult> invoke(File dir, VirtualChannel channel) throws IOException {
+            List<VaultFileResult> files = new ArrayList<>();
+            for (String path : Util.createFileSet(dir, patterns).getDirectoryScanner().getIncludedFiles()) {
+                try {
+                    files.add(new VaultFileResult(
+                            realPathWithin(dir.toPath(), new File(dir, path).toPath()).toString(), null));
+                } catch (IOException e) {
+                    files.add(new VaultFileResult(path, e.getMessage() != null ? e.getMessage() : e.toString()));
+                }
+            }
+            return files;
+        }
+    }
+
+    /**
+     * Check on the agent that files decrypt with a password.
+     */
+    private static final class VerifyCallable extends MasterToSlaveFileCallable<List<VaultFileResult>> {
+        private static final long serialVersionUID = 1L;
+
+        private final List<String> paths;
+        private final byte[] password;
+
+        VerifyCallable(List<String> paths, byte[] password) {
+            this.paths = paths;
+            this.password = password;
+        }
+
+        @Override
+        public List<VaultFileResult> invoke(File dir, VirtualChannel channel)
+                throws IOException, InterruptedException {
+            return forEachFile(dir, paths, file -> verify(file, password));
+        }
+    }
+
+    /**
+     * A step of a bulk operation applied to one file.
+     */
+    private interface FileTask {
+        void apply(Path file) throws IOException;
+    }
+
+    /**
+     * The outcome of the action on one file of a bulk operation.
+     */
+    private static final class VaultFileResult implements Serializable {
+        private static final long serialVersionUID = 1L;
+
+        final String path;
+        final String error;
+
+        VaultFileResult(String path, String error) {
+            this.path = path;
+            this.error = error;
+        }
+    }
+
+    /**
+     * An action run on a thread of the controller, for callers expecting a process.
+     */
+    private static final class FutureProc extends Proc {
+        private final Future<Integer> status;
+
+        FutureProc(Future<Integer> status) {
+            this.status = status;
+        }
+
+        @Override
+        public boolean isAlive() {
+            return !status.isDone();
+        }
+
+        @Override
+        public void kill() {
+            status.cancel(true);
+        }
+
+        @Override
+        public int join() throws IOException, InterruptedException {
+            try {
+                return status.get();
+            } catch (CancellationException e) {
+                return 1;
+            } catch (ExecutionException e) {
+                Throwable cause = e.getCause();
+                if (cause instanceof IOException) {
+                    throw (IOException) cause;
+                }
+                if (cause instanceof InterruptedException) {
+                    return 1;
+                }
+                throw new IOException(cause);
+            }
+        }
+
+        @Override
+        public InputStream getStdout() {
+            return null;
+        }
+
+        @Override
+        public InputStream getStderr() {
+            return null;
+        }
+
+        @Override
+        public OutputStream getStdin() {
+            return null;
+        }
+    }
+
+    @Override
+    protected void addTempFiles(Utils.TempFiles files) throws IOException {
+        super.addTempFiles(files);
+        if (newVaultCredentials != null && newVaultPassword == null) {
+            byte[] password = Utils.vaultPassword(newVaultCredentials);
+            if (password != null) {
+                files.add("vault", ".password", password, true, "r--------", file -> newVaultPassword = file);
+            }
+        }
+    }
+
+    @Override
+    protected void collectTempFiles(List<FilePath> files) {
+        super.collectTempFiles(files);
+        if (newVaultPassword != null) {
+            files.add(newVaultPassword);
+        }
+    }
+
     @Override
     protected ArgumentListBuilder buildCommandLine()
             throws InterruptedException, AnsibleInvocationException, IOException {
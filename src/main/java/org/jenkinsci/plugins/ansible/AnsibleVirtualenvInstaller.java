@@ -0,0 +1,294 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jenkinsci.plugins.ansible;
+
+import hudson.Extension;
+import hudson.FilePath;
+import hudson.Util;
+import hudson.model.Node;
+import hudson.model.TaskListener;
+import hudson.remoting.VirtualChannel;
+import hudson.tools.ToolInstallation;
+import hudson.tools.ToolInstaller;
+import hudson.tools.ToolInstallerDescriptor;
+import hudson.util.FormValidation;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintStream;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import jenkins.MasterToSlaveFileCallable;
+import org.apache.commons.lang3.StringUtils;
+import org.jenkinsci.Symbol;
+import org.kohsuke.stapler.DataBoundConstructor;
+import org.kohsuke.stapler.DataBoundSetter;
+import org.kohsuke.stapler.QueryParameter;
+
+/**
+ * Installs a pinned ansible-core, and optionally collections, in a Python virtualenv of the agent
+ * from a wheelhouse, without access to a package index.
+ *
+ * <p>The wheelhouse is a directory of the agent or a URL, typically served by the controller, and
+ * is passed to pip with {@code --no-index --find-links}. The virtualenvs live in the
+ * {@code tools/ansible-venv} directory of the agent, named after a digest of the requirements, so
+ * that the installations with identical requirements share one. Everything is byte-compiled at
+ * install time so that the first build does not pay for it.
+ */
+public class AnsibleVirtualenvInstaller extends ToolInstaller {
+
+    static final String DIRECTORY = "ansible-venv";
+    static final String MARKER = ".installed";
+
+    private final String ansibleCore;
+    private final String wheelhouse;
+    private String requirements;
+    private String collections;
+    private String python = "python3";
+
+    @DataBoundConstructor
+    public AnsibleVirtualenvInstaller(String label, String ansibleCore, String wheelhouse) {
+        super(label);
+        this.ansibleCore = Util.fixEmptyAndTrim(ansibleCore);
+        this.wheelhouse = Util.fixEmptyAndTrim(wheelhouse);
+    }
+
+    public String getAnsibleCore() {
+        return ansibleCore;
+    }
+
+    public String getWheelhouse() {
+        return wheelhouse;
+    }
+
+    public String getRequirements() {
+        return requirements;
+    }
+
+    /**
+     * @param requirements additional pip requirements, one per line
+     */
+    @DataBoundSetter
+    public void setRequirements(String requirements) {
+        this.requirements = Util.fixEmptyAndTrim(requirements);
+    }
+
+    public String getCollections() {
+        return collections;
+    }
+
+    /**
+     * @param collections collection archives of the wheelhouse, one per line
+     */
+    @DataBoundSetter
+    public void setCollections(String collections) {
+        this.collections = Util.fixEmptyAndTrim(collections);
+    }
+
+    public String getPython() {
+        return python;
+    }
+
+    @DataBoundSetter
+    public void setPython(String python) {
+        this.python = StringUtils.defaultIfBlank(python, "python3").trim();
+    }
+
+    /**
+     * @return the pip requirements, ansible-core first
+     */
+    List<String> getPipRequirements() {
+        List<String> result = new ArrayList<>();
+        result.add(ansibleCore == null || StringUtils.containsAny(ansibleCore, "<>=!~")
+                ? "ansible-core" + StringUtils.defaultString(ansibleCore)
+                : "ansible-core==" + ansibleCore);
+        result.addAll(lines(requirements));
+        return result;
+    }
+
+    List<String> getCollectionArchives() {
+        return lines(collections);
+    }
+
+    /**
+     * @return the digest naming the virtualenv, identical for identical requirements
+     */
+    String getDigest() {
+        StringBuilder sb = new StringBuilder(python).append('\n');
+        for (String requirement : getPipRequirements()) {
+            sb.append("pip:").append(requirement).append('\n');
+        }
+        for (String archive : getCollectionArchives()) {
+            sb.append("collection:").append(archive).append('\n');
+        }
+        return Util.getDigestOf(sb.toString()).substring(0, 16);
+    }
+
+    static List<String> lines(String text) {
+        List<String> result = new ArrayList<>();
+        if (text != null) {
+            for (String line : text.split("\\r?\\n")) {
+                line = line.replaceFirst("#.*", "").trim();
+                if (!line.isEmpty()) {
+                    result.add(line);
+                }
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public FilePath performInstallation(ToolInstallation tool, Node node, TaskListener log)
+            throws IOException, InterruptedException {
+        FilePath root = node.getRootPath();
+        if (root == null) {
+            throw new IOException(
+                    "Unable to install " + tool.getName() + ": " + node.getDisplayName() + " is offline");
+        }
+        FilePath venv = root.child("tools").child(DIRECTORY).child(getDigest());
+        venv.act(new Install(python, wheelhouse, getPipRequirements(), getCollectionArchives(), log));
+        return venv.child("bin");
+    }
+
+    /**
+     * Create the virtualenv on the agent unless already done, under a file lock so that concurrent
+     * builds of the agent wait for the first installation instead of running their own.
+     */
+    static final class Install extends MasterToSlaveFileCallable<Void> {
+        private static final long serialVersionUID = 1L;
+
+        private final String python;
+        private final String wheelhouse;
+        private final List<String> requirements;
+        private final List<String> collections;
+        private final TaskListener log;
+
+        Install(
+                String python,
+                String wheelhouse,
+                List<String> requirements,
+                List<String> collections,
+                TaskListener log) {
+            this.python = python;
+            this.wheelhouse = wheelhouse;
+            this.requirements = new ArrayList<>(requirements);
+            this.collections = new ArrayList<>(collections);
+            this.log = log;
+        }
+
+        @Override
+        public Void invoke(File venv, VirtualChannel channel) throws IOException, InterruptedException {
+            File marker = new File(venv, MARKER);
+            if (marker.exists()) {
+                return null;
+            }
+            Files.createDirectories(venv.getParentFile().toPath());
+            File lockFile = new File(venv.getParentFile(), venv.getName() + ".lock");
+            try (FileChannel lockChannel =
+                            FileChannel.open(lockFile.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+                    FileLock lock = lockChannel.lock()) {
+                if (marker.exists()) {
+                    // installed by a concurrent build
+                    return null;
+                }
+                PrintStream logger = log.getLogger();
+                logger.println("Installing ansible in " + venv);
+                // leftovers of an interrupted installation
+                Util.deleteRecursive(venv);
+                String venvPython = new File(venv, "bin/python").getPath();
+                run(logger, python, "-m", "venv", venv.getPath());
+                List<String> pip = new ArrayList<>(List.of(
+                        venvPython, "-m", "pip", "install", "--no-index", "--disable-pip-version-check"));
+                if (wheelhouse != null) {
+                    pip.add("--find-links");
+                    pip.add(wheelhouse);
+                }
+                pip.addAll(requirements);
+                run(logger, pip.toArray(new String[0]));
+                String sitePackages =
+                        output(venvPython, "-c", "import sysconfig; print(sysconfig.get_paths()['purelib'])");
+                String galaxy = new File(venv, "bin/ansible-galaxy").getPath();
+                for (String collection : collections) {
+                    // installed along the packages, where ansible looks for collections too
+                    run(logger, galaxy, "collection", "install", "--offline", "-p", sitePackages, resolve(collection));
+                }
+                run(logger, venvPython, "-m", "compileall", "-q", "-j", "0", sitePackages);
+                Files.writeString(marker.toPath(), String.join("\n", requirements) + "\n");
+            }
+            return null;
+        }
+
+        /**
+         * @return the location of a collection archive of the wheelhouse
+         */
+        private String resolve(String collection) {
+            if (wheelhouse == null || collection.contains("://") || collection.startsWith("/")) {
+                return collection;
+            }
+            if (wheelhouse.contains("://")) {
+                return StringUtils.removeEnd(wheelhouse, "/") + "/" + collection;
+            }
+            return new File(wheelhouse, collection).getPath();
+        }
+
+        private static void run(PrintStream logger, String... command) throws IOException, InterruptedException {
+            Process process = new ProcessBuilder(command).redirectErrorStream(true).start();
+            try (InputStream in = process.getInputStream()) {
+                in.transferTo(logger);
+            }
+            if (process.waitFor() != 0) {
+                throw new IOException("Command failed: " + String.join(" ", command));
+            }
+        }
+
+        private static String output(String... command) throws IOException, InterruptedException {
+            Process process = new ProcessBuilder(command).redirectErrorStream(true).start();
+            String out;
+            try (InputStream in = process.getInputStream()) {
+                out = new String(in.readAllBytes(), StandardCharsets.UTF_8).trim();
+            }
+            if (process.waitFor() != 0) {
+                throw new IOException("Command failed: " + String.join(" ", command) + "\n" + out);
+            }
+            return out;
+        }
+    }
+
+    @Extension
+    @Symbol("ansibleVirtualenv")
+    public static final class DescriptorImpl extends ToolInstallerDescriptor<AnsibleVirtualenvInstaller> {
+
+        @Override
+        public String getDisplayName() {
+            return "Install ansible-core in a virtualenv from a wheelhouse";
+        }
+
+        @Override
+        public boolean isApplicable(Class<? extends ToolInstallation> toolType) {
+            return toolType == AnsibleInstallation.class;
+        }
+
+        public FormValidation doCheckWheelhouse(@QueryParameter String value) {
+            if (StringUtils.isBlank(value)) {
+                return FormValidation.warning("Without a wheelhouse, the packages must be in the pip configuration");
+            }
+            return FormValidation.ok();
+        }
+    }
+}
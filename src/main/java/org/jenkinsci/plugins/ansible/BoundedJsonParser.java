@@ -0,0 +1,431 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jenkinsci.plugins.ansible;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Push parser for a single JSON document fed byte by byte.
+ *
+ * <p>The parser never buffers the raw document. Strings are truncated, containers nested deeper
+ * than the configured depth are skipped and once the value budget is spent the remaining values
+ * are consumed without being stored, so the memory used per document is bounded whatever the size
+ * of the input.
+ *
+ * <p>The scalars of a top level object, such as the type of an event written after a large
+ * payload, are kept whatever the budget left, up to {@link #MAX_TOP_LEVEL_SCALARS}. Some top
+ * level keys can also be given a budget of their own, so that a large sibling cannot starve them.
+ */
+final class BoundedJsonParser {
+
+    /** Marker for a value consumed but not kept. */
+    private static final Object SKIPPED = new Object();
+
+    private static final int MAX_LITERAL_LENGTH = 64;
+
+    static final int MAX_TOP_LEVEL_SCALARS = 64;
+
+    private enum Phase {
+        VALUE,
+        KEY_OR_END,
+        KEY,
+        COLON,
+        VALUE_OR_END,
+        COMMA_OR_END,
+        DONE
+    }
+
+    private static final class Frame {
+        final boolean object;
+        final Map<String, Object> map;
+        final List<Object> list;
+        Phase phase;
+        String key;
+
+        Frame(boolean object, boolean skip) {
+            this.object = object;
+            this.map = object && !skip ? new LinkedHashMap<>() : null;
+            this.list = !object && !skip ? new ArrayList<>() : null;
+            this.phase = object ? Phase.KEY_OR_END : Phase.VALUE_OR_END;
+        }
+
+        boolean isSkipped() {
+            return map == null && list == null;
+        }
+    }
+
+    private final int maxStringLength;
+    private final int maxDepth;
+    private final int maxBudget;
+    private final Map<String, Integer> keyBudgets;
+
+    private final Deque<Frame> stack = new ArrayDeque<>();
+    private final ByteArrayOutputStream string = new ByteArrayOutputStream();
+    private final StringBuilder literal = new StringBuilder();
+    private Phase rootPhase;
+    private Object value;
+    private int budget;
+    private int sharedBudget;
+    private boolean ownBudget;
+    private int topLevelScalars;
+    private boolean error;
+
+    private boolean inString;
+    private boolean escape;
+    private int unicodeDigits = -1;
+    private int unicode;
+    private int highSurrogate = -1;
+    private boolean inLiteral;
+
+    BoundedJsonParser(int maxStringLength, int maxDepth, int maxBudget) {
+        this(maxStringLength, maxDepth, maxBudget, Map.of());
+    }
+
+    /**
+     * @param keyBudgets budgets of the values of some keys of a top level object, spent instead
+     *     of the shared one
+     */
+    BoundedJsonParser(int maxStringLength, int maxDepth, int maxBudget, Map<String, Integer> keyBudgets) {
+        this.maxStringLength = maxStringLength;
+        this.maxDepth = maxDepth;
+        this.maxBudget = maxBudget;
+        this.keyBudgets = keyBudgets;
+        reset();
+    }
+
+    void reset() {
+        stack.clear();
+        string.reset();
+        literal.setLength(0);
+        rootPhase = Phase.VALUE;
+        value = null;
+        budget = maxBudget;
+        ownBudget = false;
+        topLevelScalars = 0;
+        error = false;
+        inString = false;
+        escape = false;
+        unicodeDigits = -1;
+        highSurrogate = -1;
+        inLiteral = false;
+    }
+
+    /**
+     * Feed one byte of the document.
+     *
+     * @return {@code false} once the document is known to be malformed
+     */
+    boolean feed(int b) {
+        if (error) {
+            return false;
+        }
+        if (inString) {
+            readString(b & 0xff);
+            return !error;
+        }
+        if (inLiteral) {
+            if (isLiteralChar(b)) {
+                if (literal.length() >= MAX_LITERAL_LENGTH) {
+                    error = true;
+                    return false;
+                }
+                literal.append((char) b);
+                return true;
+            }
+            inLiteral = false;
+            onValue(parseLiteral(literal.toString()));
+            literal.setLength(0);
+            if (error) {
+                return false;
+            }
+        }
+        readStructure(b);
+        return !error;
+    }
+
+    /**
+     * Signal the end of the input, which terminates a pending top level literal.
+     */
+    void end() {
+        if (inLiteral && !error) {
+            inLiteral = false;
+            onValue(parseLiteral(literal.toString()));
+            literal.setLength(0);
+        }
+    }
+
+    boolean isComplete() {
+        return !error && rootPhase == Phase.DONE;
+    }
+
+    boolean isError() {
+        return error;
+    }
+
+    Object getValue() {
+        return value == SKIPPED ? null : value;
+    }
+
+    private void readStructure(int b) {
+        if (b == ' ' || b == '\t' || b == '\r' || b == '\n') {
+            return;
+        }
+        Phase phase = stack.isEmpty() ? rootPhase : stack.peek().phase;
+        switch (phase) {
+            case VALUE:
+            case VALUE_OR_END:
+                if (phase == Phase.VALUE_OR_END && b == ']') {
+                    closeContainer(false);
+                } else {
+                    startValue(b);
+                }
+                break;
+            case KEY_OR_END:
+            case KEY:
+                if (phase == Phase.KEY_OR_END && b == '}') {
+                    closeContainer(true);
+                } else if (b == '"') {
+                    inString = true;
+                } else {
+                    error = true;
+                }
+                break;
+            case COLON:
+                if (b == ':') {
+                    stack.peek().phase = Phase.VALUE;
+                } else {
+                    error = true;
+                }
+                break;
+            case COMMA_OR_END:
+                Frame frame = stack.peek();
+                if (b == ',') {
+                    frame.phase = frame.object ? Phase.KEY : Phase.VALUE;
+                } else if (b == '}' && frame.object) {
+                    closeContainer(true);
+                } else if (b == ']' && !frame.object) {
+                    closeContainer(false);
+                } else {
+                    error = true;
+                }
+                break;
+            default:
+                // trailing garbage after the document
+                error = true;
+        }
+    }
+
+    private void startValue(int b) {
+        if (b == '{' || b == '[') {
+            Frame parent = stack.peek();
+            if (stack.size() == 1 && parent.object && keyBudgets.containsKey(parent.key)) {
+                sharedBudget = budget;
+                budget = keyBudgets.get(parent.key);
+                ownBudget = true;
+            }
+            boolean skip = stack.size() >= maxDepth
+                    || budget <= 0
+                    || (!stack.isEmpty() && stack.peek().isSkipped());
+            if (!skip) {
+                budget--;
+            }
+            stack.push(new Frame(b == '{', skip));
+        } else if (b == '"') {
+            inString = true;
+        } else if (isLiteralChar(b)) {
+            inLiteral = true;
+            literal.append((char) b);
+        } else {
+            error = true;
+        }
+    }
+
+    private void closeContainer(boolean object) {
+        Frame frame = stack.pop();
+        if (frame.object != object) {
+            error = true;
+            return;
+        }
+        if (frame.isSkipped()) {
+            onValue(SKIPPED);
+        } else {
+            onValue(object ? frame.map : frame.list);
+        }
+    }
+
+    private void onValue(Object v) {
+        if (stack.isEmpty()) {
+            value = v;
+            rootPhase = Phase.DONE;
+            return;
+        }
+        Frame frame = stack.peek();
+        boolean kept = false;
+        if (stack.size() == 1 && frame.object) {
+            if (ownBudget) {
+                // the value with its own budget is complete
+                budget = sharedBudget;
+                ownBudget = false;
+                kept = true;
+            } else if (!(v instanceof Map) && !(v instanceof List) && topLevelScalars < MAX_TOP_LEVEL_SCALARS) {
+                topLevelScalars++;
+                kept = true;
+            }
+        }
+        // a container has paid for itself when it was opened
+        boolean container = v instanceof Map || v instanceof List;
+        if (v != SKIPPED && !frame.isSkipped() && (container || kept || budget > 0)) {
+            if (!container) {
+                budget--;
+            }
+            if (frame.object) {
+                frame.map.put(frame.key, v);
+            } else {
+                frame.list.add(v);
+            }
+        }
+        frame.key = null;
+        frame.phase = Phase.COMMA_OR_END;
+    }
+
+    private void readString(int b) {
+        if (unicodeDigits >= 0) {
+            int digit = Character.digit(b, 16);
+            if (digit < 0) {
+                error = true;
+                return;
+            }
+            unicode = (unicode << 4) | digit;
+            if (++unicodeDigits == 4) {
+                unicodeDigits = -1;
+                appendCodeUnit(unicode);
+            }
+        } else if (escape) {
+            escape = false;
+            switch (b) {
+                case '"':
+                case '\\':
+                case '/':
+                    appendByte(b);
+                    break;
+                case 'b':
+                    appendByte('\b');
+                    break;
+                case 'f':
+                    appendByte('\f');
+                    break;
+                case 'n':
+                    appendByte('\n');
+                    break;
+                case 'r':
+                    appendByte('\r');
+                    break;
+                case 't':
+                    appendByte('\t');
+                    break;
+                case 'u':
+                    unicodeDigits = 0;
+                    unicode = 0;
+                    break;
+                default:
+                    error = true;
+            }
+        } else if (b == '\\') {
+            escape = true;
+        } else if (b == '"') {
+            inString = false;
+            endString();
+        } else {
+            appendByte(b);
+        }
+    }
+
+    private void appendCodeUnit(int unit) {
+        if (Character.isHighSurrogate((char) unit)) {
+            highSurrogate = unit;
+            return;
+        }
+        int codePoint = unit;
+        if (Character.isLowSurrogate((char) unit)) {
+            if (highSurrogate < 0) {
+                appendByte('?');
+                return;
+            }
+            codePoint = Character.toCodePoint((char) highSurrogate, (char) unit);
+        } else if (highSurrogate >= 0) {
+            appendByte('?');
+        }
+        highSurrogate = -1;
+        byte[] bytes = new String(Character.toChars(codePoint)).getBytes(StandardCharsets.UTF_8);
+        for (byte b : bytes) {
+            appendByte(b & 0xff);
+        }
+    }
+
+    private void appendByte(int b) {
+        // a UTF-8 character is at most 4 bytes long, the string is cut to length once decoded
+        if (string.size() < maxStringLength * 4) {
+            string.write(b);
+        }
+    }
+
+    private void endString() {
+        String s = new String(string.toByteArray(), StandardCharsets.UTF_8);
+        string.reset();
+        highSurrogate = -1;
+        if (s.length() > maxStringLength) {
+            s = s.substring(0, maxStringLength);
+        }
+        Frame frame = stack.peek();
+        if (frame != null && frame.object && (frame.phase == Phase.KEY_OR_END || frame.phase == Phase.KEY)) {
+            frame.key = s;
+            frame.phase = Phase.COLON;
+        } else {
+            budget -= s.length() / 64;
+            onValue(s);
+        }
+    }
+
+    private Object parseLiteral(String s) {
+        switch (s) {
+            case "true":
+                return Boolean.TRUE;
+            case "false":
+                return Boolean.FALSE;
+            case "null":
+                return null;
+            default:
+                try {
+                    if (s.indexOf('.') < 0 && s.indexOf('e') < 0 && s.indexOf('E') < 0) {
+                        return Long.parseLong(s);
+                    }
+                    return Double.parseDouble(s);
+                } catch (NumberFormatException e) {
+                    error = true;
+                    return null;
+                }
+        }
+    }
+
+    private static boolean isLiteralChar(int b) {
+        return (b >= 'a' && b <= 'z') || (b >= '0' && b <= '9') || b == '-' || b == '+' || b == '.' || b == 'E';
+    }
+}
@@ -2,13 +2,17 @@ package org.jenkinsci.plugins.ansible;
 
 import hudson.FilePath;
 import hudson.Launcher;
+import hudson.Proc;
 import hudson.model.AbstractBuild;
 import hudson.model.BuildListener;
 import hudson.model.Run;
 import hudson.model.TaskListener;
 import hudson.util.ArgumentListBuilder;
 import java.io.IOException;
+import java.io.OutputStream;
 import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
 
 /**
@@ -23,6 +27,9 @@ public class CLIRunner {
     private final Run<?, ?> build;
     private final TaskListener listener;
     private final FilePath ws;
+    private final List<AnsibleEventHandler> eventHandlers = new ArrayList<>();
+    private boolean structuredOutput = false;
+    private OutputStream stdout;
 
     public CLIRunner(AbstractBuild<?, ?> build, Launcher launcher, BuildListener listener) {
         this.launcher = launcher;
@@ -38,19 +45,106 @@ public class CLIRunner {
         this.ws = ws;
     }
 
+    /**
+     * Parse the process standard output as ansible JSON lines events instead of copying it as is.
+     * The events are rendered in the console and passed to the registered event handlers.
+     */
+    public CLIRunner setStructuredOutput(boolean structuredOutput) {
+        this.structuredOutput = structuredOutput;
+        return this;
+    }
+
+    Launcher getLauncher() {
+        return launcher;
+    }
+
+    public boolean isStructuredOutput() {
+        return structuredOutput;
+    }
+
+    public CLIRunner addEventHandler(AnsibleEventHandler handler) {
+        eventHandlers.add(handler);
+        return this;
+    }
+
     public boolean execute(ArgumentListBuilder args, Map<String, String> environment)
             throws IOException, InterruptedException {
-        PrintStream logger = listener.getLogger();
+        Proc proc = start(args, environment);
+        try {
+            return proc.join() == 0;
+        } finally {
+            finish();
+        }
+    }
+
+    /**
+     * Run the process and copy its standard output to the given stream instead of the build log.
+     */
+    public boolean execute(ArgumentListBuilder args, Map<String, String> environment, OutputStream stdout)
+            throws IOException, InterruptedException {
+        this.ws.mkdirs();
+        return launch(args, environment, stdout).join() == 0;
+    }
+
+    /**
+     * Launch the process without waiting for it. {@link #finish()} must be called once the
+     * process has exited to flush its output.
+     */
+    public Proc start(ArgumentListBuilder args, Map<String, String> environment)
+            throws IOException, InterruptedException {
+        OutputStream out = openStdout();
         try {
             this.ws.mkdirs();
-            return launcher.launch()
-                            .pwd(ws)
-                            .envs(environment)
-                            .cmds(args)
-                            .stdout(logger)
-                            .stderr(logger)
-                            .join()
-                    == 0;
+            return launch(args, environment, out);
+        } catch (IOException | InterruptedException | RuntimeException e) {
+            finish();
+            throw e;
+        }
+    }
+
+    protected Proc launch(ArgumentListBuilder args, Map<String, String> environment, OutputStream stdout)
+            throws IOException, InterruptedException {
+        return launcher.launch()
+                .pwd(ws)
+                .envs(environment)
+                .cmds(args)
+                .stdout(stdout)
+                .stderr(listener.getLogger())
+                .start();
+    }
+
+    /**
+     * Flush the output of the process launched by {@link #start(ArgumentListBuilder, Map)}.
+     */
+    public synchronized void finish() throws IOException {
+        OutputStream out = stdout;
+        stdout = null;
+        if (out != null) {
+            closeStdout(out, listener.getLogger());
+        }
+    }
+
+    /**
+     * @return the stream the process standard output is to be copied to
+     */
+    protected synchronized OutputStream openStdout() {
+        PrintStream logger = listener.getLogger();
+        if (!structuredOutput) {
+            stdout = logger;
+        } else {
+            List<AnsibleEventHandler> handlers = new ArrayList<>();
+            handlers.add(new AnsibleEventConsoleRenderer(logger));
+            handlers.addAll(eventHandlers);
+            stdout = new AnsibleEventOutputStream(logger, handlers);
+        }
+        return stdout;
+    }
+
+    private void closeStdout(OutputStream stdout, PrintStream logger) throws IOException {
+        try {
+            if (stdout != logger) {
+                stdout.close();
+            }
         } finally {
             logger.flush();
         }
@@ -20,6 +20,12 @@ import hudson.Extension;
 import hudson.model.AbstractDescribableImpl;
 import hudson.model.Descriptor;
 import hudson.util.Secret;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 import org.kohsuke.stapler.DataBoundConstructor;
 import org.kohsuke.stapler.DataBoundSetter;
 
@@ -36,6 +42,9 @@ public class ExtraVar extends AbstractDescribableImpl<ExtraVar> {
     @SuppressFBWarnings(value = "PA_PUBLIC_PRIMITIVE_ATTRIBUTE", justification = "Preserve API compatibility.")
     public boolean hidden = true;
 
+    @SuppressFBWarnings(value = "PA_PUBLIC_PRIMITIVE_ATTRIBUTE", justification = "Preserve API compatibility.")
+    public boolean json = false;
+
     @DataBoundConstructor
     public ExtraVar() {}
 
@@ -61,6 +70,14 @@ public class ExtraVar extends AbstractDescribableImpl<ExtraVar> {
         this.secretValue = value;
     }
 
+    /**
+     * The value is a JSON document passed to ansible as is, without variable expansion.
+     */
+    @DataBoundSetter
+    public void setJson(boolean json) {
+        this.json = json;
+    }
+
     public String getKey() {
         return key;
     }
@@ -73,6 +90,48 @@ public class ExtraVar extends AbstractDescribableImpl<ExtraVar> {
         return hidden;
     }
 
+    public boolean isJson() {
+        return json;
+    }
+
+    /**
+     * Serialize a structured value: maps, lists, arrays, strings, numbers, booleans and secrets.
+     *
+     * @return the JSON document, {@code null} if the value contains another type
+     */
+    public static String toJson(Object value) {
+        try {
+            return JsonWriter.write(normalize(value));
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    private static Object normalize(Object value) {
+        if (value == null || value instanceof Boolean || value instanceof Number) {
+            return value;
+        } else if (value instanceof CharSequence) {
+            return value.toString();
+        } else if (value instanceof Secret) {
+            return ((Secret) value).getPlainText();
+        } else if (value instanceof Map) {
+            Map<String, Object> map = new LinkedHashMap<>();
+            for (Map.Entry<?, ?> entry : ((Map<?, ?>) value).entrySet()) {
+                map.put(String.valueOf(entry.getKey()), normalize(entry.getValue()));
+            }
+            return map;
+        } else if (value instanceof Collection) {
+            List<Object> list = new ArrayList<>();
+            for (Object item : (Collection<?>) value) {
+                list.add(normalize(item));
+            }
+            return list;
+        } else if (value instanceof Object[]) {
+            return normalize(Arrays.asList((Object[]) value));
+        }
+        throw new IllegalArgumentException("Unsupported extra var type: " + value.getClass());
+    }
+
     @Extension
     public static class DescriptorImpl extends Descriptor<ExtraVar> {
 
@@ -47,6 +47,37 @@ public abstract class Inventory implements Describable<Inventory> {
         getHandler().tearDown(listener);
     }
 
+    /**
+     * @return the temporary file created for the inventory, if any
+     */
+    FilePath getTempFile() {
+        return null;
+    }
+
+    /**
+     * @return a string identifying the hosts of the inventory, used to share caches between the
+     * builds using the same inventory
+     */
+    String getIdentity(FilePath workspace, EnvVars envVars) {
+        return getClass().getName();
+    }
+
+    /**
+     * @return whether the inventory may be a script or an inventory plugin querying an external
+     * source
+     */
+    boolean isDynamic(FilePath workspace, EnvVars envVars) throws IOException, InterruptedException {
+        return false;
+    }
+
+    /**
+     * @return the directory holding the inventory, whose group_vars and host_vars apply to it, or
+     * {@code null}
+     */
+    FilePath getDirectory(FilePath workspace, EnvVars envVars) {
+        return null;
+    }
+
     public abstract static class InventoryDescriptor extends Descriptor<Inventory> {}
 
     protected static interface InventoryHandler {
@@ -44,7 +44,15 @@ public class InventoryContent extends Inventory {
             public void addArgument(
                     ArgumentListBuilder args, FilePath workspace, EnvVars envVars, TaskListener listener)
                     throws InterruptedException, IOException {
-                inventory = createInventoryFile(inventory, workspace, envVars.expand(content));
+                String expandedContent = envVars.expand(content);
+                FilePath cached = AnsibleInventoryCache.materialize(workspace, expandedContent, dynamic, ".ini");
+                if (cached != null) {
+                    // shared with the other builds, not to be deleted
+                    inventory = null;
+                    args.add("-i").add(cached);
+                    return;
+                }
+                inventory = createInventoryFile(inventory, workspace, expandedContent);
                 args.add("-i").add(inventory);
             }
 
@@ -61,6 +69,21 @@ public class InventoryContent extends Inventory {
         };
     }
 
+    @Override
+    FilePath getTempFile() {
+        return inventory;
+    }
+
+    @Override
+    String getIdentity(FilePath workspace, EnvVars envVars) {
+        return "content:" + envVars.expand(content);
+    }
+
+    @Override
+    boolean isDynamic(FilePath workspace, EnvVars envVars) {
+        return dynamic;
+    }
+
     @Extension
     public static class DescriptorImpl extends InventoryDescriptor {
 
@@ -20,6 +20,9 @@ import hudson.Extension;
 import hudson.FilePath;
 import hudson.model.TaskListener;
 import hudson.util.ArgumentListBuilder;
+import java.io.File;
+import java.io.IOException;
+import java.util.regex.Pattern;
 import org.apache.commons.lang3.StringUtils;
 import org.kohsuke.stapler.DataBoundConstructor;
 
@@ -27,6 +30,13 @@ import org.kohsuke.stapler.DataBoundConstructor;
  * Path to a file containing an Ansible inventory
  */
 public class InventoryPath extends Inventory {
+
+    /** An inventory plugin configuration names its plugin at the top level. */
+    private static final Pattern PLUGIN = Pattern.compile("(?m)^plugin:\\s*\\S");
+
+    /** Larger YAML files are taken as static inventories without being read. */
+    private static final long MAX_PLUGIN_CONFIG_SIZE = 1024 * 1024;
+
     public final String path;
 
     @DataBoundConstructor
@@ -49,6 +59,58 @@ public class InventoryPath extends Inventory {
         };
     }
 
+    @Override
+    String getIdentity(FilePath workspace, EnvVars envVars) {
+        String expandedPath = envVars.expand(path);
+        if (StringUtils.isEmpty(expandedPath)) {
+            return super.getIdentity(workspace, envVars);
+        }
+        if (expandedPath.contains(",") || new File(expandedPath).isAbsolute()) {
+            // a host list or an absolute path
+            return "path:" + expandedPath;
+        }
+        return "path:" + workspace.child(expandedPath).getRemote();
+    }
+
+    /**
+     * An executable file is an inventory script, and a YAML file naming a plugin is the
+     * configuration of an inventory plugin. Host lists, directories and other files are static.
+     */
+    @Override
+    boolean isDynamic(FilePath workspace, EnvVars envVars) throws IOException, InterruptedException {
+        FilePath file = getFile(workspace, envVars);
+        if (file == null || !file.exists() || file.isDirectory()) {
+            return false;
+        }
+        int mode = file.mode();
+        if (mode > 0 && (mode & 0111) != 0) {
+            return true;
+        }
+        String name = file.getName();
+        return (name.endsWith(".yml") || name.endsWith(".yaml"))
+                && file.length() <= MAX_PLUGIN_CONFIG_SIZE
+                && PLUGIN.matcher(file.readToString()).find();
+    }
+
+    @Override
+    FilePath getDirectory(FilePath workspace, EnvVars envVars) {
+        FilePath file = getFile(workspace, envVars);
+        return file != null ? file.getParent() : null;
+    }
+
+    /**
+     * @return the inventory file or directory, {@code null} for a host list
+     */
+    private FilePath getFile(FilePath workspace, EnvVars envVars) {
+        String expandedPath = envVars.expand(path);
+        if (StringUtils.isEmpty(expandedPath) || expandedPath.contains(",")) {
+            return null;
+        }
+        return new File(expandedPath).isAbsolute()
+                ? new FilePath(workspace.getChannel(), expandedPath)
+                : workspace.child(expandedPath);
+    }
+
     @Extension
     public static class DescriptorImpl extends InventoryDescriptor {
 
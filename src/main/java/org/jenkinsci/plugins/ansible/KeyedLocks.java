@@ -0,0 +1,82 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jenkinsci.plugins.ansible;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Locks by key, such as a job directory, kept only while they are held or waited for.
+ */
+final class KeyedLocks<K> {
+
+    private static final class Entry {
+        final ReentrantLock lock = new ReentrantLock();
+        /** Threads holding or waiting for the lock, only changed while computing the entry. */
+        int users;
+    }
+
+    /** Releases a lock taken by {@link #lock}. */
+    interface Unlock extends AutoCloseable {
+        @Override
+        void close();
+    }
+
+    private final ConcurrentMap<K, Entry> entries = new ConcurrentHashMap<>();
+
+    Unlock lock(K key) {
+        Entry entry = acquire(key);
+        entry.lock.lock();
+        return () -> release(key, entry);
+    }
+
+    /**
+     * @param onWait called before waiting when another thread holds the lock
+     */
+    Unlock lockInterruptibly(K key, Runnable onWait) throws InterruptedException {
+        Entry entry = acquire(key);
+        try {
+            if (!entry.lock.tryLock()) {
+                onWait.run();
+                entry.lock.lockInterruptibly();
+            }
+        } catch (InterruptedException | RuntimeException e) {
+            forget(key);
+            throw e;
+        }
+        return () -> release(key, entry);
+    }
+
+    int size() {
+        return entries.size();
+    }
+
+    private Entry acquire(K key) {
+        return entries.compute(key, (k, entry) -> {
+            Entry result = entry != null ? entry : new Entry();
+            result.users++;
+            return result;
+        });
+    }
+
+    private void release(K key, Entry entry) {
+        entry.lock.unlock();
+        forget(key);
+    }
+
+    private void forget(K key) {
+        entries.computeIfPresent(key, (k, entry) -> --entry.users == 0 ? null : entry);
+    }
+}
@@ -0,0 +1,154 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jenkinsci.plugins.ansible;
+
+import hudson.EnvVars;
+import hudson.FilePath;
+import hudson.model.TaskListener;
+import hudson.remoting.VirtualChannel;
+import hudson.slaves.WorkspaceList;
+import hudson.util.ArgumentListBuilder;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.ArrayList;
+import java.util.List;
+import jenkins.MasterToSlaveFileCallable;
+
+/**
+ * Static YAML inventory resolved from a dynamic one, used as is without expanding variables.
+ */
+class ResolvedInventory extends Inventory {
+
+    /**
+     * The variable directories of an inventory, linked next to the resolved inventory.
+     */
+    static final String[] VARIABLE_DIRECTORIES = {"group_vars", "host_vars"};
+
+    private final String content;
+    private final FilePath directory;
+    private transient FilePath inventory = null;
+
+    /**
+     * @param directory the directory of the dynamic inventory, or {@code null}
+     */
+    ResolvedInventory(String content, FilePath directory) {
+        this.content = content;
+        this.directory = directory;
+    }
+
+    @Override
+    protected InventoryHandler getHandler() {
+        return new InventoryHandler() {
+            public void addArgument(
+                    ArgumentListBuilder args, FilePath workspace, EnvVars envVars, TaskListener listener)
+                    throws InterruptedException, IOException {
+                if (directory != null) {
+                    // in a private directory of the workspace temp dir, never in the directory of the
+                    // dynamic inventory which may be read only, with links to its group_vars and
+                    // host_vars so that they keep their precedence over the exported variables
+                    FilePath tmp = WorkspaceList.tempDir(workspace);
+                    List<String> created = tmp.act(new Write(content, directory.getRemote()));
+                    inventory = new FilePath(workspace.getChannel(), created.get(0));
+                    for (String name : created.subList(1, created.size())) {
+                        listener.getLogger()
+                                .println("[WARNING] " + name + " of " + directory
+                                        + " could not be linked and is not applied to the resolved inventory");
+                    }
+                    args.add("-i").add(inventory.child(Write.NAME));
+                    return;
+                }
+                FilePath cached = AnsibleInventoryCache.materialize(workspace, content, false, ".yml");
+                if (cached != null) {
+                    inventory = null;
+                    args.add("-i").add(cached);
+                    return;
+                }
+                inventory = workspace.createTextTempFile("inventory", ".yml", content, false);
+                inventory.chmod(0400);
+                args.add("-i").add(inventory);
+            }
+
+            public void tearDown(TaskListener listener) throws InterruptedException, IOException {
+                Utils.deleteTempFiles(inventory != null ? List.of(inventory) : List.of(), listener);
+            }
+        };
+    }
+
+    /**
+     * @return the inventory file, or the directory holding it and the links to the variable
+     * directories of the dynamic inventory
+     */
+    @Override
+    FilePath getTempFile() {
+        return inventory;
+    }
+
+    /**
+     * Create a private directory holding the resolved inventory and links to the variable
+     * directories of the dynamic inventory, in a single call to the agent.
+     */
+    static final class Write extends MasterToSlaveFileCallable<List<String>> {
+        private static final long serialVersionUID = 1L;
+
+        static final String NAME = "inventory.yml";
+
+        private final String content;
+        private final String source;
+
+        Write(String content, String source) {
+            this.content = content;
+            this.source = source;
+        }
+
+        /**
+         * @return the created directory, followed by the variable directories which could not be linked
+         */
+        @Override
+        public List<String> invoke(File tmp, VirtualChannel channel) throws IOException {
+            Path parent = tmp.toPath();
+            Files.createDirectories(parent);
+            boolean posix = parent.getFileSystem().supportedFileAttributeViews().contains("posix");
+            Path dir = posix
+                    ? Files.createTempDirectory(
+                            parent,
+                            "inventory",
+                            PosixFilePermissions.asFileAttribute(PosixFilePermissions.fromString("rwx------")))
+                    : Files.createTempDirectory(parent, "inventory");
+            List<String> result = new ArrayList<>();
+            result.add(dir.toAbsolutePath().toString());
+            Path file = dir.resolve(NAME);
+            Files.write(file, content.getBytes(StandardCharsets.UTF_8));
+            if (posix) {
+                Files.setPosixFilePermissions(file, PosixFilePermissions.fromString("r--------"));
+            }
+            for (String name : VARIABLE_DIRECTORIES) {
+                Path target = Path.of(source, name);
+                if (!Files.isDirectory(target)) {
+                    continue;
+                }
+                try {
+                    Files.createSymbolicLink(dir.resolve(name), target.toAbsolutePath());
+                } catch (IOException | UnsupportedOperationException e) {
+                    // e.g. on Windows without the privilege to create links
+                    result.add(name);
+                }
+            }
+            return result;
+        }
+    }
+}
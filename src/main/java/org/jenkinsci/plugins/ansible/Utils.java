@@ -16,12 +16,25 @@
 package org.jenkinsci.plugins.ansible;
 
 import com.cloudbees.jenkins.plugins.sshcredentials.SSHUserPrivateKey;
+import com.cloudbees.plugins.credentials.common.StandardCredentials;
 import hudson.FilePath;
+import hudson.Util;
 import hudson.model.TaskListener;
+import hudson.remoting.VirtualChannel;
 import hudson.util.Secret;
+import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.Serializable;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.function.Consumer;
+import jenkins.MasterToSlaveFileCallable;
 import org.jenkinsci.plugins.plaincredentials.FileCredentials;
 import org.jenkinsci.plugins.plaincredentials.StringCredentials;
 
@@ -37,12 +50,7 @@ class Utils {
      */
     static FilePath createSshKeyFile(FilePath key, FilePath tmpPath, SSHUserPrivateKey credentials, boolean inThisDir)
             throws IOException, InterruptedException {
-        StringBuilder sb = new StringBuilder();
-        List<String> privateKeys = credentials.getPrivateKeys();
-        for (String s : privateKeys) {
-            sb.append(s);
-        }
-        key = tmpPath.createTextTempFile("ssh", ".key", sb.toString(), inThisDir);
+        key = tmpPath.createTextTempFile("ssh", ".key", sshKey(credentials), inThisDir);
         key.chmod(0400);
         return key;
     }
@@ -51,13 +59,42 @@ class Utils {
             FilePath script, FilePath tmpPath, SSHUserPrivateKey credentials, boolean inThisDir)
             throws IOException, InterruptedException {
         tmpPath.mkdirs();
-        StringBuilder sb = new StringBuilder();
-        sb.append("#! /bin/sh\n").append("/bin/echo \"" + Secret.toString(credentials.getPassphrase()) + "\"");
-        script = tmpPath.createTextTempFile("ssh", ".sh", sb.toString(), inThisDir);
+        script = tmpPath.createTextTempFile("ssh", ".sh", sshAskPass(credentials), inThisDir);
         script.chmod(0700);
         return script;
     }
 
+    static String sshKey(SSHUserPrivateKey credentials) {
+        StringBuilder sb = new StringBuilder();
+        List<String> privateKeys = credentials.getPrivateKeys();
+        for (String s : privateKeys) {
+            sb.append(s);
+        }
+        return sb.toString();
+    }
+
+    static String sshAskPass(SSHUserPrivateKey credentials) {
+        StringBuilder sb = new StringBuilder();
+        sb.append("#! /bin/sh\n").append("/bin/echo \"" + Secret.toString(credentials.getPassphrase()) + "\"");
+        return sb.toString();
+    }
+
+    /**
+     * Read the Vault password of the credentials.
+     *
+     * @return the password, {@code null} when the credentials type is not supported
+     */
+    static byte[] vaultPassword(StandardCredentials credentials) throws IOException {
+        if (credentials instanceof FileCredentials) {
+            try (InputStream content = ((FileCredentials) credentials).getContent()) {
+                return content.readAllBytes();
+            }
+        } else if (credentials instanceof StringCredentials) {
+            return ((StringCredentials) credentials).getSecret().getPlainText().getBytes(StandardCharsets.UTF_8);
+        }
+        return null;
+    }
+
     /**
      * Copy the Vault password into a temporary file.
      *
@@ -113,4 +150,191 @@ class Utils {
             }
         }
     }
+
+    /**
+     * Delete temporary files or directories in a single call to the agent. Print a warning in the
+     * log for each file which could not be deleted.
+     *
+     * @param tempFiles the files to be removed, all on the same agent
+     * @param listener the build listener
+     */
+    static void deleteTempFiles(List<FilePath> tempFiles, TaskListener listener)
+            throws IOException, InterruptedException {
+        if (tempFiles.isEmpty()) {
+            return;
+        }
+        List<String> paths = new ArrayList<>();
+        for (FilePath file : tempFiles) {
+            paths.add(file.getRemote());
+        }
+        for (String path : tempFiles.get(0).act(new DeleteTempFiles(paths))) {
+            listener.getLogger().println("[WARNING] temp file " + path + " not deleted");
+        }
+    }
+
+    /**
+     * Temporary files written to the agent in a single call: every file is created and gets its
+     * permissions in the same round trip instead of one call per file and per attribute.
+     */
+    static final class TempFiles {
+        private final FilePath dir;
+        private final List<TempFile> files = new ArrayList<>();
+        private final List<Consumer<FilePath>> targets = new ArrayList<>();
+
+        /**
+         * @param dir the directory of the files created in place, usually the workspace
+         */
+        TempFiles(FilePath dir) {
+            this.dir = dir;
+        }
+
+        /**
+         * Add a file to the batch.
+         *
+         * @param inThisDir {@code false} to create the file in the temporary directory of the agent
+         * @param permissions the POSIX permissions of the file, e.g. {@code r--------}
+         * @param target receives the file once created
+         */
+        TempFiles add(
+                String prefix,
+                String suffix,
+                byte[] content,
+                boolean inThisDir,
+                String permissions,
+                Consumer<FilePath> target) {
+            return add(dir, prefix, suffix, content, inThisDir, permissions, target);
+        }
+
+        /**
+         * Add a file created in another directory of the same agent.
+         */
+        TempFiles add(
+                FilePath in,
+                String prefix,
+                String suffix,
+                byte[] content,
+                boolean inThisDir,
+                String permissions,
+                Consumer<FilePath> target) {
+            String path = in == null || in.getRemote().equals(dir.getRemote()) ? null : in.getRemote();
+            files.add(new TempFile(path, prefix, suffix, content, inThisDir, permissions));
+            targets.add(target);
+            return this;
+        }
+
+        boolean isEmpty() {
+            return files.isEmpty();
+        }
+
+        /**
+         * Write the files, nothing is sent to the agent when the batch is empty.
+         */
+        void create() throws IOException, InterruptedException {
+            if (files.isEmpty()) {
+                return;
+            }
+            List<String> paths = dir.act(new CreateTempFiles(files));
+            for (int i = 0; i < paths.size(); i++) {
+                targets.get(i).accept(new FilePath(dir.getChannel(), paths.get(i)));
+            }
+        }
+    }
+
+    private static final class TempFile implements Serializable {
+        private static final long serialVersionUID = 1L;
+
+        private final String dir;
+        private final String prefix;
+        private final String suffix;
+        private final byte[] content;
+        private final boolean inThisDir;
+        private final String permissions;
+
+        TempFile(String dir, String prefix, String suffix, byte[] content, boolean inThisDir, String permissions) {
+            this.dir = dir;
+            this.prefix = prefix;
+            this.suffix = suffix;
+            this.content = content;
+            this.inThisDir = inThisDir;
+            this.permissions = permissions;
+        }
+    }
+
+    static final class CreateTempFiles extends MasterToSlaveFileCallable<List<String>> {
+        private static final long serialVersionUID = 1L;
+
+        private final List<TempFile> files;
+
+        CreateTempFiles(List<TempFile> files) {
+            this.files = new ArrayList<>(files);
+        }
+
+        @Override
+        public List<String> invoke(File dir, VirtualChannel channel) throws IOException {
+            boolean posix = dir.toPath().getFileSystem().supportedFileAttributeViews().contains("posix");
+            List<Path> created = new ArrayList<>();
+            try {
+                for (TempFile file : files) {
+                    Path parent = !file.inThisDir
+                            ? Path.of(System.getProperty("java.io.tmpdir"))
+                            : file.dir != null ? Path.of(file.dir) : dir.toPath();
+                    Files.createDirectories(parent);
+                    Path path = posix
+                            ? Files.createTempFile(
+                                    parent,
+                                    file.prefix,
+                                    file.suffix,
+                                    PosixFilePermissions.asFileAttribute(PosixFilePermissions.fromString("rw-------")))
+                            : Files.createTempFile(parent, file.prefix, file.suffix);
+                    created.add(path);
+                    Files.write(path, file.content);
+                    if (posix) {
+                        Files.setPosixFilePermissions(path, PosixFilePermissions.fromString(file.permissions));
+                    }
+                }
+            } catch (IOException | RuntimeException e) {
+                for (Path path : created) {
+                    Files.deleteIfExists(path);
+                }
+                throw e;
+            }
+            List<String> paths = new ArrayList<>();
+            for (Path path : created) {
+                paths.add(path.toAbsolutePath().toString());
+            }
+            return paths;
+        }
+    }
+
+    static final class DeleteTempFiles extends MasterToSlaveFileCallable<List<String>> {
+        private static final long serialVersionUID = 1L;
+
+        private final List<String> paths;
+
+        DeleteTempFiles(List<String> paths) {
+            this.paths = new ArrayList<>(paths);
+        }
+
+        /**
+         * @return the files which could not be deleted
+         */
+        @Override
+        public List<String> invoke(File f, VirtualChannel channel) {
+            List<String> remaining = new ArrayList<>();
+            for (String path : paths) {
+                try {
+                    Path file = Path.of(path);
+                    if (Files.isDirectory(file, LinkOption.NOFOLLOW_LINKS)) {
+                        // without following the links it holds
+                        Util.deleteRecursive(file.toFile());
+                    } else {
+                        Files.deleteIfExists(file);
+                    }
+                } catch (IOException e) {
+                    remaining.add(path);
+                }
+            }
+            return remaining;
+        }
+    }
 }
@@ -37,6 +37,7 @@ public class AnsibleJobDslExtension extends ContextExtensionPoint {
         adhoc.setSudoUser(context.getSudoUser());
         adhoc.setUnbufferedOutput(context.isUnbufferedOutput());
         adhoc.setExtraVars(context.getExtraVars());
+        adhoc.setExtraVarsAsFile(context.isExtraVarsAsFile());
 
         return adhoc;
     }
@@ -62,11 +63,17 @@ public class AnsibleJobDslExtension extends ContextExtensionPoint {
         plbook.setSudo(context.isSudo());
         plbook.setSudoUser(context.getSudoUser());
         plbook.setUnbufferedOutput(context.isUnbufferedOutput());
+        plbook.setStructuredOutput(context.isStructuredOutput());
+        plbook.setFactCache(context.isFactCache());
+        plbook.setInventoryCacheTtl(context.getInventoryCacheTtl());
+        plbook.setSshAgent(context.isSshAgent());
+        plbook.setSshAgentCredentialsIds(context.getSshAgentCredentialsIds());
         plbook.setLimit(context.getLimit());
         plbook.setTags(context.getTags());
         plbook.setSkippedTags(context.getSkippedTags());
         plbook.setStartAtTask(context.getStartAtTask());
         plbook.setExtraVars(context.getExtraVars());
+        plbook.setExtraVarsAsFile(context.isExtraVarsAsFile());
 
         return plbook;
     }
@@ -86,6 +93,8 @@ public class AnsibleJobDslExtension extends ContextExtensionPoint {
         vault.setContent(context.getContent());
         vault.setInput(context.getInput());
         vault.setOutput(context.getOutput());
+        vault.setInputs(context.getInputs());
+        vault.setBuiltinEngine(context.isBuiltinEngine());
 
         return vault;
     }
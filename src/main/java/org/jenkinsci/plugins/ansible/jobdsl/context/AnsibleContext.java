@@ -32,6 +32,14 @@ public class AnsibleContext implements Context {
     private boolean unbufferedOutput = true;
     private boolean colorizedOutput = false;
     private boolean disableHostKeyChecking = false;
+    private boolean structuredOutput = false;
+    private boolean factCache = false;
+    private int inventoryCacheTtl = 0;
+    private boolean sshAgent = false;
+    private String sshAgentCredentialsIds;
+    private boolean extraVarsAsFile = false;
+    private boolean builtinEngine = false;
+    private String inputs;
 
     @Deprecated
     @SuppressWarnings("unused")
@@ -143,6 +151,26 @@ public class AnsibleContext implements Context {
         this.disableHostKeyChecking = disableHostKeyChecking;
     }
 
+    public void structuredOutput(boolean structuredOutput) {
+        this.structuredOutput = structuredOutput;
+    }
+
+    public void factCache(boolean factCache) {
+        this.factCache = factCache;
+    }
+
+    public void inventoryCacheTtl(int inventoryCacheTtl) {
+        this.inventoryCacheTtl = inventoryCacheTtl;
+    }
+
+    public void sshAgent(boolean sshAgent) {
+        this.sshAgent = sshAgent;
+    }
+
+    public void sshAgentCredentialsIds(String sshAgentCredentialsIds) {
+        this.sshAgentCredentialsIds = sshAgentCredentialsIds;
+    }
+
     public void additionalParameters(String additionalParameters) {
         this.additionalParameters = additionalParameters;
     }
@@ -171,6 +199,18 @@ public class AnsibleContext implements Context {
         ContextExtensionPoint.executeInContext(closure, extraVarsContext);
     }
 
+    public void extraVarsAsFile(boolean extraVarsAsFile) {
+        this.extraVarsAsFile = extraVarsAsFile;
+    }
+
+    public void builtinEngine(boolean builtinEngine) {
+        this.builtinEngine = builtinEngine;
+    }
+
+    public void inputs(String inputs) {
+        this.inputs = inputs;
+    }
+
     public String getAction() {
         return action;
     }
@@ -247,6 +287,26 @@ public class AnsibleContext implements Context {
         return disableHostKeyChecking;
     }
 
+    public boolean isStructuredOutput() {
+        return structuredOutput;
+    }
+
+    public boolean isFactCache() {
+        return factCache;
+    }
+
+    public int getInventoryCacheTtl() {
+        return inventoryCacheTtl;
+    }
+
+    public boolean isSshAgent() {
+        return sshAgent;
+    }
+
+    public String getSshAgentCredentialsIds() {
+        return sshAgentCredentialsIds;
+    }
+
     public String getAdditionalParameters() {
         return additionalParameters;
     }
@@ -275,6 +335,18 @@ public class AnsibleContext implements Context {
         return extraVarsContext.getExtraVars();
     }
 
+    public boolean isExtraVarsAsFile() {
+        return extraVarsAsFile;
+    }
+
+    public boolean isBuiltinEngine() {
+        return builtinEngine;
+    }
+
+    public String getInputs() {
+        return inputs;
+    }
+
     @Deprecated
     public void hostKeyChecking(boolean hostKeyChecking) {}
 
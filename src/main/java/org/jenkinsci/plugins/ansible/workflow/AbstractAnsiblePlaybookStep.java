@@ -0,0 +1,360 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jenkinsci.plugins.ansible.workflow;
+
+import hudson.Util;
+import java.util.Map;
+import org.apache.commons.lang3.StringUtils;
+import org.jenkinsci.plugins.ansible.AnsiblePlaybookBuilder;
+import org.jenkinsci.plugins.ansible.Inventory;
+import org.jenkinsci.plugins.ansible.InventoryContent;
+import org.jenkinsci.plugins.ansible.InventoryPath;
+import org.jenkinsci.plugins.workflow.steps.AbstractStepImpl;
+import org.kohsuke.stapler.DataBoundSetter;
+
+/**
+ * The parameters shared by the steps invoking an ansible playbook.
+ */
+public abstract class AbstractAnsiblePlaybookStep extends AbstractStepImpl {
+
+    private final String playbook;
+    private String inventory;
+    private String inventoryContent;
+    private boolean dynamicInventory = false;
+    private String installation;
+    private String credentialsId;
+    private String vaultCredentialsId;
+    private String vaultTmpPath = null;
+    private boolean become = false;
+    private boolean checkMode = false;
+    private String becomeUser = "root";
+    private boolean sudo = false;
+    private String sudoUser = "root";
+    private String limit = null;
+    private String tags = null;
+    private String skippedTags = null;
+    private String startAtTask = null;
+    private Map extraVars = null;
+    private boolean extraVarsAsFile = false;
+    private String extras = null;
+    private boolean colorized = false;
+    private int forks = 0;
+    private boolean disableHostKeyChecking = false;
+    private boolean structuredOutput = false;
+    private boolean factCache = false;
+    private int inventoryCacheTtl = 0;
+    private boolean sshAgent = false;
+    private String sshAgentCredentialsIds = null;
+    private boolean failOnError = true;
+
+    protected AbstractAnsiblePlaybookStep(String playbook) {
+        this.playbook = playbook;
+    }
+
+    @DataBoundSetter
+    public void setInventory(String inventory) {
+        this.inventory = Util.fixEmptyAndTrim(inventory);
+    }
+
+    @DataBoundSetter
+    public void setInventoryContent(String inventoryContent) {
+        this.inventoryContent = Util.fixEmptyAndTrim(inventoryContent);
+    }
+
+    @DataBoundSetter
+    public void setDynamicInventory(boolean dynamicInventory) {
+        this.dynamicInventory = dynamicInventory;
+    }
+
+    @DataBoundSetter
+    public void setCredentialsId(String credentialsId) {
+        this.credentialsId = Util.fixEmptyAndTrim(credentialsId);
+    }
+
+    @DataBoundSetter
+    public void setVaultCredentialsId(String vaultCredentialsId) {
+        this.vaultCredentialsId = Util.fixEmptyAndTrim(vaultCredentialsId);
+    }
+
+    @DataBoundSetter
+    public void setVaultTmpPath(String vaultTmpPath) {
+        this.vaultTmpPath = vaultTmpPath;
+    }
+
+    @DataBoundSetter
+    public void setBecome(boolean become) {
+        this.become = become;
+    }
+
+    @DataBoundSetter
+    public void setBecomeUser(String becomeUser) {
+        this.becomeUser = Util.fixEmptyAndTrim(becomeUser);
+    }
+
+    @DataBoundSetter
+    public void setCheckMode(boolean checkMode) {
+        this.checkMode = checkMode;
+    }
+
+    @DataBoundSetter
+    public void setSudo(boolean sudo) {
+        this.sudo = sudo;
+    }
+
+    @DataBoundSetter
+    public void setSudoUser(String sudoUser) {
+        this.sudoUser = Util.fixEmptyAndTrim(sudoUser);
+    }
+
+    @DataBoundSetter
+    public void setInstallation(String installation) {
+        this.installation = Util.fixEmptyAndTrim(installation);
+    }
+
+    @DataBoundSetter
+    public void setLimit(String limit) {
+        this.limit = Util.fixEmptyAndTrim(limit);
+    }
+
+    @DataBoundSetter
+    public void setTags(String tags) {
+        this.tags = Util.fixEmptyAndTrim(tags);
+    }
+
+    @DataBoundSetter
+    public void setSkippedTags(String skippedTags) {
+        this.skippedTags = Util.fixEmptyAndTrim(skippedTags);
+    }
+
+    @DataBoundSetter
+    public void setStartAtTask(String startAtTask) {
+        this.startAtTask = Util.fixEmptyAndTrim(startAtTask);
+    }
+
+    @DataBoundSetter
+    public void setExtraVars(Map extraVars) {
+        this.extraVars = extraVars;
+    }
+
+    @DataBoundSetter
+    public void setExtraVarsAsFile(boolean extraVarsAsFile) {
+        this.extraVarsAsFile = extraVarsAsFile;
+    }
+
+    @DataBoundSetter
+    public void setExtras(String extras) {
+        this.extras = Util.fixEmptyAndTrim(extras);
+    }
+
+    @DataBoundSetter
+    public void setColorized(boolean colorized) {
+        this.colorized = colorized;
+    }
+
+    @DataBoundSetter
+    public void setForks(int forks) {
+        this.forks = forks;
+    }
+
+    @DataBoundSetter
+    public void setDisableHostKeyChecking(boolean disableHostKeyChecking) {
+        this.disableHostKeyChecking = disableHostKeyChecking;
+    }
+
+    @DataBoundSetter
+    public void setStructuredOutput(boolean structuredOutput) {
+        this.structuredOutput = structuredOutput;
+    }
+
+    /**
+     * Whether a failed playbook fails the step. Otherwise the step returns its recap, with
+     * {@code succeeded} false.
+     */
+    @DataBoundSetter
+    public void setFailOnError(boolean failOnError) {
+        this.failOnError = failOnError;
+    }
+
+    @DataBoundSetter
+    public void setFactCache(boolean factCache) {
+        this.factCache = factCache;
+    }
+
+    @DataBoundSetter
+    public void setInventoryCacheTtl(int inventoryCacheTtl) {
+        this.inventoryCacheTtl = inventoryCacheTtl;
+    }
+
+    @DataBoundSetter
+    public void setSshAgent(boolean sshAgent) {
+        this.sshAgent = sshAgent;
+    }
+
+    @DataBoundSetter
+    public void setSshAgentCredentialsIds(String sshAgentCredentialsIds) {
+        this.sshAgentCredentialsIds = Util.fixEmptyAndTrim(sshAgentCredentialsIds);
+    }
+
+    public String getInstallation() {
+        return installation;
+    }
+
+    public String getPlaybook() {
+        return playbook;
+    }
+
+    public String getInventory() {
+        return inventory;
+    }
+
+    public String getInventoryContent() {
+        return inventoryContent;
+    }
+
+    public boolean isDynamicInventory() {
+        return dynamicInventory;
+    }
+
+    public String getCredentialsId() {
+        return credentialsId;
+    }
+
+    public String getVaultCredentialsId() {
+        return vaultCredentialsId;
+    }
+
+    public String getVaultTmpPath() {
+        return vaultTmpPath;
+    }
+
+    public boolean isBecome() {
+        return become;
+    }
+
+    public String getBecomeUser() {
+        return becomeUser;
+    }
+
+    public boolean isCheckMode() {
+        return checkMode;
+    }
+
+    public boolean isSudo() {
+        return sudo;
+    }
+
+    public String getSudoUser() {
+        return sudoUser;
+    }
+
+    public String getLimit() {
+        return limit;
+    }
+
+    public String getTags() {
+        return tags;
+    }
+
+    public String getSkippedTags() {
+        return skippedTags;
+    }
+
+    public String getStartAtTask() {
+        return startAtTask;
+    }
+
+    public Map<String, Object> getExtraVars() {
+        return extraVars;
+    }
+
+    public boolean isExtraVarsAsFile() {
+        return extraVarsAsFile;
+    }
+
+    public String getExtras() {
+        return extras;
+    }
+
+    public boolean isDisableHostKeyChecking() {
+        return disableHostKeyChecking;
+    }
+
+    public boolean isStructuredOutput() {
+        return structuredOutput;
+    }
+
+    public boolean isFactCache() {
+        return factCache;
+    }
+
+    public int getInventoryCacheTtl() {
+        return inventoryCacheTtl;
+    }
+
+    public boolean isSshAgent() {
+        return sshAgent;
+    }
+
+    public String getSshAgentCredentialsIds() {
+        return sshAgentCredentialsIds;
+    }
+
+    public boolean isFailOnError() {
+        return failOnError;
+    }
+
+    public int getForks() {
+        return forks;
+    }
+
+    public boolean isColorized() {
+        return colorized;
+    }
+
+    AnsiblePlaybookBuilder createBuilder() {
+        Inventory inventory = null;
+        if (StringUtils.isNotBlank(getInventory())) {
+            inventory = new InventoryPath(getInventory());
+        } else if (StringUtils.isNotBlank(getInventoryContent())) {
+            inventory = new InventoryContent(getInventoryContent(), isDynamicInventory());
+        }
+        AnsiblePlaybookBuilder builder = new AnsiblePlaybookBuilder(getPlaybook(), inventory);
+        builder.setAnsibleName(getInstallation());
+        builder.setBecome(isBecome());
+        builder.setBecomeUser(getBecomeUser());
+        builder.setCheckMode(isCheckMode());
+        builder.setSudo(isSudo());
+        builder.setSudoUser(getSudoUser());
+        builder.setCredentialsId(getCredentialsId(), true);
+        builder.setVaultCredentialsId(getVaultCredentialsId());
+        builder.setVaultTmpPath(getVaultTmpPath());
+        builder.setForks(getForks());
+        builder.setLimit(getLimit());
+        builder.setTags(getTags());
+        builder.setStartAtTask(getStartAtTask());
+        builder.setSkippedTags(getSkippedTags());
+        builder.setExtraVars(AnsiblePlaybookStep.AnsiblePlaybookExecution.convertExtraVars(extraVars));
+        builder.setExtraVarsAsFile(isExtraVarsAsFile());
+        builder.setAdditionalParameters(getExtras());
+        builder.setDisableHostKeyChecking(isDisableHostKeyChecking());
+        builder.setUnbufferedOutput(true);
+        builder.setColorizedOutput(isColorized());
+        builder.setStructuredOutput(isStructuredOutput());
+        builder.setFactCache(isFactCache());
+        builder.setInventoryCacheTtl(getInventoryCacheTtl());
+        builder.setSshAgent(isSshAgent());
+        builder.setSshAgentCredentialsIds(getSshAgentCredentialsIds());
+        return builder;
+    }
+}
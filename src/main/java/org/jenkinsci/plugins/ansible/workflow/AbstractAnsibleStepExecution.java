@@ -0,0 +1,261 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jenkinsci.plugins.ansible.workflow;
+
+import edu.umd.cs.findbugs.annotations.NonNull;
+import hudson.AbortException;
+import hudson.FilePath;
+import hudson.Launcher;
+import hudson.model.Run;
+import hudson.model.TaskListener;
+import hudson.security.ACL;
+import hudson.util.ClassLoaderSanityThreadFactory;
+import hudson.util.DaemonThreadFactory;
+import hudson.util.NamingThreadFactory;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import jenkins.model.Jenkins;
+import jenkins.security.ImpersonatingScheduledExecutorService;
+import jenkins.util.ErrorLoggingScheduledThreadPoolExecutor;
+import jenkins.util.SystemProperties;
+import org.jenkinsci.plugins.ansible.AnsibleProcess;
+import org.jenkinsci.plugins.ansible.CLIRunner;
+import org.jenkinsci.plugins.workflow.steps.AbstractStepExecutionImpl;
+import org.jenkinsci.plugins.workflow.steps.StepContext;
+
+/**
+ * Launches an ansible command and polls for its completion, so that no thread is held while it
+ * runs.
+ *
+ * <p>In durable mode the process is detached from the agent connection and the state needed to
+ * take it over is saved with the pipeline, so that the step survives a restart of the controller.
+ */
+abstract class AbstractAnsibleStepExecution extends AbstractStepExecutionImpl {
+
+    private static final long serialVersionUID = 1;
+
+    /** Delay in milliseconds between two checks of the ansible process. */
+    static final long POLL_INTERVAL =
+            SystemProperties.getLong(AbstractAnsibleStepExecution.class.getName() + ".pollInterval", 1000L);
+
+    /** Threads launching, polling and stopping the ansible processes of all the steps. */
+    static final int THREAD_POOL_SIZE =
+            SystemProperties.getInteger(AbstractAnsibleStepExecution.class.getName() + ".threadPoolSize", 25);
+
+    private static ScheduledExecutorService threadPool;
+
+    private DurableAnsibleTask durableTask;
+    private List<FilePath> tempFiles;
+    private String sshAgentPid;
+    private FilePath sshAgentDirectory;
+    private String failureMessage;
+
+    private transient volatile CLIRunner runner;
+    private transient volatile AnsibleProcess process;
+    private transient volatile Future<?> task;
+    private transient volatile boolean stopped;
+
+    /**
+     * @return whether the command is to be launched as a durable task
+     */
+    protected abstract boolean isDurable();
+
+    /**
+     * Launch the command with the runner returned by
+     * {@link #createRunner(Run, FilePath, Launcher, TaskListener)}. Called from a thread of
+     * {@link #threadPool()} as credentials lookup and temporary files creation may block.
+     */
+    protected abstract AnsibleProcess launch() throws Exception;
+
+    /**
+     * @return the listener the output of the command is to be written to, the one of the step by
+     *     default
+     */
+    protected TaskListener decorate(TaskListener listener) {
+        return listener;
+    }
+
+    /**
+     * @param success whether the command succeeded
+     * @return the value returned by the step once the command has completed
+     */
+    protected Object getResult(boolean success) throws IOException {
+        return null;
+    }
+
+    /**
+     * @return whether the step fails when the command fails, rather than returning its result
+     */
+    protected boolean isFailOnError() {
+        return true;
+    }
+
+    /**
+     * @return the pool of the steps, rather than {@link jenkins.util.Timer} whose few threads are
+     *     shared by the whole controller and must not be held by a blocking launch
+     */
+    static synchronized ScheduledExecutorService threadPool() {
+        if (threadPool == null) {
+            ErrorLoggingScheduledThreadPoolExecutor executor = new ErrorLoggingScheduledThreadPoolExecutor(
+                    THREAD_POOL_SIZE,
+                    new NamingThreadFactory(
+                            new ClassLoaderSanityThreadFactory(new DaemonThreadFactory()), "AnsibleStep"));
+            executor.setKeepAliveTime(1, TimeUnit.MINUTES);
+            executor.allowCoreThreadTimeOut(true);
+            threadPool = new ImpersonatingScheduledExecutorService(executor, ACL.SYSTEM2);
+        }
+        return threadPool;
+    }
+
+    protected CLIRunner createRunner(Run<?, ?> run, FilePath ws, Launcher launcher, TaskListener listener) {
+        runner = isDurable()
+                ? new DurableCLIRunner(run, ws, launcher, listener)
+                : new CLIRunner(run, ws, launcher, listener);
+        return runner;
+    }
+
+    @Override
+    public boolean start() throws Exception {
+        if (isDurable() && Jenkins.get().getPlugin("durable-task") == null) {
+            throw new AbortException("The durable mode requires the Durable Task plugin");
+        }
+        task = threadPool().submit(this::launchProcess);
+        return false;
+    }
+
+    private void launchProcess() {
+        try {
+            AnsibleProcess p = launch();
+            process = p;
+            if (runner instanceof DurableCLIRunner) {
+                durableTask = ((DurableCLIRunner) runner).getTask();
+                tempFiles = new ArrayList<>(p.getTempFiles());
+                sshAgentPid = p.getSshAgentPid();
+                sshAgentDirectory = p.getSshAgentDirectory();
+                failureMessage = p.getFailureMessage();
+                getContext().saveState();
+            }
+            if (stopped) {
+                p.kill();
+                p.finish();
+            } else {
+                schedulePoll();
+            }
+        } catch (Throwable t) {
+            getContext().onFailure(t);
+        }
+    }
+
+    private void schedulePoll() {
+        task = threadPool().schedule(this::poll, POLL_INTERVAL, TimeUnit.MILLISECONDS);
+    }
+
+    private void poll() {
+        AnsibleProcess p = process;
+        if (stopped || p == null) {
+            return;
+        }
+        try {
+            boolean alive = p.isAlive();
+            if (durableTask != null && durableTask.consumeNewOutput()) {
+                // keep the output offset so that a restarted controller does not print it again
+                getContext().saveState();
+            }
+            if (alive) {
+                schedulePoll();
+                return;
+            }
+            AbortException failure = null;
+            try {
+                p.complete();
+            } catch (AbortException e) {
+                failure = e;
+            }
+            Object result = getResult(failure == null);
+            if (failure != null) {
+                if (isFailOnError()) {
+                    throw failure;
+                }
+                getContext().get(TaskListener.class).getLogger().println(failure.getMessage());
+            }
+            getContext().onSuccess(result);
+        } catch (Throwable t) {
+            getContext().onFailure(t);
+        }
+    }
+
+    @Override
+    public void stop(@NonNull Throwable cause) throws Exception {
+        stopped = true;
+        Future<?> t = task;
+        if (t != null) {
+            t.cancel(false);
+        }
+        AnsibleProcess p = process;
+        if (p != null) {
+            TaskListener listener = getContext().get(TaskListener.class);
+            threadPool().submit(() -> {
+                try {
+                    p.kill();
+                    p.finish();
+                } catch (IOException | InterruptedException e) {
+                    e.printStackTrace(listener.error("Unable to stop the ansible process"));
+                }
+            });
+        }
+        getContext().onFailure(cause);
+    }
+
+    @Override
+    public void onResume() {
+        if (durableTask == null) {
+            getContext()
+                    .onFailure(new AbortException("The ansible process cannot be resumed after a restart of Jenkins, "
+                            + "use the durable mode to keep it running"));
+            return;
+        }
+        task = threadPool().submit(this::reattach);
+    }
+
+    private void reattach() {
+        try {
+            StepContext context = getContext();
+            TaskListener listener = decorate(context.get(TaskListener.class));
+            Launcher launcher = context.get(Launcher.class);
+            if (launcher == null) {
+                throw new AbortException("The agent running the ansible process is not available");
+            }
+            DurableCLIRunner durableRunner =
+                    new DurableCLIRunner(context.get(Run.class), durableTask.getWorkspace(), launcher, listener);
+            durableRunner.setStructuredOutput(durableTask.isStructuredOutput());
+            runner = durableRunner;
+            process = new AnsibleProcess(
+                    durableRunner.reattach(durableTask),
+                    durableRunner,
+                    tempFiles,
+                    sshAgentPid,
+                    sshAgentDirectory,
+                    failureMessage,
+                    listener);
+            listener.getLogger().println("Resuming the ansible process output");
+            schedulePoll();
+        } catch (Throwable t) {
+            getContext().onFailure(t);
+        }
+    }
+}
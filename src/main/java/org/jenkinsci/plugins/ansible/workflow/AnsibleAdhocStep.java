@@ -35,6 +35,7 @@ import java.util.List;
 import org.apache.commons.lang3.StringUtils;
 import org.jenkinsci.plugins.ansible.AnsibleAdHocCommandBuilder;
 import org.jenkinsci.plugins.ansible.AnsibleInstallation;
+import org.jenkinsci.plugins.ansible.AnsibleProcess;
 import org.jenkinsci.plugins.ansible.ExtraVar;
 import org.jenkinsci.plugins.ansible.Inventory;
 import org.jenkinsci.plugins.ansible.InventoryContent;
@@ -44,7 +45,6 @@ import org.jenkinsci.plugins.plaincredentials.FileCredentials;
 import org.jenkinsci.plugins.plaincredentials.StringCredentials;
 import org.jenkinsci.plugins.workflow.steps.AbstractStepDescriptorImpl;
 import org.jenkinsci.plugins.workflow.steps.AbstractStepImpl;
-import org.jenkinsci.plugins.workflow.steps.AbstractSynchronousNonBlockingStepExecution;
 import org.jenkinsci.plugins.workflow.steps.StepContextParameter;
 import org.kohsuke.stapler.AncestorInPath;
 import org.kohsuke.stapler.DataBoundConstructor;
@@ -68,10 +68,12 @@ public class AnsibleAdhocStep extends AbstractStepImpl {
     private boolean become = false;
     private String becomeUser = "root";
     private List<ExtraVar> extraVars = null;
+    private boolean extraVarsAsFile = false;
     private String extras = null;
     private boolean colorized = false;
     private int forks = 0;
     private boolean hostKeyChecking = false;
+    private boolean durable = false;
 
     @DataBoundConstructor
     public AnsibleAdhocStep(String hosts) {
@@ -138,6 +140,11 @@ public class AnsibleAdhocStep extends AbstractStepImpl {
         this.extraVars = extraVars;
     }
 
+    @DataBoundSetter
+    public void setExtraVarsAsFile(boolean extraVarsAsFile) {
+        this.extraVarsAsFile = extraVarsAsFile;
+    }
+
     @DataBoundSetter
     public void setExtras(String extras) {
         this.extras = Util.fixEmptyAndTrim(extras);
@@ -158,6 +165,11 @@ public class AnsibleAdhocStep extends AbstractStepImpl {
         this.hostKeyChecking = hostKeyChecking;
     }
 
+    @DataBoundSetter
+    public void setDurable(boolean durable) {
+        this.durable = durable;
+    }
+
     public String getInstallation() {
         return installation;
     }
@@ -210,6 +222,10 @@ public class AnsibleAdhocStep extends AbstractStepImpl {
         return extraVars;
     }
 
+    public boolean isExtraVarsAsFile() {
+        return extraVarsAsFile;
+    }
+
     public String getExtras() {
         return extras;
     }
@@ -226,6 +242,10 @@ public class AnsibleAdhocStep extends AbstractStepImpl {
         return colorized;
     }
 
+    public boolean isDurable() {
+        return durable;
+    }
+
     @Extension
     public static final class DescriptorImpl extends AbstractStepDescriptorImpl {
 
@@ -268,7 +288,7 @@ public class AnsibleAdhocStep extends AbstractStepImpl {
         }
     }
 
-    public static final class AnsibleAdhocExecution extends AbstractSynchronousNonBlockingStepExecution<Void> {
+    public static final class AnsibleAdhocExecution extends AbstractAnsibleStepExecution {
 
         private static final long serialVersionUID = 1;
 
@@ -294,7 +314,12 @@ public class AnsibleAdhocStep extends AbstractStepImpl {
         private transient Computer computer;
 
         @Override
-        protected Void run() throws Exception {
+        protected boolean isDurable() {
+            return step.isDurable();
+        }
+
+        @Override
+        protected AnsibleProcess launch() throws Exception {
             Inventory inventory = null;
             if (StringUtils.isNotBlank(step.getInventory())) {
                 inventory = new InventoryPath(step.getInventory());
@@ -313,11 +338,11 @@ public class AnsibleAdhocStep extends AbstractStepImpl {
             builder.setVaultTmpPath(step.getVaultTmpPath());
             builder.setForks(step.getForks());
             builder.setExtraVars(step.getExtraVars());
+            builder.setExtraVarsAsFile(step.isExtraVarsAsFile());
             builder.setAdditionalParameters(step.getExtras());
             builder.setHostKeyChecking(step.isHostKeyChecking());
             builder.setColorizedOutput(step.isColorized());
-            builder.perform(run, ws, launcher, listener);
-            return null;
+            return builder.start(createRunner(run, ws, launcher, listener), run, ws, listener);
         }
     }
 }
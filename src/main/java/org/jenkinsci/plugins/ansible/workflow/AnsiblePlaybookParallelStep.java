@@ -0,0 +1,587 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jenkinsci.plugins.ansible.workflow;
+
+import com.google.inject.Inject;
+import edu.umd.cs.findbugs.annotations.NonNull;
+import hudson.AbortException;
+import hudson.EnvVars;
+import hudson.Extension;
+import hudson.FilePath;
+import hudson.Launcher;
+import hudson.Util;
+import hudson.model.Computer;
+import hudson.model.Executor;
+import hudson.model.Item;
+import hudson.model.Label;
+import hudson.model.Node;
+import hudson.model.Queue;
+import hudson.model.Run;
+import hudson.model.TaskListener;
+import hudson.model.TopLevelItem;
+import hudson.model.queue.SubTask;
+import hudson.model.queue.Tasks;
+import hudson.slaves.WorkspaceList;
+import hudson.util.FormValidation;
+import hudson.util.ListBoxModel;
+import hudson.util.StreamTaskListener;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import jenkins.model.Jenkins;
+import org.apache.commons.lang3.StringUtils;
+import org.jenkinsci.plugins.ansible.AnsiblePlaybookBuilder;
+import org.jenkinsci.plugins.ansible.AnsiblePlaybookRecap;
+import org.jenkinsci.plugins.ansible.AnsibleProcess;
+import org.jenkinsci.plugins.ansible.AnsibleRecapOutputStream;
+import org.jenkinsci.plugins.ansible.CLIRunner;
+import org.jenkinsci.plugins.workflow.steps.AbstractStepDescriptorImpl;
+import org.jenkinsci.plugins.workflow.steps.AbstractStepExecutionImpl;
+import org.jenkinsci.plugins.workflow.steps.StepContextParameter;
+import org.kohsuke.stapler.AncestorInPath;
+import org.kohsuke.stapler.DataBoundConstructor;
+import org.kohsuke.stapler.DataBoundSetter;
+import org.kohsuke.stapler.QueryParameter;
+import org.springframework.security.core.Authentication;
+
+/**
+ * Run a playbook over shards of its inventory, each shard being a separate ansible-playbook
+ * process limited to a part of the hosts, so that a large fleet is not bound by the forks, SSH
+ * CPU and memory of a single control node.
+ *
+ * <p>With a label, each shard is a task of the queue: it waits for an executor of an agent
+ * matching the label, like any build, with the authentication of the job, and runs there in the
+ * workspace of the job, where the files of the step workspace are copied. Without a label the
+ * shards run side by side on the current agent.
+ */
+public class AnsiblePlaybookParallelStep extends AbstractAnsiblePlaybookStep {
+
+    private int shards = 2;
+    private String label;
+    private String includes = "**";
+
+    @DataBoundConstructor
+    public AnsiblePlaybookParallelStep(String playbook) {
+        super(playbook);
+    }
+
+    @DataBoundSetter
+    public void setShards(int shards) {
+        this.shards = shards;
+    }
+
+    @DataBoundSetter
+    public void setLabel(String label) {
+        this.label = Util.fixEmptyAndTrim(label);
+    }
+
+    /**
+     * Files of the workspace copied to the agents running the shards, as an Ant pattern.
+     */
+    @DataBoundSetter
+    public void setIncludes(String includes) {
+        this.includes = StringUtils.defaultIfBlank(includes, "**");
+    }
+
+    public int getShards() {
+        return shards;
+    }
+
+    public String getLabel() {
+        return label;
+    }
+
+    public String getIncludes() {
+        return includes;
+    }
+
+    /**
+     * Deal the hosts round-robin into at most {@code count} non empty shards.
+     */
+    static List<List<String>> split(List<String> hosts, int count) {
+        int size = Math.max(1, Math.min(count, hosts.size()));
+        List<List<String>> result = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            result.add(new ArrayList<>());
+        }
+        for (int i = 0; i < hosts.size(); i++) {
+            result.get(i % size).add(hosts.get(i));
+        }
+        return result;
+    }
+
+    @Extension
+    public static final class DescriptorImpl extends AbstractStepDescriptorImpl {
+
+        public DescriptorImpl() {
+            super(AnsiblePlaybookParallelExecution.class);
+        }
+
+        @Override
+        public String getFunctionName() {
+            return "ansiblePlaybookParallel";
+        }
+
+        @Override
+        public String getDisplayName() {
+            return "Invoke an ansible playbook over shards of the inventory";
+        }
+
+        public FormValidation doCheckShards(@QueryParameter String shards) {
+            try {
+                if (Integer.parseInt(shards) < 1) {
+                    return FormValidation.error("The number of shards must be at least 1");
+                }
+                return FormValidation.ok();
+            } catch (NumberFormatException e) {
+                return FormValidation.error("The number of shards must be a number");
+            }
+        }
+
+        public ListBoxModel doFillCredentialsIdItems(@AncestorInPath Item item, @QueryParameter String credentialsId) {
+            return playbookDescriptor().doFillCredentialsIdItems(item, credentialsId);
+        }
+
+        public ListBoxModel doFillVaultCredentialsIdItems(
+                @AncestorInPath Item item, @QueryParameter String vaultCredentialsId) {
+            return playbookDescriptor().doFillVaultCredentialsIdItems(item, vaultCredentialsId);
+        }
+
+        public ListBoxModel doFillInstallationItems() {
+            return playbookDescriptor().doFillInstallationItems();
+        }
+
+        private static AnsiblePlaybookStep.DescriptorImpl playbookDescriptor() {
+            return Jenkins.get().getDescriptorByType(AnsiblePlaybookStep.DescriptorImpl.class);
+        }
+    }
+
+    public static final class AnsiblePlaybookParallelExecution extends AbstractStepExecutionImpl {
+
+        private static final long serialVersionUID = 1;
+
+        @Inject
+        private transient AnsiblePlaybookParallelStep step;
+
+        @StepContextParameter
+        private transient TaskListener listener;
+
+        @StepContextParameter
+        private transient Launcher launcher;
+
+        @StepContextParameter
+        private transient Run<?, ?> run;
+
+        @StepContextParameter
+        private transient FilePath ws;
+
+        @StepContextParameter
+        private transient EnvVars envVars;
+
+        @StepContextParameter
+        private transient Computer computer;
+
+        private transient volatile List<Shard> running;
+        private transient volatile Future<?> task;
+        private transient volatile boolean stopped;
+
+        @Override
+        public boolean start() throws Exception {
+            if (step.getShards() < 1) {
+                throw new AbortException("The number of shards must be at least 1");
+            }
+            task = AbstractAnsibleStepExecution.threadPool().submit(this::launchShards);
+            return false;
+        }
+
+        private void launchShards() {
+            List<Shard> shards = new ArrayList<>();
+            running = shards;
+            try {
+                Node node;
+                if (computer == null || (node = computer.getNode()) == null) {
+                    throw new AbortException("The ansible playbook build step requires to be launched on a node");
+                }
+                Label label = step.getLabel() != null ? Label.parseExpression(step.getLabel()) : null;
+                if (label != null && label.isEmpty()) {
+                    throw new AbortException("No agent matches the label " + step.getLabel());
+                }
+                if (label != null && !(run.getParent() instanceof TopLevelItem)) {
+                    throw new AbortException("The shards of " + run.getParent().getFullName()
+                            + " cannot run on other agents, it has no workspace there");
+                }
+                List<String> hosts = step.createBuilder().listHosts(run, node, ws, launcher, listener, envVars);
+                if (hosts.isEmpty()) {
+                    throw new AbortException("No host of the inventory matches the limit");
+                }
+                List<List<String>> groups = split(hosts, step.getShards());
+                listener.getLogger()
+                        .println("Running the playbook on " + hosts.size() + " hosts in " + groups.size() + " shards"
+                                + (label != null ? " on the agents matching " + label : ""));
+                for (int i = 0; i < groups.size() && !stopped; i++) {
+                    Shard shard = new Shard(i + 1, groups.size(), groups.get(i));
+                    synchronized (shards) {
+                        shards.add(shard);
+                    }
+                    if (label != null) {
+                        shard.schedule(label);
+                    } else {
+                        shard.launch(node, ws, launcher, envVars);
+                    }
+                }
+                if (stopped) {
+                    killAll();
+                } else {
+                    schedulePoll();
+                }
+            } catch (Throwable t) {
+                killAll();
+                getContext().onFailure(t);
+            }
+        }
+
+        private void schedulePoll() {
+            task = AbstractAnsibleStepExecution.threadPool()
+                    .schedule(this::poll, AbstractAnsibleStepExecution.POLL_INTERVAL, TimeUnit.MILLISECONDS);
+        }
+
+        private void poll() {
+            if (stopped) {
+                return;
+            }
+            try {
+                for (Shard shard : running) {
+                    if (shard.isAlive()) {
+                        schedulePoll();
+                        return;
+                    }
+                }
+                AnsiblePlaybookRecap recap = new AnsiblePlaybookRecap();
+                int failed = 0;
+                for (Shard shard : running) {
+                    if (!shard.complete()) {
+                        failed++;
+                    }
+                    recap.merge(shard.out.getRecap());
+                }
+                Map<String, Object> result = recap.toMap();
+                result.put("succeeded", failed == 0);
+                if (failed > 0) {
+                    String message = failed + " of " + running.size() + " shards failed";
+                    if (step.isFailOnError()) {
+                        throw new AbortException(message);
+                    }
+                    listener.getLogger().println(message);
+                }
+                getContext().onSuccess(result);
+            } catch (Throwable t) {
+                killAll();
+                getContext().onFailure(t);
+            }
+        }
+
+        private void killAll() {
+            List<Shard> shards = running;
+            if (shards == null) {
+                return;
+            }
+            synchronized (shards) {
+                for (Shard shard : shards) {
+                    try {
+                        shard.kill();
+                    } catch (IOException | InterruptedException e) {
+                        e.printStackTrace(listener.error("Unable to stop the shard " + shard.index));
+                    }
+                }
+            }
+        }
+
+        @Override
+        public void stop(@NonNull Throwable cause) throws Exception {
+            stopped = true;
+            Future<?> t = task;
+            if (t != null) {
+                t.cancel(false);
+            }
+            AbstractAnsibleStepExecution.threadPool().submit(this::killAll);
+            getContext().onFailure(cause);
+        }
+
+        @Override
+        public void onResume() {
+            getContext()
+                    .onFailure(new AbortException(
+                            "The ansible playbook shards cannot be resumed after a restart of Jenkins"));
+        }
+
+        /**
+         * One ansible-playbook process, limited to a part of the hosts, started on the current agent
+         * or by the executor the queue gave to its task.
+         */
+        private final class Shard {
+
+            final int index;
+            final int count;
+            final List<String> hosts;
+            final LinePrefixOutputStream prefixed;
+            final AnsibleRecapOutputStream out;
+            final TaskListener shardListener;
+            FilePath limitFile;
+            volatile AnsibleProcess process;
+            volatile ShardTask queued;
+            volatile Future<?> future;
+            volatile boolean succeeded;
+
+            Shard(int index, int count, List<String> hosts) {
+                this.index = index;
+                this.count = count;
+                this.hosts = hosts;
+                this.prefixed =
+                        new LinePrefixOutputStream(listener.getLogger(), "[shard " + index + "/" + count + "] ");
+                this.out = new AnsibleRecapOutputStream(prefixed);
+                this.shardListener = new StreamTaskListener(out, StandardCharsets.UTF_8);
+            }
+
+            void schedule(Label label) throws AbortException {
+                ShardTask t = new ShardTask(this, label);
+                Queue.Item item = Queue.getInstance().schedule2(t, 0).getItem();
+                if (item == null) {
+                    throw new AbortException("The queue refused the shard " + index);
+                }
+                queued = t;
+                future = item.getFuture();
+                shardListener.getLogger().println("Waiting for an agent matching " + label);
+            }
+
+            void launch(Node node, FilePath dir, Launcher shardLauncher, EnvVars env)
+                    throws IOException, InterruptedException {
+                shardListener.getLogger().println("Running for hosts " + String.join(",", hosts));
+                limitFile = dir.createTextTempFile("limit", ".txt", String.join("\n", hosts) + "\n", true);
+                AnsiblePlaybookBuilder builder = step.createBuilder();
+                builder.setLimit("@" + limitFile.getRemote());
+                process = builder.start(
+                        new CLIRunner(run, dir, shardLauncher, shardListener), run, node, dir, shardListener, env);
+            }
+
+            boolean isAlive() throws IOException, InterruptedException {
+                return queued != null ? !future.isDone() : process.isAlive();
+            }
+
+            /**
+             * @return whether the playbook succeeded
+             */
+            boolean complete() throws IOException, InterruptedException {
+                if (queued != null) {
+                    // completed by the executor of the task
+                    return succeeded;
+                }
+                try {
+                    process.complete();
+                    return true;
+                } catch (AbortException e) {
+                    shardListener.getLogger().println(e.getMessage());
+                    return false;
+                } finally {
+                    release();
+                }
+            }
+
+            void kill() throws IOException, InterruptedException {
+                if (queued != null) {
+                    Queue.getInstance().cancel(queued);
+                }
+                AnsibleProcess p = process;
+                try {
+                    if (p != null) {
+                        p.kill();
+                        p.finish();
+                    }
+                } finally {
+                    if (queued == null) {
+                        release();
+                    }
+                }
+            }
+
+            private void release() throws IOException, InterruptedException {
+                out.forceEol();
+                prefixed.forceEol();
+                if (limitFile != null) {
+                    limitFile.delete();
+                    limitFile = null;
+                }
+            }
+
+            /**
+             * Run the shard on the executor the queue picked, in the workspace of the job on its
+             * agent.
+             */
+            void runOn(Executor executor) {
+                WorkspaceList.Lease lease = null;
+                try {
+                    Computer c = executor.getOwner();
+                    Node node = c.getNode();
+                    if (node == null || stopped) {
+                        throw new AbortException("The agent went away");
+                    }
+                    FilePath path = node.getWorkspaceFor((TopLevelItem) run.getParent());
+                    if (path == null) {
+                        throw new AbortException("No workspace available on " + c.getDisplayName());
+                    }
+                    lease = c.getWorkspaceList().allocate(path);
+                    shardListener.getLogger().println("Running on " + describe(node) + " in " + lease.path);
+                    ws.copyRecursiveTo(step.getIncludes(), lease.path);
+                    EnvVars env = new EnvVars(envVars);
+                    env.overrideAll(c.getEnvironment());
+                    env.put("NODE_NAME", node.getNodeName());
+                    env.put("WORKSPACE", lease.path.getRemote());
+                    launch(node, lease.path, node.createLauncher(shardListener), env);
+                    if (stopped) {
+                        process.kill();
+                    }
+                    process.complete();
+                    succeeded = true;
+                } catch (AbortException e) {
+                    shardListener.getLogger().println(e.getMessage());
+                } catch (InterruptedException e) {
+                    shardListener.getLogger().println("Aborted");
+                    try {
+                        kill();
+                    } catch (IOException | InterruptedException x) {
+                        x.printStackTrace(shardListener.error("Unable to stop the shard"));
+                    }
+                } catch (Exception e) {
+                    e.printStackTrace(shardListener.error("The shard failed"));
+                } finally {
+                    try {
+                        release();
+                    } catch (IOException | InterruptedException e) {
+                        e.printStackTrace(shardListener.error("Unable to clean up the shard"));
+                    }
+                    if (lease != null) {
+                        lease.release();
+                    }
+                }
+            }
+        }
+
+        /**
+         * A shard waiting in the queue for an executor of an agent matching the label. It is never
+         * persisted: the step cannot resume after a restart anyway.
+         */
+        private final class ShardTask implements Queue.TransientTask {
+
+            private final Shard shard;
+            private final Label label;
+
+            ShardTask(Shard shard, Label label) {
+                this.shard = shard;
+                this.label = label;
+            }
+
+            @Override
+            public Label getAssignedLabel() {
+                return label;
+            }
+
+            /**
+             * The job, so that the node restrictions and the authorization of the job apply.
+             */
+            @Override
+            public Queue.Task getOwnerTask() {
+                return (Queue.Task) run.getParent();
+            }
+
+            @NonNull
+            @Override
+            public Authentication getDefaultAuthentication2() {
+                return Tasks.getAuthenticationOf2(getOwnerTask());
+            }
+
+            @NonNull
+            @Override
+            public Authentication getDefaultAuthentication2(Queue.Item item) {
+                return getDefaultAuthentication2();
+            }
+
+            @Override
+            public void checkAbortPermission() {
+                run.getParent().checkPermission(Item.CANCEL);
+            }
+
+            @Override
+            public boolean hasAbortPermission() {
+                return run.getParent().hasPermission(Item.CANCEL);
+            }
+
+            @Override
+            public String getName() {
+                return getDisplayName();
+            }
+
+            @Override
+            public String getFullDisplayName() {
+                return getDisplayName();
+            }
+
+            @Override
+            public String getDisplayName() {
+                return run.getFullDisplayName() + " ansible shard " + shard.index + "/" + shard.count;
+            }
+
+            @Override
+            public String getUrl() {
+                return run.getUrl();
+            }
+
+            @Override
+            public Queue.Executable createExecutable() {
+                return new ShardExecutable(this);
+            }
+        }
+
+        private final class ShardExecutable implements Queue.Executable {
+
+            private final ShardTask parent;
+
+            ShardExecutable(ShardTask parent) {
+                this.parent = parent;
+            }
+
+            @NonNull
+            @Override
+            public SubTask getParent() {
+                return parent;
+            }
+
+            @Override
+            public void run() {
+                parent.shard.runOn(Executor.currentExecutor());
+            }
+
+            @Override
+            public String toString() {
+                return parent.getDisplayName();
+            }
+        }
+
+        private static String describe(Node node) {
+            return StringUtils.isEmpty(node.getNodeName()) ? "the built-in node" : node.getNodeName();
+        }
+    }
+}
@@ -34,22 +34,23 @@ import hudson.model.Run;
 import hudson.model.TaskListener;
 import hudson.util.ListBoxModel;
 import hudson.util.Secret;
+import hudson.util.StreamTaskListener;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.List;
 import java.util.Map;
 import jenkins.model.Jenkins;
-import org.apache.commons.lang3.StringUtils;
 import org.jenkinsci.plugins.ansible.AnsibleInstallation;
 import org.jenkinsci.plugins.ansible.AnsiblePlaybookBuilder;
+import org.jenkinsci.plugins.ansible.AnsiblePlaybookRecap;
+import org.jenkinsci.plugins.ansible.AnsibleProcess;
+import org.jenkinsci.plugins.ansible.AnsibleRecapOutputStream;
 import org.jenkinsci.plugins.ansible.ExtraVar;
-import org.jenkinsci.plugins.ansible.Inventory;
-import org.jenkinsci.plugins.ansible.InventoryContent;
-import org.jenkinsci.plugins.ansible.InventoryPath;
 import org.jenkinsci.plugins.plaincredentials.FileCredentials;
 import org.jenkinsci.plugins.plaincredentials.StringCredentials;
 import org.jenkinsci.plugins.workflow.steps.AbstractStepDescriptorImpl;
-import org.jenkinsci.plugins.workflow.steps.AbstractStepImpl;
-import org.jenkinsci.plugins.workflow.steps.AbstractSynchronousNonBlockingStepExecution;
 import org.jenkinsci.plugins.workflow.steps.StepContextParameter;
 import org.kohsuke.stapler.AncestorInPath;
 import org.kohsuke.stapler.DataBoundConstructor;
@@ -59,30 +60,9 @@ import org.kohsuke.stapler.QueryParameter;
 /**
  * The Ansible playbook invocation step for the Jenkins workflow plugin.
  */
-public class AnsiblePlaybookStep extends AbstractStepImpl {
-
-    private final String playbook;
-    private String inventory;
-    private String inventoryContent;
-    private boolean dynamicInventory = false;
-    private String installation;
-    private String credentialsId;
-    private String vaultCredentialsId;
-    private String vaultTmpPath = null;
-    private boolean become = false;
-    private boolean checkMode = false;
-    private String becomeUser = "root";
-    private boolean sudo = false;
-    private String sudoUser = "root";
-    private String limit = null;
-    private String tags = null;
-    private String skippedTags = null;
-    private String startAtTask = null;
-    private Map extraVars = null;
-    private String extras = null;
-    private boolean colorized = false;
-    private int forks = 0;
-    private boolean disableHostKeyChecking = false;
+public class AnsiblePlaybookStep extends AbstractAnsiblePlaybookStep {
+
+    private boolean durable = false;
 
     @Deprecated
     @SuppressWarnings("unused")
@@ -91,196 +71,20 @@ public class AnsiblePlaybookStep extends AbstractStepImpl {
 
     @DataBoundConstructor
     public AnsiblePlaybookStep(String playbook) {
-        this.playbook = playbook;
-    }
-
-    @DataBoundSetter
-    public void setInventory(String inventory) {
-        this.inventory = Util.fixEmptyAndTrim(inventory);
-    }
-
-    @DataBoundSetter
-    public void setInventoryContent(String inventoryContent) {
-        this.inventoryContent = Util.fixEmptyAndTrim(inventoryContent);
-    }
-
-    @DataBoundSetter
-    public void setDynamicInventory(boolean dynamicInventory) {
-        this.dynamicInventory = dynamicInventory;
-    }
-
-    @DataBoundSetter
-    public void setCredentialsId(String credentialsId) {
-        this.credentialsId = Util.fixEmptyAndTrim(credentialsId);
-    }
-
-    @DataBoundSetter
-    public void setVaultCredentialsId(String vaultCredentialsId) {
-        this.vaultCredentialsId = Util.fixEmptyAndTrim(vaultCredentialsId);
-    }
-
-    @DataBoundSetter
-    public void setVaultTmpPath(String vaultTmpPath) {
-        this.vaultTmpPath = vaultTmpPath;
-    }
-
-    @DataBoundSetter
-    public void setBecome(boolean become) {
-        this.become = become;
-    }
-
-    @DataBoundSetter
-    public void setBecomeUser(String becomeUser) {
-        this.becomeUser = Util.fixEmptyAndTrim(becomeUser);
-    }
-
-    @DataBoundSetter
-    public void setCheckMode(boolean checkMode) {
-        this.checkMode = checkMode;
-    }
-
-    @DataBoundSetter
-    public void setSudo(boolean sudo) {
-        this.sudo = sudo;
-    }
-
-    @DataBoundSetter
-    public void setSudoUser(String sudoUser) {
-        this.sudoUser = Util.fixEmptyAndTrim(sudoUser);
-    }
-
-    @DataBoundSetter
-    public void setInstallation(String installation) {
-        this.installation = Util.fixEmptyAndTrim(installation);
-    }
-
-    @DataBoundSetter
-    public void setLimit(String limit) {
-        this.limit = Util.fixEmptyAndTrim(limit);
-    }
-
-    @DataBoundSetter
-    public void setTags(String tags) {
-        this.tags = Util.fixEmptyAndTrim(tags);
-    }
-
-    @DataBoundSetter
-    public void setSkippedTags(String skippedTags) {
-        this.skippedTags = Util.fixEmptyAndTrim(skippedTags);
-    }
-
-    @DataBoundSetter
-    public void setStartAtTask(String startAtTask) {
-        this.startAtTask = Util.fixEmptyAndTrim(startAtTask);
-    }
-
-    @DataBoundSetter
-    public void setExtraVars(Map extraVars) {
-        this.extraVars = extraVars;
-    }
-
-    @DataBoundSetter
-    public void setExtras(String extras) {
-        this.extras = Util.fixEmptyAndTrim(extras);
-    }
-
-    @DataBoundSetter
-    public void setColorized(boolean colorized) {
-        this.colorized = colorized;
-    }
-
-    @DataBoundSetter
-    public void setForks(int forks) {
-        this.forks = forks;
+        super(playbook);
     }
 
     @DataBoundSetter
-    public void setDisableHostKeyChecking(boolean disableHostKeyChecking) {
-        this.disableHostKeyChecking = disableHostKeyChecking;
+    public void setDurable(boolean durable) {
+        this.durable = durable;
     }
 
     @DataBoundSetter
     @Deprecated
     public void setHostKeyChecking(boolean hostKeyChecking) {}
 
-    public String getInstallation() {
-        return installation;
-    }
-
-    public String getPlaybook() {
-        return playbook;
-    }
-
-    public String getInventory() {
-        return inventory;
-    }
-
-    public String getInventoryContent() {
-        return inventoryContent;
-    }
-
-    public boolean isDynamicInventory() {
-        return dynamicInventory;
-    }
-
-    public String getCredentialsId() {
-        return credentialsId;
-    }
-
-    public String getVaultCredentialsId() {
-        return vaultCredentialsId;
-    }
-
-    public String getVaultTmpPath() {
-        return vaultTmpPath;
-    }
-
-    public boolean isBecome() {
-        return become;
-    }
-
-    public String getBecomeUser() {
-        return becomeUser;
-    }
-
-    public boolean isCheckMode() {
-        return checkMode;
-    }
-
-    public boolean isSudo() {
-        return sudo;
-    }
-
-    public String getSudoUser() {
-        return sudoUser;
-    }
-
-    public String getLimit() {
-        return limit;
-    }
-
-    public String getTags() {
-        return tags;
-    }
-
-    public String getSkippedTags() {
-        return skippedTags;
-    }
-
-    public String getStartAtTask() {
-        return startAtTask;
-    }
-
-    public Map<String, Object> getExtraVars() {
-        return extraVars;
-    }
-
-    public String getExtras() {
-        return extras;
-    }
-
-    public boolean isDisableHostKeyChecking() {
-        return disableHostKeyChecking;
+    public boolean isDurable() {
+        return durable;
     }
 
     @Deprecated
@@ -288,14 +92,6 @@ public class AnsiblePlaybookStep extends AbstractStepImpl {
         return true;
     }
 
-    public int getForks() {
-        return forks;
-    }
-
-    public boolean isColorized() {
-        return colorized;
-    }
-
     @Extension
     public static final class DescriptorImpl extends AbstractStepDescriptorImpl {
 
@@ -362,7 +158,7 @@ public class AnsiblePlaybookStep extends AbstractStepImpl {
         }
     }
 
-    public static final class AnsiblePlaybookExecution extends AbstractSynchronousNonBlockingStepExecution<Void> {
+    public static final class AnsiblePlaybookExecution extends AbstractAnsibleStepExecution {
 
         private static final long serialVersionUID = 1;
 
@@ -387,7 +183,11 @@ public class AnsiblePlaybookStep extends AbstractStepImpl {
         @StepContextParameter
         private transient Computer computer;
 
-        private static List<ExtraVar> convertExtraVars(Map<String, Object> extraVars) {
+        private boolean failOnError = true;
+
+        private transient volatile AnsibleRecapOutputStream recap;
+
+        static List<ExtraVar> convertExtraVars(Map<String, Object> extraVars) {
             if (extraVars == null) {
                 return null;
             }
@@ -396,8 +196,8 @@ public class AnsiblePlaybookStep extends AbstractStepImpl {
                 ExtraVar var = new ExtraVar();
                 var.setKey(entry.getKey());
                 Object o = entry.getValue();
-                if (o instanceof Map) {
-                    var.setSecretValue(getSecretFromScalarValue(((Map<?, ?>) o).get("value")));
+                if (isHiddenWrapper(o)) {
+                    setValue(var, ((Map<?, ?>) o).get("value"));
                     Object hidden = ((Map<?, ?>) o).get("hidden");
                     // If we are given a Boolean value for hidden, respect that.
                     // Otherwise if omitted or explictly null or any other type adopt the safe default of hidden=true.
@@ -407,7 +207,7 @@ public class AnsiblePlaybookStep extends AbstractStepImpl {
                         var.setHidden(true);
                     }
                 } else {
-                    var.setSecretValue(getSecretFromScalarValue(o));
+                    setValue(var, o);
                     // Consistent with above: for a scalar value effectively hidden is omitted so adopt the safe default
                     // of hidden=true.
                     var.setHidden(true);
@@ -417,54 +217,85 @@ public class AnsiblePlaybookStep extends AbstractStepImpl {
             return extraVarList;
         }
 
-        private static Secret getSecretFromScalarValue(Object o) {
-            if (o instanceof String) {
-                return Secret.fromString((String) o);
-            } else if (o instanceof Boolean) {
-                return Secret.fromString(o.toString());
-            } else if (o instanceof Number) {
-                return Secret.fromString(o.toString());
+        /**
+         * @return whether the value is a map giving the {@code value} of the variable and whether it
+         *     is {@code hidden}, rather than a map passed to ansible
+         */
+        private static boolean isHiddenWrapper(Object o) {
+            if (!(o instanceof Map) || !((Map<?, ?>) o).containsKey("value")) {
+                return false;
+            }
+            for (Object key : ((Map<?, ?>) o).keySet()) {
+                if (!"value".equals(key) && !"hidden".equals(key)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        /**
+         * Strings and booleans are passed as before, numbers, lists and maps as JSON documents so that
+         * ansible receives them with their types.
+         */
+        private static void setValue(ExtraVar var, Object o) {
+            if (o instanceof CharSequence || o instanceof Boolean) {
+                var.setSecretValue(Secret.fromString(o.toString()));
             } else if (o instanceof Secret) {
-                return (Secret) o;
-            } else {
-                return null;
+                var.setSecretValue((Secret) o);
+            } else if (o instanceof Number || o instanceof Map || o instanceof Collection || o instanceof Object[]) {
+                String json = ExtraVar.toJson(o);
+                if (json != null) {
+                    var.setSecretValue(Secret.fromString(json));
+                    var.setJson(true);
+                }
             }
         }
 
         @Override
-        protected Void run() throws Exception {
-            Inventory inventory = null;
-            if (StringUtils.isNotBlank(step.getInventory())) {
-                inventory = new InventoryPath(step.getInventory());
-            } else if (StringUtils.isNotBlank(step.getInventoryContent())) {
-                inventory = new InventoryContent(step.getInventoryContent(), step.isDynamicInventory());
-            }
-            AnsiblePlaybookBuilder builder = new AnsiblePlaybookBuilder(step.getPlaybook(), inventory);
-            builder.setAnsibleName(step.getInstallation());
-            builder.setBecome(step.isBecome());
-            builder.setBecomeUser(step.getBecomeUser());
-            builder.setCheckMode(step.isCheckMode());
-            builder.setSudo(step.isSudo());
-            builder.setSudoUser(step.getSudoUser());
-            builder.setCredentialsId(step.getCredentialsId(), true);
-            builder.setVaultCredentialsId(step.getVaultCredentialsId());
-            builder.setVaultTmpPath(step.getVaultTmpPath());
-            builder.setForks(step.getForks());
-            builder.setLimit(step.getLimit());
-            builder.setTags(step.getTags());
-            builder.setStartAtTask(step.getStartAtTask());
-            builder.setSkippedTags(step.getSkippedTags());
-            builder.setExtraVars(convertExtraVars(step.extraVars));
-            builder.setAdditionalParameters(step.getExtras());
-            builder.setDisableHostKeyChecking(step.isDisableHostKeyChecking());
-            builder.setUnbufferedOutput(true);
-            builder.setColorizedOutput(step.isColorized());
+        protected boolean isDurable() {
+            return step.isDurable();
+        }
+
+        @Override
+        protected AnsibleProcess launch() throws Exception {
+            AnsiblePlaybookBuilder builder = step.createBuilder();
+            failOnError = step.isFailOnError();
             Node node;
             if (computer == null || (node = computer.getNode()) == null) {
                 throw new AbortException("The ansible playbook build step requires to be launched on a node");
             }
-            builder.perform(run, node, ws, launcher, listener, envVars);
-            return null;
+            TaskListener out = decorate(listener);
+            return builder.start(createRunner(run, ws, launcher, out), run, node, ws, out, envVars);
+        }
+
+        /**
+         * Collect the PLAY RECAP on its way to the log, printed by ansible or rendered from the
+         * structured output.
+         */
+        @Override
+        protected TaskListener decorate(TaskListener listener) {
+            AnsibleRecapOutputStream out = new AnsibleRecapOutputStream(listener.getLogger());
+            recap = out;
+            return new StreamTaskListener(out, StandardCharsets.UTF_8);
+        }
+
+        @Override
+        protected Object getResult(boolean success) throws IOException {
+            AnsibleRecapOutputStream out = recap;
+            Map<String, Object> result;
+            if (out != null) {
+                out.forceEol();
+                result = out.getRecap().toMap();
+            } else {
+                result = new AnsiblePlaybookRecap().toMap();
+            }
+            result.put("succeeded", success);
+            return result;
+        }
+
+        @Override
+        protected boolean isFailOnError() {
+            return failOnError;
         }
     }
 }
@@ -31,12 +31,12 @@ import hudson.model.TaskListener;
 import hudson.util.ListBoxModel;
 import jenkins.model.Jenkins;
 import org.jenkinsci.plugins.ansible.AnsibleInstallation;
+import org.jenkinsci.plugins.ansible.AnsibleProcess;
 import org.jenkinsci.plugins.ansible.AnsibleVaultBuilder;
 import org.jenkinsci.plugins.plaincredentials.FileCredentials;
 import org.jenkinsci.plugins.plaincredentials.StringCredentials;
 import org.jenkinsci.plugins.workflow.steps.AbstractStepDescriptorImpl;
 import org.jenkinsci.plugins.workflow.steps.AbstractStepImpl;
-import org.jenkinsci.plugins.workflow.steps.AbstractSynchronousNonBlockingStepExecution;
 import org.jenkinsci.plugins.workflow.steps.StepContextParameter;
 import org.kohsuke.stapler.AncestorInPath;
 import org.kohsuke.stapler.DataBoundConstructor;
@@ -56,6 +56,9 @@ public class AnsibleVaultStep extends AbstractStepImpl {
     private String content = null;
     private String input = null;
     private String output = null;
+    private String inputs = null;
+    private boolean builtinEngine = false;
+    private boolean durable = false;
 
     @DataBoundConstructor
     public AnsibleVaultStep() {}
@@ -95,11 +98,26 @@ public class AnsibleVaultStep extends AbstractStepImpl {
         this.output = output;
     }
 
+    @DataBoundSetter
+    public void setInputs(String inputs) {
+        this.inputs = Util.fixEmptyAndTrim(inputs);
+    }
+
+    @DataBoundSetter
+    public void setBuiltinEngine(boolean builtinEngine) {
+        this.builtinEngine = builtinEngine;
+    }
+
     @DataBoundSetter
     public void setInstallation(String installation) {
         this.installation = Util.fixEmptyAndTrim(installation);
     }
 
+    @DataBoundSetter
+    public void setDurable(boolean durable) {
+        this.durable = durable;
+    }
+
     public String getInstallation() {
         return installation;
     }
@@ -132,6 +150,18 @@ public class AnsibleVaultStep extends AbstractStepImpl {
         return output;
     }
 
+    public String getInputs() {
+        return inputs;
+    }
+
+    public boolean isBuiltinEngine() {
+        return builtinEngine;
+    }
+
+    public boolean isDurable() {
+        return durable;
+    }
+
     @Extension
     public static final class DescriptorImpl extends AbstractStepDescriptorImpl {
 
@@ -167,7 +197,7 @@ public class AnsibleVaultStep extends AbstractStepImpl {
             return model;
         }
 
-        private ListBoxModel fillVaultCredentials(Item item, String credentialsId) {
+        static ListBoxModel fillVaultCredentials(Item item, String credentialsId) {
             StandardListBoxModel result = new StandardListBoxModel();
             if (item == null) {
                 if (!Jenkins.getActiveInstance().hasPermission(Jenkins.ADMINISTER)) {
@@ -187,7 +217,7 @@ public class AnsibleVaultStep extends AbstractStepImpl {
         }
     }
 
-    public static final class AnsibleVaultExecution extends AbstractSynchronousNonBlockingStepExecution<Void> {
+    public static final class AnsibleVaultExecution extends AbstractAnsibleStepExecution {
 
         private static final long serialVersionUID = 1;
 
@@ -213,7 +243,12 @@ public class AnsibleVaultStep extends AbstractStepImpl {
         private transient Computer computer;
 
         @Override
-        protected Void run() throws Exception {
+        protected boolean isDurable() {
+            return step.isDurable();
+        }
+
+        @Override
+        protected AnsibleProcess launch() throws Exception {
             AnsibleVaultBuilder builder = new AnsibleVaultBuilder();
             builder.setAnsibleName(step.getInstallation());
             builder.setAction(step.getAction());
@@ -223,12 +258,13 @@ public class AnsibleVaultStep extends AbstractStepImpl {
             builder.setContent(step.getContent());
             builder.setInput(step.getInput());
             builder.setOutput(step.getOutput());
+            builder.setInputs(step.getInputs());
+            builder.setBuiltinEngine(step.isBuiltinEngine());
             Node node;
             if (computer == null || (node = computer.getNode()) == null) {
                 throw new AbortException("The ansible vault build step requires to be launched on a node");
             }
-            builder.perform(run, node, ws, launcher, listener, envVars);
-            return null;
+            return builder.start(createRunner(run, ws, launcher, listener), run, node, ws, listener, envVars);
         }
     }
 }
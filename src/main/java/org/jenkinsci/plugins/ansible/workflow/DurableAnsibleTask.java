@@ -0,0 +1,126 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jenkinsci.plugins.ansible.workflow;
+
+import hudson.EnvVars;
+import hudson.FilePath;
+import hudson.Launcher;
+import hudson.model.TaskListener;
+import hudson.util.ArgumentListBuilder;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Serializable;
+import java.util.List;
+import java.util.Map;
+import org.jenkinsci.plugins.durabletask.BourneShellScript;
+import org.jenkinsci.plugins.durabletask.Controller;
+
+/**
+ * An ansible process detached from the agent connection, whose output is spooled to a file on the
+ * agent. The state is serializable so that a restarted controller can take the process over and
+ * resume reading its output where it stopped.
+ */
+final class DurableAnsibleTask implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    /** Prefix of the variables passing the masked arguments, which must not be written in the script. */
+    static final String MASKED_ARGUMENT_PREFIX = "JENKINS_ANSIBLE_ARG_";
+
+    private final Controller controller;
+    private final FilePath ws;
+    private final boolean structuredOutput;
+    private transient boolean newOutput;
+
+    private DurableAnsibleTask(Controller controller, FilePath ws, boolean structuredOutput) {
+        this.controller = controller;
+        this.ws = ws;
+        this.structuredOutput = structuredOutput;
+    }
+
+    static DurableAnsibleTask launch(
+            ArgumentListBuilder args,
+            Map<String, String> environment,
+            boolean structuredOutput,
+            FilePath ws,
+            Launcher launcher,
+            TaskListener listener)
+            throws IOException, InterruptedException {
+        EnvVars env = new EnvVars(environment);
+        BourneShellScript script = new BourneShellScript(toScript(args, env));
+        return new DurableAnsibleTask(script.launch(env, ws, launcher, listener), ws, structuredOutput);
+    }
+
+    /**
+     * Build a shell script running the command. Masked arguments are passed by environment
+     * variables so that they are never written to the agent disk.
+     */
+    static String toScript(ArgumentListBuilder args, Map<String, String> env) {
+        List<String> list = args.toList();
+        boolean[] mask = args.toMaskArray();
+        StringBuilder sb = new StringBuilder("#!/bin/sh\n");
+        for (int i = 0; i < list.size(); i++) {
+            if (i > 0) {
+                sb.append(' ');
+            }
+            if (mask[i]) {
+                String name = MASKED_ARGUMENT_PREFIX + i;
+                env.put(name, list.get(i));
+                sb.append("\"$").append(name).append('"');
+            } else {
+                sb.append('\'').append(list.get(i).replace("'", "'\\''")).append('\'');
+            }
+        }
+        return sb.append('\n').toString();
+    }
+
+    FilePath getWorkspace() {
+        return ws;
+    }
+
+    boolean isStructuredOutput() {
+        return structuredOutput;
+    }
+
+    /**
+     * Copy the output written since the last call.
+     *
+     * @return the exit status, or {@code null} while the process is running
+     */
+    Integer poll(OutputStream sink, Launcher launcher, TaskListener listener) throws IOException, InterruptedException {
+        // read the status first so that the output is complete when the process has exited
+        Integer status = controller.exitStatus(ws, launcher, listener);
+        if (controller.writeLog(ws, sink)) {
+            newOutput = true;
+        }
+        return status;
+    }
+
+    /**
+     * @return whether output was copied since the last call, so that the new offset is to be saved
+     */
+    boolean consumeNewOutput() {
+        boolean result = newOutput;
+        newOutput = false;
+        return result;
+    }
+
+    void stop(Launcher launcher) throws IOException, InterruptedException {
+        controller.stop(ws, launcher);
+    }
+
+    void cleanup() throws IOException, InterruptedException {
+        controller.cleanup(ws);
+    }
+}
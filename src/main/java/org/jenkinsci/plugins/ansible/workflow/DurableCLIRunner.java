@@ -0,0 +1,123 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jenkinsci.plugins.ansible.workflow;
+
+import hudson.FilePath;
+import hudson.Launcher;
+import hudson.Proc;
+import hudson.model.Run;
+import hudson.model.TaskListener;
+import hudson.util.ArgumentListBuilder;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Map;
+import org.jenkinsci.plugins.ansible.CLIRunner;
+
+/**
+ * Runner launching ansible as a {@link DurableAnsibleTask}.
+ */
+final class DurableCLIRunner extends CLIRunner {
+
+    private final FilePath ws;
+    private final Launcher launcher;
+    private final TaskListener listener;
+    private DurableAnsibleTask task;
+
+    DurableCLIRunner(Run<?, ?> build, FilePath ws, Launcher launcher, TaskListener listener) {
+        super(build, ws, launcher, listener);
+        this.ws = ws;
+        this.launcher = launcher;
+        this.listener = listener;
+    }
+
+    @Override
+    protected Proc launch(ArgumentListBuilder args, Map<String, String> environment, OutputStream stdout)
+            throws IOException, InterruptedException {
+        task = DurableAnsibleTask.launch(args, environment, isStructuredOutput(), ws, launcher, listener);
+        return new DurableProc(stdout);
+    }
+
+    /**
+     * Resume reading the output of a task launched before a restart.
+     */
+    Proc reattach(DurableAnsibleTask task) {
+        this.task = task;
+        return new DurableProc(openStdout());
+    }
+
+    DurableAnsibleTask getTask() {
+        return task;
+    }
+
+    @Override
+    public synchronized void finish() throws IOException {
+        try {
+            super.finish();
+        } finally {
+            if (task != null) {
+                try {
+                    task.cleanup();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        }
+    }
+
+    private final class DurableProc extends Proc {
+        private final OutputStream stdout;
+        private Integer exitStatus;
+
+        DurableProc(OutputStream stdout) {
+            this.stdout = stdout;
+        }
+
+        @Override
+        public synchronized boolean isAlive() throws IOException, InterruptedException {
+            if (exitStatus == null) {
+                exitStatus = task.poll(stdout, launcher, listener);
+            }
+            return exitStatus == null;
+        }
+
+        @Override
+        public void kill() throws IOException, InterruptedException {
+            task.stop(launcher);
+        }
+
+        @Override
+        public int join() throws IOException, InterruptedException {
+            while (isAlive()) {
+                Thread.sleep(AbstractAnsibleStepExecution.POLL_INTERVAL);
+            }
+            return exitStatus;
+        }
+
+        @Override
+        public InputStream getStdout() {
+            return null;
+        }
+
+        @Override
+        public InputStream getStderr() {
+            return null;
+        }
+
+        @Override
+        public OutputStream getStdin() {
+            return null;
+        }
+    }
+}
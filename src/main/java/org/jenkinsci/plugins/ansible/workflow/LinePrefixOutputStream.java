@@ -0,0 +1,49 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jenkinsci.plugins.ansible.workflow;
+
+import hudson.console.LineTransformationOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Prefix every line written to a shared stream, so that the output of concurrent processes can
+ * be told apart. Each line is written with a single call and is not interleaved with the others.
+ */
+final class LinePrefixOutputStream extends LineTransformationOutputStream.Delegating {
+
+    private final byte[] prefix;
+    private final ByteArrayOutputStream line = new ByteArrayOutputStream();
+
+    LinePrefixOutputStream(OutputStream out, String prefix) {
+        super(out);
+        this.prefix = prefix.getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Override
+    protected void eol(byte[] b, int len) throws IOException {
+        line.reset();
+        line.write(prefix);
+        line.write(b, 0, len);
+        if (len == 0 || b[len - 1] != '\n') {
+            // a pending line flushed at the end of the output
+            line.write('\n');
+        }
+        synchronized (out) {
+            line.writeTo(out);
+        }
+    }
+}
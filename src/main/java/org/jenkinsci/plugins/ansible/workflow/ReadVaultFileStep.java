@@ -0,0 +1,164 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jenkinsci.plugins.ansible.workflow;
+
+import com.cloudbees.plugins.credentials.CredentialsProvider;
+import com.cloudbees.plugins.credentials.common.StandardCredentials;
+import com.google.inject.Inject;
+import hudson.AbortException;
+import hudson.EnvVars;
+import hudson.Extension;
+import hudson.FilePath;
+import hudson.model.Item;
+import hudson.model.Run;
+import hudson.model.TaskListener;
+import hudson.remoting.VirtualChannel;
+import hudson.util.ListBoxModel;
+import java.io.File;
+import java.io.IOException;
+import java.io.Serializable;
+import java.nio.file.Files;
+import java.util.LinkedHashSet;
+import java.util.Set;
+import jenkins.MasterToSlaveFileCallable;
+import org.apache.commons.lang3.StringUtils;
+import org.jenkinsci.plugins.ansible.AnsibleVaultFile;
+import org.jenkinsci.plugins.ansible.AnsibleVaultInvocation;
+import org.jenkinsci.plugins.workflow.steps.AbstractStepDescriptorImpl;
+import org.jenkinsci.plugins.workflow.steps.AbstractStepImpl;
+import org.jenkinsci.plugins.workflow.steps.AbstractSynchronousNonBlockingStepExecution;
+import org.jenkinsci.plugins.workflow.steps.StepContextParameter;
+import org.kohsuke.stapler.AncestorInPath;
+import org.kohsuke.stapler.DataBoundConstructor;
+import org.kohsuke.stapler.DataBoundSetter;
+import org.kohsuke.stapler.QueryParameter;
+
+/**
+ * Reads an Ansible variable file of the workspace, decrypted in memory on the agent, and returns
+ * its content to the pipeline. The secret values are masked in the rest of the build log.
+ */
+public class ReadVaultFileStep extends AbstractStepImpl {
+
+    private final String file;
+    private String vaultCredentialsId;
+
+    @DataBoundConstructor
+    public ReadVaultFileStep(String file) {
+        this.file = file;
+    }
+
+    @DataBoundSetter
+    public void setVaultCredentialsId(String vaultCredentialsId) {
+        this.vaultCredentialsId = vaultCredentialsId;
+    }
+
+    public String getFile() {
+        return file;
+    }
+
+    public String getVaultCredentialsId() {
+        return vaultCredentialsId;
+    }
+
+    @Extension
+    public static final class DescriptorImpl extends AbstractStepDescriptorImpl {
+
+        public DescriptorImpl() {
+            super(ReadVaultFileExecution.class);
+        }
+
+        @Override
+        public String getFunctionName() {
+            return "readVaultFile";
+        }
+
+        @Override
+        public String getDisplayName() {
+            return "Read an ansible vault file";
+        }
+
+        public ListBoxModel doFillVaultCredentialsIdItems(
+                @AncestorInPath Item item, @QueryParameter String vaultCredentialsId) {
+            return AnsibleVaultStep.DescriptorImpl.fillVaultCredentials(item, vaultCredentialsId);
+        }
+    }
+
+    public static final class ReadVaultFileExecution extends AbstractSynchronousNonBlockingStepExecution<Object> {
+
+        private static final long serialVersionUID = 1;
+
+        @Inject
+        private transient ReadVaultFileStep step;
+
+        @StepContextParameter
+        private transient TaskListener listener;
+
+        @StepContextParameter
+        private transient Run<?, ?> run;
+
+        @StepContextParameter
+        private transient FilePath ws;
+
+        @StepContextParameter
+        private transient EnvVars envVars;
+
+        @Override
+        protected Object run() throws Exception {
+            if (StringUtils.isBlank(step.getFile())) {
+                throw new AbortException("The file to read is required");
+            }
+            StandardCredentials credentials = StringUtils.isNotBlank(step.getVaultCredentialsId())
+                    ? CredentialsProvider.findCredentialById(
+                            envVars.expand(step.getVaultCredentialsId()), StandardCredentials.class, run)
+                    : null;
+            FilePath file = ws.child(envVars.expand(step.getFile()));
+            ReadResult result = file.act(new ReadCallable(AnsibleVaultInvocation.password(credentials)));
+            VaultValueMasker.register(run, result.secrets);
+            listener.getLogger().println("Read " + file.getRemote() + ", " + result.secrets.size() + " values masked");
+            return result.value;
+        }
+    }
+
+    /**
+     * Decrypt and parse a file on the agent holding it.
+     */
+    private static final class ReadCallable extends MasterToSlaveFileCallable<ReadResult> {
+        private static final long serialVersionUID = 1L;
+
+        private final byte[] password;
+
+        ReadCallable(byte[] password) {
+            this.password = password;
+        }
+
+        @Override
+        public ReadResult invoke(File f, VirtualChannel channel) throws IOException {
+            Set<String> secrets = new LinkedHashSet<>();
+            Object value = AnsibleVaultFile.read(Files.readAllBytes(f.toPath()), password, secrets);
+            return new ReadResult(value, secrets);
+        }
+    }
+
+    private static final class ReadResult implements Serializable {
+        private static final long serialVersionUID = 1L;
+
+        final Object value;
+        final Set<String> secrets;
+
+        ReadResult(Object value, Set<String> secrets) {
+            this.value = value;
+            this.secrets = secrets;
+        }
+    }
+}
@@ -0,0 +1,124 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jenkinsci.plugins.ansible.workflow;
+
+import hudson.Extension;
+import hudson.console.LineTransformationOutputStream;
+import hudson.model.Queue;
+import hudson.model.Run;
+import hudson.model.listeners.RunListener;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+import org.jenkinsci.plugins.workflow.flow.FlowExecutionOwner;
+import org.jenkinsci.plugins.workflow.log.TaskListenerDecorator;
+
+/**
+ * Masks in the log of the next steps of a pipeline the secret values returned by
+ * {@link ReadVaultFileStep}.
+ *
+ * <p>The values are only kept in memory until the build completes, so they are no longer masked
+ * after a restart of the controller unless the file is read again.
+ */
+@Extension(optional = true)
+public final class VaultValueMasker implements TaskListenerDecorator.Factory {
+
+    private static final String MASK = "****";
+
+    private static final Map<String, Set<String>> VALUES = new ConcurrentHashMap<>();
+
+    static void register(Run<?, ?> run, Collection<String> values) {
+        if (!values.isEmpty()) {
+            VALUES.computeIfAbsent(run.getExternalizableId(), id -> ConcurrentHashMap.newKeySet())
+                    .addAll(values);
+        }
+    }
+
+    @Override
+    public TaskListenerDecorator of(FlowExecutionOwner owner) {
+        Queue.Executable executable;
+        try {
+            executable = owner.getExecutable();
+        } catch (IOException e) {
+            return null;
+        }
+        if (!(executable instanceof Run)) {
+            return null;
+        }
+        Set<String> values = VALUES.get(((Run<?, ?>) executable).getExternalizableId());
+        if (values == null || values.isEmpty()) {
+            return null;
+        }
+        // the longest values first, so that a value containing another one is masked whole
+        List<String> sorted = new ArrayList<>(values);
+        sorted.sort(Comparator.comparingInt(String::length).reversed());
+        return new Decorator(
+                Pattern.compile(sorted.stream().map(Pattern::quote).collect(Collectors.joining("|"))));
+    }
+
+    private static final class Decorator extends TaskListenerDecorator {
+        private static final long serialVersionUID = 1L;
+
+        private final Pattern pattern;
+
+        Decorator(Pattern pattern) {
+            this.pattern = pattern;
+        }
+
+        @Override
+        public OutputStream decorate(OutputStream logger) {
+            return new MaskingOutputStream(logger, pattern);
+        }
+    }
+
+    private static final class MaskingOutputStream extends LineTransformationOutputStream.Delegating {
+
+        private final Pattern pattern;
+
+        MaskingOutputStream(OutputStream out, Pattern pattern) {
+            super(out);
+            this.pattern = pattern;
+        }
+
+        @Override
+        protected void eol(byte[] b, int len) throws IOException {
+            Matcher matcher = pattern.matcher(new String(b, 0, len, StandardCharsets.UTF_8));
+            if (matcher.find()) {
+                out.write(matcher.replaceAll(MASK).getBytes(StandardCharsets.UTF_8));
+            } else {
+                // untouched, whatever the encoding of the line
+                out.write(b, 0, len);
+            }
+        }
+    }
+
+    @Extension
+    public static final class Cleanup extends RunListener<Run<?, ?>> {
+
+        @Override
+        public void onFinalized(Run<?, ?> run) {
+            VALUES.remove(run.getExternalizableId());
+        }
+    }
+}
@@ -0,0 +1,78 @@
+package org.jenkinsci.plugins.ansible;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.empty;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.lessThan;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.DisabledOnOs;
+import org.junit.jupiter.api.condition.OS;
+import org.junit.jupiter.api.io.TempDir;
+
+class AnsibleBytecodeWarmupTest {
+
+    @Test
+    void shouldFindModuleAndCollectionLocations() {
+        String version = "ansible [core 2.15.3]\n"
+                + "  config file = None\n"
+                + "  ansible python module location = /opt/ansible/lib/python3.11/site-packages/ansible\n"
+                + "  ansible collection location = /var/lib/jenkins/.ansible/collections:"
+                + "/usr/share/ansible/collections\n"
+                + "  python version = 3.11.4 (main, Jun  9 2023, 07:59:55) [GCC 12.3.0] (/usr/bin/python3)\n";
+
+        assertThat(
+                AnsibleBytecodeWarmup.locations(version),
+                contains(
+                        "/opt/ansible/lib/python3.11/site-packages/ansible",
+                        "/var/lib/jenkins/.ansible/collections",
+                        "/usr/share/ansible/collections"));
+    }
+
+    @Test
+    void shouldIgnoreLegacyVersionOutput() {
+        String version = "ansible 2.9.6\n  python version = 3.8.10 (default, Nov 22 2023, 10:22:35) [GCC 9.4.0]\n";
+
+        assertThat(AnsibleBytecodeWarmup.locations(version), empty());
+    }
+
+    @Test
+    void shouldOnlyPassTheVariablesAffectingTheCompilation() {
+        Map<String, String> env = Map.of(
+                "PATH", "/usr/bin",
+                "PYTHONPYCACHEPREFIX", "/var/cache/python",
+                "ANSIBLE_COLLECTIONS_PATH", "/opt/collections",
+                "AWS_SECRET_ACCESS_KEY", "s3cr3t",
+                "ANSIBLE_VAULT_PASSWORD_FILE", "/tmp/vault");
+
+        assertThat(
+                AnsibleBytecodeWarmup.environment(env),
+                is(Map.of(
+                        "PATH", "/usr/bin",
+                        "PYTHONPYCACHEPREFIX", "/var/cache/python",
+                        "ANSIBLE_COLLECTIONS_PATH", "/opt/collections")));
+    }
+
+    @Test
+    @DisabledOnOs(OS.WINDOWS)
+    void shouldKillCommandsRunningForTooLong(@TempDir Path dir) throws Exception {
+        Path exe = dir.resolve("ansible");
+        Files.writeString(exe, "#!/bin/sh\nsleep 60\n");
+        exe.toFile().setExecutable(true);
+        AnsibleBytecodeWarmup.Warmup warmup =
+                new AnsibleBytecodeWarmup.Warmup(null, "agent", exe.toString(), Map.of(), 1);
+
+        long start = System.nanoTime();
+        IOException e = assertThrows(IOException.class, warmup::call);
+        assertThat(e.getMessage(), containsString("timed out after 1 seconds"));
+        assertThat(TimeUnit.NANOSECONDS.toSeconds(System.nanoTime() - start), lessThan(30L));
+    }
+}
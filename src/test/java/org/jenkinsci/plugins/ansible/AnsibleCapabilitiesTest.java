@@ -0,0 +1,101 @@
+package org.jenkinsci.plugins.ansible;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.empty;
+import static org.hamcrest.Matchers.hasEntry;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
+
+import hudson.model.TaskListener;
+import hudson.util.StreamTaskListener;
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.DisabledOnOs;
+import org.junit.jupiter.api.condition.OS;
+import org.junit.jupiter.api.io.TempDir;
+import org.jvnet.hudson.test.JenkinsRule;
+import org.jvnet.hudson.test.junit.jupiter.WithJenkins;
+
+class AnsibleCapabilitiesTest {
+
+    @Test
+    void shouldParseProbeOutput() {
+        String version = "ansible [core 2.15.3]\n"
+                + "  config file = None\n"
+                + "  python version = 3.11.4 (main, Jun  9 2023, 07:59:55) [GCC 12.3.0] (/usr/bin/python3)\n"
+                + "  jinja version = 3.1.2\n";
+        String config = "ANSIBLE_PIPELINING(default) = False\n"
+                + "DEFAULT_STDOUT_CALLBACK(/etc/ansible/ansible.cfg) = yaml\n";
+        String callbacks = "[WARNING]: Collection community.general does not support Ansible version 2.15.3\n"
+                + "{\"ansible.posix.jsonl\": \"Ansible \\\"JSON\\\" lines\", \"default\": \"screen output\"}";
+        String connections = "{\"local\": \"execute on controller\", \"ssh\": \"connect via SSH client binary\"}";
+
+        AnsibleCapabilities capabilities =
+                AnsibleCapabilities.parse(null, "agent", version, config, callbacks, connections);
+
+        assertThat(capabilities.getInstallation(), is(""));
+        assertThat(capabilities.getVersion(), is("2.15.3"));
+        assertThat(capabilities.getPythonVersion(), is("3.11.4"));
+        assertThat(capabilities.getPython(), is("/usr/bin/python3"));
+        assertThat(capabilities.getConfig(), hasEntry("DEFAULT_STDOUT_CALLBACK", "yaml"));
+        assertThat(capabilities.hasCallback("ansible.posix.jsonl"), is(true));
+        assertThat(capabilities.getConnections(), contains("local", "ssh"));
+    }
+
+    @Test
+    void shouldParseLegacyVersionWithoutPlugins() {
+        String version = "ansible 2.9.6\n  python version = 3.8.10 (default, Nov 22 2023, 10:22:35) [GCC 9.4.0]\n";
+
+        AnsibleCapabilities capabilities = AnsibleCapabilities.parse("legacy", "agent", version, null, "{}", "");
+
+        assertThat(capabilities.getVersion(), is("2.9.6"));
+        assertThat(capabilities.getPython(), is(nullValue()));
+        assertThat(capabilities.getCallbacks(), is(empty()));
+        assertThat(capabilities.hasCallback("ansible.posix.jsonl"), is(false));
+        assertThat(capabilities.lacksCallback("ansible.posix.jsonl"), is(true));
+    }
+
+    @Test
+    void shouldNotConcludeOnPluginsWhenAnsibleDocFails() {
+        String version = "ansible [core 2.15.3]\n";
+
+        AnsibleCapabilities capabilities = AnsibleCapabilities.parse(null, "agent", version, null, null, "");
+
+        assertThat(capabilities.getCallbacks(), is(nullValue()));
+        assertThat(capabilities.getConnections(), is(nullValue()));
+        assertThat(capabilities.hasCallback("ansible.posix.jsonl"), is(false));
+        assertThat(capabilities.lacksCallback("ansible.posix.jsonl"), is(false));
+    }
+
+    @Test
+    @WithJenkins
+    @DisabledOnOs(OS.WINDOWS)
+    void shouldProbeAFailingInstallationOncePerNode(JenkinsRule jenkins, @TempDir Path home) throws Exception {
+        Path probes = home.resolve("probes");
+        Path ansible = home.resolve("ansible");
+        Files.writeString(ansible, "#!/bin/sh\necho probe >> '" + probes + "'\nexit 1\n");
+        ansible.toFile().setExecutable(true);
+        jenkins.jenkins
+                .getDescriptorByType(AnsibleInstallation.DescriptorImpl.class)
+                .setInstallations(new AnsibleInstallation("broken", home.toString(), List.of()));
+        AnsibleGlobalConfiguration.get().setCapabilityProbe(true);
+        AnsibleCapabilities.invalidate();
+        ByteArrayOutputStream log = new ByteArrayOutputStream();
+        TaskListener listener = new StreamTaskListener(log, StandardCharsets.UTF_8);
+
+        assertThat(AnsibleCapabilities.forNode("broken", jenkins.jenkins, listener), nullValue());
+        assertThat(AnsibleCapabilities.forNode("broken", jenkins.jenkins, listener), nullValue());
+        assertThat(Files.readAllLines(probes).size(), is(1));
+        assertThat(log.toString(StandardCharsets.UTF_8).split("unable to probe ansible", -1).length, is(2));
+        assertThat(AnsibleCapabilities.cached(jenkins.jenkins.getNodeName()), empty());
+
+        AnsibleCapabilities.invalidate(jenkins.jenkins.getNodeName());
+        assertThat(AnsibleCapabilities.forNode("broken", jenkins.jenkins, listener), nullValue());
+        assertThat(Files.readAllLines(probes).size(), is(2));
+    }
+}
@@ -0,0 +1,133 @@
+package org.jenkinsci.plugins.ansible;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.is;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import hudson.EnvVars;
+import hudson.FilePath;
+import hudson.model.TaskListener;
+import hudson.slaves.WorkspaceList;
+import hudson.util.ArgumentListBuilder;
+import java.io.File;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.DisabledOnOs;
+import org.junit.jupiter.api.condition.OS;
+import org.junit.jupiter.api.io.TempDir;
+
+class AnsibleDynamicInventoryCacheTest {
+
+    @TempDir
+    File dir;
+
+    private final TaskListener listener = mock(TaskListener.class);
+
+    AnsibleDynamicInventoryCacheTest() {
+        when(listener.getLogger()).thenReturn(new PrintStream(OutputStream.nullOutputStream()));
+    }
+
+    @Test
+    void shouldReuseResolvedInventoryUntilExpired() throws Exception {
+        AtomicInteger exports = new AtomicInteger();
+        AnsibleDynamicInventoryCache.Export export = () -> "all: {}\n# " + exports.incrementAndGet();
+
+        assertThat(AnsibleDynamicInventoryCache.get(dir, "k1", 60, listener, export), is("all: {}\n# 1"));
+        assertThat(AnsibleDynamicInventoryCache.get(dir, "k1", 60, listener, export), is("all: {}\n# 1"));
+
+        new File(dir, "k1.yml").setLastModified(System.currentTimeMillis() - 120_000);
+        assertThat(AnsibleDynamicInventoryCache.get(dir, "k1", 60, listener, export), is("all: {}\n# 2"));
+        assertThat(
+                PosixFilePermissions.toString(Files.getPosixFilePermissions(new File(dir, "k1.yml").toPath())),
+                is("rw-------"));
+        assertThat(AnsibleDynamicInventoryCache.LOCKS.size(), is(0));
+    }
+
+    @Test
+    void shouldOnlyResolveScriptsAndPluginConfigurations() throws Exception {
+        FilePath ws = new FilePath(dir);
+        ws.child("ec2.py").write("#!/usr/bin/env python3\n", "UTF-8");
+        ws.child("ec2.py").chmod(0755);
+        ws.child("aws_ec2.yml").write("plugin: amazon.aws.aws_ec2\nregions: [eu-west-1]\n", "UTF-8");
+        ws.child("hosts.yml").write("all:\n  hosts:\n    web1:\n", "UTF-8");
+        ws.child("inventories/prod/group_vars").mkdirs();
+        EnvVars env = new EnvVars();
+
+        assertThat(new InventoryPath("ec2.py").isDynamic(ws, env), is(true));
+        assertThat(new InventoryPath("aws_ec2.yml").isDynamic(ws, env), is(true));
+        assertThat(new InventoryPath("hosts.yml").isDynamic(ws, env), is(false));
+        assertThat(new InventoryPath("inventories/prod").isDynamic(ws, env), is(false));
+        assertThat(new InventoryPath("web1,web2").isDynamic(ws, env), is(false));
+        assertThat(new InventoryPath("missing.yml").isDynamic(ws, env), is(false));
+        assertThat(new InventoryPath("ec2.py").getDirectory(ws, env), is(ws));
+    }
+
+    @Test
+    void shouldResolveConcurrentMissesOnce() throws Exception {
+        AtomicInteger exports = new AtomicInteger();
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        AnsibleDynamicInventoryCache.Export export = () -> {
+            exports.incrementAndGet();
+            started.countDown();
+            release.await();
+            return "all: {}\n";
+        };
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            Future<String> first =
+                    executor.submit(() -> AnsibleDynamicInventoryCache.get(dir, "k2", 60, listener, export));
+            started.await();
+            Future<String> second =
+                    executor.submit(() -> AnsibleDynamicInventoryCache.get(dir, "k2", 60, listener, export));
+            release.countDown();
+
+            assertThat(first.get(10, TimeUnit.SECONDS), is("all: {}\n"));
+            assertThat(second.get(10, TimeUnit.SECONDS), is("all: {}\n"));
+            assertThat(exports.get(), is(1));
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    @DisabledOnOs(OS.WINDOWS)
+    void shouldResolveOutsideOfReadOnlyInventoryDirectory() throws Exception {
+        FilePath ws = new FilePath(dir).child("ws");
+        FilePath inventories = ws.child("inventories");
+        inventories.child("group_vars").mkdirs();
+        inventories.child("group_vars/all.yml").write("region: eu-west-1\n", "UTF-8");
+        inventories.child("aws_ec2.yml").write("plugin: amazon.aws.aws_ec2\n", "UTF-8");
+        inventories.chmod(0555);
+        try {
+            ResolvedInventory inventory = new ResolvedInventory("all: {}\n", inventories);
+            ArgumentListBuilder args = new ArgumentListBuilder();
+            inventory.addArgument(args, ws, new EnvVars(), listener);
+
+            FilePath resolved = inventory.getTempFile();
+            assertThat(resolved.getParent(), is(WorkspaceList.tempDir(ws)));
+            assertThat(args.toList(), contains("-i", resolved.child("inventory.yml").getRemote()));
+            assertThat(resolved.child("inventory.yml").readToString(), is("all: {}\n"));
+            assertThat(resolved.child("group_vars/all.yml").readToString(), is("region: eu-west-1\n"));
+            assertThat(resolved.child("host_vars").exists(), is(false));
+            assertThat(inventories.list().size(), is(2));
+
+            inventory.tearDown(listener);
+            assertThat(resolved.exists(), is(false));
+            assertThat(inventories.child("group_vars/all.yml").exists(), is(true));
+        } finally {
+            inventories.chmod(0755);
+        }
+    }
+}
@@ -0,0 +1,136 @@
+package org.jenkinsci.plugins.ansible;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.hasEntry;
+import static org.hamcrest.Matchers.hasSize;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.not;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+
+class AnsibleEventOutputStreamTest {
+
+    private static final String PLAY_START = "{\"play\": {\"name\": \"deploy\", \"id\": \"1\"}, \"tasks\": [],"
+            + " \"_event\": \"v2_playbook_on_play_start\", \"_timestamp\": \"2024-01-01T10:00:00.000000Z\"}\n";
+    private static final String TASK_START = "{\"task\": {\"name\": \"install\", \"id\": \"2\"}, \"hosts\": {},"
+            + " \"_event\": \"v2_playbook_on_task_start\", \"_timestamp\": \"2024-01-01T10:00:01.000000Z\"}\n";
+    private static final String HOST_OK = "{\"hosts\": {\"web1\": {\"changed\": true, \"action\": \"apt\"}},"
+            + " \"_event\": \"v2_runner_on_ok\", \"_timestamp\": \"2024-01-01T10:00:03.500000Z\"}\n";
+    private static final String HOST_FAILED = "{\"hosts\": {\"web2\": {\"msg\": \"boom\", \"failed\": true}},"
+            + " \"_event\": \"v2_runner_on_failed\", \"_timestamp\": \"2024-01-01T10:00:04.000000Z\"}\n";
+    private static final String STATS = "{\"stats\": {\"web1\": {\"ok\": 2, \"changed\": 1, \"failures\": 0},"
+            + " \"web2\": {\"ok\": 1, \"failures\": 1}}, \"_event\": \"v2_playbook_on_stats\"}\n";
+
+    private final List<AnsibleEvent> events = new ArrayList<>();
+    private final ByteArrayOutputStream console = new ByteArrayOutputStream();
+
+    @Test
+    void shouldParseEvents() throws Exception {
+        write(PLAY_START + TASK_START + HOST_OK + HOST_FAILED + STATS);
+
+        assertThat(events, hasSize(6));
+        assertThat(events.get(1).getTask(), is("install"));
+        assertThat(events.get(1).getTimestamp(), is(1704103201000L));
+        AnsibleEvent ok = events.get(2);
+        assertThat(ok.getType(), is(AnsibleEvent.Type.HOST_RESULT));
+        assertThat(ok.getHost(), is("web1"));
+        assertThat(ok.getTask(), is("install"));
+        assertThat(ok.getPlay(), is("deploy"));
+        assertThat(ok.getStatus(), is(AnsibleEvent.Status.CHANGED));
+        assertThat(events.get(3).getStatus(), is(AnsibleEvent.Status.FAILED));
+        assertThat(events.get(3).getMessage(), is("boom"));
+        assertThat(events.get(5).getHost(), is("web2"));
+        assertThat(events.get(5).getCounters(), hasEntry("failures", 1));
+    }
+
+    @Test
+    void shouldRenderEventsAndCopyOtherLines() throws Exception {
+        write("[WARNING]: provided hosts list is empty\n" + PLAY_START + TASK_START + HOST_FAILED + STATS);
+
+        String log = console.toString(StandardCharsets.UTF_8);
+        assertThat(log, containsString("[WARNING]: provided hosts list is empty\n"));
+        assertThat(log, containsString("PLAY [deploy] ***"));
+        assertThat(log, containsString("TASK [install] ***"));
+        assertThat(log, containsString("fatal: [web2]: FAILED! => boom"));
+        assertThat(log, containsString("PLAY RECAP ***"));
+        assertThat(log, not(containsString("_event")));
+    }
+
+    @Test
+    void shouldTruncateLargeValues() throws Exception {
+        char[] big = new char[1024 * 1024];
+        Arrays.fill(big, 'x');
+        write(TASK_START + "{\"hosts\": {\"web1\": {\"msg\": \"" + new String(big)
+                + "\", \"unreachable\": true}}, \"_event\": \"v2_runner_on_unreachable\"}\n");
+
+        AnsibleEvent unreachable = events.get(1);
+        assertThat(unreachable.getStatus(), is(AnsibleEvent.Status.UNREACHABLE));
+        assertThat(unreachable.getMessage().length(), is(AnsibleEventOutputStream.MAX_STRING_LENGTH));
+    }
+
+    @Test
+    void shouldKeepTheEventTypeOnceTheBudgetIsSpent() throws Exception {
+        StringBuilder items = new StringBuilder();
+        for (int i = 0; i < AnsibleEventOutputStream.MAX_VALUES * 2; i++) {
+            items.append(i > 0 ? ", " : "").append(i);
+        }
+        write(TASK_START + "{\"hosts\": {\"web1\": {\"changed\": true, \"stdout_lines\": [" + items
+                + "]}}, \"_event\": \"v2_runner_on_ok\", \"_timestamp\": \"2024-01-01T10:00:03.500000Z\"}\n");
+
+        assertThat(events, hasSize(2));
+        assertThat(events.get(1).getType(), is(AnsibleEvent.Type.HOST_RESULT));
+        assertThat(events.get(1).getHost(), is("web1"));
+        assertThat(console.toString(StandardCharsets.UTF_8), not(containsString("[truncated]")));
+    }
+
+    @Test
+    void shouldParseTheRecapOfLargeFleets() throws Exception {
+        StringBuilder stats = new StringBuilder("{\"stats\": {");
+        for (int i = 0; i < 5000; i++) {
+            stats.append(i > 0 ? ", " : "")
+                    .append("\"host").append(i).append("\": {\"ok\": 3, \"changed\": 1, \"unreachable\": 0,")
+                    .append(" \"failures\": 0, \"skipped\": 2, \"rescued\": 0, \"ignored\": 0}");
+        }
+        write(stats + "}, \"_event\": \"v2_playbook_on_stats\"}\n");
+
+        assertThat(events, hasSize(5000));
+        assertThat(events.get(4999).getHost(), is("host4999"));
+        assertThat(events.get(4999).getCounters(), hasEntry("skipped", 2));
+    }
+
+    @Test
+    void shouldCopyMalformedLines() throws Exception {
+        write("{not json}\n" + TASK_START);
+
+        assertThat(console.toString(StandardCharsets.UTF_8), containsString("{not json}\n"));
+        assertThat(events, hasSize(1));
+    }
+
+    @Test
+    void shouldFlushPendingEventOnClose() throws Exception {
+        write(TASK_START.trim());
+
+        assertThat(events, hasSize(1));
+        assertThat(events.get(0).getTask(), is("install"));
+    }
+
+    private void write(String output) throws Exception {
+        List<AnsibleEventHandler> handlers = new ArrayList<>();
+        handlers.add(new AnsibleEventConsoleRenderer(new PrintStream(console, true, StandardCharsets.UTF_8)));
+        handlers.add(events::add);
+        try (AnsibleEventOutputStream out = new AnsibleEventOutputStream(console, handlers)) {
+            byte[] bytes = output.getBytes(StandardCharsets.UTF_8);
+            // write in small chunks as the process output copier would
+            for (int i = 0; i < bytes.length; i += 7) {
+                out.write(bytes, i, Math.min(7, bytes.length - i));
+            }
+        }
+    }
+}
@@ -0,0 +1,55 @@
+package org.jenkinsci.plugins.ansible;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.attribute.FileTime;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class AnsibleFactCacheTest {
+
+    @TempDir
+    File root;
+
+    @Test
+    void shouldDeleteStaleFacts() throws Exception {
+        long now = System.currentTimeMillis();
+        File fresh = fact("inventory1", "web1", 10, now);
+        File stale = fact("inventory1", "web2", 10, now - 7200_000L);
+        File empty = fact("inventory2", "db1", 10, now - 7200_000L);
+
+        new AnsibleFactCache.Eviction(3600_000L, 1024).invoke(root, null);
+
+        assertThat(fresh.exists(), is(true));
+        assertThat(stale.exists(), is(false));
+        assertThat(empty.getParentFile().exists(), is(false));
+    }
+
+    @Test
+    void shouldEvictLeastRecentlyUsedFacts() throws Exception {
+        long now = System.currentTimeMillis();
+        File oldest = fact("inventory1", "web1", 400, now - 3000);
+        File older = fact("inventory2", "db1", 400, now - 2000);
+        File newest = fact("inventory1", "web2", 400, now - 1000);
+
+        new AnsibleFactCache.Eviction(3600_000L, 900).invoke(root, null);
+
+        assertThat(oldest.exists(), is(false));
+        assertThat(older.exists(), is(true));
+        assertThat(newest.exists(), is(true));
+    }
+
+    private File fact(String inventory, String host, int size, long time) throws Exception {
+        File dir = new File(root, inventory);
+        dir.mkdirs();
+        File file = new File(dir, host);
+        Files.write(file.toPath(), "x".repeat(size).getBytes(StandardCharsets.UTF_8));
+        Files.setAttribute(file.toPath(), "lastAccessTime", FileTime.fromMillis(time));
+        file.setLastModified(time);
+        return file;
+    }
+}
@@ -0,0 +1,44 @@
+package org.jenkinsci.plugins.ansible;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+class AnsibleInstallationTest {
+
+    @AfterEach
+    void tearDown() {
+        AnsibleInstallation.invalidateNodeHomes();
+    }
+
+    @Test
+    void shouldTranslateHomeOncePerNode() throws Exception {
+        AtomicInteger calls = new AtomicInteger();
+        AnsibleInstallation.HomeResolver resolver = () -> "/opt/ansible-" + calls.incrementAndGet();
+
+        assertThat(AnsibleInstallation.nodeHome("ansible", "agent1", resolver), is("/opt/ansible-1"));
+        assertThat(AnsibleInstallation.nodeHome("ansible", "agent1", resolver), is("/opt/ansible-1"));
+        assertThat(AnsibleInstallation.nodeHome("ansible", "agent2", resolver), is("/opt/ansible-2"));
+        assertThat(calls.get(), is(2));
+    }
+
+    @Test
+    void shouldTranslateHomeAgainOnceInvalidated() throws Exception {
+        AtomicInteger calls = new AtomicInteger();
+        AnsibleInstallation.HomeResolver resolver = () -> "/opt/ansible-" + calls.incrementAndGet();
+        AnsibleInstallation.nodeHome("ansible", "agent1", resolver);
+        AnsibleInstallation.nodeHome("ansible", "agent2", resolver);
+
+        AnsibleInstallation.invalidateNodeHomes("agent1");
+
+        assertThat(AnsibleInstallation.nodeHome("ansible", "agent1", resolver), is("/opt/ansible-3"));
+        assertThat(AnsibleInstallation.nodeHome("ansible", "agent2", resolver), is("/opt/ansible-2"));
+
+        AnsibleInstallation.invalidateNodeHomes();
+
+        assertThat(AnsibleInstallation.nodeHome("ansible", "agent2", resolver), is("/opt/ansible-4"));
+    }
+}
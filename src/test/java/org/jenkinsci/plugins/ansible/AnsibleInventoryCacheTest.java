@@ -0,0 +1,58 @@
+package org.jenkinsci.plugins.ansible;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class AnsibleInventoryCacheTest {
+
+    @TempDir
+    File root;
+
+    @Test
+    void shouldStoreAndFindInventory() throws Exception {
+        byte[] content = "[web]\nweb1\n".getBytes(StandardCharsets.UTF_8);
+
+        assertThat(new AnsibleInventoryCache.Lookup("a.ini").invoke(root, null), is(false));
+        new AnsibleInventoryCache.Store("a.ini", content, false, 1024).invoke(root, null);
+
+        assertThat(new AnsibleInventoryCache.Lookup("a.ini").invoke(root, null), is(true));
+        assertThat(Files.readAllBytes(new File(root, "a.ini").toPath()), is(content));
+    }
+
+    @Test
+    void shouldEvictLeastRecentlyUsedInventories() throws Exception {
+        long old = System.currentTimeMillis() - 2 * AnsibleInventoryCache.GRACE_PERIOD;
+        File oldest = inventory("oldest.ini", 400, old - 1000);
+        File older = inventory("older.ini", 400, old);
+        File recent = inventory("recent.ini", 400, System.currentTimeMillis());
+
+        new AnsibleInventoryCache.Store("new.ini", new byte[400], false, 1000).invoke(root, null);
+
+        assertThat(oldest.exists(), is(false));
+        assertThat(older.exists(), is(false));
+        // used within the grace period
+        assertThat(recent.exists(), is(true));
+        assertThat(new File(root, "new.ini").exists(), is(true));
+    }
+
+    @Test
+    void shouldDistinguishDynamicInventories() {
+        byte[] content = "#!/bin/sh\n".getBytes(StandardCharsets.UTF_8);
+        assertThat(
+                AnsibleInventoryCache.digest(content, true).equals(AnsibleInventoryCache.digest(content, false)),
+                is(false));
+    }
+
+    private File inventory(String name, int size, long time) throws Exception {
+        File file = new File(root, name);
+        Files.write(file.toPath(), new byte[size]);
+        file.setLastModified(time);
+        return file;
+    }
+}
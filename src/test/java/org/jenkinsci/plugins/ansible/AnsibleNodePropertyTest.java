@@ -0,0 +1,33 @@
+package org.jenkinsci.plugins.ansible;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
+
+import java.io.File;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class AnsibleNodePropertyTest {
+
+    @TempDir
+    File root;
+
+    @Test
+    void shouldUseConfiguredStagingDirectory() {
+        assertThat(new AnsibleNodeProperty.Detect(root.getPath()).call(), is(root.getPath()));
+    }
+
+    @Test
+    void shouldNotStageInMissingDirectory() {
+        assertThat(new AnsibleNodeProperty.Detect(new File(root, "missing").getPath()).call(), is(nullValue()));
+    }
+
+    @Test
+    void shouldOnlyDetectMemoryBackedDirectories() {
+        String detected = new AnsibleNodeProperty.Detect(null).call();
+        if (detected != null) {
+            assertThat(AnsibleNodeProperty.Detect.isMemoryBacked(new File(detected).toPath()), is(true));
+        }
+    }
+}
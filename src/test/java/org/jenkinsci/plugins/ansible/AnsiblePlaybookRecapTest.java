@@ -0,0 +1,65 @@
+package org.jenkinsci.plugins.ansible;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.hasEntry;
+import static org.hamcrest.Matchers.is;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+import org.junit.jupiter.api.Test;
+
+class AnsiblePlaybookRecapTest {
+
+    private static final String OUTPUT = "TASK [ping] ****\n"
+            + "ok: [web1] =>\n"
+            + "  msg: |-\n"
+            + "    PLAY RECAP\n"
+            + "    db1 : ok=9\n"
+            + "\n"
+            + "\u001B[0;33mPLAY RECAP *********************************************************************\u001B[0m\n"
+            + "web1                       : ok=3    changed=1    unreachable=0    failed=0    skipped=0\n"
+            + "\u001B[0;31mweb2\u001B[0m                       : ok=1    changed=0    unreachable=0    failed=1\n"
+            + "\n"
+            + "Finished: web3 : ok=1\n";
+
+    @Test
+    void shouldCollectRecapLines() throws Exception {
+        ByteArrayOutputStream log = new ByteArrayOutputStream();
+        AnsibleRecapOutputStream out = new AnsibleRecapOutputStream(log);
+        out.write(OUTPUT.getBytes(StandardCharsets.UTF_8));
+        out.forceEol();
+
+        AnsiblePlaybookRecap recap = out.getRecap();
+        assertThat(log.toString(StandardCharsets.UTF_8), is(OUTPUT));
+        assertThat(recap.getHosts().keySet(), contains("web1", "web2"));
+        assertThat(recap.getHosts().get("web1"), hasEntry("changed", 1));
+        assertThat(recap.getHosts().get("web1"), hasEntry("rescued", 0));
+        assertThat(recap.getFailedHosts(), contains("web2"));
+    }
+
+    @Test
+    void shouldMergeShards() {
+        AnsiblePlaybookRecap first = new AnsiblePlaybookRecap();
+        first.parseLine("web1 : ok=2 changed=1 unreachable=0 failed=0");
+        AnsiblePlaybookRecap second = new AnsiblePlaybookRecap();
+        second.parseLine("db1 : ok=0 changed=0 unreachable=1 failed=0");
+
+        AnsiblePlaybookRecap merged = new AnsiblePlaybookRecap();
+        merged.merge(first);
+        merged.merge(second);
+
+        Map<String, Object> map = merged.toMap();
+        assertThat(merged.getHosts().keySet(), contains("db1", "web1"));
+        assertThat(map, hasEntry("unreachableHosts", (Object) List.of("db1")));
+        assertThat(map, hasEntry("failedHosts", (Object) List.of()));
+    }
+
+    @Test
+    void shouldParseHostList() {
+        String output = "  hosts (3):\n    web1\n    web2\n\n    db1\n";
+        assertThat(AnsibleHostListInvocation.parse(output), contains("web1", "web2", "db1"));
+    }
+}
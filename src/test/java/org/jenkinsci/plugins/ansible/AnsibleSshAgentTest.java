@@ -0,0 +1,37 @@
+package org.jenkinsci.plugins.ansible;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import org.junit.jupiter.api.Test;
+
+class AnsibleSshAgentTest {
+
+    @Test
+    void shouldParseAgentPid() {
+        String output = "SSH_AUTH_SOCK=/tmp/ansible-agent1/agent.sock; export SSH_AUTH_SOCK;\n"
+                + "SSH_AGENT_PID=4242; export SSH_AGENT_PID;\n"
+                + "echo Agent pid 4242;\n";
+        assertThat(AnsibleSshAgent.parsePid(output), is("4242"));
+        assertThat(AnsibleSshAgent.parsePid("Could not open a connection"), is(nullValue()));
+    }
+
+    @Test
+    void shouldCreatePrivateDirectoryWithoutSecrets() throws Exception {
+        Path dir = Path.of(new AnsibleSshAgent.CreateDirectory().call());
+        try {
+            String askPass = Files.readString(dir.resolve("askpass.sh"));
+            assertThat(askPass, containsString("$" + AnsibleSshAgent.PASSPHRASE_VARIABLE));
+            if (dir.getFileSystem().supportedFileAttributeViews().contains("posix")) {
+                assertThat(Files.getPosixFilePermissions(dir).size(), is(3));
+            }
+        } finally {
+            Files.delete(dir.resolve("askpass.sh"));
+            Files.delete(dir);
+        }
+    }
+}
@@ -0,0 +1,122 @@
+package org.jenkinsci.plugins.ansible;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.empty;
+import static org.hamcrest.Matchers.hasSize;
+import static org.hamcrest.Matchers.is;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class AnsibleTimingReportTest {
+
+    @TempDir
+    File buildDir;
+
+    @Test
+    void shouldRecordTaskDurationsPerHost() throws Exception {
+        AnsibleTimingRecorder recorder =
+                new AnsibleTimingRecorder(AnsibleTimingFile.next(buildDir), "site.yml");
+        recorder.onEvent(event(AnsibleEvent.Type.PLAY_START, 1_000, null, null, null));
+        recorder.onEvent(event(AnsibleEvent.Type.TASK_START, 1_000, "install", null, null));
+        recorder.onEvent(event(AnsibleEvent.Type.HOST_RESULT, 3_000, "install", "web1", AnsibleEvent.Status.OK));
+        recorder.onEvent(event(AnsibleEvent.Type.HOST_START, 3_000, "install", "web2", null));
+        recorder.onEvent(
+                event(AnsibleEvent.Type.HOST_RESULT, 8_000, "install", "web2", AnsibleEvent.Status.FAILED));
+        recorder.onEvent(event(AnsibleEvent.Type.TASK_START, 8_000, "restart", null, null));
+        recorder.onEvent(
+                event(AnsibleEvent.Type.HOST_RESULT, 8_500, "restart", "web1", AnsibleEvent.Status.CHANGED));
+        recorder.onClose();
+
+        AnsibleTimingReport report = AnsibleTimingReport.load(AnsibleTimingFile.list(buildDir));
+
+        assertThat(report.getEntries(), is(3L));
+        assertThat(report.getTasks(), hasSize(2));
+        AnsibleTimingReport.TaskTiming install = report.getTasks().get(0);
+        assertThat(install.getTask(), is("install"));
+        assertThat(install.getPlaybook(), is("site.yml"));
+        assertThat(install.getWallTime(), is(7_000L));
+        assertThat(install.getMaxTime(), is(5_000L));
+        assertThat(install.getMaxHost(), is("web2"));
+        assertThat(install.getP50(), is(2_000L));
+        assertThat(install.getFailures(), is(1));
+        assertThat(report.getHosts().get(0).getHost(), is("web2"));
+        assertThat(report.getSlowest().get(0).getDuration(), is(5_000L));
+    }
+
+    @Test
+    void shouldNotKeepEmptyFiles() throws Exception {
+        AnsibleTimingRecorder recorder =
+                new AnsibleTimingRecorder(AnsibleTimingFile.next(buildDir), "site.yml");
+        recorder.onEvent(event(AnsibleEvent.Type.PLAY_START, 1_000, null, null, null));
+        recorder.onClose();
+
+        assertThat(AnsibleTimingFile.list(buildDir), is(empty()));
+        assertThat(AnsibleTimingReport.load(Collections.emptyList()).getTasks(), is(empty()));
+    }
+
+    @Test
+    void shouldAppendTaskDurationsToTheJobSummary() throws Exception {
+        AnsibleTimingRecorder recorder =
+                new AnsibleTimingRecorder(AnsibleTimingFile.next(buildDir), "site.yml");
+        recorder.onEvent(event(AnsibleEvent.Type.TASK_START, 1_000, "install", null, null));
+        recorder.onEvent(event(AnsibleEvent.Type.HOST_RESULT, 3_000, "install", "web1", AnsibleEvent.Status.OK));
+        recorder.onClose();
+        AnsibleTimingReport report = AnsibleTimingReport.load(AnsibleTimingFile.list(buildDir));
+
+        for (int build = 1; build <= 3; build++) {
+            AnsibleTimingSummary.append(buildDir, build, report.getTasks(), 2);
+        }
+
+        // compacted to the builds of the trend on append
+        List<AnsibleTimingSummary.Row> rows = AnsibleTimingSummary.load(buildDir);
+        assertThat(rows, hasSize(2));
+        assertThat(rows.get(0).build, is(2));
+        assertThat(rows.get(1).build, is(3));
+        assertThat(rows.get(1).task, is("install"));
+        assertThat(rows.get(1).p50, is(2_000L));
+
+        // several invocations of the same build are kept together
+        AnsibleTimingSummary.append(buildDir, 3, report.getTasks(), 2);
+        assertThat(AnsibleTimingSummary.load(buildDir), hasSize(3));
+    }
+
+    @Test
+    void shouldFlagTasksSlowerThanThePreviousBuilds() {
+        List<AnsibleTimingSummary.Row> rows = Arrays.asList(
+                row(1, "install", 10_000),
+                row(1, "ping", 100),
+                row(2, "install", 11_000),
+                row(2, "ping", 100),
+                row(3, "install", 10_500),
+                row(3, "ping", 100),
+                row(4, "install", 14_000),
+                row(4, "ping", 900));
+
+        List<AnsibleTimingTrendAction.TaskTrend> trends = AnsibleTimingTrendAction.compute(rows, 20, 25);
+
+        assertThat(trends, hasSize(2));
+        AnsibleTimingTrendAction.TaskTrend install = trends.get(0);
+        assertThat(install.getTask(), is("install"));
+        assertThat(install.getBuilds(), is(4));
+        assertThat(install.getLastBuild(), is(4));
+        assertThat(install.getBaselineP50(), is(10_500L));
+        assertThat(install.isRegression(), is(true));
+        // much slower but too short to be meaningful
+        assertThat(trends.get(1).isRegression(), is(false));
+        assertThat(AnsibleTimingTrendAction.compute(rows, 20, 50).get(0).isRegression(), is(false));
+    }
+
+    private static AnsibleTimingSummary.Row row(int build, String task, long duration) {
+        return new AnsibleTimingSummary.Row(build, "site.yml", "all", task, 1, duration, duration);
+    }
+
+    private static AnsibleEvent event(
+            AnsibleEvent.Type type, long timestamp, String task, String host, AnsibleEvent.Status status) {
+        return new AnsibleEvent(type, timestamp, "play", task, host, status, null, null);
+    }
+}
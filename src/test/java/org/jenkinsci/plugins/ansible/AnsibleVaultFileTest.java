@@ -0,0 +1,100 @@
+package org.jenkinsci.plugins.ansible;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.containsInAnyOrder;
+import static org.hamcrest.Matchers.is;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import hudson.AbortException;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import org.junit.jupiter.api.Test;
+
+class AnsibleVaultFileTest {
+
+    private static final byte[] SECRET = "secret".getBytes(StandardCharsets.UTF_8);
+
+    @Test
+    void shouldReadAnEncryptedYamlFile() throws Exception {
+        String yaml = "db:\n  user: admin\n  password: s3cr3t\nports: [80, 443]\n";
+        byte[] data = AnsibleVault.encrypt(yaml.getBytes(StandardCharsets.UTF_8), SECRET, null)
+                .getBytes(StandardCharsets.US_ASCII);
+        Set<String> secrets = new LinkedHashSet<>();
+
+        Map<?, ?> vars = (Map<?, ?>) AnsibleVaultFile.read(data, SECRET, secrets);
+
+        assertThat(vars.get("db"), is(Map.of("user", "admin", "password", "s3cr3t")));
+        assertThat(vars.get("ports"), is(List.of(80, 443)));
+        assertThat(secrets, contains("s3cr3t"));
+    }
+
+    @Test
+    void shouldMaskLongScalarsAndScalarsUnderSecretKeys() throws Exception {
+        String yaml = "env: prod\n"
+                + "enabled: true\n"
+                + "host: db.internal.example.com\n"
+                + "port: 5432\n"
+                + "account_id: 123456789012\n"
+                + "db_password: 987654\n"
+                + "api_keys: [abc, xy]\n"
+                + "credentials:\n  user: ops\n";
+        byte[] data = AnsibleVault.encrypt(yaml.getBytes(StandardCharsets.UTF_8), SECRET, null)
+                .getBytes(StandardCharsets.US_ASCII);
+        Set<String> secrets = new LinkedHashSet<>();
+
+        AnsibleVaultFile.read(data, SECRET, secrets);
+
+        // short values are only masked under a key that looks secret, whatever their type
+        assertThat(secrets, containsInAnyOrder("db.internal.example.com", "123456789012", "987654", "abc", "ops"));
+    }
+
+    @Test
+    void shouldReadAnEncryptedJsonFile() throws Exception {
+        String json = "{\"api_token\": \"t0k3n\", \"debug\": false, \"id\": \"42\"}";
+        byte[] data = AnsibleVault.encrypt(json.getBytes(StandardCharsets.UTF_8), SECRET, null)
+                .getBytes(StandardCharsets.US_ASCII);
+        Set<String> secrets = new LinkedHashSet<>();
+
+        Map<?, ?> vars = (Map<?, ?>) AnsibleVaultFile.read(data, SECRET, secrets);
+
+        assertThat(vars, is(Map.of("api_token", "t0k3n", "debug", false, "id", "42")));
+        // the other values are short and not under a secret key
+        assertThat(secrets, contains("t0k3n"));
+    }
+
+    @Test
+    void shouldDecryptVaultValuesOfAPlainFile() throws Exception {
+        String vaulttext = AnsibleVault.encrypt("s3cr3t".getBytes(StandardCharsets.UTF_8), SECRET, null);
+        String yaml = "db_user: admin\n" + AnsibleVault.toYaml(vaulttext, "db_password") + "\n";
+        Set<String> secrets = new LinkedHashSet<>();
+
+        Map<?, ?> vars = (Map<?, ?>)
+                AnsibleVaultFile.read(yaml.getBytes(StandardCharsets.UTF_8), SECRET, secrets);
+
+        assertThat(vars, is(Map.of("db_user", "admin", "db_password", "s3cr3t")));
+        assertThat(secrets, contains("s3cr3t"));
+    }
+
+    @Test
+    void shouldFailWithTheWrongPassword() throws Exception {
+        byte[] data = AnsibleVault.encrypt("a: b\n".getBytes(StandardCharsets.UTF_8), SECRET, null)
+                .getBytes(StandardCharsets.US_ASCII);
+
+        AbortException e = assertThrows(
+                AbortException.class,
+                () -> AnsibleVaultFile.read(
+                        data, "wrong".getBytes(StandardCharsets.UTF_8), new LinkedHashSet<>()));
+        assertThat(e.getMessage(), is("Decryption failed (no vault secrets were found that could decrypt)"));
+    }
+
+    @Test
+    void shouldNotConstructJavaObjects() {
+        byte[] data = "!!java.io.File [\"/tmp\"]\n".getBytes(StandardCharsets.UTF_8);
+
+        assertThrows(AbortException.class, () -> AnsibleVaultFile.read(data, SECRET, new LinkedHashSet<>()));
+    }
+}
@@ -1,17 +1,33 @@
 package org.jenkinsci.plugins.ansible;
 
+import static java.util.concurrent.TimeUnit.SECONDS;
 import static org.hamcrest.CoreMatchers.is;
 import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.startsWith;
 import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.mockito.Mockito.*;
 
 import hudson.AbortException;
 import hudson.EnvVars;
+import hudson.FilePath;
+import hudson.Proc;
 import hudson.model.AbstractBuild;
 import hudson.model.BuildListener;
 import hudson.model.TaskListener;
 import hudson.util.ArgumentListBuilder;
+import hudson.util.Secret;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.concurrent.CountDownLatch;
+import org.jenkinsci.plugins.plaincredentials.StringCredentials;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
 import org.mockito.ArgumentCaptor;
 
 /**
@@ -123,6 +139,201 @@ class AnsibleVaultInvocationTest {
         verifyNoInteractions(runner);
     }
 
+    @Test
+    void shouldEncryptAndDecryptFilesWithoutAnsibleVault(@TempDir File tmp) throws Exception {
+        CLIRunner runner = mock(CLIRunner.class);
+        BuildListener listener = mock(BuildListener.class);
+        when(listener.getLogger()).thenReturn(new PrintStream(OutputStream.nullOutputStream()));
+        StringCredentials password = mock(StringCredentials.class);
+        when(password.getSecret()).thenReturn(Secret.fromString("secret\n"));
+        File vars = new File(tmp, "vars.yml");
+        Files.writeString(vars.toPath(), "db_password: s3cr3t\n");
+
+        AnsibleVaultInvocation encrypt = new AnsibleVaultInvocation(
+                EXE, mock(AbstractBuild.class), new FilePath(tmp), listener, new EnvVars());
+        encrypt.setAction("encrypt");
+        encrypt.setInput("vars.yml");
+        encrypt.setVaultCredentials(password);
+        encrypt.setBuiltin(true);
+        assertThat(encrypt.execute(runner), is(true));
+
+        String vaulttext = Files.readString(vars.toPath());
+        assertThat(vaulttext, startsWith("$ANSIBLE_VAULT;1.1;AES256\n"));
+        assertThat(
+                AnsibleVault.decrypt(vaulttext, "secret".getBytes(StandardCharsets.UTF_8)),
+                is("db_password: s3cr3t\n".getBytes(StandardCharsets.UTF_8)));
+
+        AnsibleVaultInvocation decrypt = new AnsibleVaultInvocation(
+                EXE, mock(AbstractBuild.class), new FilePath(tmp), listener, new EnvVars());
+        decrypt.setAction("decrypt");
+        decrypt.setInput("vars.yml");
+        decrypt.setOutput("plain.yml");
+        decrypt.setVaultCredentials(password);
+        decrypt.setBuiltin(true);
+        assertThat(decrypt.execute(runner), is(true));
+
+        assertThat(Files.readString(new File(tmp, "plain.yml").toPath()), is("db_password: s3cr3t\n"));
+        verifyNoInteractions(runner);
+    }
+
+    @Test
+    void shouldEncryptAllMatchingFilesAndReportEachOne(@TempDir File tmp) throws Exception {
+        CLIRunner runner = mock(CLIRunner.class);
+        BuildListener listener = mock(BuildListener.class);
+        ByteArrayOutputStream log = new ByteArrayOutputStream();
+        when(listener.getLogger()).thenReturn(new PrintStream(log, true, StandardCharsets.UTF_8));
+        StringCredentials password = mock(StringCredentials.class);
+        when(password.getSecret()).thenReturn(Secret.fromString("secret"));
+        byte[] key = "secret".getBytes(StandardCharsets.UTF_8);
+        File groupVars = new File(tmp, "group_vars");
+        for (String group : new String[] {"all", "web", "db"}) {
+            File dir = new File(groupVars, group);
+            dir.mkdirs();
+            Files.writeString(new File(dir, "vault.yml").toPath(), group + "_password: s3cr3t\n");
+        }
+        String encrypted = AnsibleVault.encrypt("db_password: s3cr3t\n".getBytes(StandardCharsets.UTF_8), key, null);
+        Files.writeString(new File(groupVars, "db/vault.yml").toPath(), encrypted);
+
+        AnsibleVaultInvocation invocation = new AnsibleVaultInvocation(
+                EXE, mock(AbstractBuild.class), new FilePath(tmp), listener, new EnvVars());
+        invocation.setAction("encrypt");
+        invocation.setInputs("group_vars/**/vault.yml");
+        invocation.setVaultCredentials(password);
+        invocation.setBuiltin(true);
+        assertThat(invocation.execute(runner), is(false));
+
+        for (String group : new String[] {"all", "web"}) {
+            String vaulttext = Files.readString(new File(groupVars, group + "/vault.yml").toPath());
+            assertThat(
+                    AnsibleVault.decrypt(vaulttext, key),
+                    is((group + "_password: s3cr3t\n").getBytes(StandardCharsets.UTF_8)));
+        }
+        assertThat(Files.readString(new File(groupVars, "db/vault.yml").toPath()), is(encrypted));
+        String output = log.toString(StandardCharsets.UTF_8);
+        assertThat(output, containsString("ERROR! input is already encrypted"));
+        assertThat(output, containsString("2 files processed and verified, 1 failed"));
+        verifyNoInteractions(runner);
+    }
+
+    @Test
+    void shouldRekeyAllMatchingFilesAtomically(@TempDir File tmp) throws Exception {
+        CLIRunner runner = mock(CLIRunner.class);
+        BuildListener listener = mock(BuildListener.class);
+        ByteArrayOutputStream log = new ByteArrayOutputStream();
+        when(listener.getLogger()).thenReturn(new PrintStream(log, true, StandardCharsets.UTF_8));
+        StringCredentials oldPassword = mock(StringCredentials.class);
+        when(oldPassword.getSecret()).thenReturn(Secret.fromString("old"));
+        StringCredentials newPassword = mock(StringCredentials.class);
+        when(newPassword.getSecret()).thenReturn(Secret.fromString("new"));
+        byte[] oldKey = "old".getBytes(StandardCharsets.UTF_8);
+        byte[] newKey = "new".getBytes(StandardCharsets.UTF_8);
+        for (int i = 0; i < 10; i++) {
+            byte[] plaintext = ("password_" + i + ": s3cr3t\n").getBytes(StandardCharsets.UTF_8);
+            Files.writeString(
+                    new File(tmp, "vault" + i + ".yml").toPath(), AnsibleVault.encrypt(plaintext, oldKey, null));
+        }
+
+        AnsibleVaultInvocation invocation = new AnsibleVaultInvocation(
+                EXE, mock(AbstractBuild.class), new FilePath(tmp), listener, new EnvVars());
+        invocation.setAction("rekey");
+        invocation.setInputs("*.yml");
+        invocation.setVaultCredentials(oldPassword);
+        invocation.setNewVaultCredentials(newPassword);
+        invocation.setBuiltin(true);
+        assertThat(invocation.execute(runner), is(true));
+
+        for (int i = 0; i < 10; i++) {
+            String vaulttext = Files.readString(new File(tmp, "vault" + i + ".yml").toPath());
+            assertThat(
+                    AnsibleVault.decrypt(vaulttext, newKey),
+                    is(("password_" + i + ": s3cr3t\n").getBytes(StandardCharsets.UTF_8)));
+        }
+        // no temporary file left behind
+        assertThat(tmp.list().length, is(10));
+        assertThat(
+                log.toString(StandardCharsets.UTF_8),
+                containsString("ansible-vault rekey: 10 files processed and verified, 0 failed"));
+        verifyNoInteractions(runner);
+    }
+
+    @Test
+    void shouldNotFollowLinksOutOfTheScannedDirectory(@TempDir File tmp) throws Exception {
+        CLIRunner runner = mock(CLIRunner.class);
+        BuildListener listener = mock(BuildListener.class);
+        ByteArrayOutputStream log = new ByteArrayOutputStream();
+        when(listener.getLogger()).thenReturn(new PrintStream(log, true, StandardCharsets.UTF_8));
+        StringCredentials password = mock(StringCredentials.class);
+        when(password.getSecret()).thenReturn(Secret.fromString("s3cr3t"));
+        File dir = new File(tmp, "vars");
+        File outside = new File(tmp, "outside.yml");
+        Files.createDirectory(dir.toPath());
+        Files.writeString(outside.toPath(), "password: s3cr3t\n");
+        Files.writeString(new File(dir, "inside.yml").toPath(), "password: s3cr3t\n");
+        Files.createSymbolicLink(new File(dir, "link.yml").toPath(), outside.toPath());
+
+        AnsibleVaultInvocation invocation = new AnsibleVaultInvocation(
+                EXE, mock(AbstractBuild.class), new FilePath(dir), listener, new EnvVars());
+        invocation.setAction("encrypt");
+        invocation.setInputs("*.yml");
+        invocation.setVaultCredentials(password);
+        invocation.setBuiltin(true);
+        assertThat(invocation.execute(runner), is(false));
+
+        assertThat(Files.readString(outside.toPath()), is("password: s3cr3t\n"));
+        assertThat(AnsibleVault.isEncrypted(Files.readAllBytes(new File(dir, "inside.yml").toPath())), is(true));
+        assertThat(log.toString(StandardCharsets.UTF_8), containsString("link.yml: ERROR! refusing to write"));
+    }
+
+    @Test
+    void shouldNotPassLinksOutOfTheScannedDirectoryToAnsibleVault(@TempDir File tmp) throws Exception {
+        CLIRunner runner = mock(CLIRunner.class);
+        when(runner.execute(any(ArgumentListBuilder.class), anyMap())).thenReturn(true);
+        BuildListener listener = mock(BuildListener.class);
+        ByteArrayOutputStream log = new ByteArrayOutputStream();
+        when(listener.getLogger()).thenReturn(new PrintStream(log, true, StandardCharsets.UTF_8));
+        File dir = new File(tmp, "vars");
+        File outside = new File(tmp, "outside.yml");
+        Files.createDirectory(dir.toPath());
+        Files.writeString(outside.toPath(), "password: s3cr3t\n");
+        Files.writeString(new File(dir, "inside.yml").toPath(), "password: s3cr3t\n");
+        Files.createSymbolicLink(new File(dir, "link.yml").toPath(), outside.toPath());
+
+        AnsibleVaultInvocation invocation = new AnsibleVaultInvocation(
+                EXE, mock(AbstractBuild.class), new FilePath(dir), listener, new EnvVars());
+        invocation.setAction("encrypt");
+        invocation.setInputs("*.yml");
+        assertThat(invocation.execute(runner), is(false));
+
+        ArgumentCaptor<ArgumentListBuilder> argument = ArgumentCaptor.forClass(ArgumentListBuilder.class);
+        verify(runner).execute(argument.capture(), anyMap());
+        assertThat(
+                argument.getValue().toList(),
+                contains("ansible-vault", "encrypt", new File(dir, "inside.yml").toPath().toRealPath().toString()));
+        assertThat(log.toString(StandardCharsets.UTF_8), containsString("link.yml: ERROR! refusing to write"));
+    }
+
+    @Test
+    void shouldStartBulkActionsWithoutWaitingForThem(@TempDir File tmp) throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        CLIRunner runner = mock(CLIRunner.class);
+        when(runner.execute(any(ArgumentListBuilder.class), anyMap()))
+                .thenAnswer(invocation -> release.await(10, SECONDS));
+        BuildListener listener = mock(BuildListener.class);
+        when(listener.getLogger()).thenReturn(new PrintStream(OutputStream.nullOutputStream()));
+        Files.writeString(new File(tmp, "vars.yml").toPath(), "password: s3cr3t\n");
+
+        AnsibleVaultInvocation invocation = new AnsibleVaultInvocation(
+                EXE, mock(AbstractBuild.class), new FilePath(tmp), listener, new EnvVars());
+        invocation.setAction("encrypt");
+        invocation.setInputs("*.yml");
+        Proc proc = invocation.start(runner);
+        assertThat(proc.isAlive(), is(true));
+
+        release.countDown();
+        assertThat(proc.join(), is(0));
+        assertThat(proc.isAlive(), is(false));
+    }
+
     private AnsibleVaultInvocation getInvocation() throws Exception {
         // Given
         BuildListener listener = mock(BuildListener.class);
@@ -0,0 +1,78 @@
+package org.jenkinsci.plugins.ansible;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.startsWith;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import hudson.AbortException;
+import java.nio.charset.StandardCharsets;
+import org.junit.jupiter.api.Test;
+
+class AnsibleVaultTest {
+
+    private static final byte[] SECRET = "secret".getBytes(StandardCharsets.UTF_8);
+
+    /** Encrypted by ansible-vault with the password {@code vault pass}. */
+    private static final String ANSIBLE_VAULT_TEXT = "$ANSIBLE_VAULT;1.1;AES256\n"
+            + "63383231623232376261636630383630356164326433363034333737396133383661316337613438\n"
+            + "3630376263666133356330383833323461343630613065630a646539616437303132373832643763\n"
+            + "62333665313538373136636435363163643166656434306334366261343566326138356637626237\n"
+            + "3430653039326334320a646538313435363965666136333463623539343831646565326237343663\n"
+            + "66633334303230663132353561393836313562313832346663633134623736366135\n";
+
+    @Test
+    void shouldEncryptLikeAnsibleVault() throws Exception {
+        byte[] salt = new byte[32];
+        for (int i = 0; i < salt.length; i++) {
+            salt[i] = (byte) i;
+        }
+
+        String vaulttext = AnsibleVault.encrypt("hello".getBytes(StandardCharsets.UTF_8), SECRET, null, salt);
+
+        assertThat(
+                vaulttext,
+                is("$ANSIBLE_VAULT;1.1;AES256\n"
+                        + "30303031303230333034303530363037303830393061306230633064306530663130313131323133\n"
+                        + "3134313531363137313831393161316231633164316531660a356638633238336133323832393266\n"
+                        + "34346365363938366435643561386231326565323332393765363665366131313161323235386633\n"
+                        + "6232663430653133300a613064376363646137333966666661383738333264323165333235653237\n"
+                        + "3431\n"));
+    }
+
+    @Test
+    void shouldDecryptAnsibleVaultText() throws Exception {
+        byte[] plaintext = AnsibleVault.decrypt(ANSIBLE_VAULT_TEXT, "vault pass".getBytes(StandardCharsets.UTF_8));
+
+        assertThat(new String(plaintext, StandardCharsets.UTF_8), is("db_password: s3cr3t"));
+    }
+
+    @Test
+    void shouldRoundTripWithVaultId() throws Exception {
+        byte[] data = "a\nmulti-line\nvalue of 32 bytes".getBytes(StandardCharsets.UTF_8);
+
+        String vaulttext = AnsibleVault.encrypt(data, SECRET, "prod");
+
+        assertThat(vaulttext, startsWith("$ANSIBLE_VAULT;1.2;AES256;prod\n"));
+        assertThat(AnsibleVault.decrypt(vaulttext, SECRET), is(data));
+    }
+
+    @Test
+    void shouldRejectWrongPassword() throws Exception {
+        AbortException e = assertThrows(
+                AbortException.class,
+                () -> AnsibleVault.decrypt(ANSIBLE_VAULT_TEXT, "wrong".getBytes(StandardCharsets.UTF_8)));
+
+        assertThat(e.getMessage(), startsWith("Decryption failed"));
+    }
+
+    @Test
+    void shouldFormatYamlAndPassword() throws Exception {
+        assertThat(AnsibleVault.toYaml("$ANSIBLE_VAULT;1.1;AES256\n6162\n", null), is("!vault |\n"
+                + "          $ANSIBLE_VAULT;1.1;AES256\n"
+                + "          6162"));
+        assertThat(AnsibleVault.password(" secret\r\n".getBytes(StandardCharsets.UTF_8)), is(SECRET));
+        assertThat(AnsibleVault.isEncrypted(ANSIBLE_VAULT_TEXT.getBytes(StandardCharsets.US_ASCII)), is(true));
+        assertThat(AnsibleVault.isEncrypted(SECRET), is(false));
+    }
+}
@@ -0,0 +1,37 @@
+package org.jenkinsci.plugins.ansible;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.not;
+
+import org.junit.jupiter.api.Test;
+
+class AnsibleVirtualenvInstallerTest {
+
+    @Test
+    void shouldPinAnsibleCore() {
+        AnsibleVirtualenvInstaller installer = installer("2.15.3");
+        installer.setRequirements("# JSON queries\njmespath==1.0.1\n\n");
+
+        assertThat(installer.getPipRequirements(), contains("ansible-core==2.15.3", "jmespath==1.0.1"));
+        assertThat(installer("<2.16").getPipRequirements(), contains("ansible-core<2.16"));
+    }
+
+    @Test
+    void shouldShareVirtualenvOfIdenticalRequirements() {
+        AnsibleVirtualenvInstaller first = installer("2.15.3");
+        first.setCollections("community-general-8.0.0.tar.gz");
+        AnsibleVirtualenvInstaller second = installer("2.15.3");
+        second.setCollections("# same collections\ncommunity-general-8.0.0.tar.gz\n");
+        AnsibleVirtualenvInstaller other = installer("2.16.0");
+        other.setCollections("community-general-8.0.0.tar.gz");
+
+        assertThat(first.getDigest(), is(second.getDigest()));
+        assertThat(first.getDigest(), is(not(other.getDigest())));
+    }
+
+    private static AnsibleVirtualenvInstaller installer(String ansibleCore) {
+        return new AnsibleVirtualenvInstaller(null, ansibleCore, "/opt/wheelhouse");
+    }
+}
@@ -0,0 +1,47 @@
+package org.jenkinsci.plugins.ansible;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.Test;
+
+class KeyedLocksTest {
+
+    @Test
+    void shouldForgetReleasedLocks() throws Exception {
+        KeyedLocks<String> locks = new KeyedLocks<>();
+        try (KeyedLocks.Unlock first = locks.lock("job1");
+                KeyedLocks.Unlock second = locks.lock("job2")) {
+            assertThat(locks.size(), is(2));
+        }
+        assertThat(locks.size(), is(0));
+    }
+
+    @Test
+    void shouldWaitForTheSameKey() throws Exception {
+        KeyedLocks<String> locks = new KeyedLocks<>();
+        CountDownLatch waiting = new CountDownLatch(1);
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            Future<?> other;
+            try (KeyedLocks.Unlock unlock = locks.lock("job")) {
+                other = executor.submit(() -> {
+                    try (KeyedLocks.Unlock u = locks.lockInterruptibly("job", waiting::countDown)) {
+                        return null;
+                    }
+                });
+                assertThat(waiting.await(10, TimeUnit.SECONDS), is(true));
+                assertThat(locks.size(), is(1));
+            }
+            other.get(10, TimeUnit.SECONDS);
+            assertThat(locks.size(), is(0));
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+}
@@ -74,6 +74,21 @@ class PipelineTest {
         }
     }
 
+    @ParameterizedTest
+    @MethodSource("ansibleVersions")
+    void testPlaybookRecap(String ansibleVersion, JenkinsRule jenkins) throws Exception {
+        try (AnsibleAgent agent = setupAnsibleAgent(ansibleVersion, jenkins)) {
+            String pipeline = IOUtils.toString(
+                    PipelineTest.class.getResourceAsStream("/pipelines/playbookRecap.groovy"), StandardCharsets.UTF_8);
+            WorkflowJob workflowJob = jenkins.createProject(WorkflowJob.class);
+            workflowJob.setDefinition(new CpsFlowDefinition(pipeline, true));
+            WorkflowRun run1 = workflowJob.scheduleBuild2(0).waitForStart();
+            jenkins.waitForCompletion(run1);
+            assertThat(run1.getResult(), equalTo(Result.SUCCESS));
+            assertThat(run1.getLog(), allOf(containsString("Recap: ok=2 failedHosts=[] succeeded=true")));
+        }
+    }
+
     @ParameterizedTest
     @MethodSource("ansibleVersions")
     void testExtraVarsHiddenString(String ansibleVersion, JenkinsRule jenkins) throws Exception {
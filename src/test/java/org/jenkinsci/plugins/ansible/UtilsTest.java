@@ -0,0 +1,57 @@
+package org.jenkinsci.plugins.ansible;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+
+import hudson.FilePath;
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class UtilsTest {
+
+    @TempDir
+    File root;
+
+    @Test
+    void shouldCreateAndDeleteTempFilesInOneCall() throws Exception {
+        List<FilePath> created = new ArrayList<>();
+        new Utils.TempFiles(new FilePath(new File(root, "tmp")))
+                .add("ssh", ".key", "KEY".getBytes(StandardCharsets.UTF_8), true, "r--------", created::add)
+                .add("ssh", ".sh", "#! /bin/sh\n".getBytes(StandardCharsets.UTF_8), true, "rwx------", created::add)
+                .create();
+
+        assertThat(created.size(), is(2));
+        File key = new File(created.get(0).getRemote());
+        assertThat(key.getParentFile(), is(new File(root, "tmp").getAbsoluteFile()));
+        assertThat(Files.readString(key.toPath()), is("KEY"));
+        if (root.toPath().getFileSystem().supportedFileAttributeViews().contains("posix")) {
+            assertThat(PosixFilePermissions.toString(Files.getPosixFilePermissions(key.toPath())), is("r--------"));
+            File script = new File(created.get(1).getRemote());
+            assertThat(
+                    PosixFilePermissions.toString(Files.getPosixFilePermissions(script.toPath())), is("rwx------"));
+        }
+
+        Utils.deleteTempFiles(created, null);
+
+        for (FilePath file : created) {
+            assertThat(file.exists(), is(false));
+        }
+    }
+
+    @Test
+    void shouldReportUndeletedTempFiles() throws Exception {
+        File dir = new File(root, "dir");
+        Files.createDirectories(dir.toPath().resolve("child"));
+
+        List<String> remaining = new Utils.DeleteTempFiles(List.of(dir.getPath(), new File(root, "missing").getPath()))
+                .invoke(root, null);
+
+        assertThat(remaining, is(List.of(dir.getPath())));
+    }
+}
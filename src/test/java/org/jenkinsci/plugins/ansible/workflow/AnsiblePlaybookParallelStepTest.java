@@ -0,0 +1,141 @@
+package org.jenkinsci.plugins.ansible.workflow;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.matchesPattern;
+
+import hudson.model.Label;
+import hudson.model.Result;
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import org.jenkinsci.plugins.ansible.AnsibleInstallation;
+import org.jenkinsci.plugins.workflow.cps.CpsFlowDefinition;
+import org.jenkinsci.plugins.workflow.job.WorkflowJob;
+import org.jenkinsci.plugins.workflow.job.WorkflowRun;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.DisabledOnOs;
+import org.junit.jupiter.api.condition.OS;
+import org.junit.jupiter.api.io.TempDir;
+import org.jvnet.hudson.test.JenkinsRule;
+import org.jvnet.hudson.test.junit.jupiter.WithJenkins;
+
+@WithJenkins
+@DisabledOnOs(OS.WINDOWS)
+class AnsiblePlaybookParallelStepTest {
+
+    /**
+     * Lists the hosts of the inventory file, one per line.
+     */
+    private static final String ANSIBLE = "#!/bin/sh\n"
+            + "while [ $# -gt 0 ]; do\n"
+            + "  if [ \"$1\" = \"-i\" ]; then inventory=\"$2\"; fi\n"
+            + "  shift\n"
+            + "done\n"
+            + "echo \"  hosts ($(wc -l < \"$inventory\" | tr -d ' ')):\"\n"
+            + "sed 's/^/    /' \"$inventory\"\n";
+
+    private static final String COUNTERS = "changed=0 unreachable=0 skipped=0 rescued=0 ignored=0";
+
+    /**
+     * Prints a recap for the hosts of the limit file, failing the hosts named bad*.
+     */
+    private static final String ANSIBLE_PLAYBOOK = "#!/bin/sh\n"
+            + "while [ $# -gt 0 ]; do\n"
+            + "  if [ \"$1\" = \"-l\" ]; then limit=\"$2\"; fi\n"
+            + "  shift\n"
+            + "done\n"
+            + "echo \"limit $limit in $PWD\"\n"
+            + "echo \"hosts $(tr '\\n' ' ' < \"${limit#@}\")\"\n"
+            + "echo 'PLAY RECAP *********************************************************'\n"
+            + "status=0\n"
+            + "for host in $(cat \"${limit#@}\"); do\n"
+            + "  case \"$host\" in\n"
+            + "    bad*) echo \"$host : ok=0 failed=1 " + COUNTERS + "\"; status=2;;\n"
+            + "    *) echo \"$host : ok=1 failed=0 " + COUNTERS + "\";;\n"
+            + "  esac\n"
+            + "done\n"
+            + "exit $status\n";
+
+    private JenkinsRule jenkins;
+
+    @BeforeEach
+    void setUp(JenkinsRule jenkins, @TempDir Path home) throws Exception {
+        this.jenkins = jenkins;
+        write(home.resolve("ansible"), ANSIBLE);
+        write(home.resolve("ansible-playbook"), ANSIBLE_PLAYBOOK);
+        jenkins.jenkins
+                .getDescriptorByType(AnsibleInstallation.DescriptorImpl.class)
+                .setInstallations(new AnsibleInstallation("fake", home.toString(), List.of()));
+    }
+
+    @Test
+    void shouldSpreadTheShardsOverTheAgentsOfTheLabel() throws Exception {
+        jenkins.createOnlineSlave(Label.get("ansible"));
+        jenkins.createOnlineSlave(Label.get("ansible"));
+
+        WorkflowRun run = runPipeline("web1\\nweb2\\nweb3\\ndb1\\n", "shards: 2, label: 'ansible'");
+
+        jenkins.assertBuildStatus(Result.SUCCESS, run);
+        String log = run.getLog();
+        assertThat(log, containsString("Running the playbook on 4 hosts in 2 shards on the agents matching ansible"));
+        assertThat(log, containsString("[shard 1/2] hosts web1 web3"));
+        assertThat(log, containsString("[shard 2/2] hosts web2 db1"));
+        assertThat(log, matchesPattern("(?s).*\\[shard 1/2\\] Running on slave\\d.*"));
+        assertThat(log, matchesPattern("(?s).*\\[shard 1/2\\] limit @\\S*limit\\S*\\.txt in \\S*slave\\d\\S*.*"));
+        assertThat(log, matchesPattern("(?s).*\\[shard 2/2\\] limit @\\S*limit\\S*\\.txt in \\S*slave\\d\\S*.*"));
+        jenkins.assertLogContains("recap hosts=[db1, web1, web2, web3] failed=[] succeeded=true", run);
+    }
+
+    @Test
+    void shouldRunTheShardsOnTheCurrentAgentWithoutLabel() throws Exception {
+        WorkflowRun run = runPipeline("web1\\nweb2\\nweb3\\n", "shards: 3");
+
+        jenkins.assertBuildStatus(Result.SUCCESS, run);
+        jenkins.assertLogContains("[shard 1/3] hosts web1", run);
+        jenkins.assertLogContains("[shard 2/3] hosts web2", run);
+        jenkins.assertLogContains("[shard 3/3] hosts web3", run);
+        jenkins.assertLogContains("recap hosts=[web1, web2, web3] failed=[] succeeded=true", run);
+    }
+
+    @Test
+    void shouldFailWhenAShardFails() throws Exception {
+        WorkflowRun run = runPipeline("web1\\nbad1\\nweb2\\nweb3\\n", "shards: 2");
+
+        jenkins.assertBuildStatus(Result.FAILURE, run);
+        jenkins.assertLogContains("1 of 2 shards failed", run);
+        jenkins.assertLogNotContains("recap hosts=", run);
+    }
+
+    @Test
+    void shouldReturnTheMergedRecapOfFailedShards() throws Exception {
+        WorkflowRun run = runPipeline("web1\\nbad1\\nweb2\\nweb3\\n", "shards: 2, failOnError: false");
+
+        jenkins.assertBuildStatus(Result.SUCCESS, run);
+        jenkins.assertLogContains("1 of 2 shards failed", run);
+        jenkins.assertLogContains("recap hosts=[bad1, web1, web2, web3] failed=[bad1] succeeded=false", run);
+    }
+
+    private WorkflowRun runPipeline(String hosts, String arguments) throws Exception {
+        WorkflowJob job = jenkins.createProject(WorkflowJob.class);
+        job.setDefinition(new CpsFlowDefinition(
+                "node {\n"
+                        + "  writeFile file: 'hosts', text: '" + hosts + "'\n"
+                        + "  writeFile file: 'site.yml', text: '- hosts: all\\n'\n"
+                        + "  def recap = ansiblePlaybookParallel(playbook: 'site.yml', inventory: 'hosts',"
+                        + " installation: 'fake', " + arguments + ")\n"
+                        + "  echo \"recap hosts=${recap.hosts.keySet()} failed=${recap.failedHosts}"
+                        + " succeeded=${recap.succeeded}\"\n"
+                        + "}\n",
+                true));
+        return job.scheduleBuild2(0).get();
+    }
+
+    private static void write(Path file, String content) throws Exception {
+        Files.writeString(file, content, StandardCharsets.UTF_8);
+        new File(file.toString()).setExecutable(true);
+    }
+}
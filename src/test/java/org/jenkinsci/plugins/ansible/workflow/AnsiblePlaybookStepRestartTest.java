@@ -0,0 +1,123 @@
+package org.jenkinsci.plugins.ansible.workflow;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+import com.cloudbees.jenkins.plugins.sshcredentials.impl.BasicSSHUserPrivateKey;
+import com.cloudbees.plugins.credentials.CredentialsScope;
+import com.cloudbees.plugins.credentials.SystemCredentialsProvider;
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import org.jenkinsci.plugins.ansible.AnsibleInstallation;
+import org.jenkinsci.plugins.workflow.cps.CpsFlowDefinition;
+import org.jenkinsci.plugins.workflow.job.WorkflowJob;
+import org.jenkinsci.plugins.workflow.job.WorkflowRun;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.DisabledOnOs;
+import org.junit.jupiter.api.condition.OS;
+import org.junit.jupiter.api.extension.RegisterExtension;
+import org.junit.jupiter.api.io.TempDir;
+import org.jvnet.hudson.test.junit.jupiter.JenkinsSessionExtension;
+
+@DisabledOnOs(OS.WINDOWS)
+class AnsiblePlaybookStepRestartTest {
+
+    private static final Pattern SOCKET = Pattern.compile("agent socket (\\S+)");
+
+    @RegisterExtension
+    private final JenkinsSessionExtension sessions = new JenkinsSessionExtension();
+
+    @TempDir
+    private Path home;
+
+    @Test
+    void shouldStopTheSshAgentOfAReattachedProcess() throws Throwable {
+        assumeTrue(onPath("ssh-agent") && onPath("ssh-keygen"), "OpenSSH is not installed");
+        Path release = home.resolve("release");
+        String[] socket = new String[1];
+        sessions.then(r -> {
+            Path key = home.resolve("id_ed25519");
+            Process keygen = new ProcessBuilder("ssh-keygen", "-q", "-t", "ed25519", "-N", "", "-f", key.toString())
+                    .redirectErrorStream(true)
+                    .start();
+            assertThat(keygen.waitFor(), is(0));
+            SystemCredentialsProvider.getInstance()
+                    .getCredentials()
+                    .add(new BasicSSHUserPrivateKey(
+                            CredentialsScope.GLOBAL,
+                            "key",
+                            "ansible",
+                            new BasicSSHUserPrivateKey.DirectEntryPrivateKeySource(Files.readString(key)),
+                            null,
+                            "key"));
+            SystemCredentialsProvider.getInstance().save();
+            // waits for the release file, so that the controller restarts while it runs
+            write(
+                    home.resolve("ansible-playbook"),
+                    "#!/bin/sh\n"
+                            + "echo \"agent socket $SSH_AUTH_SOCK\"\n"
+                            + "while [ ! -f '" + release + "' ]; do sleep 1; done\n"
+                            + "echo released\n");
+            r.jenkins
+                    .getDescriptorByType(AnsibleInstallation.DescriptorImpl.class)
+                    .setInstallations(new AnsibleInstallation("fake", home.toString(), List.of()));
+
+            WorkflowJob job = r.createProject(WorkflowJob.class, "p");
+            job.setDefinition(new CpsFlowDefinition(
+                    "node {\n"
+                            + "  writeFile file: 'site.yml', text: ''\n"
+                            + "  ansiblePlaybook playbook: 'site.yml', inventory: 'localhost,', installation: 'fake',"
+                            + " credentialsId: 'key', sshAgent: true, durable: true\n"
+                            + "}\n",
+                    true));
+            WorkflowRun run = job.scheduleBuild2(0).waitForStart();
+            r.waitForMessage("agent socket ", run);
+            Matcher matcher = SOCKET.matcher(r.getLog(run));
+            assertThat(matcher.find(), is(true));
+            socket[0] = matcher.group(1);
+            assertThat(Files.exists(Path.of(socket[0]).getParent().resolve("askpass.sh")), is(true));
+            assertThat(isRunning(socket[0]), is(true));
+        });
+        sessions.then(r -> {
+            WorkflowRun run = r.jenkins.getItemByFullName("p", WorkflowJob.class).getBuildByNumber(1);
+            r.waitForMessage("Resuming the ansible process output", run);
+            Files.createFile(release);
+            r.assertBuildStatusSuccess(r.waitForCompletion(run));
+            r.assertLogContains("released", run);
+
+            assertThat(Files.exists(Path.of(socket[0]).getParent()), is(false));
+            for (int i = 0; i < 100 && isRunning(socket[0]); i++) {
+                Thread.sleep(100);
+            }
+            assertThat(isRunning(socket[0]), is(false));
+        });
+    }
+
+    /**
+     * @return whether the ssh-agent listening on the socket is running
+     */
+    private static boolean isRunning(String socket) {
+        return ProcessHandle.allProcesses()
+                .anyMatch(p -> p.info().commandLine().orElse("").contains(socket));
+    }
+
+    private static boolean onPath(String command) {
+        for (String dir : System.getenv("PATH").split(File.pathSeparator)) {
+            if (Files.isExecutable(Path.of(dir, command))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static void write(Path file, String content) throws Exception {
+        Files.writeString(file, content, StandardCharsets.UTF_8);
+        file.toFile().setExecutable(true);
+    }
+}
@@ -0,0 +1,83 @@
+package org.jenkinsci.plugins.ansible.workflow;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.not;
+
+import com.cloudbees.plugins.credentials.CredentialsScope;
+import com.cloudbees.plugins.credentials.SystemCredentialsProvider;
+import com.cloudbees.plugins.credentials.domains.Domain;
+import hudson.model.Result;
+import hudson.util.Secret;
+import java.nio.charset.StandardCharsets;
+import org.jenkinsci.plugins.ansible.AnsibleVault;
+import org.jenkinsci.plugins.plaincredentials.impl.StringCredentialsImpl;
+import org.jenkinsci.plugins.workflow.cps.CpsFlowDefinition;
+import org.jenkinsci.plugins.workflow.job.WorkflowJob;
+import org.jenkinsci.plugins.workflow.job.WorkflowRun;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.jvnet.hudson.test.JenkinsRule;
+import org.jvnet.hudson.test.junit.jupiter.WithJenkins;
+
+@WithJenkins
+class ReadVaultFileStepTest {
+
+    private JenkinsRule jenkins;
+
+    @BeforeEach
+    void setUp(JenkinsRule jenkins) throws Exception {
+        this.jenkins = jenkins;
+        SystemCredentialsProvider.getInstance()
+                .getDomainCredentialsMap()
+                .get(Domain.global())
+                .add(new StringCredentialsImpl(CredentialsScope.GLOBAL, "vault", "", Secret.fromString("secret")));
+    }
+
+    @Test
+    void shouldReturnTheDecryptedVariables() throws Exception {
+        WorkflowRun run = runPipeline("echo \"user=${vars.db.user} ports=${vars.ports}\"\n");
+
+        jenkins.assertBuildStatus(Result.SUCCESS, run);
+        jenkins.assertLogContains("user=admin ports=[80, 443]", run);
+        jenkins.assertLogContains("1 values masked", run);
+    }
+
+    @Test
+    void shouldMaskTheSecretValuesInTheLog() throws Exception {
+        WorkflowRun run = runPipeline("echo \"password=${vars.db.password}\"\n");
+
+        jenkins.assertBuildStatus(Result.SUCCESS, run);
+        jenkins.assertLogContains("password=****", run);
+        assertThat(run.getLog(), not(containsString("s3cr3t")));
+    }
+
+    @Test
+    void shouldFailWithTheWrongPassword() throws Exception {
+        SystemCredentialsProvider.getInstance()
+                .getDomainCredentialsMap()
+                .get(Domain.global())
+                .set(0, new StringCredentialsImpl(CredentialsScope.GLOBAL, "vault", "", Secret.fromString("wrong")));
+
+        WorkflowRun run = runPipeline("echo 'unreachable'\n");
+
+        jenkins.assertBuildStatus(Result.FAILURE, run);
+        jenkins.assertLogContains("Decryption failed", run);
+        jenkins.assertLogNotContains("unreachable", run);
+    }
+
+    private WorkflowRun runPipeline(String use) throws Exception {
+        String yaml = "db:\n  user: admin\n  password: s3cr3t\nports: [80, 443]\n";
+        String vaulttext = AnsibleVault.encrypt(
+                yaml.getBytes(StandardCharsets.UTF_8), "secret".getBytes(StandardCharsets.UTF_8), null);
+        WorkflowJob job = jenkins.createProject(WorkflowJob.class);
+        job.setDefinition(new CpsFlowDefinition(
+                "node {\n"
+                        + "  writeFile file: 'vars.yml', text: '''" + vaulttext + "'''\n"
+                        + "  def vars = readVaultFile file: 'vars.yml', vaultCredentialsId: 'vault'\n"
+                        + "  " + use
+                        + "}\n",
+                true));
+        return job.scheduleBuild2(0).get();
+    }
+}
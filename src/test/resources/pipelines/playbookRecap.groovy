@@ -0,0 +1,15 @@
+pipeline {
+    agent {
+        label('test-agent')
+    }
+    stages {
+        stage('Ansible playbook') {
+            steps {
+                script {
+                    def result = ansiblePlaybook(playbook: '/ansible/playbook.yml')
+                    echo "Recap: ok=${result.hosts.local.ok} failedHosts=${result.failedHosts} succeeded=${result.succeeded}"
+                }
+            }
+        }
+    }
+}